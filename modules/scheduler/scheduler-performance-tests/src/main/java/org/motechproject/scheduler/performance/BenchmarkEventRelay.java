@@ -0,0 +1,68 @@
+package org.motechproject.scheduler.performance;
+
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.EventRelay;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Event relay used by the benchmarks in place of the event module. It counts the events sent by fired jobs and lets
+ * a benchmark wait for the event of a particular job.
+ */
+public class BenchmarkEventRelay implements EventRelay {
+
+    private static final String JOB_ID = "JobID";
+
+    private final ConcurrentMap<String, CountDownLatch> awaitedJobs = new ConcurrentHashMap<>();
+    private final AtomicLong eventCount = new AtomicLong();
+
+    @Override
+    public void sendEventMessage(MotechEvent motechEvent) {
+        eventCount.incrementAndGet();
+
+        Object jobId = motechEvent.getParameters().get(JOB_ID);
+        CountDownLatch latch = jobId == null ? null : awaitedJobs.remove(jobId.toString());
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    @Override
+    public void broadcastEventMessage(MotechEvent motechEvent) {
+        sendEventMessage(motechEvent);
+    }
+
+    /**
+     * Registers interest in the event of the job with the given id. Must be called before the job is scheduled.
+     *
+     * @param jobId the id of the job
+     * @return the latch released once the event of the job is sent
+     */
+    public CountDownLatch expect(String jobId) {
+        CountDownLatch latch = new CountDownLatch(1);
+        awaitedJobs.put(jobId, latch);
+        return latch;
+    }
+
+    /**
+     * Waits for the event registered through {@link #expect(String)}.
+     *
+     * @param latch the latch returned by {@link #expect(String)}
+     * @param timeoutMillis the maximum time to wait
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the event was not sent in time
+     */
+    public void await(CountDownLatch latch, long timeoutMillis) throws InterruptedException {
+        if (!latch.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("The job event was not sent within " + timeoutMillis + "ms");
+        }
+    }
+
+    public long getEventCount() {
+        return eventCount.get();
+    }
+}
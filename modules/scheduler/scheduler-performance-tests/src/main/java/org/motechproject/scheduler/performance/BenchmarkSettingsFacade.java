@@ -0,0 +1,23 @@
+package org.motechproject.scheduler.performance;
+
+import org.motechproject.server.config.SettingsFacade;
+
+import java.util.Properties;
+
+/**
+ * Scheduler settings backed by plain properties, since the benchmarks run outside of the OSGi container and
+ * the regular {@link SettingsFacade} requires a bundle context.
+ */
+public class BenchmarkSettingsFacade extends SettingsFacade {
+
+    private final Properties properties;
+
+    public BenchmarkSettingsFacade(Properties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public String getProperty(String key) {
+        return properties.getProperty(key);
+    }
+}
@@ -0,0 +1,68 @@
+package org.motechproject.scheduler.performance;
+
+import org.motechproject.commons.date.util.DateUtil;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.scheduler.contract.RepeatingJobId;
+import org.motechproject.scheduler.contract.RepeatingSchedulableJob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quartz.SchedulerException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency between scheduling a job which is due immediately and its event being sent, with the given
+ * number of jobs in the database. A repeating job with no repeats is used, since run once jobs can not start
+ * in the past. The measured time includes scheduling the job, Quartz acquiring its trigger and the job execution.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class FireLatencyBenchmark {
+
+    private static final long TIMEOUT_MILLIS = 60000;
+    private static final int THREAD_COUNT = 5;
+
+    @Param({"10000", "100000", "1000000"})
+    public int jobCount;
+
+    private SchedulerBenchmarkEnvironment environment;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SchedulerException {
+        environment = new SchedulerBenchmarkEnvironment("latency", THREAD_COUNT, 0);
+        environment.populate(jobCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public void fire() throws InterruptedException {
+        MotechEvent event = environment.createEvent("latency-" + sequence++);
+        BenchmarkEventRelay eventRelay = environment.getEventRelay();
+
+        CountDownLatch latch = eventRelay.expect(new RepeatingJobId(event).value());
+        environment.getSchedulerService().scheduleRepeatingJob(
+                new RepeatingSchedulableJob(event, 0, 1, DateUtil.now().toDate(), null, false));
+        eventRelay.await(latch, TIMEOUT_MILLIS);
+    }
+}
@@ -0,0 +1,81 @@
+package org.motechproject.scheduler.performance;
+
+import org.motechproject.scheduler.contract.JobBasicInfo;
+import org.motechproject.scheduler.contract.JobsSearchSettings;
+import org.motechproject.scheduler.exception.MotechSchedulerJobRetrievalException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quartz.SchedulerException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the queries behind the jobs grid of the scheduler UI: fetching a page of jobs and counting all jobs
+ * matching the search settings, with the given number of jobs in the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JobListingBenchmark {
+
+    private static final int ROWS = 100;
+
+    @Param({"10000", "100000", "1000000"})
+    public int jobCount;
+
+    @Param({"1", "50"})
+    public int page;
+
+    @Param({"", "populated-42"})
+    public String name;
+
+    private SchedulerBenchmarkEnvironment environment;
+    private JobsSearchSettings searchSettings;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SchedulerException {
+        environment = new SchedulerBenchmarkEnvironment("listing", 1, 0);
+        environment.populate(jobCount);
+
+        searchSettings = new JobsSearchSettings();
+        searchSettings.setName(name);
+        searchSettings.setActivity(JobBasicInfo.ACTIVITY_NOTSTARTED + "," + JobBasicInfo.ACTIVITY_ACTIVE + ","
+                + JobBasicInfo.ACTIVITY_FINISHED);
+        searchSettings.setStatus(JobBasicInfo.STATUS_OK + "," + JobBasicInfo.STATUS_ERROR + ","
+                + JobBasicInfo.STATUS_BLOCKED + "," + JobBasicInfo.STATUS_PAUSED);
+        searchSettings.setSortColumn("name");
+        searchSettings.setSortDirection("asc");
+        searchSettings.setRows(ROWS);
+        searchSettings.setPage(page);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public List<JobBasicInfo> listJobs() throws MotechSchedulerJobRetrievalException {
+        return environment.getSchedulerDatabaseService().getScheduledJobsBasicInfo(searchSettings);
+    }
+
+    @Benchmark
+    public int countJobs() throws MotechSchedulerJobRetrievalException {
+        return environment.getSchedulerDatabaseService().countJobs(searchSettings);
+    }
+}
@@ -0,0 +1,252 @@
+package org.motechproject.scheduler.performance;
+
+import com.googlecode.flyway.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+import org.motechproject.commons.date.util.DateUtil;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.scheduler.contract.CronSchedulableJob;
+import org.motechproject.scheduler.contract.RepeatingPeriodSchedulableJob;
+import org.motechproject.scheduler.contract.RepeatingSchedulableJob;
+import org.motechproject.scheduler.contract.RunOnceSchedulableJob;
+import org.motechproject.scheduler.factory.MotechSchedulerFactoryBean;
+import org.motechproject.scheduler.service.MotechSchedulerDatabaseService;
+import org.motechproject.scheduler.service.MotechSchedulerService;
+import org.motechproject.scheduler.service.impl.MotechScheduledJob;
+import org.motechproject.scheduler.service.impl.MotechSchedulerDatabaseServiceImpl;
+import org.motechproject.scheduler.service.impl.MotechSchedulerServiceImpl;
+import org.motechproject.scheduler.service.impl.RunOnceJobMemoryTier;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.quartz.JobBuilder.newJob;
+import static org.quartz.SimpleScheduleBuilder.simpleSchedule;
+import static org.quartz.TriggerBuilder.newTrigger;
+
+/**
+ * A scheduler module running outside of the OSGi container, on top of an in-memory H2 database created with the
+ * module's Flyway migrations. The Spring context contains the same scheduler beans as the module, with the event
+ * relay and settings replaced by {@link BenchmarkEventRelay} and {@link BenchmarkSettingsFacade}.
+ * <p>
+ * Quartz keeps its schedulers and data sources in JVM wide registries, so only one environment should be open
+ * at a time in a JVM. JMH runs every benchmark in a forked JVM, which takes care of that.
+ */
+public class SchedulerBenchmarkEnvironment implements Closeable {
+
+    public static final String SUBJECT = "scheduler_benchmark";
+
+    private static final String POPULATED_PREFIX = "populated-";
+    private static final int POPULATE_CHUNK_SIZE = 10000;
+    private static final String CRON_EXPRESSION = "0 0 12 * * ?";
+    private static final int REPEAT_INTERVAL_IN_SECONDS = 3600;
+
+    /**
+     * The types of jobs which can be scheduled through the {@link MotechSchedulerService}.
+     */
+    public enum JobType {
+        CRON, REPEATING, PERIOD, RUN_ONCE
+    }
+
+    private final AnnotationConfigApplicationContext context;
+    private final BenchmarkEventRelay eventRelay;
+    private final File journal;
+
+    /**
+     * Creates the database and starts the scheduler.
+     *
+     * @param name the name of the environment, used for the database and the Quartz instance
+     * @param threadCount the number of Quartz worker threads
+     * @param memoryTierHorizonSeconds the horizon of the in-memory tier for run once jobs, 0 to disable it
+     */
+    public SchedulerBenchmarkEnvironment(String name, int threadCount, int memoryTierHorizonSeconds) {
+        String url = "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE";
+        migrate(url);
+
+        try {
+            journal = File.createTempFile(name, ".journal");
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create the run once job journal", e);
+        }
+
+        Properties properties = buildProperties(name, url, threadCount, memoryTierHorizonSeconds);
+        eventRelay = new BenchmarkEventRelay();
+
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().registerSingleton("sqlProperties", properties);
+        context.getBeanFactory().registerSingleton("eventRelay", eventRelay);
+        context.getBeanFactory().registerSingleton("schedulerSettings", new BenchmarkSettingsFacade(properties));
+        context.register(MotechSchedulerFactoryBean.class, RunOnceJobMemoryTier.class,
+                MotechSchedulerServiceImpl.class, MotechSchedulerDatabaseServiceImpl.class);
+        context.refresh();
+    }
+
+    public MotechSchedulerService getSchedulerService() {
+        return context.getBean(MotechSchedulerService.class);
+    }
+
+    public MotechSchedulerDatabaseService getSchedulerDatabaseService() {
+        return context.getBean(MotechSchedulerDatabaseService.class);
+    }
+
+    public BenchmarkEventRelay getEventRelay() {
+        return eventRelay;
+    }
+
+    /**
+     * Fills the job tables with the given number of jobs, distributed evenly between cron, repeating and run once
+     * jobs. The jobs start a year from now, so they don't fire during the benchmark. Jobs are stored in chunks
+     * directly through Quartz, which is much faster than scheduling them one by one.
+     *
+     * @param jobCount the number of jobs to create
+     * @throws SchedulerException if the jobs could not be stored
+     */
+    public void populate(int jobCount) throws SchedulerException {
+        Scheduler scheduler = context.getBean(MotechSchedulerFactoryBean.class).getQuartzScheduler();
+        DateTime startTime = DateUtil.now().plusYears(1);
+
+        Map<JobDetail, Set<? extends Trigger>> chunk = new HashMap<>();
+        for (int i = 0; i < jobCount; i++) {
+            String jobId = SUBJECT + "-" + POPULATED_PREFIX + i;
+
+            Trigger trigger;
+            switch (i % 3) {
+                case 0:
+                    trigger = newTrigger().withIdentity(jobId, MotechSchedulerServiceImpl.JOB_GROUP_NAME)
+                            .withSchedule(CronScheduleBuilder.cronSchedule(CRON_EXPRESSION))
+                            .startAt(startTime.toDate()).build();
+                    break;
+                case 1:
+                    trigger = newTrigger().withIdentity(jobId, MotechSchedulerServiceImpl.JOB_GROUP_NAME)
+                            .withSchedule(simpleSchedule().withIntervalInSeconds(REPEAT_INTERVAL_IN_SECONDS).repeatForever())
+                            .startAt(startTime.toDate()).build();
+                    break;
+                default:
+                    trigger = newTrigger().withIdentity(jobId, MotechSchedulerServiceImpl.JOB_GROUP_NAME)
+                            .withSchedule(simpleSchedule().withRepeatCount(0))
+                            .startAt(startTime.toDate()).build();
+                    break;
+            }
+
+            chunk.put(buildJobDetail(jobId), Collections.singleton(trigger));
+            if (chunk.size() == POPULATE_CHUNK_SIZE) {
+                scheduler.scheduleJobs(chunk, false);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            scheduler.scheduleJobs(chunk, false);
+        }
+    }
+
+    /**
+     * Schedules a job of the given type through the {@link MotechSchedulerService}.
+     *
+     * @param jobType the type of the job
+     * @param externalId the external id of the job, used to build its job id
+     * @param startTime the start time of the job
+     */
+    public void schedule(JobType jobType, String externalId, DateTime startTime) {
+        MotechEvent event = createEvent(externalId);
+        MotechSchedulerService schedulerService = getSchedulerService();
+
+        switch (jobType) {
+            case CRON:
+                schedulerService.scheduleJob(new CronSchedulableJob(event, CRON_EXPRESSION, startTime.toDate(), null));
+                break;
+            case REPEATING:
+                schedulerService.scheduleRepeatingJob(new RepeatingSchedulableJob(event, REPEAT_INTERVAL_IN_SECONDS,
+                        startTime.toDate(), null, false));
+                break;
+            case PERIOD:
+                schedulerService.scheduleRepeatingPeriodJob(new RepeatingPeriodSchedulableJob(event, startTime.toDate(),
+                        null, Period.hours(1), false));
+                break;
+            default:
+                schedulerService.scheduleRunOnceJob(new RunOnceSchedulableJob(event, startTime.toDate()));
+                break;
+        }
+    }
+
+    /**
+     * Creates the event of a benchmark job.
+     *
+     * @param externalId the external id of the job
+     * @return the event to schedule
+     */
+    public MotechEvent createEvent(String externalId) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(MotechSchedulerService.JOB_ID_KEY, externalId);
+        return new MotechEvent(SUBJECT, parameters);
+    }
+
+    @Override
+    public void close() {
+        context.close();
+        if (!journal.delete()) {
+            journal.deleteOnExit();
+        }
+    }
+
+    private JobDetail buildJobDetail(String jobId) {
+        JobDataMap jobDataMap = new JobDataMap();
+        jobDataMap.put(MotechSchedulerService.JOB_ID_KEY, jobId);
+        jobDataMap.put(MotechEvent.EVENT_TYPE_KEY_NAME, SUBJECT);
+
+        return newJob(MotechScheduledJob.class)
+                .withIdentity(jobId, MotechSchedulerServiceImpl.JOB_GROUP_NAME)
+                .usingJobData(jobDataMap)
+                .build();
+    }
+
+    private void migrate(String url) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL(url);
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+
+        Flyway flyway = new Flyway();
+        flyway.setDataSource(dataSource);
+        flyway.setLocations("db/migration/scheduler/default");
+        flyway.setInitOnMigrate(true);
+        flyway.migrate();
+    }
+
+    private Properties buildProperties(String name, String url, int threadCount, int memoryTierHorizonSeconds) {
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.scheduler.instanceName", name);
+        properties.setProperty("org.quartz.scheduler.skipUpdateCheck", "true");
+        properties.setProperty("org.quartz.threadPool.class", "org.quartz.simpl.SimpleThreadPool");
+        properties.setProperty("org.quartz.threadPool.threadCount", String.valueOf(threadCount));
+        properties.setProperty("org.quartz.jobStore.class", "org.quartz.impl.jdbcjobstore.JobStoreTX");
+        properties.setProperty("org.quartz.jobStore.driverDelegateClass", "org.quartz.impl.jdbcjobstore.StdJDBCDelegate");
+        properties.setProperty("org.quartz.jobStore.driverDelegateInitString",
+                "triggerPersistenceDelegateClasses=org.motechproject.scheduler.trigger.PeriodIntervalTriggerPersistenceDelegate");
+        properties.setProperty("org.quartz.jobStore.dataSource", "motechDS");
+        properties.setProperty("org.quartz.jobStore.tablePrefix", "QRTZ_");
+        properties.setProperty("org.quartz.jobStore.misfireThreshold", "60000");
+        properties.setProperty("org.quartz.dataSource.motechDS.driver", "org.h2.Driver");
+        properties.setProperty("org.quartz.dataSource.motechDS.URL", url);
+        properties.setProperty("org.quartz.dataSource.motechDS.user", "sa");
+        properties.setProperty("org.quartz.dataSource.motechDS.password", "");
+        properties.setProperty("org.quartz.dataSource.motechDS.maxConnections", String.valueOf(threadCount + 10));
+        properties.setProperty("scheduler.waitForJobsToCompleteOnShutdown", "false");
+        properties.setProperty(RunOnceJobMemoryTier.HORIZON_PROPERTY, String.valueOf(memoryTierHorizonSeconds));
+        properties.setProperty(RunOnceJobMemoryTier.JOURNAL_PROPERTY, journal.getAbsolutePath());
+        return properties;
+    }
+}
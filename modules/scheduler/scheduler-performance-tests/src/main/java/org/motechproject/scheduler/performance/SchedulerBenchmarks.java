@@ -0,0 +1,35 @@
+package org.motechproject.scheduler.performance;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all scheduler benchmarks and writes the results as JSON, so that they can be compared between builds.
+ * Regular JMH command line options can be passed, for example {@code -p jobCount=10000} runs the benchmarks
+ * with a single job count. The results file can be changed through the {@code scheduler.benchmark.result}
+ * system property.
+ */
+public final class SchedulerBenchmarks {
+
+    private static final String RESULT_PROPERTY = "scheduler.benchmark.result";
+    private static final String DEFAULT_RESULT = "scheduler-benchmarks.json";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(SchedulerBenchmarks.class.getPackage().getName() + "\\..*Benchmark")
+                .resultFormat(ResultFormatType.JSON)
+                .result(System.getProperty(RESULT_PROPERTY, DEFAULT_RESULT))
+                .build();
+
+        new Runner(options).run();
+    }
+
+    private SchedulerBenchmarks() {
+    }
+}
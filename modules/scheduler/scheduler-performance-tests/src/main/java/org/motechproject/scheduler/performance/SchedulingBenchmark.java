@@ -0,0 +1,64 @@
+package org.motechproject.scheduler.performance;
+
+import org.motechproject.commons.date.util.DateUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quartz.SchedulerException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many jobs of each type can be scheduled per second, with the given number of jobs already
+ * in the database. The RUN_ONCE_IN_MEMORY type schedules run once jobs due within the horizon of the in-memory tier.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SchedulingBenchmark {
+
+    private static final int MEMORY_TIER_HORIZON_SECONDS = 3600;
+    private static final int START_DELAY_MINUTES = 30;
+
+    @Param({"10000", "100000", "1000000"})
+    public int jobCount;
+
+    @Param({"CRON", "REPEATING", "PERIOD", "RUN_ONCE", "RUN_ONCE_IN_MEMORY"})
+    public String jobType;
+
+    private SchedulerBenchmarkEnvironment environment;
+    private SchedulerBenchmarkEnvironment.JobType type;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SchedulerException {
+        boolean inMemory = "RUN_ONCE_IN_MEMORY".equals(jobType);
+
+        environment = new SchedulerBenchmarkEnvironment("scheduling", 1, inMemory ? MEMORY_TIER_HORIZON_SECONDS : 0);
+        environment.populate(jobCount);
+        type = inMemory ? SchedulerBenchmarkEnvironment.JobType.RUN_ONCE : SchedulerBenchmarkEnvironment.JobType.valueOf(jobType);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public void schedule() {
+        environment.schedule(type, "scheduling-" + sequence++, DateUtil.now().plusMinutes(START_DELAY_MINUTES));
+    }
+}
@@ -0,0 +1,68 @@
+package org.motechproject.scheduler.performance;
+
+import org.motechproject.commons.date.util.DateUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quartz.SchedulerException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time of unscheduling all jobs with a given prefix, with the given number of other jobs
+ * in the database. Before every invocation, a fresh group of jobs with the prefix is scheduled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UnschedulingBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int jobCount;
+
+    @Param({"10", "100"})
+    public int jobsPerPrefix;
+
+    private SchedulerBenchmarkEnvironment environment;
+    private long sequence;
+    private String prefix;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SchedulerException {
+        environment = new SchedulerBenchmarkEnvironment("unscheduling", 1, 0);
+        environment.populate(jobCount);
+    }
+
+    @Setup(Level.Invocation)
+    public void scheduleJobs() {
+        String externalIdPrefix = "unscheduling-" + sequence++ + "-";
+        for (int i = 0; i < jobsPerPrefix; i++) {
+            environment.schedule(SchedulerBenchmarkEnvironment.JobType.RUN_ONCE, externalIdPrefix + i,
+                    DateUtil.now().plusYears(1));
+        }
+        prefix = SchedulerBenchmarkEnvironment.SUBJECT + "-" + externalIdPrefix;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public void unscheduleAllJobs() {
+        environment.getSchedulerService().unscheduleAllJobs(prefix);
+    }
+}
@@ -38,6 +38,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
@@ -75,6 +77,9 @@ public class MotechSchedulerDatabaseServiceImpl implements MotechSchedulerDataba
     @Autowired
     private MotechSchedulerFactoryBean motechSchedulerFactoryBean;
 
+    @Autowired
+    private RunOnceJobMemoryTier memoryTier;
+
     @PostConstruct
     public void init() {
         scheduler = motechSchedulerFactoryBean.getQuartzScheduler();
@@ -87,8 +92,8 @@ public class MotechSchedulerDatabaseServiceImpl implements MotechSchedulerDataba
         try {
             rowCount = executeCountQuery(query);
             LOGGER.debug("Executing {}", query);
-            return rowCount;
-        } catch (SQLException e) {
+            return rowCount + getMemoryTierJobs(jobsSearchSettings).size();
+        } catch (SQLException | SchedulerException e) {
             throw new MotechSchedulerJobRetrievalException("Jobs counting failed.", e);
         }
     }
@@ -100,42 +105,32 @@ public class MotechSchedulerDatabaseServiceImpl implements MotechSchedulerDataba
         if (!isNotBlank(jobsSearchSettings.getActivity()) || !isNotBlank(jobsSearchSettings.getStatus())) {
             return jobBasicInfos;
         }
-        String query = buildJobsBasicInfoSqlQuery(jobsSearchSettings);
-        LOGGER.debug("Executing {}", query);
 
-        List<String> columnNames = new LinkedList<>();
-        columnNames.add(TRIGGER_NAME);
-        columnNames.add(TRIGGER_GROUP);
-        List<List<Object>> objects;
+        int offset = 0;
+        Integer limit = null;
+        if (jobsSearchSettings.getRows() != null && jobsSearchSettings.getPage() != null) {
+            offset = (jobsSearchSettings.getPage() == 0) ? 0 : (jobsSearchSettings.getPage() - 1) * jobsSearchSettings.getRows();
+            limit = jobsSearchSettings.getRows();
+        }
 
         try {
-            objects = executeQuery(query, columnNames);
-
-            for (List<Object> row : objects) {
-                JobKey jobKey = new JobKey(row.get(0).toString(), row.get(1).toString());
-                Trigger trigger = scheduler.getTriggersOfJob(jobKey).get(0);
-                String jobName = jobKey.getName();
-                String jobType = getJobType(jobKey);
-                String activity = getJobActivity(trigger);
-                String info = getJobInfo(trigger, jobType);
-                String status = getJobStatus(trigger.getKey());
-                String startDate = getStartDate(trigger);
-                String nextFireDate = "";
-                if (trigger.getNextFireTime() != null) {
-                    nextFireDate = DateTimeFormat.forPattern(DATE_FORMAT_PATTERN).print(trigger.getNextFireTime().getTime());
-                }
-                String endDate = getEndDate(trigger, jobType);
-
-                jobBasicInfos.add(new JobBasicInfo(
-                        activity,
-                        status,
-                        jobName,
-                        startDate,
-                        nextFireDate,
-                        endDate,
-                        jobType,
-                        info
-                ));
+            List<JobEntry> memoryJobs = getMemoryTierJobs(jobsSearchSettings);
+            List<JobEntry> jobs;
+
+            if (memoryJobs.isEmpty()) {
+                jobs = getDatabaseJobs(jobsSearchSettings, offset, limit);
+            } else {
+                // the page is cut out of both sources merged in the requested order, so the database rows up to
+                // the end of the page are needed, but the triggers are loaded only for the jobs on the page
+                List<JobEntry> databaseJobs = getDatabaseJobs(jobsSearchSettings, 0, (limit == null) ? null : offset + limit);
+                jobs = merge(memoryJobs, databaseJobs, getJobComparator(jobsSearchSettings));
+                int from = Math.min(offset, jobs.size());
+                int to = (limit == null) ? jobs.size() : Math.min(offset + limit, jobs.size());
+                jobs = jobs.subList(from, to);
+            }
+
+            for (JobEntry job : jobs) {
+                jobBasicInfos.add(buildJobBasicInfo(job.getJobKey(), job.getTrigger(), job.getSource()));
             }
 
             return jobBasicInfos;
@@ -150,27 +145,9 @@ public class MotechSchedulerDatabaseServiceImpl implements MotechSchedulerDataba
         List<EventInfo> eventInfos = new ArrayList<>();
 
         try {
-            for (String groupName : scheduler.getJobGroupNames()) {
-                for (JobKey jobKey : scheduler.getJobKeys(GroupMatcher.jobGroupEquals(groupName))) {
-                    if (jobKey.getName().equals(jobBasicInfo.getName())) {
-                        EventInfo eventInfo = new EventInfo();
-                        String subject;
-
-                        eventInfo.setParameters(
-                           scheduler.getJobDetail(jobKey).getJobDataMap().getWrappedMap()
-                        );
-
-                        if (eventInfo.getParameters().containsKey(MotechEvent.EVENT_TYPE_KEY_NAME)) {
-                            subject = eventInfo.getParameters().get(MotechEvent.EVENT_TYPE_KEY_NAME).toString();
-                            eventInfo.getParameters().remove(MotechEvent.EVENT_TYPE_KEY_NAME);
-                        } else {
-                            subject = jobKey.getName().substring(0, jobKey.getName().indexOf('-'));
-                        }
-
-                        eventInfo.setSubject(subject);
-                        eventInfos.add(eventInfo);
-                    }
-                }
+            eventInfos.addAll(getEventInfos(scheduler, jobBasicInfo));
+            if (memoryTier.isEnabled()) {
+                eventInfos.addAll(getEventInfos(memoryTier.getScheduler(), jobBasicInfo));
             }
 
             jobDetailedInfo.setEventInfoList(eventInfos);
@@ -180,6 +157,231 @@ public class MotechSchedulerDatabaseServiceImpl implements MotechSchedulerDataba
         }
     }
 
+    private List<JobEntry> getDatabaseJobs(JobsSearchSettings jobsSearchSettings, int offset, Integer limit) throws SQLException {
+        String query = buildJobsBasicInfoSqlQuery(jobsSearchSettings, offset, limit);
+        LOGGER.debug("Executing {}", query);
+
+        List<String> columnNames = new LinkedList<>();
+        columnNames.add(TRIGGER_NAME);
+        columnNames.add(TRIGGER_GROUP);
+        columnNames.add(JOB_NAME);
+        columnNames.add(START_TIME);
+        columnNames.add(END_TIME);
+        columnNames.add(TRIGGER_STATE);
+        columnNames.add(TRIGGER_TYPE);
+
+        List<JobEntry> jobs = new ArrayList<>();
+        for (List<Object> row : executeQuery(query, columnNames)) {
+            JobKey jobKey = new JobKey(row.get(0).toString(), row.get(1).toString());
+            jobs.add(new JobEntry(jobKey, scheduler, null, row.get(2).toString(), toMillis(row.get(3)),
+                    toMillis(row.get(4)), String.valueOf(row.get(5)), String.valueOf(row.get(6))));
+        }
+        return jobs;
+    }
+
+    /*
+     * Merges two lists, each already sorted with the given comparator. If there is no comparator, the jobs from the
+     * first list go first.
+     */
+    private static List<JobEntry> merge(List<JobEntry> first, List<JobEntry> second, Comparator<JobEntry> comparator) {
+        List<JobEntry> merged = new ArrayList<>(first.size() + second.size());
+        if (comparator == null) {
+            merged.addAll(first);
+            merged.addAll(second);
+            return merged;
+        }
+
+        int i = 0;
+        int j = 0;
+        while (i < first.size() && j < second.size()) {
+            if (comparator.compare(first.get(i), second.get(j)) <= 0) {
+                merged.add(first.get(i++));
+            } else {
+                merged.add(second.get(j++));
+            }
+        }
+        merged.addAll(first.subList(i, first.size()));
+        merged.addAll(second.subList(j, second.size()));
+
+        return merged;
+    }
+
+    private Comparator<JobEntry> getJobComparator(JobsSearchSettings jobsSearchSettings) {
+        if (!isNotBlank(jobsSearchSettings.getSortColumn()) || !isNotBlank(jobsSearchSettings.getSortDirection())) {
+            return null;
+        }
+
+        Comparator<JobEntry> comparator = new JobEntryComparator(getSortColumn(jobsSearchSettings.getSortColumn()));
+        return "desc".equalsIgnoreCase(jobsSearchSettings.getSortDirection()) ? Collections.reverseOrder(comparator) : comparator;
+    }
+
+    private static long toMillis(Object value) {
+        return (value instanceof Number) ? ((Number) value).longValue() : 0;
+    }
+
+    private List<EventInfo> getEventInfos(Scheduler source, JobBasicInfo jobBasicInfo) throws SchedulerException {
+        List<EventInfo> eventInfos = new ArrayList<>();
+
+        for (String groupName : source.getJobGroupNames()) {
+            for (JobKey jobKey : source.getJobKeys(GroupMatcher.jobGroupEquals(groupName))) {
+                if (jobKey.getName().equals(jobBasicInfo.getName())) {
+                    EventInfo eventInfo = new EventInfo();
+                    String subject;
+
+                    eventInfo.setParameters(
+                       source.getJobDetail(jobKey).getJobDataMap().getWrappedMap()
+                    );
+
+                    if (eventInfo.getParameters().containsKey(MotechEvent.EVENT_TYPE_KEY_NAME)) {
+                        subject = eventInfo.getParameters().get(MotechEvent.EVENT_TYPE_KEY_NAME).toString();
+                        eventInfo.getParameters().remove(MotechEvent.EVENT_TYPE_KEY_NAME);
+                    } else {
+                        subject = jobKey.getName().substring(0, jobKey.getName().indexOf('-'));
+                    }
+
+                    eventInfo.setSubject(subject);
+                    eventInfos.add(eventInfo);
+                }
+            }
+        }
+
+        return eventInfos;
+    }
+
+    private JobBasicInfo buildJobBasicInfo(JobKey jobKey, Trigger trigger, Scheduler source) throws SchedulerException {
+        String jobName = jobKey.getName();
+        String jobType = getJobType(jobKey);
+        String activity = getJobActivity(trigger);
+        String info = getJobInfo(trigger, jobType);
+        String status = getJobStatus(source.getTriggerState(trigger.getKey()));
+        String startDate = getStartDate(trigger);
+        String nextFireDate = "";
+        if (trigger.getNextFireTime() != null) {
+            nextFireDate = DateTimeFormat.forPattern(DATE_FORMAT_PATTERN).print(trigger.getNextFireTime().getTime());
+        }
+        String endDate = getEndDate(trigger, jobType);
+
+        return new JobBasicInfo(
+                activity,
+                status,
+                jobName,
+                startDate,
+                nextFireDate,
+                endDate,
+                jobType,
+                info
+        );
+    }
+
+    /*
+     * Applies the same filters and ordering as the SQL queries to the triggers kept in the memory tier. Missing end
+     * times are treated as 0 and trigger states are named the way they are stored by the JDBC job store.
+     */
+    private List<JobEntry> getMemoryTierJobs(JobsSearchSettings jobsSearchSettings) throws SchedulerException {
+        List<JobEntry> jobs = new ArrayList<>();
+        if (!memoryTier.isEnabled()) {
+            return jobs;
+        }
+
+        Scheduler memoryScheduler = memoryTier.getScheduler();
+        for (TriggerKey triggerKey : memoryTier.getTriggerKeys()) {
+            Trigger trigger = memoryScheduler.getTrigger(triggerKey);
+            Trigger.TriggerState state = memoryScheduler.getTriggerState(triggerKey);
+            if (trigger != null && matchesSearchSettings(trigger, state, jobsSearchSettings)) {
+                jobs.add(new JobEntry(trigger.getJobKey(), memoryScheduler, trigger, trigger.getJobKey().getName(),
+                        trigger.getStartTime().getTime(), getEndTimeInMillis(trigger), getStoredTriggerState(state),
+                        getStoredTriggerType(trigger)));
+            }
+        }
+
+        Comparator<JobEntry> comparator = getJobComparator(jobsSearchSettings);
+        if (comparator != null) {
+            Collections.sort(jobs, comparator);
+        }
+
+        return jobs;
+    }
+
+    private static String getStoredTriggerState(Trigger.TriggerState state) {
+        return (state == Trigger.TriggerState.NORMAL) ? WAITING : state.toString();
+    }
+
+    private static String getStoredTriggerType(Trigger trigger) {
+        if (trigger instanceof SimpleTrigger) {
+            return "SIMPLE";
+        } else if (trigger instanceof CronTrigger) {
+            return "CRON";
+        } else if (trigger instanceof CalendarIntervalTrigger) {
+            return "CAL_INT";
+        } else {
+            return "BLOB";
+        }
+    }
+
+    private boolean matchesSearchSettings(Trigger trigger, Trigger.TriggerState state, JobsSearchSettings jobsSearchSettings) {
+        long now = DateTime.now().getMillis();
+        long startTime = trigger.getStartTime().getTime();
+        long endTime = getEndTimeInMillis(trigger);
+
+        if (isNotBlank(jobsSearchSettings.getTimeFrom()) &&
+                startTime < DateTimeFormat.forPattern(DATE_FORMAT_PATTERN).parseDateTime(jobsSearchSettings.getTimeFrom()).getMillis()) {
+            return false;
+        }
+        if (isNotBlank(jobsSearchSettings.getTimeTo()) &&
+                endTime > DateTimeFormat.forPattern(DATE_FORMAT_PATTERN).parseDateTime(jobsSearchSettings.getTimeTo()).getMillis()) {
+            return false;
+        }
+        if (isNotBlank(jobsSearchSettings.getName()) && !trigger.getJobKey().getName().contains(jobsSearchSettings.getName())) {
+            return false;
+        }
+
+        return matchesActivity(startTime, endTime, now, jobsSearchSettings.getActivity()) &&
+                matchesStatus(state, jobsSearchSettings.getStatus());
+    }
+
+    private boolean matchesActivity(long startTime, long endTime, long now, String activity) {
+        String[] activityElements = StringUtils.defaultString(activity).split(",");
+        if (StringUtils.isBlank(activity) || activityElements.length >= 3) {
+            return true;
+        }
+        for (String element : activityElements) {
+            if (JobBasicInfo.ACTIVITY_NOTSTARTED.equals(element)) {
+                if (startTime > now) {
+                    return true;
+                }
+            } else if (JobBasicInfo.ACTIVITY_FINISHED.equals(element)) {
+                if (endTime < now) {
+                    return true;
+                }
+            } else if (startTime <= now && endTime >= now) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesStatus(Trigger.TriggerState state, String status) {
+        String[] statusElements = StringUtils.defaultString(status).split(",");
+        if (StringUtils.isBlank(status) || statusElements.length >= 4) {
+            return true;
+        }
+        for (String element : statusElements) {
+            if (Trigger.TriggerState.ERROR.toString().equals(element) || Trigger.TriggerState.BLOCKED.toString().equals(element) ||
+                    Trigger.TriggerState.PAUSED.toString().equals(element)) {
+                if (state.toString().equals(element)) {
+                    return true;
+                }
+            } else if (state == Trigger.TriggerState.NORMAL || state == Trigger.TriggerState.COMPLETE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long getEndTimeInMillis(Trigger trigger) {
+        return trigger.getEndTime() == null ? 0 : trigger.getEndTime().getTime();
+    }
+
     private List<List<Object>> executeQuery(String query, List<String> columns) throws SQLException {
         List<List<Object>> rows = new LinkedList<>();
 
@@ -333,7 +535,7 @@ public class MotechSchedulerDatabaseServiceImpl implements MotechSchedulerDataba
         return sb.toString();
     }
 
-    private String buildJobsBasicInfoSqlQuery(JobsSearchSettings jobsSearchSettings) {
+    private String buildJobsBasicInfoSqlQuery(JobsSearchSettings jobsSearchSettings, int offset, Integer limit) {
         StringBuilder sb = new StringBuilder("SELECT * FROM ");
         sb = sb.append(getCorrectNameRepresentation(sqlProperties.get("org.quartz.jobStore.tablePrefix").toString() + TRIGGERS));
         sb = sb.append(buildWhereCondition(jobsSearchSettings));
@@ -341,9 +543,8 @@ public class MotechSchedulerDatabaseServiceImpl implements MotechSchedulerDataba
             sb = sb.append(" ORDER BY ").append(getCorrectNameRepresentation(getSortColumn(jobsSearchSettings.getSortColumn())))
                     .append(" ").append(jobsSearchSettings.getSortDirection().toUpperCase());
         }
-        if (jobsSearchSettings.getRows() != null && jobsSearchSettings.getPage() != null) {
-            int offset = (jobsSearchSettings.getPage() == 0) ? 0 : (jobsSearchSettings.getPage() - 1) * jobsSearchSettings.getRows();
-            sb = sb.append(" LIMIT ").append(jobsSearchSettings.getRows()).append(" OFFSET ").append(offset);
+        if (limit != null) {
+            sb = sb.append(" LIMIT ").append(limit).append(" OFFSET ").append(offset);
         }
 
         return sb.toString();
@@ -454,8 +655,7 @@ public class MotechSchedulerDatabaseServiceImpl implements MotechSchedulerDataba
         }
     }
 
-    private String getJobStatus(TriggerKey triggerKey) throws SchedulerException {
-        Trigger.TriggerState currentTriggerState = scheduler.getTriggerState(triggerKey);
+    private String getJobStatus(Trigger.TriggerState currentTriggerState) {
         if (currentTriggerState == Trigger.TriggerState.ERROR) {
             return JobBasicInfo.STATUS_ERROR;
         } else if (currentTriggerState == Trigger.TriggerState.BLOCKED) {
@@ -466,4 +666,94 @@ public class MotechSchedulerDatabaseServiceImpl implements MotechSchedulerDataba
             return JobBasicInfo.STATUS_OK;
         }
     }
+
+    /**
+     * Orders jobs by the column used for sorting the SQL query.
+     */
+    private static class JobEntryComparator implements Comparator<JobEntry> {
+
+        private final String sortColumn;
+
+        JobEntryComparator(String sortColumn) {
+            this.sortColumn = sortColumn;
+        }
+
+        @Override
+        public int compare(JobEntry one, JobEntry two) {
+            if (START_TIME.equals(sortColumn)) {
+                return Long.compare(one.getStartTime(), two.getStartTime());
+            } else if (END_TIME.equals(sortColumn)) {
+                return Long.compare(one.getEndTime(), two.getEndTime());
+            } else if (TRIGGER_STATE.equals(sortColumn)) {
+                return one.getState().compareTo(two.getState());
+            } else if (TRIGGER_TYPE.equals(sortColumn)) {
+                return one.getType().compareTo(two.getType());
+            } else {
+                return one.getName().compareTo(two.getName());
+            }
+        }
+    }
+
+    /**
+     * A job listed from either the database or the memory tier, along with the values it can be sorted by. The
+     * trigger of a job coming from the database is loaded only when it is needed.
+     */
+    private static class JobEntry {
+
+        private final JobKey jobKey;
+        private final Scheduler source;
+        private Trigger trigger;
+        private final String name;
+        private final long startTime;
+        private final long endTime;
+        private final String state;
+        private final String type;
+
+        JobEntry(JobKey jobKey, Scheduler source, Trigger trigger, // NO CHECKSTYLE More than 7 parameters (found 8).
+                 String name, long startTime, long endTime, String state, String type) {
+            this.jobKey = jobKey;
+            this.source = source;
+            this.trigger = trigger;
+            this.name = name;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.state = state;
+            this.type = type;
+        }
+
+        JobKey getJobKey() {
+            return jobKey;
+        }
+
+        Scheduler getSource() {
+            return source;
+        }
+
+        Trigger getTrigger() throws SchedulerException {
+            if (trigger == null) {
+                trigger = source.getTriggersOfJob(jobKey).get(0);
+            }
+            return trigger;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getStartTime() {
+            return startTime;
+        }
+
+        long getEndTime() {
+            return endTime;
+        }
+
+        String getState() {
+            return state;
+        }
+
+        String getType() {
+            return type;
+        }
+    }
 }
@@ -22,12 +22,14 @@ import org.motechproject.scheduler.exception.MotechSchedulerException;
 import org.motechproject.scheduler.factory.MotechSchedulerFactoryBean;
 import org.motechproject.scheduler.service.MotechSchedulerService;
 import org.motechproject.scheduler.trigger.PeriodIntervalScheduleBuilder;
+import org.motechproject.scheduler.trigger.PeriodIntervalTriggerImpl;
 import org.motechproject.server.config.SettingsFacade;
 import org.quartz.CalendarIntervalScheduleBuilder;
 import org.quartz.CronScheduleBuilder;
 import org.quartz.CronTrigger;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
+import org.quartz.ObjectAlreadyExistsException;
 import org.quartz.ScheduleBuilder;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
@@ -78,15 +80,23 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
 
     private Scheduler scheduler;
 
+    private RunOnceJobMemoryTier memoryTier;
+
     private Map<String, Integer> cronTriggerMisfirePolicies;
     private Map<String, Integer> simpleTriggerMisfirePolicies;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MotechSchedulerServiceImpl.class);
 
-    @Autowired
     public MotechSchedulerServiceImpl(MotechSchedulerFactoryBean motechSchedulerFactoryBean, SettingsFacade schedulerSettings) {
+        this(motechSchedulerFactoryBean, schedulerSettings, null);
+    }
+
+    @Autowired
+    public MotechSchedulerServiceImpl(MotechSchedulerFactoryBean motechSchedulerFactoryBean, SettingsFacade schedulerSettings,
+                                      RunOnceJobMemoryTier memoryTier) {
         this.schedulerSettings = schedulerSettings;
         this.scheduler = motechSchedulerFactoryBean.getQuartzScheduler();
+        this.memoryTier = memoryTier;
         constructMisfirePoliciesMaps();
     }
 
@@ -401,12 +411,12 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
 
         if (schedulableJob.isIgnorePastFiresAtStart() && newDateTime(jobStartTime).isBefore(now)) {
 
-            List<Date> pastTriggers = TriggerUtils.computeFireTimesBetween((OperableTrigger) trigger, null, jobStartTime, now.toDate());
+            long pastTriggers = countFireTimesBetween((OperableTrigger) trigger, jobStartTime, now.toDate());
 
-            if (pastTriggers.size() > 0) {
+            if (pastTriggers > 0) {
                 if (scheduleBuilder instanceof SimpleScheduleBuilder && ((RepeatingSchedulableJob) schedulableJob).getRepeatCount() != null) {
                     ((SimpleScheduleBuilder) scheduleBuilder)
-                            .withRepeatCount(((RepeatingSchedulableJob) schedulableJob).getRepeatCount() - pastTriggers.size());
+                            .withRepeatCount(((RepeatingSchedulableJob) schedulableJob).getRepeatCount() - (int) pastTriggers);
                 }
                 Date newStartTime = getFirstTriggerInFuture(trigger, now);
                 trigger = newTrigger()
@@ -509,7 +519,34 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
                 .startAt(jobStartDate)
                 .build();
 
-        scheduleJob(jobDetail, trigger);
+        if (isMemoryTierEnabled()) {
+            scheduleRunOnceJob(jobDetail, trigger);
+        } else {
+            scheduleJob(jobDetail, trigger);
+        }
+    }
+
+    private void scheduleRunOnceJob(JobDetail jobDetail, Trigger trigger) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Scheduling run once job:" + jobDetail);
+        }
+        try {
+            // a job must not exist in both tiers at once, so we check the other one before scheduling
+            if (memoryTier.accepts(trigger.getStartTime())) {
+                if (scheduler.checkExists(trigger.getKey())) {
+                    throw new ObjectAlreadyExistsException(trigger);
+                }
+                memoryTier.scheduleJob(jobDetail, trigger);
+            } else {
+                if (memoryTier.getTrigger(trigger.getKey().getName()) != null) {
+                    throw new ObjectAlreadyExistsException(trigger);
+                }
+                scheduler.scheduleJob(jobDetail, trigger);
+            }
+        } catch (SchedulerException e) {
+            throw new MotechSchedulerException(String.format("Can not schedule the job:\n %s\n%s\n%s",
+                    jobDetail.toString(), trigger.toString(), e.getMessage()), e);
+        }
     }
 
     private MotechEvent assertArgumentNotNull(SchedulableJob schedulableJob) {
@@ -629,7 +666,7 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
     public DateTime getPreviousFireDate(JobId jobId) {
         Date previousFireTime = null;
         try {
-            Trigger trigger = scheduler.getTrigger(triggerKey(jobId.value(), JOB_GROUP_NAME));
+            Trigger trigger = getTrigger(jobId.value());
             if (trigger != null) {
                 previousFireTime = trigger.getPreviousFireTime();
             }
@@ -644,7 +681,7 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
     public DateTime getNextFireDate(JobId jobId) {
         Date nextFireTime = null;
         try {
-            Trigger trigger = scheduler.getTrigger(triggerKey(jobId.value(), JOB_GROUP_NAME));
+            Trigger trigger = getTrigger(jobId.value());
             if (trigger != null) {
                 nextFireTime = trigger.getNextFireTime();
             }
@@ -661,7 +698,9 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
         }
         try {
             assertArgumentNotNull("ScheduledJobID", jobId);
-            scheduler.unscheduleJob(triggerKey(jobId, JOB_GROUP_NAME));
+            if (!isMemoryTierEnabled() || !memoryTier.unscheduleJob(jobId)) {
+                scheduler.unscheduleJob(triggerKey(jobId, JOB_GROUP_NAME));
+            }
         } catch (SchedulerException e) {
             throw new MotechSchedulerException(String.format("Can not unschedule the job: %s %s",
                     jobId, e.getMessage()), e);
@@ -674,7 +713,9 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
         }
         try {
             assertArgumentNotNull("ScheduledJobID", jobId);
-            scheduler.unscheduleJob(triggerKey(jobId, JOB_GROUP_NAME));
+            if (!isMemoryTierEnabled() || !memoryTier.unscheduleJob(jobId)) {
+                scheduler.unscheduleJob(triggerKey(jobId, JOB_GROUP_NAME));
+            }
         } catch (SchedulerException e) {
             LOGGER.error("Unable to unschedule job with ID {}", jobId, e);
         }
@@ -686,8 +727,7 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug(format("Safe unscheduling the Jobs given jobIdPrefix: %s", jobIdPrefix));
             }
-            List<TriggerKey> triggerKeys = new ArrayList<>(scheduler.getTriggerKeys(GroupMatcher.triggerGroupContains(JOB_GROUP_NAME)));
-            List<String> triggerNames = extractTriggerNames(triggerKeys);
+            List<String> triggerNames = getAllTriggerNames();
             for (String triggerName : triggerNames) {
                 if (StringUtils.isNotEmpty(jobIdPrefix) && triggerName.contains(jobIdPrefix)) {
                     safeUnscheduleJob(triggerName);
@@ -704,8 +744,7 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Unscheduling jobs with prefix: ", jobIdPrefix);
             }
-            List<TriggerKey> triggerKeys = new ArrayList<>(scheduler.getTriggerKeys(GroupMatcher.triggerGroupContains(JOB_GROUP_NAME)));
-            List<String> triggerNames = extractTriggerNames(triggerKeys);
+            List<String> triggerNames = getAllTriggerNames();
             for (String triggerName : triggerNames) {
                 if (StringUtils.isNotEmpty(jobIdPrefix) && triggerName.contains(jobIdPrefix)) {
                     unscheduleJob(triggerName);
@@ -727,9 +766,8 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
         JobId jobId = new CronJobId(subject, externalJobId);
         Trigger trigger;
         try {
-            trigger = scheduler.getTrigger(triggerKey(jobId.value(), JOB_GROUP_NAME));
-            return TriggerUtils.computeFireTimesBetween(
-                    (OperableTrigger) trigger, new BaseCalendar(), startDate, endDate);
+            trigger = getTrigger(jobId.value());
+            return computeFireTimesBetween((OperableTrigger) trigger, new BaseCalendar(), startDate, endDate);
 
         } catch (SchedulerException e) {
             throw new MotechSchedulerException(String.format(
@@ -749,13 +787,10 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
         JobId jobId = new CronJobId(subject, externalJobIdPrefix);
         List<Date> messageTimings = new ArrayList<>();
         try {
-            List<TriggerKey> triggerKeys = new ArrayList<TriggerKey>(
-                    scheduler.getTriggerKeys(GroupMatcher.triggerGroupContains(JOB_GROUP_NAME)));
-            for (TriggerKey triggerKey : triggerKeys) {
-                if (StringUtils.isNotEmpty(externalJobIdPrefix) && triggerKey.getName().contains(jobId.value())) {
-                    Trigger trigger = scheduler.getTrigger(triggerKey);
-                    messageTimings.addAll(TriggerUtils.computeFireTimesBetween(
-                            (OperableTrigger) trigger, new BaseCalendar(), startDate, endDate));
+            for (String triggerName : getAllTriggerNames()) {
+                if (StringUtils.isNotEmpty(externalJobIdPrefix) && triggerName.contains(jobId.value())) {
+                    Trigger trigger = getTrigger(triggerName);
+                    messageTimings.addAll(computeFireTimesBetween((OperableTrigger) trigger, new BaseCalendar(), startDate, endDate));
                 }
             }
 
@@ -768,6 +803,20 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
         return messageTimings;
     }
 
+    private List<Date> computeFireTimesBetween(OperableTrigger trigger, org.quartz.Calendar calendar, Date from, Date to) {
+        if (trigger instanceof PeriodIntervalTriggerImpl) {
+            return ((PeriodIntervalTriggerImpl) trigger).computeFireTimesBetween(calendar, from, to);
+        }
+        return TriggerUtils.computeFireTimesBetween(trigger, calendar, from, to);
+    }
+
+    private long countFireTimesBetween(OperableTrigger trigger, Date from, Date to) {
+        if (trigger instanceof PeriodIntervalTriggerImpl) {
+            return ((PeriodIntervalTriggerImpl) trigger).countFireTimesBetween(from, to);
+        }
+        return TriggerUtils.computeFireTimesBetween(trigger, null, from, to).size();
+    }
+
     private void scheduleJob(JobDetail jobDetail, Trigger trigger) {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Scheduling job:" + jobDetail);
@@ -793,6 +842,23 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
         return names;
     }
 
+    private List<String> getAllTriggerNames() throws SchedulerException {
+        List<TriggerKey> triggerKeys = new ArrayList<>(scheduler.getTriggerKeys(GroupMatcher.triggerGroupContains(JOB_GROUP_NAME)));
+        if (isMemoryTierEnabled()) {
+            triggerKeys.addAll(memoryTier.getTriggerKeys());
+        }
+        return extractTriggerNames(triggerKeys);
+    }
+
+    private Trigger getTrigger(String jobId) throws SchedulerException {
+        Trigger trigger = isMemoryTierEnabled() ? memoryTier.getTrigger(jobId) : null;
+        return trigger != null ? trigger : scheduler.getTrigger(triggerKey(jobId, JOB_GROUP_NAME));
+    }
+
+    private boolean isMemoryTierEnabled() {
+        return memoryTier != null && memoryTier.isEnabled();
+    }
+
     /**
      * Asserts that given object is not null.
      *
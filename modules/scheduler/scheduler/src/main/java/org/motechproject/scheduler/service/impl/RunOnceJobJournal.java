@@ -0,0 +1,431 @@
+package org.motechproject.scheduler.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only journal of the run once jobs kept in the in-memory tier of the scheduler. Every scheduled job is written
+ * down together with its start date and job data, and every job that was fired or unscheduled is marked as removed,
+ * so that the jobs which were pending when the server went down can be rescheduled on the next start. The journal is
+ * compacted when it is opened and whenever removed entries start to outnumber the pending ones. Entries whose job data
+ * can no longer be read, for example because the module that defined its classes was removed, are skipped.
+ * <p>
+ * Every entry is flushed to the operating system as soon as it is written, so a crash of the server loses nothing.
+ * Syncing the entries to the disk is grouped: it happens at most the given sync interval after an entry was written,
+ * or as soon as a thousand entries are waiting for it. A crash of the operating system or a power
+ * failure can therefore lose the entries written within the last sync interval. A sync interval of
+ * {@value #SYNC_EVERY_RECORD} syncs every entry before the call writing it returns.
+ */
+public class RunOnceJobJournal implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RunOnceJobJournal.class);
+
+    private static final byte SCHEDULED = 'S';
+    private static final byte REMOVED = 'R';
+    private static final int MIN_RECORDS_TO_COMPACT = 10000;
+    private static final int MAX_UNSYNCED_RECORDS = 1000;
+
+    /**
+     * The sync interval which makes the journal sync every entry to the disk right away.
+     */
+    public static final long SYNC_EVERY_RECORD = 0;
+
+    private final File file;
+    private final ClassLoader classLoader;
+    private final long syncInterval;
+    private final Map<String, Entry> pendingEntries = new LinkedHashMap<>();
+
+    private FileOutputStream fileOutputStream;
+    private DataOutputStream out;
+    private int recordCount;
+    private int unsyncedRecords;
+    private ScheduledExecutorService syncExecutor;
+
+    /**
+     * Constructor. The journal syncs every entry to the disk right away.
+     *
+     * @param file the file in which the journal is kept, it will be created if it does not exist
+     */
+    public RunOnceJobJournal(File file) {
+        this(file, RunOnceJobJournal.class.getClassLoader());
+    }
+
+    /**
+     * Constructor. The journal syncs every entry to the disk right away.
+     *
+     * @param file the file in which the journal is kept, it will be created if it does not exist
+     * @param classLoader the class loader used for reading the job data, the context class loader of the thread
+     *                    opening the journal is tried if a class cannot be found using it
+     */
+    public RunOnceJobJournal(File file, ClassLoader classLoader) {
+        this(file, classLoader, SYNC_EVERY_RECORD);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file the file in which the journal is kept, it will be created if it does not exist
+     * @param classLoader the class loader used for reading the job data, the context class loader of the thread
+     *                    opening the journal is tried if a class cannot be found using it
+     * @param syncInterval the maximum number of milliseconds for which written entries may wait for being synced
+     *                     to the disk, {@link #SYNC_EVERY_RECORD} syncs every entry right away
+     */
+    public RunOnceJobJournal(File file, ClassLoader classLoader, long syncInterval) {
+        this.file = file;
+        this.classLoader = classLoader;
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * Opens the journal, reading all entries written by the previous runs. Entries truncated by a crash and entries
+     * whose job data cannot be read are skipped. The journal is compacted right after being read.
+     *
+     * @return the entries of jobs that were scheduled, but neither fired nor unscheduled
+     * @throws IOException if the journal could not be read or written
+     */
+    public synchronized List<Entry> open() throws IOException {
+        pendingEntries.clear();
+
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                readEntries(in);
+            }
+        } else if (file.getParentFile() != null && !file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Unable to create the directory for the run once job journal: " + file.getParentFile());
+        }
+
+        compact();
+
+        if (syncInterval > SYNC_EVERY_RECORD && syncExecutor == null) {
+            syncExecutor = Executors.newSingleThreadScheduledExecutor(new SyncThreadFactory());
+        }
+
+        return new ArrayList<>(pendingEntries.values());
+    }
+
+    /**
+     * Writes down a newly scheduled job.
+     *
+     * @param jobId the id of the job
+     * @param startDate the date on which the job should fire
+     * @param jobData the data of the job, which will be passed along with the event
+     * @return the entry of the job with the same id which was pending before, null if there was no such job
+     * @throws IOException if the entry could not be written
+     */
+    public synchronized Entry recordScheduled(String jobId, Date startDate, Map<String, Object> jobData) throws IOException {
+        Entry entry = new Entry(jobId, startDate.getTime(), new HashMap<>(jobData));
+        byte[] data = serialize(entry.getJobData());
+
+        out.writeByte(SCHEDULED);
+        out.writeUTF(jobId);
+        out.writeLong(entry.getStartTime());
+        out.writeInt(data.length);
+        out.write(data);
+        written();
+
+        return pendingEntries.put(jobId, entry);
+    }
+
+    /**
+     * Reverts the last {@link #recordScheduled(String, Date, Map)} call for the given job, restoring the entry which
+     * was pending before it.
+     *
+     * @param jobId the id of the job
+     * @param previous the entry returned by the reverted call, null if there was no pending entry
+     * @throws IOException if the entry could not be written
+     */
+    public synchronized void revertScheduled(String jobId, Entry previous) throws IOException {
+        if (previous == null) {
+            recordRemoved(jobId);
+        } else {
+            recordScheduled(jobId, new Date(previous.getStartTime()), previous.getJobData());
+        }
+    }
+
+    /**
+     * Marks the job with the given id as removed, either because it was fired or because it was unscheduled.
+     *
+     * @param jobId the id of the job
+     * @throws IOException if the entry could not be written
+     */
+    public synchronized void recordRemoved(String jobId) throws IOException {
+        if (pendingEntries.remove(jobId) == null) {
+            return;
+        }
+
+        out.writeByte(REMOVED);
+        out.writeUTF(jobId);
+        written();
+
+        if (recordCount >= MIN_RECORDS_TO_COMPACT && recordCount > 2 * pendingEntries.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Returns the number of jobs which were scheduled, but neither fired nor unscheduled.
+     *
+     * @return the number of pending jobs
+     */
+    public synchronized int getPendingCount() {
+        return pendingEntries.size();
+    }
+
+    /**
+     * Syncs the entries waiting for it to the disk and closes the journal.
+     *
+     * @throws IOException if the entries could not be synced or the journal could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (syncExecutor != null) {
+            syncExecutor.shutdownNow();
+            syncExecutor = null;
+        }
+
+        closeOutput();
+    }
+
+    private void closeOutput() throws IOException {
+        if (out != null) {
+            out.flush();
+            syncWritten();
+            out.close();
+            out = null;
+            fileOutputStream = null;
+        }
+    }
+
+    private void readEntries(DataInputStream in) throws IOException {
+        try {
+            while (true) {
+                byte type = in.readByte();
+                String jobId = in.readUTF();
+
+                if (type == SCHEDULED) {
+                    readScheduled(in, jobId);
+                } else if (type == REMOVED) {
+                    pendingEntries.remove(jobId);
+                } else {
+                    LOGGER.warn("Corrupted entry found in the run once job journal {}, ignoring the rest of it", file);
+                    return;
+                }
+            }
+        } catch (EOFException | UTFDataFormatException | TruncatedEntryException e) {
+            // a crash in the middle of writing an entry leaves a truncated tail, which is dropped by the compaction
+            LOGGER.debug("Finished reading the run once job journal {}", file);
+        }
+    }
+
+    private void readScheduled(DataInputStream in, String jobId) throws IOException {
+        long startTime = in.readLong();
+        int length = in.readInt();
+
+        if (length < 0 || length > file.length()) {
+            throw new TruncatedEntryException();
+        }
+
+        byte[] data = new byte[length];
+        in.readFully(data);
+
+        try {
+            pendingEntries.put(jobId, new Entry(jobId, startTime, deserialize(data)));
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // the entry is complete, so the following entries can still be read
+            LOGGER.warn("Unable to read the data of the job {} from the run once job journal {}, the job is skipped",
+                    jobId, file, e);
+            pendingEntries.remove(jobId);
+        }
+    }
+
+    private void compact() throws IOException {
+        closeOutput();
+
+        File compacted = new File(file.getPath() + ".tmp");
+        try (FileOutputStream compactedFileOut = new FileOutputStream(compacted);
+             DataOutputStream compactedOut = new DataOutputStream(new BufferedOutputStream(compactedFileOut))) {
+            for (Entry entry : pendingEntries.values()) {
+                byte[] data = serialize(entry.getJobData());
+                compactedOut.writeByte(SCHEDULED);
+                compactedOut.writeUTF(entry.getJobId());
+                compactedOut.writeLong(entry.getStartTime());
+                compactedOut.writeInt(data.length);
+                compactedOut.write(data);
+            }
+            // the compacted journal replaces the synced one, so it has to be on the disk before the move
+            compactedOut.flush();
+            compactedFileOut.getFD().sync();
+        }
+        Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        fileOutputStream = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+        recordCount = pendingEntries.size();
+    }
+
+    private void written() throws IOException {
+        out.flush();
+        recordCount++;
+        unsyncedRecords++;
+
+        if (syncExecutor == null || unsyncedRecords >= MAX_UNSYNCED_RECORDS) {
+            syncWritten();
+        } else if (unsyncedRecords == 1) {
+            // the first entry waiting for a sync schedules it, the following ones are synced along with it
+            scheduleSync();
+        }
+    }
+
+    private void scheduleSync() {
+        syncExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                syncScheduled();
+            }
+        }, syncInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void syncScheduled() {
+        if (out == null) {
+            return;
+        }
+
+        try {
+            syncWritten();
+        } catch (IOException e) {
+            LOGGER.error("Unable to sync the run once job journal {}, the sync will be retried", file, e);
+            scheduleSync();
+        }
+    }
+
+    private void syncWritten() throws IOException {
+        if (unsyncedRecords > 0) {
+            fileOutputStream.getFD().sync();
+            unsyncedRecords = 0;
+        }
+    }
+
+    private byte[] serialize(Map<String, Object> jobData) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+            objectOut.writeObject(new HashMap<>(jobData));
+        }
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> deserialize(byte[] data) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream objectIn = new JobDataInputStream(new ByteArrayInputStream(data), classLoader)) {
+            return (Map<String, Object>) objectIn.readObject();
+        }
+    }
+
+    /**
+     * Resolves the classes of job data using the given class loader and the context class loader of the current
+     * thread, since the classes of the job data usually come from other bundles than this one.
+     */
+    private static class JobDataInputStream extends ObjectInputStream {
+
+        private final ClassLoader classLoader;
+
+        JobDataInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+            for (ClassLoader loader : new ClassLoader[] {classLoader, contextClassLoader}) {
+                if (loader != null) {
+                    try {
+                        return Class.forName(desc.getName(), false, loader);
+                    } catch (ClassNotFoundException e) {
+                        LOGGER.trace("Class {} not found using {}", desc.getName(), loader, e);
+                    }
+                }
+            }
+
+            return super.resolveClass(desc);
+        }
+    }
+
+    /**
+     * Creates the daemon thread which syncs the journal, so that it never keeps the server from shutting down.
+     */
+    private static class SyncThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "scheduler-runonce-journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Thrown when the length of an entry exceeds the journal, which happens only for a truncated tail.
+     */
+    private static class TruncatedEntryException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * A run once job written down in the journal.
+     */
+    public static class Entry {
+
+        private final String jobId;
+        private final long startTime;
+        private final Map<String, Object> jobData;
+
+        public Entry(String jobId, long startTime, Map<String, Object> jobData) {
+            this.jobId = jobId;
+            this.startTime = startTime;
+            this.jobData = jobData;
+        }
+
+        public String getJobId() {
+            return jobId;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public Map<String, Object> getJobData() {
+            return Collections.unmodifiableMap(jobData);
+        }
+    }
+}
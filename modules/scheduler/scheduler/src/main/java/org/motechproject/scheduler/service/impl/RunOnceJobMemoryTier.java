@@ -0,0 +1,322 @@
+package org.motechproject.scheduler.service.impl;
+
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.commons.date.util.DateUtil;
+import org.motechproject.scheduler.exception.SchedulerInstantiationException;
+import org.motechproject.scheduler.exception.SchedulerShutdownException;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.TriggerKey;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.listeners.JobListenerSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import static org.quartz.JobBuilder.newJob;
+import static org.quartz.SimpleScheduleBuilder.simpleSchedule;
+import static org.quartz.TriggerBuilder.newTrigger;
+import static org.quartz.TriggerKey.triggerKey;
+
+/**
+ * The in-memory tier of the scheduler, used for short-lived run once jobs, such as retries and timeouts. Run once jobs
+ * which are due within the configured horizon are kept in a Quartz scheduler backed by a {@code RAMJobStore} instead
+ * of the database tables, which saves the inserts and deletes done by the JDBC job store for every such job. In order
+ * to survive restarts, the jobs are also written down in a {@link RunOnceJobJournal}, from which they are rescheduled
+ * when the module starts. The tier is disabled unless the horizon is set to a positive number of seconds, and it is
+ * never enabled for a clustered job store, since the jobs kept in memory are visible only to the node that holds them.
+ */
+@Component("runOnceJobMemoryTier")
+public class RunOnceJobMemoryTier {
+
+    public static final String HORIZON_PROPERTY = "scheduler.runOnce.memoryTier.horizonSeconds";
+    public static final String JOURNAL_PROPERTY = "scheduler.runOnce.memoryTier.journal";
+    public static final String JOURNAL_SYNC_PROPERTY = "scheduler.runOnce.memoryTier.journal.syncMillis";
+    public static final String THREAD_COUNT_PROPERTY = "scheduler.runOnce.memoryTier.threadCount";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RunOnceJobMemoryTier.class);
+
+    private static final String DEFAULT_JOURNAL = System.getProperty("user.home") + "/.motech/scheduler/runonce.journal";
+    private static final String DEFAULT_JOURNAL_SYNC = "100";
+    private static final String DEFAULT_THREAD_COUNT = "3";
+    private static final String MISFIRE_THRESHOLD = "org.quartz.jobStore.misfireThreshold";
+    private static final String IS_CLUSTERED = "org.quartz.jobStore.isClustered";
+    private static final int MILLISECOND = 1000;
+
+    private ApplicationContext applicationContext;
+
+    private Properties schedulerProperties;
+
+    private SchedulerFactoryBean schedulerFactoryBean;
+
+    private RunOnceJobJournal journal;
+
+    private long horizonInMillis;
+
+    /**
+     * Constructor.
+     *
+     * @param applicationContext the Spring context of the Scheduler module, not null
+     * @param schedulerProperties the properties of scheduler, not null
+     */
+    @Autowired
+    public RunOnceJobMemoryTier(ApplicationContext applicationContext, @Qualifier("sqlProperties") Properties schedulerProperties) {
+        this.applicationContext = applicationContext;
+        this.schedulerProperties = schedulerProperties;
+    }
+
+    /**
+     * Starts the in-memory scheduler and reschedules the jobs left in the journal, if the tier is enabled.
+     */
+    @PostConstruct
+    public void init() {
+        String horizon = schedulerProperties.getProperty(HORIZON_PROPERTY);
+        horizonInMillis = StringUtils.isNotBlank(horizon) ? Long.parseLong(horizon.trim()) * MILLISECOND : 0;
+
+        if (isEnabled() && Boolean.parseBoolean(StringUtils.trim(schedulerProperties.getProperty(IS_CLUSTERED)))) {
+            // jobs kept in memory would be invisible to the other nodes, which could neither find nor unschedule them
+            LOGGER.warn("The in-memory tier for run once jobs can not be used with a clustered job store, " +
+                    "all run once jobs will be stored in the database");
+            horizonInMillis = 0;
+        }
+
+        if (!isEnabled()) {
+            return;
+        }
+
+        schedulerFactoryBean = new SchedulerFactoryBean();
+        schedulerFactoryBean.setQuartzProperties(buildQuartzProperties());
+        schedulerFactoryBean.setApplicationContextSchedulerContextKey("applicationContext");
+        schedulerFactoryBean.setApplicationContext(applicationContext);
+        schedulerFactoryBean.setAutoStartup(false);
+
+        try {
+            schedulerFactoryBean.afterPropertiesSet();
+
+            Scheduler scheduler = getScheduler();
+            scheduler.getListenerManager().addJobListener(new JournalJobListener());
+
+            long syncInterval = Long.parseLong(
+                    schedulerProperties.getProperty(JOURNAL_SYNC_PROPERTY, DEFAULT_JOURNAL_SYNC).trim());
+            journal = new RunOnceJobJournal(new File(schedulerProperties.getProperty(JOURNAL_PROPERTY, DEFAULT_JOURNAL)),
+                    RunOnceJobMemoryTier.class.getClassLoader(), syncInterval);
+            rescheduleJournalEntries(scheduler, journal.open());
+
+            scheduler.start();
+        } catch (Exception e) {
+            throw new SchedulerInstantiationException("Failed to instantiate the in-memory scheduler for run once jobs", e);
+        }
+    }
+
+    /**
+     * Shuts down the in-memory scheduler and closes the journal.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        try {
+            schedulerFactoryBean.destroy();
+            journal.close();
+        } catch (SchedulerException | IOException e) {
+            throw new SchedulerShutdownException("Failed to shutdown the in-memory scheduler for run once jobs", e);
+        }
+    }
+
+    /**
+     * Checks whether the in-memory tier is enabled.
+     *
+     * @return true if run once jobs due within the horizon are kept in memory, false otherwise
+     */
+    public boolean isEnabled() {
+        return horizonInMillis > 0;
+    }
+
+    /**
+     * Checks whether a run once job with the given start date should be kept in memory.
+     *
+     * @param startDate the start date of the job
+     * @return true if the tier is enabled and the job is due within the horizon, false otherwise
+     */
+    public boolean accepts(Date startDate) {
+        return isEnabled() && startDate.getTime() - DateUtil.now().getMillis() < horizonInMillis;
+    }
+
+    /**
+     * Schedules the given run once job in memory, writing it down in the journal first. If the job can not be
+     * scheduled, the journal entry is reverted, so that the job is not brought back on the next startup.
+     *
+     * @param jobDetail the job to schedule
+     * @param trigger the run once trigger of the job
+     * @throws SchedulerException if the job could not be scheduled
+     */
+    public void scheduleJob(JobDetail jobDetail, Trigger trigger) throws SchedulerException {
+        String jobId = jobDetail.getKey().getName();
+        RunOnceJobJournal.Entry previous;
+
+        try {
+            previous = journal.recordScheduled(jobId, trigger.getStartTime(), jobDetail.getJobDataMap().getWrappedMap());
+        } catch (IOException e) {
+            throw new SchedulerException("Unable to write the job " + jobDetail.getKey() + " to the journal", e);
+        }
+
+        try {
+            getScheduler().scheduleJob(jobDetail, trigger);
+        } catch (SchedulerException | RuntimeException e) {
+            revertJournal(jobId, previous);
+            throw e;
+        }
+    }
+
+    /**
+     * Unschedules the job with the given id, if it is kept in memory.
+     *
+     * @param jobId the id of the job
+     * @return true if the job was found and unscheduled, false otherwise
+     * @throws SchedulerException if the job could not be unscheduled
+     */
+    public boolean unscheduleJob(String jobId) throws SchedulerException {
+        if (!isEnabled()) {
+            return false;
+        }
+
+        boolean unscheduled = getScheduler().unscheduleJob(triggerKey(jobId, MotechSchedulerServiceImpl.JOB_GROUP_NAME));
+        if (unscheduled) {
+            removeFromJournal(jobId);
+        }
+        return unscheduled;
+    }
+
+    /**
+     * Returns the trigger of the job with the given id, if it is kept in memory.
+     *
+     * @param jobId the id of the job
+     * @return the trigger of the job, null if there is no such job in memory
+     * @throws SchedulerException if the trigger could not be retrieved
+     */
+    public Trigger getTrigger(String jobId) throws SchedulerException {
+        return isEnabled() ? getScheduler().getTrigger(triggerKey(jobId, MotechSchedulerServiceImpl.JOB_GROUP_NAME)) : null;
+    }
+
+    /**
+     * Returns the keys of all triggers kept in memory.
+     *
+     * @return the list of trigger keys, empty if the tier is disabled
+     * @throws SchedulerException if the keys could not be retrieved
+     */
+    public List<TriggerKey> getTriggerKeys() throws SchedulerException {
+        if (!isEnabled()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(getScheduler().getTriggerKeys(GroupMatcher.triggerGroupContains(MotechSchedulerServiceImpl.JOB_GROUP_NAME)));
+    }
+
+    /**
+     * Returns the in-memory Quartz scheduler.
+     *
+     * @return the in-memory scheduler, null if the tier is disabled
+     */
+    public Scheduler getScheduler() {
+        return schedulerFactoryBean == null ? null : schedulerFactoryBean.getScheduler();
+    }
+
+    private Properties buildQuartzProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.scheduler.instanceName", "MotechMemoryScheduler");
+        properties.setProperty("org.quartz.threadPool.class", "org.quartz.simpl.SimpleThreadPool");
+        properties.setProperty("org.quartz.threadPool.threadCount",
+                schedulerProperties.getProperty(THREAD_COUNT_PROPERTY, DEFAULT_THREAD_COUNT));
+        properties.setProperty("org.quartz.jobStore.class", "org.quartz.simpl.RAMJobStore");
+        if (schedulerProperties.getProperty(MISFIRE_THRESHOLD) != null) {
+            properties.setProperty(MISFIRE_THRESHOLD, schedulerProperties.getProperty(MISFIRE_THRESHOLD));
+        }
+        return properties;
+    }
+
+    private JobDetail buildJobDetail(RunOnceJobJournal.Entry entry) {
+        JobDetail jobDetail = newJob(MotechScheduledJob.class)
+                .withIdentity(entry.getJobId(), MotechSchedulerServiceImpl.JOB_GROUP_NAME)
+                .build();
+        jobDetail.getJobDataMap().putAll(entry.getJobData());
+        return jobDetail;
+    }
+
+    private Trigger buildTrigger(RunOnceJobJournal.Entry entry) {
+        return newTrigger()
+                .withIdentity(triggerKey(entry.getJobId(), MotechSchedulerServiceImpl.JOB_GROUP_NAME))
+                .withSchedule(simpleSchedule()
+                        .withRepeatCount(0)
+                        .withIntervalInSeconds(0)
+                        .withMisfireHandlingInstructionFireNow())
+                .startAt(new Date(entry.getStartTime()))
+                .build();
+    }
+
+    private void rescheduleJournalEntries(Scheduler scheduler, List<RunOnceJobJournal.Entry> entries) {
+        int rescheduled = 0;
+
+        for (RunOnceJobJournal.Entry entry : entries) {
+            try {
+                scheduler.scheduleJob(buildJobDetail(entry), buildTrigger(entry));
+                rescheduled++;
+            } catch (SchedulerException e) {
+                // a single job must not prevent the scheduler from starting
+                LOGGER.error("Unable to reschedule the run once job {} from the journal", entry.getJobId(), e);
+                removeFromJournal(entry.getJobId());
+            }
+        }
+
+        LOGGER.info("Rescheduled {} of {} run once jobs from the journal", rescheduled, entries.size());
+    }
+
+    private void revertJournal(String jobId, RunOnceJobJournal.Entry previous) {
+        try {
+            journal.revertScheduled(jobId, previous);
+        } catch (IOException e) {
+            LOGGER.error("Unable to revert the journal entry of the run once job {}", jobId, e);
+        }
+    }
+
+    private void removeFromJournal(String jobId) {
+        try {
+            journal.recordRemoved(jobId);
+        } catch (IOException e) {
+            LOGGER.error("Unable to remove the job {} from the run once job journal", jobId, e);
+        }
+    }
+
+    /**
+     * Removes jobs from the journal once they have been executed.
+     */
+    private class JournalJobListener extends JobListenerSupport {
+
+        @Override
+        public String getName() {
+            return "runOnceJobJournalListener";
+        }
+
+        @Override
+        public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
+            removeFromJournal(context.getJobDetail().getKey().getName());
+        }
+    }
+}
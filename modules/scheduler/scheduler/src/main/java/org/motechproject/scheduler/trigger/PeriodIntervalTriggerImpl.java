@@ -1,17 +1,25 @@
 package org.motechproject.scheduler.trigger;
 
+import org.joda.time.Chronology;
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 import org.joda.time.Period;
+import org.joda.time.chrono.ISOChronology;
 import org.quartz.ScheduleBuilder;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
 import org.quartz.impl.triggers.AbstractTrigger;
 import org.quartz.impl.triggers.CoreTrigger;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 /**
- * Implementation of {@link org.motechproject.scheduler.trigger.PeriodIntervalTrigger}
+ * Implementation of {@link org.motechproject.scheduler.trigger.PeriodIntervalTrigger}. Each fire time is computed by
+ * adding the repeat period to the previous one. For periods of fixed length (no days, weeks, months or years) the
+ * n-th fire time is computed directly, so that resuming a trigger that was paused for a long time, or skipping
+ * a range excluded by a calendar, does not require stepping through every fire time in between.
  */
 public class PeriodIntervalTriggerImpl extends AbstractTrigger<PeriodIntervalTrigger> implements PeriodIntervalTrigger, CoreTrigger {
 
@@ -19,6 +27,9 @@ public class PeriodIntervalTriggerImpl extends AbstractTrigger<PeriodIntervalTri
 
     private static final int YEAR_TO_GIVEUP_SCHEDULING_AT = java.util.Calendar.getInstance().get(java.util.Calendar.YEAR) + 100;
 
+    private static final long GIVEUP_SCHEDULING_AT = new LocalDate(YEAR_TO_GIVEUP_SCHEDULING_AT + 1, 1, 1)
+            .toDateTimeAtStartOfDay().getMillis();
+
     private Date startTime;
 
     private Date endTime;
@@ -106,12 +117,7 @@ public class PeriodIntervalTriggerImpl extends AbstractTrigger<PeriodIntervalTri
         }
 
         if (instr == MISFIRE_INSTRUCTION_FIRE_ONCE_NOW) {
-            Date newFireTime = getFireTimeAfter(new Date());
-            while (newFireTime != null && cal != null
-                    && !cal.isTimeIncluded(newFireTime.getTime())) {
-                newFireTime = getFireTimeAfter(newFireTime);
-            }
-            setNextFireTime(newFireTime);
+            setNextFireTime(skipExcludedFireTimes(getFireTimeAfter(new Date()), cal));
         } else if (instr == MISFIRE_INSTRUCTION_DO_NOTHING) {
             setNextFireTime(new Date());
         }
@@ -127,24 +133,7 @@ public class PeriodIntervalTriggerImpl extends AbstractTrigger<PeriodIntervalTri
     public void triggered(org.quartz.Calendar calendar) {
         timesTriggered++;
         previousFireTime = nextFireTime;
-        nextFireTime = getFireTimeAfter(nextFireTime);
-
-        while (nextFireTime != null && calendar != null
-                && !calendar.isTimeIncluded(nextFireTime.getTime())) {
-
-            nextFireTime = getFireTimeAfter(nextFireTime);
-
-            if (nextFireTime == null) {
-                break;
-            }
-
-            //avoid infinite loop
-            java.util.Calendar c = java.util.Calendar.getInstance();
-            c.setTime(nextFireTime);
-            if (c.get(java.util.Calendar.YEAR) > YEAR_TO_GIVEUP_SCHEDULING_AT) {
-                nextFireTime = null;
-            }
-        }
+        nextFireTime = skipExcludedFireTimes(getFireTimeAfter(nextFireTime), calendar);
 
         if (nextFireTime == null) {
             complete = true;
@@ -160,27 +149,14 @@ public class PeriodIntervalTriggerImpl extends AbstractTrigger<PeriodIntervalTri
             return;
         }
 
-        Date now = new Date();
+        long now = System.currentTimeMillis();
         while (nextFireTime != null && !calendar.isTimeIncluded(nextFireTime.getTime())) {
 
-            nextFireTime = getFireTimeAfter(nextFireTime);
-
-            if (nextFireTime == null) {
-                break;
-            }
-
-            //avoid infinite loop
-            java.util.Calendar c = java.util.Calendar.getInstance();
-            c.setTime(nextFireTime);
-            if (c.get(java.util.Calendar.YEAR) > YEAR_TO_GIVEUP_SCHEDULING_AT) {
-                nextFireTime = null;
-            }
+            nextFireTime = skipExcludedFireTimes(nextFireTime, calendar);
 
-            if (nextFireTime != null && nextFireTime.before(now)) {
-                long diff = now.getTime() - nextFireTime.getTime();
-                if (diff >= misfireThreshold) {
-                    nextFireTime = getFireTimeAfter(nextFireTime);
-                }
+            if (nextFireTime != null && nextFireTime.getTime() < now
+                    && now - nextFireTime.getTime() >= misfireThreshold) {
+                nextFireTime = getFireTimeAfter(nextFireTime);
             }
         }
     }
@@ -199,24 +175,7 @@ public class PeriodIntervalTriggerImpl extends AbstractTrigger<PeriodIntervalTri
      */
     @Override
     public Date computeFirstFireTime(org.quartz.Calendar calendar) {
-        nextFireTime = getStartTime();
-
-        while (nextFireTime != null && calendar != null
-                && !calendar.isTimeIncluded(nextFireTime.getTime())) {
-
-            nextFireTime = getFireTimeAfter(nextFireTime);
-
-            if (nextFireTime == null) {
-                break;
-            }
-
-            //avoid infinite loop
-            java.util.Calendar c = java.util.Calendar.getInstance();
-            c.setTime(nextFireTime);
-            if (c.get(java.util.Calendar.YEAR) > YEAR_TO_GIVEUP_SCHEDULING_AT) {
-                return null;
-            }
-        }
+        nextFireTime = skipExcludedFireTimes(getStartTime(), calendar);
         return  nextFireTime;
     }
 
@@ -251,22 +210,110 @@ public class PeriodIntervalTriggerImpl extends AbstractTrigger<PeriodIntervalTri
 
     @Override
     public Date getFireTimeAfter(Date afterTime) {
+        return getNthFireTimeAfter(afterTime, 1);
+    }
+
+    /**
+     * Returns the n-th fire time following the given one, that is the given time with the repeat period added
+     * n times. Calendars are not taken into account.
+     *
+     * @param afterTime the fire time to count from, current time if null
+     * @param n the number of periods to add, must not be negative
+     * @return the n-th fire time after the given one, null if it falls after the end time or the trigger is complete
+     */
+    public Date getNthFireTimeAfter(Date afterTime, long n) {
         if (complete) {
             return null;
         }
 
-        DateTime fireTime;
-        if (afterTime == null) {
-            fireTime = new DateTime(new Date(System.currentTimeMillis())).plus(repeatPeriod);
-        } else {
-            fireTime = new DateTime(new Date(afterTime.getTime())).plus(repeatPeriod);
-        }
+        long fireTime = addPeriods(afterTime == null ? System.currentTimeMillis() : afterTime.getTime(), n);
 
-        if (endTime != null && endTime.before(fireTime.toDate())) {
+        return isAfterEndTime(fireTime) ? null : new Date(fireTime);
+    }
+
+    /**
+     * Returns the first time, not earlier than the given time, in the series of fire times which contains the given
+     * fire time. Calendars are not taken into account.
+     *
+     * @param fireTime the fire time from which the series is computed
+     * @param time the time from which the fire time should be looked for
+     * @return the first fire time not earlier than the given time, null if it falls after the end time or the
+     * trigger is complete
+     */
+    public Date getFireTimeAtOrAfter(Date fireTime, Date time) {
+        if (complete) {
             return null;
         }
 
-        return fireTime.toDate();
+        long result = getFireTimeAtOrAfter(fireTime.getTime(), time.getTime());
+
+        return isAfterEndTime(result) ? null : new Date(result);
+    }
+
+    /**
+     * Counts fire times between the given dates, counting from the next fire time of this trigger, or its start time
+     * if the trigger was not scheduled yet. Calendars are not taken into account.
+     *
+     * @param from the beginning of the range, inclusive
+     * @param to the end of the range, inclusive
+     * @return the number of fire times within the range
+     */
+    public long countFireTimesBetween(Date from, Date to) {
+        if (complete) {
+            return 0;
+        }
+
+        long first = getFireTimeAtOrAfter(nextFireTime == null ? getStartTime().getTime() : nextFireTime.getTime(),
+                from.getTime());
+        long last = (endTime == null) ? to.getTime() : Math.min(to.getTime(), endTime.getTime());
+
+        if (first > last) {
+            return 0;
+        }
+
+        long duration = getFixedPeriodMillis();
+        if (duration > 0) {
+            return (last - first) / duration + 1;
+        }
+
+        long count = 0;
+        for (long fireTime = first; fireTime <= last && fireTime < GIVEUP_SCHEDULING_AT; fireTime = addPeriods(fireTime, 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the fire times between the given dates, with the same results as
+     * {@link org.quartz.TriggerUtils#computeFireTimesBetween(org.quartz.spi.OperableTrigger, org.quartz.Calendar, Date, Date)}, but
+     * without stepping through the fire times that precede the range.
+     *
+     * @param calendar the calendar which excludes fire times, can be null
+     * @param from the beginning of the range, inclusive
+     * @param to the end of the range, inclusive
+     * @return the list of fire times within the range
+     */
+    public List<Date> computeFireTimesBetween(org.quartz.Calendar calendar, Date from, Date to) {
+        PeriodIntervalTriggerImpl trigger = (PeriodIntervalTriggerImpl) clone();
+        if (trigger.getNextFireTime() == null) {
+            trigger.setStartTime(from);
+            trigger.setEndTime(to);
+            trigger.computeFirstFireTime(calendar);
+        }
+
+        List<Date> fireTimes = new ArrayList<>();
+
+        Date fireTime = trigger.getNextFireTime();
+        if (fireTime != null && fireTime.before(from)) {
+            fireTime = trigger.skipExcludedFireTimes(trigger.getFireTimeAtOrAfter(fireTime, from), calendar);
+        }
+
+        while (fireTime != null && !fireTime.after(to)) {
+            fireTimes.add(fireTime);
+            fireTime = trigger.skipExcludedFireTimes(trigger.getFireTimeAfter(fireTime), calendar);
+        }
+
+        return fireTimes;
     }
 
     @Override
@@ -340,4 +387,81 @@ public class PeriodIntervalTriggerImpl extends AbstractTrigger<PeriodIntervalTri
     public boolean hasAdditionalProperties() {
         return false;
     }
+
+    /*
+     * Moves the given fire time forward until it is included by the calendar. Instead of checking every fire time,
+     * we ask the calendar for its next included time and jump straight to the first fire time after it.
+     */
+    private Date skipExcludedFireTimes(Date fireTime, org.quartz.Calendar calendar) {
+        if (fireTime == null || calendar == null) {
+            return fireTime;
+        }
+
+        long time = fireTime.getTime();
+        while (!calendar.isTimeIncluded(time)) {
+            long nextIncludedTime = Math.max(calendar.getNextIncludedTime(time), time + 1);
+            time = getFireTimeAtOrAfter(time, nextIncludedTime);
+
+            //avoid infinite loop
+            if (time >= GIVEUP_SCHEDULING_AT || isAfterEndTime(time)) {
+                return null;
+            }
+        }
+
+        return new Date(time);
+    }
+
+    private long getFireTimeAtOrAfter(long fireTime, long time) {
+        if (time <= fireTime) {
+            return fireTime;
+        }
+
+        long duration = getFixedPeriodMillis();
+        if (duration > 0) {
+            long periods = (time - fireTime + duration - 1) / duration;
+            return fireTime + periods * duration;
+        }
+
+        long result = fireTime;
+        while (result < time) {
+            long next = addPeriods(result, 1);
+            if (next <= result || next >= GIVEUP_SCHEDULING_AT) {
+                return GIVEUP_SCHEDULING_AT;
+            }
+            result = next;
+        }
+        return result;
+    }
+
+    private long addPeriods(long instant, long n) {
+        long duration = getFixedPeriodMillis();
+        if (duration > 0) {
+            return instant + n * duration;
+        }
+
+        // same as new DateTime(instant).plus(repeatPeriod), without creating the intermediate objects
+        Chronology chronology = ISOChronology.getInstance();
+        long result = instant;
+        for (long i = 0; i < n; i++) {
+            result = chronology.add(repeatPeriod, result, 1);
+        }
+        return result;
+    }
+
+    /*
+     * Periods made of hours, minutes, seconds and milliseconds only have a fixed length, so the n-th fire time can be
+     * computed directly. Adding days, weeks, months or years depends on the date and time zone, so for those 0 is
+     * returned and fire times are computed one period at a time.
+     */
+    private long getFixedPeriodMillis() {
+        if (repeatPeriod.getYears() != 0 || repeatPeriod.getMonths() != 0 || repeatPeriod.getWeeks() != 0
+                || repeatPeriod.getDays() != 0) {
+            return 0;
+        }
+        return repeatPeriod.toStandardDuration().getMillis();
+    }
+
+    private boolean isAfterEndTime(long time) {
+        return endTime != null && endTime.getTime() < time;
+    }
 }
@@ -0,0 +1,207 @@
+package org.motechproject.scheduler.service.impl;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.commons.sql.util.Drivers;
+import org.motechproject.scheduler.contract.JobBasicInfo;
+import org.motechproject.scheduler.contract.JobsSearchSettings;
+import org.motechproject.scheduler.factory.MotechSchedulerFactoryBean;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.Trigger;
+import org.quartz.TriggerKey;
+import org.quartz.utils.ConnectionProvider;
+import org.quartz.utils.DBConnectionManager;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.quartz.SimpleScheduleBuilder.simpleSchedule;
+import static org.quartz.TriggerBuilder.newTrigger;
+
+public class MotechSchedulerDatabaseServiceImplTest {
+
+    private static final String DATA_SOURCE = "testDS";
+    private static final String GROUP = "default";
+    private static final Pattern LIMIT = Pattern.compile("LIMIT (\\d+) OFFSET (\\d+)");
+
+    @InjectMocks
+    private MotechSchedulerDatabaseServiceImpl databaseService = new MotechSchedulerDatabaseServiceImpl();
+
+    @Spy
+    private Properties sqlProperties = new Properties();
+
+    @Mock
+    private MotechSchedulerFactoryBean motechSchedulerFactoryBean;
+
+    @Mock
+    private RunOnceJobMemoryTier memoryTier;
+
+    @Mock
+    private Scheduler scheduler;
+
+    @Mock
+    private Scheduler memoryScheduler;
+
+    @Mock
+    private ConnectionProvider connectionProvider;
+
+    private DateTime now = DateTime.now();
+
+    private List<Trigger> databaseTriggers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+
+        sqlProperties.setProperty("org.quartz.jobStore.dataSource", DATA_SOURCE);
+        sqlProperties.setProperty("org.quartz.jobStore.tablePrefix", "QRTZ_");
+        sqlProperties.setProperty("org.quartz.dataSource.motechDS.driver", Drivers.MYSQL_DRIVER);
+
+        when(motechSchedulerFactoryBean.getQuartzScheduler()).thenReturn(scheduler);
+        databaseService.init();
+
+        // database jobs start in 1, 3, 5, 7, 8 and 9 hours, memory tier jobs in 2, 4 and 6 hours
+        List<TriggerKey> memoryKeys = new ArrayList<>();
+        for (int hours = 1; hours < 10; ++hours) {
+            Trigger trigger = trigger("job" + hours + "-runonce", now.plusHours(hours));
+            if (hours % 2 == 0 && hours < 7) {
+                memoryKeys.add(trigger.getKey());
+                when(memoryScheduler.getTrigger(trigger.getKey())).thenReturn(trigger);
+            } else {
+                databaseTriggers.add(trigger);
+                doReturn(asList(trigger)).when(scheduler).getTriggersOfJob(trigger.getJobKey());
+            }
+        }
+
+        when(memoryTier.isEnabled()).thenReturn(true);
+        when(memoryTier.getScheduler()).thenReturn(memoryScheduler);
+        when(memoryTier.getTriggerKeys()).thenReturn(memoryKeys);
+        when(memoryScheduler.getTriggerState(any(TriggerKey.class))).thenReturn(Trigger.TriggerState.NORMAL);
+        when(scheduler.getTriggerState(any(TriggerKey.class))).thenReturn(Trigger.TriggerState.NORMAL);
+
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        when(connectionProvider.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenAnswer(new Answer<ResultSet>() {
+            @Override
+            public ResultSet answer(InvocationOnMock invocation) throws Exception {
+                return resultSet((String) invocation.getArguments()[0]);
+            }
+        });
+        DBConnectionManager.getInstance().addConnectionProvider(DATA_SOURCE, connectionProvider);
+    }
+
+    @Test
+    public void shouldPageThroughMemoryAndDatabaseJobsInOrder() throws Exception {
+        assertEquals(asList("job1-runonce", "job2-runonce", "job3-runonce"), getPage(1, 3, "asc"));
+        assertEquals(asList("job4-runonce", "job5-runonce", "job6-runonce"), getPage(2, 3, "asc"));
+        assertEquals(asList("job7-runonce", "job8-runonce", "job9-runonce"), getPage(3, 3, "asc"));
+        assertEquals(Collections.<String>emptyList(), getPage(4, 3, "asc"));
+    }
+
+    @Test
+    public void shouldPageThroughMemoryAndDatabaseJobsInDescendingOrder() throws Exception {
+        assertEquals(asList("job9-runonce", "job8-runonce", "job7-runonce", "job6-runonce"), getPage(1, 4, "desc"));
+        assertEquals(asList("job5-runonce", "job4-runonce", "job3-runonce", "job2-runonce"), getPage(2, 4, "desc"));
+        assertEquals(asList("job1-runonce"), getPage(3, 4, "desc"));
+    }
+
+    private List<String> getPage(int page, int rows, String sortDirection) throws Exception {
+        JobsSearchSettings settings = new JobsSearchSettings();
+        settings.setActivity(JobBasicInfo.ACTIVITY_NOTSTARTED + "," + JobBasicInfo.ACTIVITY_ACTIVE + "," +
+                JobBasicInfo.ACTIVITY_FINISHED);
+        settings.setStatus(JobBasicInfo.STATUS_OK + "," + JobBasicInfo.STATUS_BLOCKED + "," +
+                JobBasicInfo.STATUS_PAUSED + "," + JobBasicInfo.STATUS_ERROR);
+        settings.setSortColumn("startDate");
+        settings.setSortDirection(sortDirection);
+        settings.setPage(page);
+        settings.setRows(rows);
+
+        List<String> names = new ArrayList<>();
+        for (JobBasicInfo info : databaseService.getScheduledJobsBasicInfo(settings)) {
+            names.add(info.getName());
+        }
+        return names;
+    }
+
+    private Trigger trigger(String jobName, DateTime startTime) {
+        return newTrigger()
+                .withIdentity(jobName, GROUP)
+                .forJob(new JobKey(jobName, GROUP))
+                .startAt(startTime.toDate())
+                .withSchedule(simpleSchedule().withRepeatCount(0))
+                .build();
+    }
+
+    /*
+     * Serves the rows of the database triggers the way the SQL query would, ordered by the start time and cut with
+     * the limit and offset of the query.
+     */
+    private ResultSet resultSet(String query) throws Exception {
+        List<Trigger> triggers = new ArrayList<>(databaseTriggers);
+        if (query.endsWith("DESC") || query.contains("DESC LIMIT")) {
+            Collections.reverse(triggers);
+        }
+
+        Matcher matcher = LIMIT.matcher(query);
+        if (matcher.find()) {
+            int limit = Integer.parseInt(matcher.group(1));
+            int offset = Integer.parseInt(matcher.group(2));
+            triggers = triggers.subList(Math.min(offset, triggers.size()), Math.min(offset + limit, triggers.size()));
+        }
+
+        final List<Map<String, Object>> rows = new ArrayList<>();
+        for (Trigger trigger : triggers) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("TRIGGER_NAME", trigger.getKey().getName());
+            row.put("TRIGGER_GROUP", trigger.getKey().getGroup());
+            row.put("JOB_NAME", trigger.getJobKey().getName());
+            row.put("START_TIME", trigger.getStartTime().getTime());
+            row.put("END_TIME", 0L);
+            row.put("TRIGGER_STATE", "WAITING");
+            row.put("TRIGGER_TYPE", "SIMPLE");
+            rows.add(row);
+        }
+
+        final int[] current = {-1};
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                return ++current[0] < rows.size();
+            }
+        });
+        when(resultSet.getObject(anyString())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return rows.get(current[0]).get(invocation.getArguments()[0]);
+            }
+        });
+        return resultSet;
+    }
+}
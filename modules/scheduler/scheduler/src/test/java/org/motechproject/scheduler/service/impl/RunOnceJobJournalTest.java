@@ -0,0 +1,216 @@
+package org.motechproject.scheduler.service.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Serializable;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RunOnceJobJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldRestorePendingJobs() throws Exception {
+        File file = new File(folder.getRoot(), "journal/runonce.journal");
+
+        RunOnceJobJournal journal = new RunOnceJobJournal(file);
+        assertTrue(journal.open().isEmpty());
+
+        journal.recordScheduled("job1-runonce", new Date(1000), jobData("subject1"));
+        journal.recordScheduled("job2-runonce", new Date(2000), jobData("subject2"));
+        journal.recordScheduled("job3-runonce", new Date(3000), jobData("subject3"));
+        journal.recordRemoved("job2-runonce");
+        journal.close();
+
+        journal = new RunOnceJobJournal(file);
+        List<RunOnceJobJournal.Entry> entries = journal.open();
+        journal.close();
+
+        assertEquals(2, entries.size());
+        assertEquals("job1-runonce", entries.get(0).getJobId());
+        assertEquals(1000, entries.get(0).getStartTime());
+        assertEquals("subject1", entries.get(0).getJobData().get("eventType"));
+        assertEquals("job3-runonce", entries.get(1).getJobId());
+        assertEquals(3000, entries.get(1).getStartTime());
+    }
+
+    @Test
+    public void shouldIgnoreTruncatedEntries() throws Exception {
+        File file = folder.newFile("runonce.journal");
+
+        RunOnceJobJournal journal = new RunOnceJobJournal(file);
+        journal.open();
+        journal.recordScheduled("job1-runonce", new Date(1000), jobData("subject1"));
+        journal.close();
+
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] {'S', 0, 5, 'j'});
+        }
+
+        journal = new RunOnceJobJournal(file);
+        List<RunOnceJobJournal.Entry> entries = journal.open();
+
+        assertEquals(1, entries.size());
+        assertEquals(1, journal.getPendingCount());
+
+        journal.recordRemoved("job1-runonce");
+        assertEquals(0, journal.getPendingCount());
+        journal.close();
+    }
+
+    @Test
+    public void shouldIgnoreTruncatedEntryLength() throws Exception {
+        File file = folder.newFile("runonce.journal");
+
+        RunOnceJobJournal journal = new RunOnceJobJournal(file);
+        journal.open();
+        journal.recordScheduled("job1-runonce", new Date(1000), jobData("subject1"));
+        journal.close();
+
+        // the length of the job data was written, the data itself was not
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true))) {
+            out.writeByte('S');
+            out.writeUTF("job2-runonce");
+            out.writeLong(2000);
+            out.writeInt(Integer.MAX_VALUE);
+        }
+
+        journal = new RunOnceJobJournal(file);
+        List<RunOnceJobJournal.Entry> entries = journal.open();
+        journal.close();
+
+        assertEquals(1, entries.size());
+        assertEquals("job1-runonce", entries.get(0).getJobId());
+    }
+
+    @Test
+    public void shouldSkipEntriesWithUnreadableJobData() throws Exception {
+        File file = new File(folder.getRoot(), "runonce.journal");
+
+        RunOnceJobJournal journal = new RunOnceJobJournal(file);
+        journal.open();
+        journal.recordScheduled("job1-runonce", new Date(1000), jobData("subject1"));
+
+        Map<String, Object> removedModuleData = jobData("subject2");
+        removedModuleData.put("payload", new JobPayload("value"));
+        journal.recordScheduled("job2-runonce", new Date(2000), removedModuleData);
+
+        journal.recordScheduled("job3-runonce", new Date(3000), jobData("subject3"));
+        journal.close();
+
+        // a class loader which can not see the classes of the removed module
+        ClassLoader isolated = new URLClassLoader(new URL[0], null);
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(isolated);
+        List<RunOnceJobJournal.Entry> entries;
+        try {
+            journal = new RunOnceJobJournal(file, isolated);
+            entries = journal.open();
+            journal.close();
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+
+        assertEquals(2, entries.size());
+        assertEquals("job1-runonce", entries.get(0).getJobId());
+        assertEquals("job3-runonce", entries.get(1).getJobId());
+    }
+
+    @Test
+    public void shouldRevertScheduledEntry() throws Exception {
+        File file = new File(folder.getRoot(), "runonce.journal");
+
+        RunOnceJobJournal journal = new RunOnceJobJournal(file);
+        journal.open();
+
+        assertNull(journal.recordScheduled("job1-runonce", new Date(1000), jobData("subject1")));
+        RunOnceJobJournal.Entry previous = journal.recordScheduled("job1-runonce", new Date(2000),
+                jobData("subject2"));
+        journal.revertScheduled("job1-runonce", previous);
+
+        journal.recordScheduled("job2-runonce", new Date(3000), jobData("subject3"));
+        journal.revertScheduled("job2-runonce", null);
+        journal.close();
+
+        journal = new RunOnceJobJournal(file);
+        List<RunOnceJobJournal.Entry> entries = journal.open();
+        journal.close();
+
+        assertEquals(1, entries.size());
+        assertEquals(1000, entries.get(0).getStartTime());
+        assertEquals("subject1", entries.get(0).getJobData().get("eventType"));
+    }
+
+    @Test
+    public void shouldWriteEntriesBeforeTheyAreSynced() throws Exception {
+        File file = new File(folder.getRoot(), "runonce.journal");
+
+        RunOnceJobJournal journal = new RunOnceJobJournal(file, getClass().getClassLoader(), 60000);
+        journal.open();
+        journal.recordScheduled("job1-runonce", new Date(1000), jobData("subject1"));
+        journal.recordScheduled("job2-runonce", new Date(2000), jobData("subject2"));
+        journal.recordRemoved("job1-runonce");
+
+        // the entries waiting for the sync are already visible to a journal opened after a crash of the server
+        RunOnceJobJournal reopened = new RunOnceJobJournal(file);
+        List<RunOnceJobJournal.Entry> entries = reopened.open();
+        reopened.close();
+        journal.close();
+
+        assertEquals(1, entries.size());
+        assertEquals("job2-runonce", entries.get(0).getJobId());
+    }
+
+    @Test
+    public void shouldSyncWaitingEntriesOnClose() throws Exception {
+        File file = new File(folder.getRoot(), "runonce.journal");
+
+        RunOnceJobJournal journal = new RunOnceJobJournal(file, getClass().getClassLoader(), 60000);
+        journal.open();
+        journal.recordScheduled("job1-runonce", new Date(1000), jobData("subject1"));
+        journal.close();
+
+        journal = new RunOnceJobJournal(file, getClass().getClassLoader(), 60000);
+        List<RunOnceJobJournal.Entry> entries = journal.open();
+        journal.close();
+
+        assertEquals(1, entries.size());
+        assertEquals("job1-runonce", entries.get(0).getJobId());
+    }
+
+    private Map<String, Object> jobData(String subject) {
+        Map<String, Object> jobData = new HashMap<>();
+        jobData.put("eventType", subject);
+        jobData.put("JobID", "id");
+        return jobData;
+    }
+
+    private static class JobPayload implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String value;
+
+        JobPayload(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.motechproject.scheduler.service.impl;
+
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+public class RunOnceJobMemoryTierTest {
+
+    @Test
+    public void shouldNotEnableTierForClusteredJobStore() {
+        Properties properties = new Properties();
+        properties.setProperty(RunOnceJobMemoryTier.HORIZON_PROPERTY, "60");
+        properties.setProperty("org.quartz.jobStore.isClustered", "true");
+
+        RunOnceJobMemoryTier memoryTier = new RunOnceJobMemoryTier(mock(ApplicationContext.class), properties);
+        memoryTier.init();
+
+        assertFalse(memoryTier.isEnabled());
+        assertNull(memoryTier.getScheduler());
+    }
+}
@@ -0,0 +1,109 @@
+package org.motechproject.scheduler.trigger;
+
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+import org.junit.Test;
+import org.quartz.Calendar;
+import org.quartz.impl.calendar.WeeklyCalendar;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.quartz.TriggerBuilder.newTrigger;
+
+public class PeriodIntervalTriggerImplTest {
+
+    @Test
+    public void shouldComputeFireTimesBetweenForFixedPeriod() {
+        DateTime start = new DateTime(2010, 1, 1, 10, 0);
+        Period period = Period.hours(5).plusMinutes(3);
+
+        assertFireTimes(start, period, null, new DateTime(2014, 3, 1, 0, 0), new DateTime(2014, 3, 10, 0, 0));
+    }
+
+    @Test
+    public void shouldComputeFireTimesBetweenForMonthlyPeriod() {
+        DateTime start = new DateTime(2010, 1, 31, 10, 0);
+        Period period = Period.months(1);
+
+        assertFireTimes(start, period, null, new DateTime(2012, 2, 1, 0, 0), new DateTime(2013, 6, 1, 0, 0));
+    }
+
+    @Test
+    public void shouldSkipTimesExcludedByCalendar() {
+        DateTime start = new DateTime(2010, 1, 1, 10, 0);
+        Calendar calendar = new WeeklyCalendar();
+
+        assertFireTimes(start, Period.hours(7), calendar, new DateTime(2014, 3, 1, 0, 0), new DateTime(2014, 3, 20, 0, 0));
+        assertFireTimes(start, Period.days(1), calendar, new DateTime(2014, 3, 1, 0, 0), new DateTime(2014, 3, 20, 0, 0));
+    }
+
+    @Test
+    public void shouldCountFireTimesBetween() {
+        DateTime start = new DateTime(2010, 1, 1, 10, 0);
+        DateTime from = new DateTime(2013, 5, 1, 0, 0);
+        DateTime to = new DateTime(2013, 7, 1, 0, 0);
+
+        assertEquals(expectedFireTimes(start, Period.minutes(45), null, from, to).size(),
+                trigger(start, Period.minutes(45)).countFireTimesBetween(from.toDate(), to.toDate()));
+        assertEquals(expectedFireTimes(start, Period.weeks(1), null, from, to).size(),
+                trigger(start, Period.weeks(1)).countFireTimesBetween(from.toDate(), to.toDate()));
+    }
+
+    @Test
+    public void shouldComputeNthFireTime() {
+        DateTime start = new DateTime(2010, 1, 31, 10, 0);
+
+        for (Period period : new Period[] {Period.hours(3), Period.months(1)}) {
+            PeriodIntervalTriggerImpl trigger = trigger(start, period);
+
+            Date fireTime = start.toDate();
+            for (int i = 0; i < 100; i++) {
+                fireTime = trigger.getFireTimeAfter(fireTime);
+            }
+
+            assertEquals(fireTime, trigger.getNthFireTimeAfter(start.toDate(), 100));
+        }
+    }
+
+    @Test
+    public void shouldNotComputeFireTimesAfterEndTime() {
+        DateTime start = new DateTime(2010, 1, 1, 10, 0);
+        PeriodIntervalTriggerImpl trigger = trigger(start, Period.hours(1));
+        trigger.setEndTime(start.plusHours(10).toDate());
+
+        assertEquals(start.plusHours(10).toDate(), trigger.getNthFireTimeAfter(start.toDate(), 10));
+        assertNull(trigger.getNthFireTimeAfter(start.toDate(), 11));
+        assertNull(trigger.getFireTimeAtOrAfter(start.toDate(), start.plusHours(20).toDate()));
+        assertEquals(11, trigger.countFireTimesBetween(start.minusDays(1).toDate(), start.plusDays(1).toDate()));
+    }
+
+    private void assertFireTimes(DateTime start, Period period, Calendar calendar, DateTime from, DateTime to) {
+        PeriodIntervalTriggerImpl trigger = trigger(start, period);
+        trigger.computeFirstFireTime(calendar);
+
+        assertEquals(expectedFireTimes(start, period, calendar, from, to),
+                trigger.computeFireTimesBetween(calendar, from.toDate(), to.toDate()));
+    }
+
+    private List<Date> expectedFireTimes(DateTime start, Period period, Calendar calendar, DateTime from, DateTime to) {
+        List<Date> fireTimes = new ArrayList<>();
+        for (DateTime fireTime = start; !fireTime.isAfter(to); fireTime = fireTime.plus(period)) {
+            if (!fireTime.isBefore(from) && (calendar == null || calendar.isTimeIncluded(fireTime.getMillis()))) {
+                fireTimes.add(fireTime.toDate());
+            }
+        }
+        return fireTimes;
+    }
+
+    private PeriodIntervalTriggerImpl trigger(DateTime start, Period period) {
+        return (PeriodIntervalTriggerImpl) newTrigger()
+                .withIdentity("test-trigger")
+                .withSchedule(PeriodIntervalScheduleBuilder.periodIntervalSchedule().withRepeatPeriod(period))
+                .startAt(start.toDate())
+                .build();
+    }
+}
@@ -0,0 +1,65 @@
+package org.motechproject.scheduler.trigger;
+
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+import org.junit.Test;
+import org.motechproject.commons.api.NanoStopWatch;
+import org.quartz.Calendar;
+import org.quartz.TriggerUtils;
+import org.quartz.impl.calendar.BaseCalendar;
+import org.quartz.impl.calendar.WeeklyCalendar;
+
+import java.util.Date;
+import java.util.List;
+
+import static java.lang.String.format;
+import static org.junit.Assert.assertEquals;
+import static org.quartz.TriggerBuilder.newTrigger;
+
+/**
+ * Compares computing the fire times of a period trigger that was paused for a long time through
+ * {@link TriggerUtils}, which steps through every fire time since the last one, with
+ * {@link PeriodIntervalTriggerImpl#computeFireTimesBetween(Calendar, Date, Date)}.
+ */
+public class PeriodIntervalTriggerPerformanceAssessment {
+
+    private static final int RUNS = 20;
+
+    @Test
+    public void computeFireTimesOfPausedTrigger() {
+        DateTime start = new DateTime(2005, 1, 1, 10, 0);
+        DateTime from = new DateTime(2015, 1, 1, 0, 0);
+        DateTime to = from.plusDays(1);
+
+        assess("1 minute period", start, Period.minutes(1), new BaseCalendar(), from, to);
+        assess("1 minute period, weekends excluded", start, Period.minutes(1), new WeeklyCalendar(), from, to);
+        assess("1 day period", start, Period.days(1), new BaseCalendar(), from, to.plusMonths(1));
+    }
+
+    private void assess(String name, DateTime start, Period period, Calendar calendar, DateTime from, DateTime to) {
+        PeriodIntervalTriggerImpl trigger = (PeriodIntervalTriggerImpl) newTrigger()
+                .withIdentity("test-trigger")
+                .withSchedule(PeriodIntervalScheduleBuilder.periodIntervalSchedule().withRepeatPeriod(period))
+                .startAt(start.toDate())
+                .build();
+        trigger.computeFirstFireTime(calendar);
+
+        List<Date> expected = null;
+        NanoStopWatch stepping = new NanoStopWatch().start();
+        for (int i = 0; i < RUNS; i++) {
+            expected = TriggerUtils.computeFireTimesBetween(trigger, calendar, from.toDate(), to.toDate());
+        }
+        long steppingTime = stepping.duration();
+
+        List<Date> actual = null;
+        NanoStopWatch direct = new NanoStopWatch().start();
+        for (int i = 0; i < RUNS; i++) {
+            actual = trigger.computeFireTimesBetween(calendar, from.toDate(), to.toDate());
+        }
+        long directTime = direct.duration();
+
+        assertEquals(expected, actual);
+        System.out.println(format("%s: TriggerUtils %dms, computeFireTimesBetween %dms per %d runs",
+                name, steppingTime / 1000000L, directTime / 1000000L, RUNS));
+    }
+}
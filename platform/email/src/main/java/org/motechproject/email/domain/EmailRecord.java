@@ -5,6 +5,7 @@ import org.motechproject.email.constants.EmailRolesConstants;
 import org.motechproject.mds.annotations.Access;
 import org.motechproject.mds.annotations.Entity;
 import org.motechproject.mds.annotations.Field;
+import org.motechproject.mds.annotations.Indexed;
 import org.motechproject.mds.util.SecurityMode;
 
 import java.util.Objects;
@@ -35,6 +36,7 @@ public class EmailRecord {
     private String message;
 
     @Field(required = true)
+    @Indexed
     private DateTime deliveryTime;
 
     @Field(required = true)
@@ -0,0 +1,39 @@
+package org.motechproject.email.search;
+
+import org.motechproject.mds.query.Property;
+import org.motechproject.mds.query.QueryExecution;
+import org.motechproject.mds.query.QueryExecutor;
+import org.motechproject.mds.query.QueryUtil;
+import org.motechproject.mds.query.SetProperty;
+import org.motechproject.mds.util.InstanceSecurityRestriction;
+
+import javax.jdo.Query;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.motechproject.mds.util.Constants.Util.ID_FIELD_NAME;
+
+/**
+ * Email record execution deleting the records with the given ids with a single delete query, without loading
+ * them. The records are removed directly from the log, so no CRUD events are sent for them and they are not
+ * moved to the trash.
+ */
+public class DeleteByIdsExecution implements QueryExecution<Long> {
+
+    private final Set<Long> ids;
+
+    public DeleteByIdsExecution(Set<Long> ids) {
+        this.ids = ids;
+    }
+
+    @Override
+    public Long execute(Query query, InstanceSecurityRestriction restriction) {
+        List<Property> properties = new ArrayList<>(1);
+        properties.add(new SetProperty<>(ID_FIELD_NAME, ids, Long.class.getName()));
+
+        QueryUtil.useFilter(query, properties);
+
+        return QueryExecutor.executeDelete(query, properties);
+    }
+}
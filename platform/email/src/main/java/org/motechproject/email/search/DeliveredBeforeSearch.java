@@ -0,0 +1,40 @@
+package org.motechproject.email.search;
+
+import org.joda.time.DateTime;
+import org.motechproject.mds.query.QueryExecution;
+import org.motechproject.mds.util.InstanceSecurityRestriction;
+
+import javax.jdo.Query;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.motechproject.mds.util.Constants.Util.ID_FIELD_NAME;
+
+/**
+ * Email record search returning the ids of the oldest records delivered before the given time, at most the
+ * given number of them. Only the ids are selected, so the records are not loaded. They are selected in the
+ * order of the indexed delivery time, so that consecutive searches, deleting the found records in between,
+ * walk through the log without scanning it.
+ */
+public class DeliveredBeforeSearch implements QueryExecution<List<Long>> {
+
+    private final DateTime deadline;
+    private final int maxResults;
+
+    public DeliveredBeforeSearch(DateTime deadline, int maxResults) {
+        this.deadline = deadline;
+        this.maxResults = maxResults;
+    }
+
+    @Override
+    public List<Long> execute(Query query, InstanceSecurityRestriction restriction) {
+        query.setFilter("deliveryTime < deadline");
+        query.declareParameters(DateTime.class.getName() + " deadline");
+        query.setResult(ID_FIELD_NAME);
+        query.setOrdering("deliveryTime ascending");
+        query.setRange(0, maxResults);
+
+        return new ArrayList<>((Collection<Long>) query.execute(deadline));
+    }
+}
@@ -1,5 +1,6 @@
 package org.motechproject.email.service;
 
+import org.joda.time.DateTime;
 import org.motechproject.email.builder.EmailRecordSearchCriteria;
 import org.motechproject.email.domain.EmailRecord;
 
@@ -48,4 +49,25 @@ public interface EmailAuditService {
      * Deletes the specified <code>EmailRecord</code> entry from the email log.
      */
     void delete(EmailRecord emailRecord);
+
+    /**
+     * Deletes all <code>EmailRecord</code> entries delivered before the given time from the email log.
+     * The entries are deleted in chunks, each in its own transaction, so the log is never loaded into
+     * memory at once. If the purge is interrupted, the chunks deleted so far stay deleted and calling
+     * this method again continues where it stopped. The records are deleted by their ids, without being
+     * loaded, so no CRUD events are sent for them and they are not moved to the trash.
+     *
+     * @param deadline  the time before which the records should be deleted
+     * @return the number of deleted records
+     */
+    long purgeOlderThan(DateTime deadline);
+
+    /**
+     * Works like {@link #purgeOlderThan(DateTime)}, but deletes the given number of records per transaction.
+     *
+     * @param deadline  the time before which the records should be deleted
+     * @param chunkSize  the number of records deleted in a single transaction
+     * @return the number of deleted records
+     */
+    long purgeOlderThan(DateTime deadline, int chunkSize);
 }
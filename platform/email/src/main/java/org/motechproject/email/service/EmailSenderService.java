@@ -4,7 +4,7 @@ package org.motechproject.email.service;
 import org.motechproject.email.contract.Mail;
 
 /**
- *  The <code>EmailSenderService</code> interface provides a method for sending email.
+ *  The <code>EmailSenderService</code> interface provides methods for sending email.
  */
 public interface EmailSenderService {
 
@@ -15,4 +15,16 @@ public interface EmailSenderService {
      * @param message  the message to send
      */
     void send(Mail message);
+
+    /**
+     * Queues the supplied email message for sending in the background and returns immediately. Messages are sent
+     * by a pool of workers, several of them over a single connection to the mail server, and are retried with
+     * an increasing delay when sending fails. An {@link org.motechproject.email.domain.EmailRecord} entry with
+     * the final outcome is added to the log once the message is sent or all attempts failed.
+     *
+     * @param message  the message to send
+     * @throws org.springframework.mail.MailSendException if the queue stays full for too long, which lets
+     * the caller back off and try again later
+     */
+    void sendAsync(Mail message);
 }
@@ -0,0 +1,49 @@
+package org.motechproject.email.service.impl;
+
+import org.motechproject.email.domain.EmailRecord;
+import org.motechproject.email.settings.SettingsDto;
+import org.motechproject.server.config.SettingsFacade;
+
+/**
+ * The <code>AuditSettings</code> class holds the settings deciding which details of sent e-mails are kept in the
+ * log. The settings are read once and applied to any number of {@link EmailRecord}s.
+ */
+final class AuditSettings {
+
+    private static final String FALSE = "false";
+
+    private final boolean logBody;
+    private final boolean logAddress;
+    private final boolean logSubject;
+
+    private AuditSettings(boolean logBody, boolean logAddress, boolean logSubject) {
+        this.logBody = logBody;
+        this.logAddress = logAddress;
+        this.logSubject = logSubject;
+    }
+
+    static AuditSettings read(SettingsFacade settings) {
+        return new AuditSettings(
+                !FALSE.equals(settings.getProperty(SettingsDto.MAIL_LOG_BODY_PROPERTY)),
+                !FALSE.equals(settings.getProperty(SettingsDto.MAIL_LOG_ADDRESS_PROPERTY)),
+                !FALSE.equals(settings.getProperty(SettingsDto.MAIL_LOG_SUBJECT_PROPERTY))
+        );
+    }
+
+    EmailRecord apply(EmailRecord emailRecord) {
+        if (!logBody) {
+            emailRecord.setMessage("");
+        }
+
+        if (!logAddress) {
+            emailRecord.setFromAddress("");
+            emailRecord.setToAddress("");
+        }
+
+        if (!logSubject) {
+            emailRecord.setSubject("");
+        }
+
+        return emailRecord;
+    }
+}
@@ -1,14 +1,22 @@
 package org.motechproject.email.service.impl;
 
+import org.joda.time.DateTime;
 import org.motechproject.email.domain.EmailRecord;
 import org.motechproject.email.search.CountSearch;
+import org.motechproject.email.search.DeleteByIdsExecution;
+import org.motechproject.email.search.DeliveredBeforeSearch;
 import org.motechproject.email.search.RecordSearch;
 import org.motechproject.email.service.EmailAuditService;
 import org.motechproject.email.builder.EmailRecordSearchCriteria;
 import org.motechproject.email.service.EmailRecordService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
 
+import java.util.HashSet;
 import java.util.List;
 
 /**
@@ -18,6 +26,10 @@ import java.util.List;
 @Service("emailAuditService")
 public class EmailAuditServiceImpl implements EmailAuditService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmailAuditServiceImpl.class);
+
+    private static final int PURGE_CHUNK_SIZE = 1000;
+
     private EmailRecordService emailRecordService;
 
     @Autowired
@@ -40,6 +52,47 @@ public class EmailAuditServiceImpl implements EmailAuditService {
         emailRecordService.delete(emailRecord);
     }
 
+    @Override
+    public long purgeOlderThan(DateTime deadline) {
+        return purgeOlderThan(deadline, PURGE_CHUNK_SIZE);
+    }
+
+    @Override
+    public long purgeOlderThan(final DateTime deadline, final int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be positive");
+        }
+
+        LOGGER.info("Purging email records delivered before {}", deadline);
+
+        long purged = 0;
+        int deleted;
+
+        // every chunk is committed on its own, the next one starts from the oldest remaining record; the records
+        // are deleted by their ids, without loading them and without CRUD events
+        do {
+            deleted = emailRecordService.doInTransaction(new TransactionCallback<Integer>() {
+                @Override
+                public Integer doInTransaction(TransactionStatus status) {
+                    List<Long> ids = emailRecordService.executeQuery(new DeliveredBeforeSearch(deadline, chunkSize));
+                    if (ids.isEmpty()) {
+                        return 0;
+                    }
+
+                    emailRecordService.executeQuery(new DeleteByIdsExecution(new HashSet<>(ids)));
+                    return ids.size();
+                }
+            });
+
+            purged += deleted;
+            LOGGER.debug("Purged {} email records so far", purged);
+        } while (deleted == chunkSize);
+
+        LOGGER.info("Purged {} email records delivered before {}", purged, deadline);
+
+        return purged;
+    }
+
     @Override
     public List<EmailRecord> findEmailRecords(EmailRecordSearchCriteria criteria) {
         return emailRecordService.executeQuery(new RecordSearch(criteria));
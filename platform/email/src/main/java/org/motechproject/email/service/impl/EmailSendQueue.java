@@ -0,0 +1,374 @@
+package org.motechproject.email.service.impl;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.motechproject.email.contract.Mail;
+import org.motechproject.email.domain.DeliveryStatus;
+import org.motechproject.email.domain.EmailRecord;
+import org.motechproject.email.service.EmailRecordService;
+import org.motechproject.email.settings.SettingsDto;
+import org.motechproject.server.config.SettingsFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.motechproject.commons.date.util.DateUtil.now;
+
+/**
+ * The <code>EmailSendQueue</code> class sends e-mails in the background. Queued e-mails are taken by a pool of
+ * workers, each of them sends up to {@link #BATCH_SIZE} e-mails at once, over a single connection to the mail
+ * server. E-mails which could not be sent are retried, with the delay doubled after every failed attempt, until
+ * the configured number of attempts is reached. The outcome of every e-mail is written to the log in batches.
+ * <p/>
+ * The queue is bounded - when it stays full for longer than the offer timeout, new e-mails are rejected with a
+ * {@link MailSendException}, so that callers back off instead of piling up e-mails in memory. The size of the
+ * queue, the number of workers and the retry policy are read from the module settings when the queue starts.
+ */
+@Component
+public class EmailSendQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmailSendQueue.class);
+
+    static final int DEFAULT_CAPACITY = 1000;
+    static final int DEFAULT_WORKERS = 2;
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+    static final long DEFAULT_RETRY_DELAY = 1000;
+
+    static final int BATCH_SIZE = 20;
+    private static final int AUDIT_BATCH_SIZE = 100;
+    private static final long AUDIT_FLUSH_INTERVAL = 1000;
+    private static final long POLL_TIMEOUT = 200;
+    private static final long DEFAULT_OFFER_TIMEOUT = 5000;
+    private static final long SHUTDOWN_TIMEOUT = 30000;
+    private static final int MAX_BACKOFF_SHIFT = 10;
+
+    private SettingsFacade settings;
+    private EmailRecordService emailRecordService;
+    private JavaMailSender mailSender;
+
+    private BlockingQueue<QueuedMail> queue;
+    private final DelayQueue<QueuedMail> retries = new DelayQueue<>();
+    private final List<EmailRecord> records = new ArrayList<>();
+    private ExecutorService workers;
+
+    private volatile boolean running;
+    private int maxAttempts;
+    private long retryDelay;
+    private long offerTimeout = DEFAULT_OFFER_TIMEOUT;
+    private long lastFlush;
+
+    @Autowired
+    public EmailSendQueue(@Qualifier("emailSettings") SettingsFacade settings, EmailRecordService emailRecordService,
+                          JavaMailSender mailSender) {
+        this.settings = settings;
+        this.emailRecordService = emailRecordService;
+        this.mailSender = mailSender;
+    }
+
+    /**
+     * Starts the workers, using the queue settings of the module.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        int capacity = getSetting(SettingsDto.MAIL_QUEUE_CAPACITY_PROPERTY, DEFAULT_CAPACITY);
+        int workerCount = getSetting(SettingsDto.MAIL_QUEUE_WORKERS_PROPERTY, DEFAULT_WORKERS);
+
+        maxAttempts = getSetting(SettingsDto.MAIL_RETRY_MAX_ATTEMPTS_PROPERTY, DEFAULT_MAX_ATTEMPTS);
+        retryDelay = getSetting(SettingsDto.MAIL_RETRY_DELAY_PROPERTY, (int) DEFAULT_RETRY_DELAY);
+        queue = new ArrayBlockingQueue<>(capacity);
+        lastFlush = System.currentTimeMillis();
+        running = true;
+
+        workers = Executors.newFixedThreadPool(workerCount, new WorkerThreadFactory());
+        for (int i = 0; i < workerCount; ++i) {
+            workers.execute(new Worker());
+        }
+
+        LOGGER.info("Started {} email workers, queue capacity: {}, attempts per email: {}",
+                workerCount, capacity, maxAttempts);
+    }
+
+    /**
+     * Stops the workers. E-mails already queued are sent before the workers finish. E-mails waiting for a retry,
+     * or still queued when the workers did not finish in time, are logged as not delivered. The log is flushed.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        workers.shutdown();
+
+        try {
+            if (!workers.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Email workers did not finish in time, {} queued emails were not sent", queue.size());
+                workers.shutdownNow();
+                workers.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+
+        List<QueuedMail> pending = new ArrayList<>(retries);
+        retries.clear();
+        queue.drainTo(pending);
+
+        for (QueuedMail queuedMail : pending) {
+            record(queuedMail.getMail(), DeliveryStatus.ERROR);
+        }
+
+        flushRecords();
+    }
+
+    /**
+     * Adds the given e-mail to the queue. If the queue is full, waits until space becomes available or
+     * the offer timeout passes.
+     *
+     * @param mail the e-mail to send
+     * @throws MailSendException if the queue is not running, or stayed full for the whole offer timeout
+     */
+    public void enqueue(Mail mail) {
+        if (!running) {
+            throw new MailSendException("The email queue is not running");
+        }
+
+        boolean accepted;
+        try {
+            accepted = queue.offer(new QueuedMail(mail), offerTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MailSendException("Interrupted while queueing the email", e);
+        }
+
+        if (!accepted) {
+            throw new MailSendException(String.format("The email queue is full, %d emails are waiting to be sent",
+                    queue.size()));
+        }
+    }
+
+    /**
+     * Returns the number of e-mails waiting in the queue, not including e-mails waiting for a retry.
+     *
+     * @return the number of queued e-mails
+     */
+    public int getQueueSize() {
+        return null == queue ? 0 : queue.size();
+    }
+
+    void setOfferTimeout(long offerTimeout) {
+        this.offerTimeout = offerTimeout;
+    }
+
+    private void sendBatch(List<QueuedMail> batch) {
+        Map<MimeMessage, QueuedMail> messages = prepare(batch);
+
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        Map<Object, Exception> failedMessages = null;
+        try {
+            mailSender.send(messages.keySet().toArray(new MimeMessage[messages.size()]));
+        } catch (MailSendException e) {
+            failedMessages = e.getFailedMessages();
+            LOGGER.warn("Unable to send {} of {} emails: {}", failedMessages.size(), messages.size(), e.getMessage());
+        } catch (MailException e) {
+            LOGGER.warn("Unable to send {} emails: {}", messages.size(), e.getMessage());
+            failedMessages = new IdentityHashMap<Object, Exception>();
+        }
+
+        for (Map.Entry<MimeMessage, QueuedMail> entry : messages.entrySet()) {
+            // without the details of the failure, none of the e-mails is considered sent
+            if (null != failedMessages && (failedMessages.isEmpty() || failedMessages.containsKey(entry.getKey()))) {
+                handleFailure(entry.getValue());
+            } else {
+                record(entry.getValue().getMail(), DeliveryStatus.SENT);
+            }
+        }
+    }
+
+    private Map<MimeMessage, QueuedMail> prepare(List<QueuedMail> batch) {
+        Map<MimeMessage, QueuedMail> messages = new IdentityHashMap<>();
+
+        for (QueuedMail queuedMail : batch) {
+            MimeMessage message = mailSender.createMimeMessage();
+            try {
+                new MotechMimeMessagePreparator(queuedMail.getMail()).prepare(message);
+                messages.put(message, queuedMail);
+            } catch (Exception e) {
+                // an e-mail which cannot be prepared will not be sent on a retry either
+                LOGGER.error("Unable to prepare the email to " + queuedMail.getMail().getToAddress(), e);
+                record(queuedMail.getMail(), DeliveryStatus.ERROR);
+            }
+        }
+
+        return messages;
+    }
+
+    private void handleFailure(QueuedMail queuedMail) {
+        if (running && queuedMail.getAttempts() + 1 < maxAttempts) {
+            retries.add(queuedMail.retry(retryDelay));
+        } else {
+            LOGGER.error("Unable to send the email to {}, giving up after {} attempts",
+                    queuedMail.getMail().getToAddress(), queuedMail.getAttempts() + 1);
+            record(queuedMail.getMail(), DeliveryStatus.ERROR);
+        }
+    }
+
+    private void record(Mail mail, DeliveryStatus status) {
+        EmailRecord emailRecord = new EmailRecord(mail.getFromAddress(), mail.getToAddress(), mail.getSubject(),
+                mail.getMessage(), now(), status);
+
+        synchronized (records) {
+            records.add(emailRecord);
+        }
+    }
+
+    private void flushRecordsIfNeeded() {
+        boolean flush;
+
+        synchronized (records) {
+            flush = records.size() >= AUDIT_BATCH_SIZE
+                    || (!records.isEmpty() && System.currentTimeMillis() - lastFlush >= AUDIT_FLUSH_INTERVAL);
+        }
+
+        if (flush) {
+            flushRecords();
+        }
+    }
+
+    private void flushRecords() {
+        List<EmailRecord> batch;
+
+        synchronized (records) {
+            lastFlush = System.currentTimeMillis();
+            if (records.isEmpty()) {
+                return;
+            }
+
+            batch = new ArrayList<>(records);
+            records.clear();
+        }
+
+        // the log settings are read once for the whole batch
+        AuditSettings auditSettings = AuditSettings.read(settings);
+        for (EmailRecord emailRecord : batch) {
+            auditSettings.apply(emailRecord);
+        }
+
+        try {
+            emailRecordService.createAll(batch);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to log " + batch.size() + " sent emails", e);
+        }
+    }
+
+    private int getSetting(String key, int defaultValue) {
+        int value = NumberUtils.toInt(settings.getProperty(key), defaultValue);
+        return value > 0 ? value : defaultValue;
+    }
+
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            List<QueuedMail> batch = new ArrayList<>(BATCH_SIZE);
+
+            while (running || !queue.isEmpty()) {
+                try {
+                    QueuedMail first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (null != first) {
+                        batch.add(first);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                queue.drainTo(batch, BATCH_SIZE - batch.size());
+                retries.drainTo(batch, BATCH_SIZE - batch.size());
+
+                if (!batch.isEmpty()) {
+                    sendBatch(batch);
+                    batch.clear();
+                }
+
+                flushRecordsIfNeeded();
+            }
+        }
+    }
+
+    private static final class QueuedMail implements Delayed {
+        private final Mail mail;
+        private final int attempts;
+        private final long dueTime;
+
+        private QueuedMail(Mail mail) {
+            this(mail, 0, 0);
+        }
+
+        private QueuedMail(Mail mail, int attempts, long dueTime) {
+            this.mail = mail;
+            this.attempts = attempts;
+            this.dueTime = dueTime;
+        }
+
+        public Mail getMail() {
+            return mail;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public QueuedMail retry(long baseDelay) {
+            long delay = baseDelay * (1L << Math.min(attempts, MAX_BACKOFF_SHIFT));
+            return new QueuedMail(mail, attempts + 1, System.currentTimeMillis() + delay);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "email-sender-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
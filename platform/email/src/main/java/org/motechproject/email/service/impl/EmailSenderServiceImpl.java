@@ -23,12 +23,6 @@ import static org.motechproject.commons.date.util.DateUtil.now;
 @Service("emailSenderService")
 public class EmailSenderServiceImpl implements EmailSenderService {
 
-    private static final String EMAIL_LOG_BODY = "mail.log.body";
-    private static final String EMAIL_LOG_ADDRESS = "mail.log.address";
-    private static final String EMAIL_LOG_SUBJECT = "mail.log.subject";
-    private static final String FALSE = "false";
-
-
     @Autowired()
     @Qualifier("emailSettings")
     private SettingsFacade settings;
@@ -39,6 +33,9 @@ public class EmailSenderServiceImpl implements EmailSenderService {
     @Autowired
     private JavaMailSender mailSender;
 
+    @Autowired
+    private EmailSendQueue sendQueue;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(EmailSenderServiceImpl.class);
 
     @Override
@@ -56,19 +53,15 @@ public class EmailSenderServiceImpl implements EmailSenderService {
         }
     }
 
-    private void log(EmailRecord emailRecord) {
-        if (FALSE.equals(settings.getProperty(EMAIL_LOG_BODY))) {
-            emailRecord.setMessage("");
-        }
-
-        if (FALSE.equals(settings.getProperty(EMAIL_LOG_ADDRESS))) {
-            emailRecord.setFromAddress("");
-            emailRecord.setToAddress("");
-        }
+    @Override
+    public void sendAsync(Mail mail) {
+        LOGGER.info(String.format("Queueing message [%s] from [%s] to [%s] with subject [%s].",
+                mail.getMessage(), mail.getFromAddress(), mail.getToAddress(), mail.getSubject()));
+        sendQueue.enqueue(mail);
+    }
 
-        if (FALSE.equals(settings.getProperty(EMAIL_LOG_SUBJECT))) {
-            emailRecord.setSubject("");
-        }
+    private void log(EmailRecord emailRecord) {
+        AuditSettings.read(settings).apply(emailRecord);
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Logging: {}", emailRecord.toString());
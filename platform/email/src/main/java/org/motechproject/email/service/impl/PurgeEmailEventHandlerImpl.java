@@ -7,8 +7,6 @@ import org.motechproject.event.listener.annotations.MotechListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-
 /**
  * The <code>PurgeEmailEventHandlerImpl</code> class is responsible for handling events,
  * connected with purging {@link EmailRecord}s
@@ -50,13 +48,7 @@ public class PurgeEmailEventHandlerImpl {
                 break;
         }
 
-        List<EmailRecord> emailRecordList = auditService.findAllEmailRecords();
-
-        for (EmailRecord record : emailRecordList) {
-            if (record.getDeliveryTime().isBefore(deadline)) {
-                auditService.delete(record);
-            }
-        }
+        auditService.purgeOlderThan(deadline);
     }
 
 }
@@ -38,6 +38,6 @@ public class SendEmailEventHandlerImpl {
                     fromAddress, toAddress, subject, message);
         }
 
-        emailSenderService.send(new Mail(fromAddress, toAddress, subject, message));
+        emailSenderService.sendAsync(new Mail(fromAddress, toAddress, subject, message));
     }
 }
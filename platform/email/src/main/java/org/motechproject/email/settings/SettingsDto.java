@@ -15,6 +15,10 @@ public class SettingsDto {
     public static final String MAIL_LOG_PURGE_ENABLE_PROPERTY = "mail.log.purgeenable";
     public static final String MAIL_LOG_PURGE_TIME_PROPERY = "mail.log.purgetime";
     public static final String MAIL_LOG_PURGE_TIME_MULTIPLIER_PROPERTY = "mail.log.purgetimemultiplier";
+    public static final String MAIL_QUEUE_CAPACITY_PROPERTY = "mail.queue.capacity";
+    public static final String MAIL_QUEUE_WORKERS_PROPERTY = "mail.queue.workers";
+    public static final String MAIL_RETRY_MAX_ATTEMPTS_PROPERTY = "mail.retry.maxattempts";
+    public static final String MAIL_RETRY_DELAY_PROPERTY = "mail.retry.delay";
 
     private String host;
     private String port;
@@ -24,6 +28,10 @@ public class SettingsDto {
     private String logPurgeEnable;
     private String logPurgeTime;
     private String logPurgeTimeMultiplier;
+    private String queueCapacity;
+    private String queueWorkers;
+    private String retryMaxAttempts;
+    private String retryDelay;
 
     public SettingsDto() {
         this(null, null, null, null, null, null, null, null);
@@ -40,6 +48,11 @@ public class SettingsDto {
                 settingsFacade.getProperty(MAIL_LOG_PURGE_TIME_PROPERY, EMAIL_PROPERTIES_FILE_NAME),
                 settingsFacade.getProperty(MAIL_LOG_PURGE_TIME_MULTIPLIER_PROPERTY, EMAIL_PROPERTIES_FILE_NAME)
         );
+        this.queueCapacity = settingsFacade.getProperty(MAIL_QUEUE_CAPACITY_PROPERTY, EMAIL_PROPERTIES_FILE_NAME);
+        this.queueWorkers = settingsFacade.getProperty(MAIL_QUEUE_WORKERS_PROPERTY, EMAIL_PROPERTIES_FILE_NAME);
+        this.retryMaxAttempts = settingsFacade.getProperty(MAIL_RETRY_MAX_ATTEMPTS_PROPERTY,
+                EMAIL_PROPERTIES_FILE_NAME);
+        this.retryDelay = settingsFacade.getProperty(MAIL_RETRY_DELAY_PROPERTY, EMAIL_PROPERTIES_FILE_NAME);
     }
 
     public Properties toProperties() {
@@ -53,6 +66,12 @@ public class SettingsDto {
         properties.put(MAIL_LOG_PURGE_TIME_PROPERY, logPurgeTime);
         properties.put(MAIL_LOG_PURGE_TIME_MULTIPLIER_PROPERTY, logPurgeTimeMultiplier);
 
+        // the queue settings are not edited on the settings page, they are kept only if they were set
+        putIfSet(properties, MAIL_QUEUE_CAPACITY_PROPERTY, queueCapacity);
+        putIfSet(properties, MAIL_QUEUE_WORKERS_PROPERTY, queueWorkers);
+        putIfSet(properties, MAIL_RETRY_MAX_ATTEMPTS_PROPERTY, retryMaxAttempts);
+        putIfSet(properties, MAIL_RETRY_DELAY_PROPERTY, retryDelay);
+
         return properties;
     }
 
@@ -144,9 +163,42 @@ public class SettingsDto {
         this.logPurgeTimeMultiplier = logPurgeTimeMultiplier;
     }
 
+    public String getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(String queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public String getQueueWorkers() {
+        return queueWorkers;
+    }
+
+    public void setQueueWorkers(String queueWorkers) {
+        this.queueWorkers = queueWorkers;
+    }
+
+    public String getRetryMaxAttempts() {
+        return retryMaxAttempts;
+    }
+
+    public void setRetryMaxAttempts(String retryMaxAttempts) {
+        this.retryMaxAttempts = retryMaxAttempts;
+    }
+
+    public String getRetryDelay() {
+        return retryDelay;
+    }
+
+    public void setRetryDelay(String retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
     @Override
     public int hashCode() {
-        return Objects.hash(host, port, logAddress, logSubject, logBody, logPurgeEnable, logPurgeTime, logPurgeTimeMultiplier);
+        return Objects.hash(host, port, logAddress, logSubject, logBody, logPurgeEnable, logPurgeTime, logPurgeTimeMultiplier,
+                queueCapacity, queueWorkers, retryMaxAttempts, retryDelay);
     }
 
     @Override
@@ -167,8 +219,9 @@ public class SettingsDto {
     @Override
     public String toString() {
         return String.format(
-                "SettingsDto{host='%s', port='%s', logAddress='%s', logSubject='%s', logBody='%s', logPurgeEnable='%s', logPurgeTime='%s', logPurgeTimeMultiplier='%s'}",
-                host, port, logAddress, logSubject, logBody, logPurgeEnable, logPurgeTime, logPurgeTimeMultiplier);
+                "SettingsDto{host='%s', port='%s', logAddress='%s', logSubject='%s', logBody='%s', logPurgeEnable='%s', logPurgeTime='%s', logPurgeTimeMultiplier='%s', queueCapacity='%s', queueWorkers='%s', retryMaxAttempts='%s', retryDelay='%s'}",
+                host, port, logAddress, logSubject, logBody, logPurgeEnable, logPurgeTime, logPurgeTimeMultiplier,
+                queueCapacity, queueWorkers, retryMaxAttempts, retryDelay);
     }
 
     private Boolean compareFields(SettingsDto other) {
@@ -190,6 +243,19 @@ public class SettingsDto {
             return false;
         }
 
-        return true;
+        return compareQueueFields(other);
+    }
+
+    private Boolean compareQueueFields(SettingsDto other) {
+        return Objects.equals(this.queueCapacity, other.queueCapacity)
+                && Objects.equals(this.queueWorkers, other.queueWorkers)
+                && Objects.equals(this.retryMaxAttempts, other.retryMaxAttempts)
+                && Objects.equals(this.retryDelay, other.retryDelay);
+    }
+
+    private static void putIfSet(Properties properties, String key, String value) {
+        if (value != null) {
+            properties.put(key, value);
+        }
     }
 }
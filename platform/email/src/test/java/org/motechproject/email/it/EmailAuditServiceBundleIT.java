@@ -95,6 +95,26 @@ public class EmailAuditServiceBundleIT extends BasePaxIT {
                 extract(records, on(EmailRecord.class).getDeliveryStatus()));
     }
 
+    @Test
+    public void shouldPurgeRecordsOlderThanDeadlineInChunks() {
+        DateTime deadline = DateTime.now().minusDays(1);
+
+        for (int i = 0; i < 5; ++i) {
+            emailRecordService.create(new EmailRecord("from@address", "old@address", "old " + i, "message",
+                    deadline.minusHours(i + 1), DeliveryStatus.SENT));
+        }
+        emailRecordService.create(new EmailRecord("from@address", "new@address", "new", "message",
+                deadline.plusHours(1), DeliveryStatus.SENT));
+
+        assertEquals(5, emailAuditService.purgeOlderThan(deadline, 2));
+
+        List<EmailRecord> remaining = emailAuditService.findAllEmailRecords();
+        assertEquals(1, remaining.size());
+        assertEquals("new", remaining.get(0).getSubject());
+
+        assertEquals(0, emailAuditService.purgeOlderThan(deadline, 2));
+    }
+
     private EmailRecord createEmailRecord(String toAddress, String subject, DeliveryStatus deliveryStatus) {
         return new EmailRecord("from@address", toAddress, subject, "message", DateTime.now(), deliveryStatus);
     }
@@ -0,0 +1,43 @@
+package org.motechproject.email.search;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.commons.date.util.DateUtil;
+
+import javax.jdo.Query;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class DeliveredBeforeSearchTest {
+
+    @Mock
+    private Query query;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+    }
+
+    @Test
+    public void shouldSelectIdsOfOldestRecords() {
+        DateTime deadline = DateUtil.now().minusDays(7);
+        when(query.execute(deadline)).thenReturn(asList(3L, 5L));
+
+        List<Long> ids = new DeliveredBeforeSearch(deadline, 2).execute(query, null);
+
+        verify(query).setFilter("deliveryTime < deadline");
+        verify(query).declareParameters("org.joda.time.DateTime deadline");
+        verify(query).setResult("id");
+        verify(query).setOrdering("deliveryTime ascending");
+        verify(query).setRange(0, 2);
+
+        assertEquals(asList(3L, 5L), ids);
+    }
+}
@@ -0,0 +1,228 @@
+package org.motechproject.email.service.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.email.contract.Mail;
+import org.motechproject.email.domain.DeliveryStatus;
+import org.motechproject.email.domain.EmailRecord;
+import org.motechproject.email.service.EmailRecordService;
+import org.motechproject.email.settings.SettingsDto;
+import org.motechproject.server.config.SettingsFacade;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.subethamail.wiser.Wiser;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class EmailSendQueueTest {
+
+    private static final long TIMEOUT = 10000;
+
+    @Mock
+    private EmailRecordService emailRecordService;
+
+    @Mock
+    private SettingsFacade settings;
+
+    private FailingWiser smtpServer;
+    private JavaMailSenderImpl mailSender;
+    private EmailSendQueue sendQueue;
+
+    @Before
+    public void setUp() throws IOException {
+        initMocks(this);
+
+        when(settings.getProperty(SettingsDto.MAIL_RETRY_DELAY_PROPERTY)).thenReturn("10");
+
+        int port = getFreePort();
+        smtpServer = new FailingWiser(port);
+        smtpServer.start();
+
+        mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(port);
+    }
+
+    @After
+    public void tearDown() {
+        if (null != sendQueue) {
+            sendQueue.stop();
+        }
+        smtpServer.stop();
+    }
+
+    @Test
+    public void shouldSendQueuedEmailsAndLogThemInBatches() throws InterruptedException {
+        startQueue(mailSender);
+
+        for (int i = 0; i < 30; ++i) {
+            sendQueue.enqueue(new Mail("from@motech.org", "to@motech.org", "subject " + i, "message " + i));
+        }
+
+        waitForMessages(30);
+        sendQueue.stop();
+
+        List<EmailRecord> records = getLoggedRecords();
+        assertEquals(30, records.size());
+        for (EmailRecord record : records) {
+            assertEquals(DeliveryStatus.SENT, record.getDeliveryStatus());
+        }
+    }
+
+    @Test
+    public void shouldRetryEmailsWhichCouldNotBeSent() throws InterruptedException {
+        smtpServer.rejectFirst(2);
+        startQueue(mailSender);
+
+        sendQueue.enqueue(new Mail("from@motech.org", "to@motech.org", "subject", "message"));
+
+        waitForMessages(1);
+        sendQueue.stop();
+
+        assertEquals(3, smtpServer.getAttempts());
+
+        List<EmailRecord> records = getLoggedRecords();
+        assertEquals(1, records.size());
+        assertEquals(DeliveryStatus.SENT, records.get(0).getDeliveryStatus());
+    }
+
+    @Test
+    public void shouldLogErrorAfterLastAttempt() throws InterruptedException {
+        when(settings.getProperty(SettingsDto.MAIL_RETRY_MAX_ATTEMPTS_PROPERTY)).thenReturn("2");
+        smtpServer.rejectFirst(Integer.MAX_VALUE);
+        startQueue(mailSender);
+
+        sendQueue.enqueue(new Mail("from@motech.org", "to@motech.org", "subject", "message"));
+
+        waitForAttempts(2);
+        sendQueue.stop();
+
+        assertEquals(2, smtpServer.getAttempts());
+        assertTrue(smtpServer.getMessages().isEmpty());
+
+        List<EmailRecord> records = getLoggedRecords();
+        assertEquals(1, records.size());
+        assertEquals(DeliveryStatus.ERROR, records.get(0).getDeliveryStatus());
+    }
+
+    @Test
+    public void shouldRejectEmailsWhenQueueIsFull() throws InterruptedException {
+        when(settings.getProperty(SettingsDto.MAIL_QUEUE_CAPACITY_PROPERTY)).thenReturn("1");
+        when(settings.getProperty(SettingsDto.MAIL_QUEUE_WORKERS_PROPERTY)).thenReturn("1");
+
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        JavaMailSender blockedSender = mock(JavaMailSender.class);
+        when(blockedSender.createMimeMessage()).thenAnswer(new Answer<MimeMessage>() {
+            @Override
+            public MimeMessage answer(InvocationOnMock invocation) throws InterruptedException {
+                sending.countDown();
+                release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                return new MimeMessage(Session.getInstance(new Properties()));
+            }
+        });
+
+        startQueue(blockedSender);
+        sendQueue.setOfferTimeout(50);
+
+        // the first e-mail blocks the only worker, the second one fills the queue
+        sendQueue.enqueue(new Mail("from@motech.org", "to@motech.org", "subject", "first"));
+        assertTrue(sending.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        sendQueue.enqueue(new Mail("from@motech.org", "to@motech.org", "subject", "second"));
+
+        try {
+            sendQueue.enqueue(new Mail("from@motech.org", "to@motech.org", "subject", "third"));
+            fail("The email should be rejected");
+        } catch (MailSendException e) {
+            assertEquals(1, sendQueue.getQueueSize());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private void startQueue(JavaMailSender sender) {
+        sendQueue = new EmailSendQueue(settings, emailRecordService, sender);
+        sendQueue.start();
+    }
+
+    private void waitForMessages(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (smtpServer.getMessages().size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(count, smtpServer.getMessages().size());
+    }
+
+    private void waitForAttempts(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (smtpServer.getAttempts() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<EmailRecord> getLoggedRecords() {
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(emailRecordService, atLeastOnce()).createAll(captor.capture());
+
+        List<EmailRecord> records = new ArrayList<>();
+        for (Collection batch : captor.getAllValues()) {
+            records.addAll(batch);
+        }
+        return records;
+    }
+
+    private int getFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static class FailingWiser extends Wiser {
+        private final AtomicInteger attempts = new AtomicInteger();
+        private volatile int rejected;
+
+        FailingWiser(int port) {
+            super(port);
+        }
+
+        void rejectFirst(int count) {
+            rejected = count;
+        }
+
+        int getAttempts() {
+            return attempts.get();
+        }
+
+        @Override
+        public boolean accept(String from, String recipient) {
+            return attempts.incrementAndGet() > rejected;
+        }
+    }
+}
@@ -58,7 +58,7 @@ public class SendEmailEventHandlerImplTest {
 
         emailEventHandler.handle(new MotechEvent(SEND_EMAIL_SUBJECT, values));
         ArgumentCaptor<Mail> captor = ArgumentCaptor.forClass(Mail.class);
-        verify(emailSenderService).send(captor.capture());
+        verify(emailSenderService).sendAsync(captor.capture());
 
         assertEquals(captor.getValue().getFromAddress(), from);
         assertEquals(captor.getValue().getToAddress(), to);
@@ -9,6 +9,7 @@ import org.motechproject.mds.dto.FieldDto;
 import org.motechproject.mds.ex.entity.EntityNotFoundException;
 import org.motechproject.mds.service.EntityService;
 import org.motechproject.mds.service.MdsBundleRegenerationService;
+import org.motechproject.mds.service.SchemaSnapshotService;
 import org.motechproject.mds.web.SelectData;
 import org.motechproject.mds.web.SelectResult;
 import org.motechproject.mds.web.comparator.EntityNameComparator;
@@ -47,6 +48,7 @@ public class EntityController extends MdsController {
 
     private MdsBundleRegenerationService mdsBundleRegenerationService;
     private EntityService entityService;
+    private SchemaSnapshotService schemaSnapshotService;
 
     @RequestMapping(value = "/entities/byModule", method = RequestMethod.GET)
     @ResponseBody
@@ -157,7 +159,13 @@ public class EntityController extends MdsController {
     @PreAuthorize(Roles.HAS_SCHEMA_ACCESS)
     @ResponseBody
     public void deleteEntity(@PathVariable final Long entityId) {
+        EntityDto entity = entityService.getEntity(entityId);
         entityService.deleteEntity(entityId);
+
+        // deleting does not regenerate the entities bundle, the schema snapshot must be told explicitly
+        if (null != entity) {
+            schemaSnapshotService.refreshEntity(entity.getClassName());
+        }
     }
 
     @RequestMapping(value = "/entities", method = RequestMethod.POST)
@@ -258,6 +266,11 @@ public class EntityController extends MdsController {
         this.entityService = entityService;
     }
 
+    @Autowired
+    public void setSchemaSnapshotService(SchemaSnapshotService schemaSnapshotService) {
+        this.schemaSnapshotService = schemaSnapshotService;
+    }
+
     @Autowired
     public void setMdsBundleRegenerationService(MdsBundleRegenerationService mdsBundleRegenerationService) {
         this.mdsBundleRegenerationService = mdsBundleRegenerationService;
@@ -2,6 +2,7 @@ package org.motechproject.mds.web.rest;
 
 import org.apache.commons.lang.StringUtils;
 import org.motechproject.mds.query.QueryParams;
+import org.motechproject.mds.rest.ContinuationToken;
 import org.motechproject.mds.util.Order;
 import org.motechproject.mds.web.ex.InvalidParameterException;
 
@@ -20,6 +21,8 @@ public final class ParamParser {
     public static final String LOOKUP_NAME = "lookup";
     public static final String ID = "id";
     public static final String INCLUDE_BLOB = "includeBlob";
+    public static final String KEYSET = "keyset";
+    public static final String AFTER = "after";
 
     public static QueryParams buildQueryParams(Map<String, String> requestParams) {
         Integer page;
@@ -45,6 +48,16 @@ public final class ParamParser {
 
         order = buildOrder(sortBy, orderDir);
 
+        if (requestParams.containsKey(AFTER)) {
+            try {
+                return ContinuationToken.parse(requestParams.get(AFTER), pageSize, order);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidParameterException(e.getMessage(), e);
+            }
+        } else if (Boolean.parseBoolean(requestParams.get(KEYSET))) {
+            return QueryParams.keysetFirst(pageSize, order);
+        }
+
         return new QueryParams(page, pageSize, order);
     }
 
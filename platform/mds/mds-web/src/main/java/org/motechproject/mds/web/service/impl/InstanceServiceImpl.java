@@ -33,9 +33,9 @@ import org.motechproject.mds.filter.Filters;
 import org.motechproject.mds.helper.DataServiceHelper;
 import org.motechproject.mds.lookup.LookupExecutor;
 import org.motechproject.mds.query.QueryParams;
-import org.motechproject.mds.service.EntityService;
 import org.motechproject.mds.service.HistoryService;
 import org.motechproject.mds.service.MotechDataService;
+import org.motechproject.mds.service.SchemaSnapshotService;
 import org.motechproject.mds.service.TrashService;
 import org.motechproject.mds.service.TypeService;
 import org.motechproject.mds.service.impl.history.HistoryTrashClassHelper;
@@ -43,6 +43,7 @@ import org.motechproject.mds.util.ClassName;
 import org.motechproject.mds.util.Constants;
 import org.motechproject.mds.util.MDSClassLoader;
 import org.motechproject.mds.util.MemberUtil;
+import org.motechproject.mds.util.PropertyAccessor;
 import org.motechproject.mds.util.PropertyUtil;
 import org.motechproject.mds.util.SecurityMode;
 import org.motechproject.mds.util.TypeHelper;
@@ -61,7 +62,6 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.beans.PropertyDescriptor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -98,7 +98,7 @@ public class InstanceServiceImpl implements InstanceService {
     private static final String ID = "id";
     private static final Integer TO_STRING_MAX_LENGTH = 80;
 
-    private EntityService entityService;
+    private SchemaSnapshotService schemaSnapshotService;
     private BundleContext bundleContext;
     private HistoryService historyService;
     private TrashService trashService;
@@ -158,10 +158,12 @@ public class InstanceServiceImpl implements InstanceService {
     public List<EntityRecord> getEntityRecords(Long entityId, QueryParams queryParams) {
         EntityDto entity = getEntity(entityId);
         validateCredentials(entity);
-        List<FieldDto> fields = entityService.getEntityFields(entityId);
+        List<FieldDto> fields = schemaSnapshotService.getSnapshot().getEntityFields(entityId);
 
         MotechDataService service = getServiceForEntity(entity);
-        List instances = service.retrieveAll(queryParams);
+        List instances = isProjectable(fields)
+                ? service.retrieveProjection(getProjectedFields(fields), queryParams)
+                : service.retrieveAll(queryParams);
 
         return instancesToRecords(instances, entity, fields, service);
     }
@@ -169,7 +171,7 @@ public class InstanceServiceImpl implements InstanceService {
     @Override
     public List<FieldDto> getEntityFields(Long entityId) {
         validateCredentials(getEntity(entityId));
-        return entityService.getEntityFields(entityId);
+        return schemaSnapshotService.getSnapshot().getEntityFields(entityId);
     }
 
     @Override
@@ -178,7 +180,7 @@ public class InstanceServiceImpl implements InstanceService {
         validateCredentials(entity);
 
         MotechDataService service = getServiceForEntity(entity);
-        List<FieldDto> fields = entityService.getEntityFields(entityId);
+        List<FieldDto> fields = schemaSnapshotService.getSnapshot().getEntityFields(entityId);
         Collection collection = trashService.getInstancesFromTrash(entity.getClassName(), queryParams);
 
         return instancesToRecords(collection, entity, fields, service);
@@ -198,7 +200,7 @@ public class InstanceServiceImpl implements InstanceService {
         validateCredentials(entity);
 
         MotechDataService service = getServiceForEntity(entity);
-        List<FieldDto> fields = entityService.getEntityFields(entityId);
+        List<FieldDto> fields = schemaSnapshotService.getSnapshot().getEntityFields(entityId);
         Object instance = trashService.findTrashById(instanceId, entityId);
 
         return instanceToRecord(instance, entity, fields, service);
@@ -222,8 +224,9 @@ public class InstanceServiceImpl implements InstanceService {
         validateCredentials(entity);
 
         LookupDto lookup = getLookupByName(entityId, lookupName);
-        List<FieldDto> fields = entityService.getEntityFields(entityId);
-        Map<String, FieldDto> fieldMap = entityService.getLookupFieldsMapping(entityId, lookupName);
+        List<FieldDto> fields = schemaSnapshotService.getSnapshot().getEntityFields(entityId);
+        Map<String, FieldDto> fieldMap = schemaSnapshotService.getSnapshot()
+                .getLookupFieldsMapping(entityId, lookupName);
 
         MotechDataService service = getServiceForEntity(entity);
 
@@ -249,10 +252,12 @@ public class InstanceServiceImpl implements InstanceService {
         EntityDto entity = getEntity(entityId);
         validateCredentials(entity);
 
-        List<FieldDto> fields = entityService.getEntityFields(entityId);
+        List<FieldDto> fields = schemaSnapshotService.getSnapshot().getEntityFields(entityId);
         MotechDataService service = getServiceForEntity(entity);
 
-        List instances = service.filter(filters, queryParams);
+        List instances = isProjectable(fields)
+                ? service.filterProjection(getProjectedFields(fields), filters, queryParams)
+                : service.filter(filters, queryParams);
 
         return instancesToRecords(instances, entity, fields, service);
     }
@@ -281,7 +286,8 @@ public class InstanceServiceImpl implements InstanceService {
         validateCredentials(entity);
 
         LookupDto lookup = getLookupByName(entityId, lookupName);
-        Map<String, FieldDto> fieldMap = entityService.getLookupFieldsMapping(entityId, lookupName);
+        Map<String, FieldDto> fieldMap = schemaSnapshotService.getSnapshot()
+                .getLookupFieldsMapping(entityId, lookupName);
 
         MotechDataService service = getServiceForEntity(entity);
 
@@ -311,7 +317,7 @@ public class InstanceServiceImpl implements InstanceService {
 
         validateCredentials(entity);
 
-        List<FieldDto> fields = entityService.getEntityFields(entityId);
+        List<FieldDto> fields = schemaSnapshotService.getSnapshot().getEntityFields(entityId);
 
         List<FieldInstanceDto> result = new ArrayList<>();
         for (FieldDto field : fields) {
@@ -365,7 +371,7 @@ public class InstanceServiceImpl implements InstanceService {
     @Override
     public EntityRecord newInstance(Long entityId) {
         validateCredentials(getEntity(entityId));
-        List<FieldDto> fields = entityService.getEntityFields(entityId);
+        List<FieldDto> fields = schemaSnapshotService.getSnapshot().getEntityFields(entityId);
         List<FieldRecord> fieldRecords = new ArrayList<>();
 
         for (FieldDto field : fields) {
@@ -388,7 +394,7 @@ public class InstanceServiceImpl implements InstanceService {
             throw new ObjectNotFoundException(entity.getName(), instanceId);
         }
 
-        List<FieldDto> fields = entityService.getEntityFields(entityId);
+        List<FieldDto> fields = schemaSnapshotService.getSnapshot().getEntityFields(entityId);
 
         return instanceToRecord(instance, entity, fields, service);
     }
@@ -398,7 +404,7 @@ public class InstanceServiceImpl implements InstanceService {
         validateCredentials(getEntity(entityId));
         try {
             FieldRecord fieldRecord;
-            FieldDto field = entityService.getEntityFieldById(entityId, fieldId);
+            FieldDto field = schemaSnapshotService.getSnapshot().getEntityFieldById(entityId, fieldId);
             MotechDataService service = DataServiceHelper.getDataService(bundleContext, field.getMetadata(RELATED_CLASS).getValue());
 
             Object instance = service.findById(instanceId);
@@ -435,7 +441,7 @@ public class InstanceServiceImpl implements InstanceService {
         List<FieldRecord> fieldRecords = new LinkedList<>();
 
         try {
-            for (FieldDto field : entityService.getEntityFields(entity.getId())) {
+            for (FieldDto field : schemaSnapshotService.getSnapshot().getEntityFields(entity.getId())) {
                 if ("id".equalsIgnoreCase(field.getBasic().getDisplayName())) {
                     continue;
                 }
@@ -472,7 +478,7 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     private LookupDto getLookupByName(Long entityId, String lookupName) {
-        LookupDto lookup = entityService.getLookupByName(entityId, lookupName);
+        LookupDto lookup = schemaSnapshotService.getSnapshot().getLookupByName(entityId, lookupName);
         if (lookup == null) {
             throw new LookupNotFoundException(entityId, lookupName);
         }
@@ -480,7 +486,7 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     private EntityDto getEntity(Long entityId) {
-        EntityDto entityDto = entityService.getEntity(entityId);
+        EntityDto entityDto = schemaSnapshotService.getSnapshot().getEntity(entityId);
         if (entityDto == null) {
             throw new EntityNotFoundException(entityId);
         }
@@ -509,6 +515,26 @@ public class InstanceServiceImpl implements InstanceService {
         }
     }
 
+    private boolean isProjectable(List<FieldDto> fields) {
+        for (FieldDto field : fields) {
+            if (!field.isProjectable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<String> getProjectedFields(List<FieldDto> fields) {
+        // blobs are never displayed in the grid, so they are not retrieved
+        List<String> projectedFields = new ArrayList<>(fields.size());
+        for (FieldDto field : fields) {
+            if (!field.getType().isBlob()) {
+                projectedFields.add(field.getBasic().getName());
+            }
+        }
+        return projectedFields;
+    }
+
     private List<EntityRecord> instancesToRecords(Collection instances, EntityDto entity, List<FieldDto> fields,
                                                   MotechDataService service) {
         List<EntityRecord> records = new ArrayList<>();
@@ -552,18 +578,18 @@ public class InstanceServiceImpl implements InstanceService {
                 fieldRecords.add(fieldRecord);
             }
 
-            Number id = (Number) PropertyUtil.safeGetProperty(instance, ID);
+            Number id = (Number) (instance instanceof Map ? ((Map) instance).get(ID)
+                    : PropertyUtil.safeGetProperty(instance, ID));
             return new EntityRecord(id == null ? null : id.longValue(), entityDto.getId(), fieldRecords);
         } catch (Exception e) {
             throw new ObjectReadException(entityDto.getName(), e);
         }
     }
 
-    private Map<Long, String> buildDisplayValuesMap(Collection values) throws InvocationTargetException, IllegalAccessException {
+    private Map<Long, String> buildDisplayValuesMap(Collection values) {
         Map<Long, String> displayValues = new HashMap<>();
         for (Object obj : values) {
-            Method method = MethodUtils.getAccessibleMethod(obj.getClass(), "getId", (Class[]) null);
-            Long key = (Long) method.invoke(obj);
+            Long key = (Long) PropertyUtil.safeGetProperty(obj, ID);
             String toStringResult = obj.toString();
             displayValues.put(key, toStringResult.length() > TO_STRING_MAX_LENGTH ?
                         toStringResult.substring(0 , TO_STRING_MAX_LENGTH + 1) + "..." : toStringResult);
@@ -575,10 +601,11 @@ public class InstanceServiceImpl implements InstanceService {
                                                  MotechDataService service) {
         Long entityId = entity.getId();
 
-        EntityRecord entityRecord = instanceToRecord(object, entity, entityService.getEntityFields(entityId), service);
+        EntityRecord entityRecord = instanceToRecord(object, entity,
+                schemaSnapshotService.getSnapshot().getEntityFields(entityId), service);
         Long historyInstanceSchemaVersion = (Long) PropertyUtil.safeGetProperty(object,
                 HistoryTrashClassHelper.schemaVersion(object.getClass()));
-        Long currentSchemaVersion = entityService.getCurrentSchemaVersion(entity.getClassName());
+        Long currentSchemaVersion = schemaSnapshotService.getSnapshot().getCurrentSchemaVersion(entity.getClassName());
 
         return new HistoryRecord(entityRecord.getId(), instanceId,
                 historyInstanceSchemaVersion.equals(currentSchemaVersion), entityRecord.getFields());
@@ -789,12 +816,18 @@ public class InstanceServiceImpl implements InstanceService {
 
     private Object getProperty(Object instance, FieldDto field, MotechDataService service)
             throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+        if (instance instanceof Map) {
+            // a row of a projection, blobs are not retrieved by projections of the grid
+            return field.getType().isBlob() ? ArrayUtils.EMPTY_BYTE_OBJECT_ARRAY
+                    : ((Map) instance).get(field.getBasic().getName());
+        }
+
         String fieldName = StringUtils.uncapitalize(field.getBasic().getName());
 
-        PropertyDescriptor propertyDescriptor = PropertyUtil.getPropertyDescriptor(instance, fieldName);
-        Method readMethod = propertyDescriptor.getReadMethod();
+        PropertyAccessor accessor = PropertyAccessor.forBean(instance);
+        int ordinal = accessor.indexOf(fieldName);
 
-        if (readMethod == null) {
+        if (!accessor.isReadable(ordinal)) {
             throw new NoSuchMethodException(String.format("No getter for field %s", fieldName));
         }
 
@@ -803,7 +836,7 @@ public class InstanceServiceImpl implements InstanceService {
         }
 
         try {
-            return readMethod.invoke(instance);
+            return accessor.get(instance, ordinal);
         } catch (InvocationTargetException e) {
             LOGGER.debug("Invocation target exception thrown when retrieving field {}. This may indicate a non loaded field",
                     fieldName, e);
@@ -918,8 +951,8 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     @Autowired
-    public void setEntityService(EntityService entityService) {
-        this.entityService = entityService;
+    public void setSchemaSnapshotService(SchemaSnapshotService schemaSnapshotService) {
+        this.schemaSnapshotService = schemaSnapshotService;
     }
 
     @Autowired
@@ -1888,6 +1888,7 @@
             var newLookup = {
                 lookupName: $scope.getLookupNameForNewLookup(),
                 singleObjectReturn: true,
+                indexRequired: false,
                 lookupFields: []
             };
 
@@ -20,6 +20,7 @@ import org.motechproject.mds.ex.entity.EntityNotFoundException;
 import org.motechproject.mds.ex.entity.EntityReadOnlyException;
 import org.motechproject.mds.service.EntityService;
 import org.motechproject.mds.service.MdsBundleRegenerationService;
+import org.motechproject.mds.service.SchemaSnapshotService;
 import org.motechproject.mds.util.SecurityMode;
 import org.motechproject.mds.web.ExampleData;
 import org.motechproject.mds.web.SelectData;
@@ -56,6 +57,9 @@ public class EntityControllerTest {
     @Mock
     private MdsBundleRegenerationService mdsBundleRegenerationService;
 
+    @Mock
+    private SchemaSnapshotService schemaSnapshotService;
+
     private EntityController controller;
 
     private final ExampleData exampleData = new ExampleData();
@@ -67,6 +71,7 @@ public class EntityControllerTest {
         controller = new EntityController();
         controller.setEntityService(entityService);
         controller.setMdsBundleRegenerationService(mdsBundleRegenerationService);
+        controller.setSchemaSnapshotService(schemaSnapshotService);
 
         when(entityService.listEntities()).thenReturn(TestData.getEntities());
 
@@ -128,10 +133,14 @@ public class EntityControllerTest {
 
     @Test
     public void shouldDeleteEntity() throws Exception {
+        EntityDto entity = new EntityDto(9007L, "org.motechproject.Sample");
+        when(entityService.getEntity(9007L)).thenReturn(entity);
+
         controller.deleteEntity(9007L);
 
         ArgumentCaptor<Long> captor = ArgumentCaptor.forClass(Long.class);
         verify(entityService).deleteEntity(captor.capture());
+        verify(schemaSnapshotService).refreshEntity("org.motechproject.Sample");
 
         assertEquals(Long.valueOf(9007), captor.getValue());
     }
@@ -2,14 +2,18 @@ package org.motechproject.mds.web.rest;
 
 import org.junit.Test;
 import org.motechproject.mds.query.QueryParams;
+import org.motechproject.mds.rest.ContinuationToken;
 import org.motechproject.mds.util.Order;
+import org.motechproject.mds.web.ex.InvalidParameterException;
 
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class ParamParserTest {
 
@@ -49,6 +53,51 @@ public class ParamParserTest {
         assertEquals(Order.Direction.ASC, queryParams.getOrder().getDirection());
     }
 
+    @Test
+    public void shouldBuildKeysetQueryParams() {
+        Map<String, String> requestParams = new HashMap<>();
+        requestParams.put("pageSize", "50");
+        requestParams.put("sort", "name");
+        requestParams.put("keyset", "true");
+
+        QueryParams queryParams = ParamParser.buildQueryParams(requestParams);
+
+        assertTrue(queryParams.isKeysetSet());
+        assertFalse(queryParams.isAfterSet());
+        assertNull(queryParams.getPage());
+        assertEquals(Integer.valueOf(50), queryParams.getPageSize());
+
+        String token = ContinuationToken.create(queryParams, new KeysetRecord(15L, "Smith"));
+        requestParams.remove("keyset");
+        requestParams.put("after", token);
+
+        queryParams = ParamParser.buildQueryParams(requestParams);
+
+        assertTrue(queryParams.isAfterSet());
+        assertEquals(Long.valueOf(15), queryParams.getLastId());
+        assertEquals("Smith", queryParams.getLastValue());
+        assertEquals("name", queryParams.getKeysetField());
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void shouldRejectTokenCreatedForDifferentOrder() {
+        Map<String, String> requestParams = new HashMap<>();
+        requestParams.put("sort", "name");
+
+        String token = ContinuationToken.create(QueryParams.keysetFirst(10, null), new KeysetRecord(15L, "Smith"));
+        requestParams.put("after", token);
+
+        ParamParser.buildQueryParams(requestParams);
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void shouldRejectMalformedToken() {
+        Map<String, String> requestParams = new HashMap<>();
+        requestParams.put("after", "not-a-token");
+
+        ParamParser.buildQueryParams(requestParams);
+    }
+
     @Test
     public void shouldGetLookupName() {
         Map<String, String> requestParams = new HashMap<>();
@@ -66,4 +115,23 @@ public class ParamParserTest {
         requestParams.put("id", "14");
         assertEquals(Long.valueOf(14), ParamParser.getId(requestParams));
     }
+
+    public static class KeysetRecord {
+
+        private Long id;
+        private String name;
+
+        public KeysetRecord(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
 }
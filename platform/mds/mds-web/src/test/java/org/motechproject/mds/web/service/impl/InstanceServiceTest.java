@@ -13,6 +13,7 @@ import org.motechproject.commons.date.util.DateUtil;
 import org.motechproject.mds.dto.EntityDto;
 import org.motechproject.mds.dto.FieldDto;
 import org.motechproject.mds.dto.LookupDto;
+import org.motechproject.mds.dto.SchemaSnapshot;
 import org.motechproject.mds.dto.TypeDto;
 import org.motechproject.mds.ex.entity.EntityInstancesNonEditableException;
 import org.motechproject.mds.ex.entity.EntityNotFoundException;
@@ -20,8 +21,8 @@ import org.motechproject.mds.ex.object.ObjectNotFoundException;
 import org.motechproject.mds.ex.object.ObjectUpdateException;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.service.DefaultMotechDataService;
-import org.motechproject.mds.service.EntityService;
 import org.motechproject.mds.service.MotechDataService;
+import org.motechproject.mds.service.SchemaSnapshotService;
 import org.motechproject.mds.service.TrashService;
 import org.motechproject.mds.util.ClassName;
 import org.motechproject.mds.util.Constants;
@@ -73,7 +74,10 @@ public class InstanceServiceTest {
     private InstanceService instanceService = new InstanceServiceImpl();
 
     @Mock
-    private EntityService entityService;
+    private SchemaSnapshotService schemaSnapshotService;
+
+    @Mock
+    private SchemaSnapshot schemaSnapshot;
 
     @Mock
     private EntityDto entity;
@@ -90,6 +94,7 @@ public class InstanceServiceTest {
     @Before
     public void setUp() {
         when(bundleContext.getBundles()).thenReturn(new Bundle[0]);
+        when(schemaSnapshotService.getSnapshot()).thenReturn(schemaSnapshot);
     }
 
     @Test
@@ -363,7 +368,7 @@ public class InstanceServiceTest {
         mockEntity();
 
         EntityDto entityWithRelatedField = mock(EntityDto.class);
-        when(entityService.getEntity(ENTITY_ID + 1)).thenReturn(entityWithRelatedField);
+        when(schemaSnapshot.getEntity(ENTITY_ID + 1)).thenReturn(entityWithRelatedField);
         when(entityWithRelatedField.getClassName()).thenReturn(AnotherSample.class.getName());
 
         ServiceReference serviceReferenceForClassWithRelatedField = mock(ServiceReference.class);
@@ -375,7 +380,7 @@ public class InstanceServiceTest {
         when(motechDataService.findById(5l)).thenReturn(test2);
         when(motechDataService.findById(6l)).thenReturn(test3);
 
-        when(entityService.getEntityFields(ENTITY_ID + 1)).thenReturn(asList(
+        when(schemaSnapshot.getEntityFields(ENTITY_ID + 1)).thenReturn(asList(
                 FieldTestHelper.fieldDto(5L, "title", String.class.getName(), "String field", "Default"),
                 FieldTestHelper.fieldDto(6L, "testSamples", TypeDto.ONE_TO_MANY_RELATIONSHIP.getTypeClass(), "Related field", null)
         ));
@@ -415,7 +420,7 @@ public class InstanceServiceTest {
         EntityRecord entityRecord = new EntityRecord(null, ENTITY_ID + 1, fieldRecords);
 
         EntityDto entityWithRelatedField = mock(EntityDto.class);
-        when(entityService.getEntity(ENTITY_ID + 1)).thenReturn(entityWithRelatedField);
+        when(schemaSnapshot.getEntity(ENTITY_ID + 1)).thenReturn(entityWithRelatedField);
         when(entityWithRelatedField.getClassName()).thenReturn(AnotherSample.class.getName());
 
         ServiceReference serviceReferenceForAnotherSample = mock(ServiceReference.class);
@@ -450,7 +455,7 @@ public class InstanceServiceTest {
         nonEditableEntity.setNonEditable(true);
         EntityRecord entityRecord = new EntityRecord(null, ENTITY_ID + 1, new ArrayList<FieldRecord>());
 
-        when(entityService.getEntity(ENTITY_ID + 1)).thenReturn(nonEditableEntity);
+        when(schemaSnapshot.getEntity(ENTITY_ID + 1)).thenReturn(nonEditableEntity);
 
         instanceService.saveInstance(entityRecord);
     }
@@ -460,7 +465,7 @@ public class InstanceServiceTest {
         EntityDto nonEditableEntity = new EntityDto();
         nonEditableEntity.setNonEditable(true);
 
-        when(entityService.getEntity(ENTITY_ID + 1)).thenReturn(nonEditableEntity);
+        when(schemaSnapshot.getEntity(ENTITY_ID + 1)).thenReturn(nonEditableEntity);
 
         instanceService.deleteInstance(ENTITY_ID + 1, INSTANCE_ID);
     }
@@ -470,7 +475,7 @@ public class InstanceServiceTest {
         mockEntity(SubclassSample.class, ENTITY_ID, entity);
         mockDataService(SubclassSample.class, motechDataService);
         when(motechDataService.retrieve("id", INSTANCE_ID)).thenReturn(new SubclassSample());
-        when(entityService.getEntityFields(ENTITY_ID)).thenReturn(asList(
+        when(schemaSnapshot.getEntityFields(ENTITY_ID)).thenReturn(asList(
                 FieldTestHelper.fieldDto(1L, "superclassInteger", Integer.class.getName(), "Superclass Integer", 7),
                 FieldTestHelper.fieldDto(2L, "subclassString", String.class.getName(), "Subclass String", "test"),
                 FieldTestHelper.fieldDto(3L, "superclassRelation", TypeDto.ONE_TO_ONE_RELATIONSHIP.getTypeClass(), "Superclass Relationship", null)
@@ -581,7 +586,7 @@ public class InstanceServiceTest {
 
     private void mockSampleFields() {
 
-        when(entityService.getEntityFields(ENTITY_ID)).thenReturn(asList(
+        when(schemaSnapshot.getEntityFields(ENTITY_ID)).thenReturn(asList(
                 FieldTestHelper.fieldDto(1L, "strField", String.class.getName(), "String field", "Default"),
                 FieldTestHelper.fieldDto(2L, "intField", Integer.class.getName(), "Integer field", 7),
                 FieldTestHelper.fieldDto(3L, "dtField", DateTime.class.getName(), "DateTime field", null),
@@ -599,7 +604,7 @@ public class InstanceServiceTest {
     }
 
     private void mockEntity(Class<?> entityClass, long entityId, EntityDto entity) {
-        when(entityService.getEntity(entityId)).thenReturn(entity);
+        when(schemaSnapshot.getEntity(entityId)).thenReturn(entity);
         when(entity.getClassName()).thenReturn(entityClass.getName());
         when(entity.getId()).thenReturn(entityId);
     }
@@ -607,22 +612,22 @@ public class InstanceServiceTest {
     private void mockLookups() {
         LookupDto lookup = new LookupDto(TestDataService.LOOKUP_1_NAME, true, true,
                 asList(FieldTestHelper.lookupFieldDto(1L, "strField")), true, "singleObject", asList("strField"));
-        when(entityService.getLookupByName(ENTITY_ID, TestDataService.LOOKUP_1_NAME)).thenReturn(lookup);
+        when(schemaSnapshot.getLookupByName(ENTITY_ID, TestDataService.LOOKUP_1_NAME)).thenReturn(lookup);
         Map<String, FieldDto> mapping = new HashMap<>();
         mapping.put("strField", FieldTestHelper.fieldDto(1L, "strField", String.class.getName(), "String field", "Default"));
-        when(entityService.getLookupFieldsMapping(ENTITY_ID, TestDataService.LOOKUP_1_NAME)).thenReturn(mapping);
+        when(schemaSnapshot.getLookupFieldsMapping(ENTITY_ID, TestDataService.LOOKUP_1_NAME)).thenReturn(mapping);
 
         lookup = new LookupDto(TestDataService.LOOKUP_2_NAME, false, true,
                 asList(FieldTestHelper.lookupFieldDto(1L, "strField")), false, "multiObject", asList("strField"));
-        when(entityService.getLookupByName(ENTITY_ID, TestDataService.LOOKUP_2_NAME)).thenReturn(lookup);
-        when(entityService.getLookupFieldsMapping(ENTITY_ID, TestDataService.LOOKUP_2_NAME)).thenReturn(mapping);
+        when(schemaSnapshot.getLookupByName(ENTITY_ID, TestDataService.LOOKUP_2_NAME)).thenReturn(lookup);
+        when(schemaSnapshot.getLookupFieldsMapping(ENTITY_ID, TestDataService.LOOKUP_2_NAME)).thenReturn(mapping);
 
         lookup = new LookupDto(TestDataService.NULL_EXPECTING_LOOKUP_NAME, false, true,
                 asList(FieldTestHelper.lookupFieldDto(3L, "dtField")), false, "nullParamExpected", asList("dtField"));
-        when(entityService.getLookupByName(ENTITY_ID, TestDataService.NULL_EXPECTING_LOOKUP_NAME)).thenReturn(lookup);
+        when(schemaSnapshot.getLookupByName(ENTITY_ID, TestDataService.NULL_EXPECTING_LOOKUP_NAME)).thenReturn(lookup);
         mapping = new HashMap<>();
         mapping.put("dtField", FieldTestHelper.fieldDto(3L, "dtField", DateTime.class.getName(), "DateTime field", null));
-        when(entityService.getLookupFieldsMapping(ENTITY_ID, TestDataService.NULL_EXPECTING_LOOKUP_NAME)).thenReturn(mapping);
+        when(schemaSnapshot.getLookupFieldsMapping(ENTITY_ID, TestDataService.NULL_EXPECTING_LOOKUP_NAME)).thenReturn(mapping);
     }
 
     private void mockLookupService() {
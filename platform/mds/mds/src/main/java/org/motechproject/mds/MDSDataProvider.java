@@ -6,11 +6,10 @@ import org.motechproject.commons.api.AbstractDataProvider;
 import org.motechproject.commons.api.DataProvider;
 import org.motechproject.mds.builder.MDSDataProviderBuilder;
 import org.motechproject.mds.dto.EntityDto;
-import org.motechproject.mds.dto.FieldDto;
-import org.motechproject.mds.dto.LookupDto;
 import org.motechproject.mds.ex.dataprovider.DataProviderException;
 import org.motechproject.mds.javassist.MotechClassPool;
 import org.motechproject.mds.lookup.LookupExecutor;
+import org.motechproject.mds.lookup.LookupExecutorCache;
 import org.motechproject.mds.service.EntityService;
 import org.motechproject.mds.service.MotechDataService;
 import org.motechproject.mds.util.Constants;
@@ -42,6 +41,7 @@ public class MDSDataProvider extends AbstractDataProvider {
     private BundleContext bundleContext;
     private ServiceRegistration serviceRegistration;
     private EntityService entityService;
+    private LookupExecutorCache lookupExecutorCache;
 
     @Autowired
     public MDSDataProvider(ResourceLoader resourceLoader) {
@@ -86,25 +86,9 @@ public class MDSDataProvider extends AbstractDataProvider {
     private Object findUsingLookup(String type, String lookupName, Map<String, String> lookupMap) {
         Object obj = null;
 
-        LookupDto lookup = null;
-        EntityDto entity = entityService.getEntityByClassName(type);
-        if (entity != null) {
-            lookup = entityService.getLookupByName(entity.getId(), lookupName);
-        }
-
-        if (entity != null && lookup != null) {
-            String serviceName = MotechClassPool.getInterfaceName(type);
-            MotechDataService service = OSGiServiceUtils.findService(bundleContext, serviceName);
-
-            if (service != null) {
-                Map<String, FieldDto> fieldsByName = entityService.getLookupFieldsMapping(entity.getId(), lookupName);
-
-                LookupExecutor executor = new LookupExecutor(service, lookup, fieldsByName);
-
-                obj = executor.execute(lookupMap);
-            } else {
-                getLogger().error("Service %s not found", serviceName);
-            }
+        LookupExecutor executor = lookupExecutorCache.getExecutor(type, lookupName);
+        if (executor != null) {
+            obj = executor.execute(lookupMap);
         }
 
         // we allow executing lookups that return multiple objects
@@ -189,6 +173,11 @@ public class MDSDataProvider extends AbstractDataProvider {
         this.bundleContext = bundleContext;
     }
 
+    @Autowired
+    public void setLookupExecutorCache(LookupExecutorCache lookupExecutorCache) {
+        this.lookupExecutorCache = lookupExecutorCache;
+    }
+
     @Autowired
     public void setEntityService(EntityService entityService) {
         this.entityService = entityService;
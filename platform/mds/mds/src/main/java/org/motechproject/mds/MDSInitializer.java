@@ -1,11 +1,13 @@
 package org.motechproject.mds;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.motechproject.mds.config.MdsConfig;
 import org.motechproject.mds.ex.MdsInitializationException;
 import org.motechproject.mds.osgi.EntitiesBundleMonitor;
 import org.motechproject.mds.osgi.MdsBundleWatcher;
 import org.motechproject.mds.osgi.MdsWeavingHook;
+import org.motechproject.mds.reflections.BundleScanCache;
 import org.motechproject.server.osgi.util.PlatformConstants;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.hooks.weaving.WeavingHook;
@@ -21,6 +23,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 
+import static org.motechproject.mds.util.Constants.Config.MDS_SCAN_CACHE_ENABLED;
+import static org.motechproject.mds.util.Constants.Config.MODULE_FILE;
+
 /**
  * The purpose of this class is to build classes for all entities that are in MDS database at startup.
  * It uses the {@link org.motechproject.mds.builder.MDSConstructor} for generation. Since @PostConstruct does
@@ -61,6 +66,9 @@ public class MDSInitializer {
             throw new MdsInitializationException("Error while starting the entities bundle monitor: " + e.getMessage(), e);
         }
 
+        BundleScanCache.setEnabled(Boolean.parseBoolean(StringUtils.trim(
+                mdsConfig.getProperties(MODULE_FILE).getProperty(MDS_SCAN_CACHE_ENABLED))));
+
         // start the bundle watcher
         LOGGER.info("Starting MDS Bundle Watcher");
         try {
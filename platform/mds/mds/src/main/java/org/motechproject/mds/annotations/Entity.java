@@ -79,4 +79,24 @@ public @interface Entity {
      * @return the maximum fetch depth that will be used for the given entity
      */
     int maxFetchDepth() default Constants.FetchDepth.MDS_DEFAULT;
+
+    /**
+     * Sets whether instances and lookup results of this entity should be cached. Caching is meant for
+     * small, read-mostly entities that are read far more often than they are changed. The cache is
+     * invalidated on every change made through the data service of the entity, on all Motech instances.
+     *
+     * @return true if instances and lookup results should be cached, otherwise false.
+     */
+    boolean cacheable() default false;
+
+    /**
+     * Sets whether the history of this entity should be recorded in the compact form. Instead of a full copy
+     * of the instance, a revision then contains only the fields changed since the previous revision and it is
+     * stored asynchronously, after the transaction commits. Full revisions are reconstructed when the history
+     * is read. Relationship and blob fields are not recorded in the compact form. Has no effect if history
+     * is not recorded.
+     *
+     * @return true if history should be recorded in the compact form, otherwise false.
+     */
+    boolean compactHistory() default false;
 }
@@ -0,0 +1,25 @@
+package org.motechproject.mds.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The <code>Indexed</code> annotation is used to mark a field for which a database index should
+ * be created. Fields used in lookups are indexed anyway, this annotation should be used for fields
+ * that are queried in other ways, for example in custom queries. The discovery logic for this
+ * annotation is done in {@link org.motechproject.mds.annotations.internal.FieldProcessor}.
+ * <p/>
+ * Only fields, 'getter' or 'setter' methods can have this annotation for other methods this
+ * annotation is omitted.
+ *
+ * @see org.motechproject.mds.annotations.internal.FieldProcessor
+ */
+@Target({ ElementType.FIELD, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Indexed {
+
+}
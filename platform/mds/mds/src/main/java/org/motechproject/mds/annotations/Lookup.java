@@ -27,4 +27,14 @@ public @interface Lookup {
      */
     String name() default "";
 
+    /**
+     * Sets whether a composite database index on all fields of the lookup should be created. Every
+     * field used in a lookup gets its own index, so this is only useful for lookups on more than
+     * one field, where a single index covering all of them lets the database avoid merging the
+     * results of separate indexes.
+     *
+     * @return true if a composite index for the lookup should be created; otherwise false.
+     */
+    boolean indexRequired() default false;
+
 }
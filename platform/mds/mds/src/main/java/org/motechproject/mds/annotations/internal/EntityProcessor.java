@@ -34,6 +34,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import static org.motechproject.mds.util.Constants.AnnotationFields.CACHEABLE;
+import static org.motechproject.mds.util.Constants.AnnotationFields.COMPACT_HISTORY;
 import static org.motechproject.mds.util.Constants.AnnotationFields.HISTORY;
 import static org.motechproject.mds.util.Constants.AnnotationFields.MAX_FETCH_DEPTH;
 import static org.motechproject.mds.util.Constants.AnnotationFields.MODULE;
@@ -105,6 +107,8 @@ class EntityProcessor extends AbstractListProcessor<Entity, EntityDto> {
 
             boolean recordHistory = Boolean.parseBoolean(ReflectionsUtil.getAnnotationValue(annotation, HISTORY));
             boolean nonEditable = Boolean.parseBoolean(ReflectionsUtil.getAnnotationValue(annotation, NON_EDITABLE));
+            boolean cacheable = Boolean.parseBoolean(ReflectionsUtil.getAnnotationValue(annotation, CACHEABLE));
+            boolean compactHistory = Boolean.parseBoolean(ReflectionsUtil.getAnnotationValue(annotation, COMPACT_HISTORY));
 
             EntityDto entity = entityService.getEntityByClassName(className);
             RestOptionsDto restOptions = new RestOptionsDto();
@@ -130,6 +134,8 @@ class EntityProcessor extends AbstractListProcessor<Entity, EntityDto> {
             if (!tracking.isModifiedByUser()) {
                 tracking.setRecordHistory(recordHistory);
                 tracking.setNonEditable(nonEditable);
+                tracking.setCacheable(cacheable);
+                tracking.setCompactHistory(compactHistory);
             }
 
             setSecurityOptions(element, entity);
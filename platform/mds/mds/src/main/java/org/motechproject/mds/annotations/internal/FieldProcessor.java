@@ -8,6 +8,7 @@ import org.motechproject.mds.annotations.Cascade;
 import org.motechproject.mds.annotations.Entity;
 import org.motechproject.mds.annotations.Field;
 import org.motechproject.mds.annotations.InSet;
+import org.motechproject.mds.annotations.Indexed;
 import org.motechproject.mds.annotations.NotInSet;
 import org.motechproject.mds.domain.ComboboxHolder;
 import org.motechproject.mds.domain.ManyToManyRelationship;
@@ -205,6 +206,7 @@ class FieldProcessor extends AbstractListProcessor<Field, FieldDto> {
             field.setReadOnly(true);
             field.setNonEditable(false);
             field.setNonDisplayable(false);
+            field.setIndexed(ReflectionsUtil.hasAnnotationClassLoaderSafe(ac, declaringClass, Indexed.class));
 
             setFieldSettings(ac, classType, isRelationship, isTextArea, field);
             setFieldMetadata(classType, genericType, valueType, isCollection, isRelationship, relatedFieldIsCollection,
@@ -113,6 +113,7 @@ class LookupProcessor extends AbstractMapProcessor<Lookup, String, List<LookupDt
         lookup.setLookupFields(lookupFields);
         lookup.setReadOnly(true);
         lookup.setMethodName(method.getName());
+        lookup.setIndexRequired(annotation.indexRequired());
 
         if (!restOptionsModifiedByUser(entity)) {
             lookup.setExposedViaRest(restExposed);
@@ -1,6 +1,7 @@
 package org.motechproject.mds.builder;
 
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This interface provides methods to create a class for the given entity. The implementation of this
@@ -28,6 +29,17 @@ public interface MDSConstructor {
      */
     boolean constructEntities();
 
+    /**
+     * Returns the class names of the entities, which classes were built by the last call of
+     * {@link #constructEntities()}. Only the entities affected by the changes made since the previous
+     * construction are built - the changed entities, the entities related with them and their subclasses.
+     * The classes of other entities are reused. When the classes were constructed from scratch, all entities
+     * are returned.
+     *
+     * @return the class names of the entities built by the last construction
+     */
+    Set<String> getLastBuiltEntities();
+
     /**
      * Updates the field names of an entity. This method alters the database schema by changing
      * column names to the new value. This is done for the entity instances, history instances
@@ -133,6 +133,12 @@ public class EntityBuilderImpl implements EntityBuilder {
                     addProperty(
                             declaring, Long.class.getName(), simpleName + "SchemaVersion", null
                     );
+
+                    // this field contains names of fields stored in a compact revision,
+                    // it is empty for revisions containing all fields
+                    addProperty(
+                            declaring, String.class.getName(), simpleName + "ChangedFields", null
+                    );
                     break;
                 case TRASH:
                     // this field contains information about the schema version of an entity
@@ -13,6 +13,7 @@ import org.motechproject.mds.domain.Entity;
 import org.motechproject.mds.domain.EntityType;
 import org.motechproject.mds.domain.Field;
 import org.motechproject.mds.domain.FieldSetting;
+import org.motechproject.mds.domain.Lookup;
 import org.motechproject.mds.domain.RelationshipHolder;
 import org.motechproject.mds.domain.Type;
 import org.motechproject.mds.helper.ClassTableName;
@@ -21,6 +22,7 @@ import org.motechproject.mds.reflections.ReflectionsUtil;
 import org.motechproject.mds.repository.AllEntities;
 import org.motechproject.mds.util.ClassName;
 import org.motechproject.mds.util.Constants;
+import org.motechproject.mds.util.LookupName;
 import org.motechproject.mds.util.TypeHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +49,7 @@ import javax.jdo.metadata.ColumnMetadata;
 import javax.jdo.metadata.ElementMetadata;
 import javax.jdo.metadata.FieldMetadata;
 import javax.jdo.metadata.ForeignKeyMetadata;
+import javax.jdo.metadata.IndexMetadata;
 import javax.jdo.metadata.InheritanceMetadata;
 import javax.jdo.metadata.JDOMetadata;
 import javax.jdo.metadata.JoinMetadata;
@@ -54,10 +57,15 @@ import javax.jdo.metadata.MapMetadata;
 import javax.jdo.metadata.MemberMetadata;
 import javax.jdo.metadata.PackageMetadata;
 import javax.jdo.metadata.ValueMetadata;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.apache.commons.lang.StringUtils.defaultIfBlank;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
+import static org.apache.commons.lang.StringUtils.uncapitalize;
 import static org.motechproject.mds.util.Constants.MetadataKeys.DATABASE_COLUMN_NAME;
 import static org.motechproject.mds.util.Constants.MetadataKeys.MAP_KEY_TYPE;
 import static org.motechproject.mds.util.Constants.MetadataKeys.MAP_VALUE_TYPE;
@@ -81,6 +89,8 @@ public class EntityMetadataBuilderImpl implements EntityMetadataBuilder {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EntityMetadataBuilderImpl.class);
 
+    private static final int MAX_INDEX_NAME_LENGTH = 60;
+
     private static final String[] FIELD_VALUE_GENERATOR = new String[]{
             CREATOR_FIELD_NAME, OWNER_FIELD_NAME, CREATION_DATE_FIELD_NAME,
             MODIFIED_BY_FIELD_NAME, MODIFICATION_DATE_FIELD_NAME
@@ -101,6 +111,8 @@ public class EntityMetadataBuilderImpl implements EntityMetadataBuilder {
         cmd.setDetachable(true);
         cmd.setIdentityType(IdentityType.APPLICATION);
         cmd.setPersistenceModifier(ClassPersistenceModifier.PERSISTENCE_CAPABLE);
+        // only entities that opted in are kept in the level 2 cache, see MdsConfig#getEntitiesDataNucleusProperties
+        cmd.setCacheable(entity.isCacheable());
 
         addInheritanceMetadata(cmd, definition);
 
@@ -109,6 +121,7 @@ public class EntityMetadataBuilderImpl implements EntityMetadataBuilder {
         }
 
         addMetadataForFields(cmd, null, entity, EntityType.STANDARD, definition);
+        addLookupIndexMetadata(cmd, entity, tableName);
     }
 
     @Override
@@ -135,6 +148,10 @@ public class EntityMetadataBuilderImpl implements EntityMetadataBuilder {
         if (entity != null) {
             addMetadataForFields(cmd, classData, entity, entityType, definition);
         }
+
+        if (entityType == EntityType.HISTORY) {
+            addChangedFieldsMetadata(cmd, simpleName);
+        }
     }
 
     @Override
@@ -170,6 +187,15 @@ public class EntityMetadataBuilderImpl implements EntityMetadataBuilder {
         addHelperClassMetadata(jdoMetadata, classData, null, entityType, definition);
     }
 
+    private void addChangedFieldsMetadata(ClassMetadata cmd, String simpleName) {
+        // the list of changed fields of a compact revision can be longer than the default column length
+        FieldMetadata fmd = cmd.newFieldMetadata(uncapitalize(simpleName) + "ChangedFields");
+        fmd.setPersistenceModifier(PersistenceModifier.PERSISTENT);
+
+        ColumnMetadata colMd = fmd.newColumnMetadata();
+        colMd.setSQLType("CLOB");
+    }
+
     private void fixCollectionMetadata(CollectionMetadata collMd) {
         String elementType = collMd.getElementType();
         String trimmedElementType = ClassName.trimTrashHistorySuffix(elementType);
@@ -234,8 +260,8 @@ public class EntityMetadataBuilderImpl implements EntityMetadataBuilder {
                 if (isFieldNotInherited(fieldName, entity)) {
                     fmd = setFieldMetadata(cmd, classData, entity, entityType, field, definition);
                 }
-                // when field is in Lookup, we set field metadata indexed to retrieve instance faster
-                if (!field.getLookups().isEmpty() && entityType.equals(EntityType.STANDARD)) {
+                // when field is in Lookup or marked as indexed, we set field metadata indexed to retrieve instance faster
+                if ((field.isIndexed() || !field.getLookups().isEmpty()) && entityType.equals(EntityType.STANDARD)) {
                     if (fmd == null) {
                         String inheritedFieldName = ClassName.getSimpleName(entity.getSuperClass()) + "." + fieldName;
                         fmd = cmd.newFieldMetadata(inheritedFieldName);
@@ -251,6 +277,80 @@ public class EntityMetadataBuilderImpl implements EntityMetadataBuilder {
         }
     }
 
+    private void addLookupIndexMetadata(ClassMetadata cmd, Entity entity, String tableName) {
+        for (Lookup lookup : entity.getLookups()) {
+            if (lookup.isIndexRequired()) {
+                List<String> members = getLookupIndexMembers(lookup, entity);
+
+                // single field lookups are covered by the index of the field
+                if (members.size() > 1) {
+                    IndexMetadata imd = cmd.newIndexMetadata();
+                    imd.setName(getLookupIndexName(tableName, lookup));
+
+                    for (String member : members) {
+                        imd.newFieldMetadata(member);
+                    }
+                }
+            }
+        }
+    }
+
+    private List<String> getLookupIndexMembers(Lookup lookup, Entity entity) {
+        Set<String> members = new LinkedHashSet<>();
+
+        List<String> lookupFieldNames = new ArrayList<>(lookup.getFieldsOrder());
+        if (lookupFieldNames.isEmpty()) {
+            for (Field field : lookup.getFields()) {
+                lookupFieldNames.add(field.getName());
+            }
+        }
+
+        for (String lookupFieldName : lookupFieldNames) {
+            Field field = lookup.getLookupFieldByName(LookupName.getFieldName(lookupFieldName));
+
+            if (field == null || !isFieldIndexable(field, entity)) {
+                LOGGER.warn("Field {} of lookup {} cannot be a part of a composite index, no index will be created " +
+                        "for the lookup", lookupFieldName, lookup.getLookupName());
+                return new ArrayList<>();
+            }
+
+            members.add(getNameForMetadata(field));
+        }
+
+        return new ArrayList<>(members);
+    }
+
+    private boolean isFieldIndexable(Field field, Entity entity) {
+        Type type = field.getType();
+
+        if (type.isRelationship()) {
+            RelationshipHolder holder = new RelationshipHolder(field);
+            // collections of related instances are not stored in the table of the entity
+            if (holder.isOneToMany() || holder.isManyToMany()) {
+                return false;
+            }
+        } else if (type.isCombobox()) {
+            if (new ComboboxHolder(field).isCollection()) {
+                return false;
+            }
+        } else if (Map.class.isAssignableFrom(type.getTypeClass())) {
+            return false;
+        }
+
+        return isFieldNotInherited(getNameForMetadata(field), entity);
+    }
+
+    private String getLookupIndexName(String tableName, Lookup lookup) {
+        String name = String.format("%s_%s_IDX", tableName, lookup.getMethodName());
+
+        // keep the name within the identifier length limits of the supported databases
+        if (name.length() > MAX_INDEX_NAME_LENGTH) {
+            name = String.format("LKP_%s_IDX", Integer.toHexString(name.hashCode()));
+        }
+
+        return name;
+    }
+
     private boolean isFieldRequired(Field field, EntityType entityType) {
         return field.isRequired() && !(entityType.equals(EntityType.TRASH) && field.getType().isRelationship());
     }
@@ -3,8 +3,11 @@ package org.motechproject.mds.builder.impl;
 import javassist.ByteArrayClassPath;
 import javassist.CannotCompileException;
 import javassist.CtClass;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.motechproject.commons.sql.service.SqlDBManager;
 import org.motechproject.mds.builder.EntityBuilder;
 import org.motechproject.mds.builder.EntityInfrastructureBuilder;
@@ -20,8 +23,11 @@ import org.motechproject.mds.domain.Field;
 import org.motechproject.mds.domain.Type;
 import org.motechproject.mds.enhancer.MdsJDOEnhancer;
 import org.motechproject.mds.ex.entity.EntityCreationException;
+import org.motechproject.mds.helper.EntityHelper;
 import org.motechproject.mds.helper.EntitySorter;
+import org.motechproject.mds.helper.MdsBundleHelper;
 import org.motechproject.mds.util.JavassistUtil;
+import org.motechproject.mds.javassist.EnhancedClassCache;
 import org.motechproject.mds.javassist.JavassistLoader;
 import org.motechproject.mds.javassist.MotechClassPool;
 import org.motechproject.mds.repository.AllEntities;
@@ -50,12 +56,20 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.motechproject.mds.util.Constants.Config.MDS_CLASS_CACHE_ENABLED;
+import static org.motechproject.mds.util.Constants.Config.MDS_INCREMENTAL_BUILD_ENABLED;
 
 /**
  * Default implementation of {@link org.motechproject.mds.builder.MDSConstructor} interface.
@@ -64,6 +78,7 @@ import java.util.Properties;
 public class MDSConstructorImpl implements MDSConstructor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MDSConstructorImpl.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
     private MdsConfig mdsConfig;
     private AllEntities allEntities;
@@ -75,6 +90,12 @@ public class MDSConstructorImpl implements MDSConstructor {
     private EnumBuilder enumBuilder;
     private PersistenceManagerFactory persistenceManagerFactory;
     private SqlDBManager sqlDBManager;
+    private EnhancedClassCache enhancedClassCache;
+
+    // the classes of the last construction, reused for the entities not affected by later changes
+    private Map<String, ConstructedEntity> constructedEntities = new HashMap<>();
+    private String constructedGlobalKey;
+    private Set<String> lastBuiltEntities = new HashSet<>();
 
     @Override
     public synchronized boolean constructEntities() {
@@ -83,6 +104,12 @@ public class MDSConstructorImpl implements MDSConstructor {
         MotechClassPool.clearEnhancedData();
         MDSClassLoader.reloadClassLoader();
 
+        // the classes of the previous construction are reused only if this construction succeeds
+        Map<String, ConstructedEntity> previousEntities = constructedEntities;
+        String previousGlobalKey = constructedGlobalKey;
+        constructedEntities = new HashMap<>();
+        constructedGlobalKey = null;
+
         // we need an jdo enhancer and a temporary classLoader
         // to define classes in before enhancement
         MDSClassLoader tmpClassLoader = MDSClassLoader.getStandaloneInstance();
@@ -94,6 +121,23 @@ public class MDSConstructorImpl implements MDSConstructor {
         filterEntities(entities);
         sortEntities(entities);
 
+        String globalKey = getGlobalKey();
+        Map<String, String> entityKeys = getEntityKeys(entities);
+
+        String cacheKey = isEnabled(MDS_CLASS_CACHE_ENABLED) ? getClassCacheKey(globalKey, entityKeys) : null;
+        if (enhancedClassCache.restore(cacheKey)) {
+            // the restored classes were not built in this class pool, the next construction starts from scratch
+            lastBuiltEntities = new HashSet<>(entityKeys.keySet());
+            return CollectionUtils.isNotEmpty(entities);
+        }
+
+        Set<String> affected = isEnabled(MDS_INCREMENTAL_BUILD_ENABLED) && globalKey.equals(previousGlobalKey)
+                ? getAffectedEntities(entities, entityKeys, previousEntities)
+                : entityKeys.keySet();
+        List<Entity> entitiesToBuild = getEntitiesToBuild(entities, affected);
+
+        LOGGER.info("Building classes of {} out of {} entities", entitiesToBuild.size(), entities.size());
+
         // create enum for appropriate combobox fields
         for (Entity entity : entities) {
             buildEnum(loader, enhancer, entity);
@@ -110,7 +154,7 @@ public class MDSConstructorImpl implements MDSConstructor {
         // First we build empty history and trash classes
         // (We don't have to generate it for main class,
         // since we just fetch fields from existing definition
-        for (Entity entity : entities) {
+        for (Entity entity : entitiesToBuild) {
             if (entity.isRecordHistory()) {
                 entityBuilder.prepareHistoryClass(entity);
             }
@@ -118,12 +162,73 @@ public class MDSConstructorImpl implements MDSConstructor {
         }
 
         // Build classes
-        Map<String, ClassData> classDataMap = buildClasses(entities);
+        Map<String, ClassData> classDataMap = buildClasses(entitiesToBuild);
+
+        // The enhanced classes of unaffected entities are reused, they are defined before the built classes
+        List<Class> classes = defineReusedClasses(loader, entities, affected, previousEntities, classDataMap);
+        classes.addAll(defineBuiltClasses(loader, enhancer, entitiesToBuild, classDataMap));
+
+        // Prepare metadata
+        buildMetadata(entities, jdoMetadata, classDataMap, classes);
+
+        // after the classes are defined, we register their metadata
+        enhancer.registerMetadata(jdoMetadata);
+
+        // then, we commence with enhancement
+        enhancer.enhance();
+
+        // we register the enhanced class bytes
+        // and build the infrastructure classes
+        registerEnhancedClassBytes(entities, affected, previousEntities, enhancer);
+
+        metadataBuilder.fixEnhancerIssuesInMetadata(jdoMetadata);
+
+        rememberConstructedEntities(globalKey, entityKeys, affected);
+
+        return CollectionUtils.isNotEmpty(entities);
+    }
+
+    @Override
+    public synchronized Set<String> getLastBuiltEntities() {
+        return Collections.unmodifiableSet(lastBuiltEntities);
+    }
+
+    private List<Entity> getEntitiesToBuild(List<Entity> entities, Set<String> affected) {
+        List<Entity> entitiesToBuild = new ArrayList<>();
+
+        for (Entity entity : entities) {
+            if (affected.contains(entity.getClassName())) {
+                entitiesToBuild.add(entity);
+            }
+        }
+
+        return entitiesToBuild;
+    }
+
+    private List<Class> defineReusedClasses(JavassistLoader loader, List<Entity> entities, Set<String> affected,
+                                            Map<String, ConstructedEntity> previousEntities,
+                                            Map<String, ClassData> classDataMap) {
+        List<Class> classes = new ArrayList<>();
+
+        // subclasses of affected entities are affected as well, so the superclasses of reused classes
+        // are always reused and defined before them
+        for (Entity entity : entities) {
+            if (!affected.contains(entity.getClassName())) {
+                ConstructedEntity constructed = previousEntities.get(entity.getClassName());
+                classes.add(constructed.define(loader, classDataMap));
+            }
+        }
+
+        return classes;
+    }
+
+    private List<Class> defineBuiltClasses(JavassistLoader loader, MdsJDOEnhancer enhancer,
+                                           List<Entity> entitiesToBuild, Map<String, ClassData> classDataMap) {
         List<Class> classes = new ArrayList<>();
 
         // We add the java classes to both
         // the temporary ClassLoader and enhancer
-        for (Entity entity : entities) {
+        for (Entity entity : entitiesToBuild) {
             String className = entity.getClassName();
 
             Class<?> definition = addClassData(loader, enhancer, classDataMap.get(className));
@@ -141,35 +246,135 @@ public class MDSConstructorImpl implements MDSConstructor {
             loader.loadFieldsAndMethodsOfClass(definition);
         }
 
-        // Prepare metadata
-        buildMetadata(entities, jdoMetadata, classDataMap, classes);
+        return classes;
+    }
 
-        // after the classes are defined, we register their metadata
-        enhancer.registerMetadata(jdoMetadata);
+    private boolean isEnabled(String property) {
+        String value = mdsConfig.getProperties(Constants.Config.MODULE_FILE).getProperty(property);
+        return Boolean.parseBoolean(StringUtils.trim(value));
+    }
 
-        // then, we commence with enhancement
-        enhancer.enhance();
+    private Set<String> getAffectedEntities(List<Entity> entities, Map<String, String> entityKeys,
+                                            Map<String, ConstructedEntity> previousEntities) {
+        Set<String> changed = new HashSet<>();
 
-        // we register the enhanced class bytes
-        // and build the infrastructure classes
-        registerEnhancedClassBytes(entities, enhancer);
+        for (Map.Entry<String, String> entry : entityKeys.entrySet()) {
+            ConstructedEntity constructed = previousEntities.get(entry.getKey());
 
-        metadataBuilder.fixEnhancerIssuesInMetadata(jdoMetadata);
+            if (null == constructed || !constructed.getKey().equals(entry.getValue())) {
+                changed.add(entry.getKey());
+            }
+        }
 
-        return CollectionUtils.isNotEmpty(entities);
+        // the entities related with removed entities are affected as well
+        for (String className : previousEntities.keySet()) {
+            if (!entityKeys.containsKey(className)) {
+                changed.add(className);
+            }
+        }
+
+        return EntityHelper.getAffectedEntityClasses(entities, changed);
+    }
+
+    private void rememberConstructedEntities(String globalKey, Map<String, String> entityKeys, Set<String> built) {
+        for (Map.Entry<String, String> entry : entityKeys.entrySet()) {
+            String className = entry.getKey();
+
+            constructedEntities.put(className, new ConstructedEntity(entry.getValue(),
+                    MotechClassPool.getEnhancedClassData(className), MotechClassPool.getHistoryClassData(className),
+                    MotechClassPool.getTrashClassData(className)));
+        }
+
+        constructedGlobalKey = globalKey;
+        lastBuiltEntities = new HashSet<>(built);
+    }
+
+    /**
+     * Builds the key describing everything the constructed classes of all entities depend on - the MDS and
+     * DataNucleus versions, the DataNucleus settings and the service interfaces registered by modules.
+     */
+    private String getGlobalKey() {
+        StringBuilder key = new StringBuilder();
+
+        key.append(persistenceManagerFactory.getProperties().getProperty("VersionNumber")).append('\n');
+        appendBundle(key, bundleContext.getBundle());
+
+        Properties dataNucleusProperties = mdsConfig.getDataNucleusProperties();
+        for (String name : new TreeSet<>(dataNucleusProperties.stringPropertyNames())) {
+            if (name.startsWith("datanucleus.")) {
+                key.append(name).append('=').append(dataNucleusProperties.getProperty(name)).append('\n');
+            }
+        }
+
+        key.append(MotechClassPool.registeredInterfaces()).append('\n');
+
+        return DigestUtils.sha256Hex(key.toString());
     }
 
-    private void registerEnhancedClassBytes(List<Entity> entities, MdsJDOEnhancer enhancer) {
+    /**
+     * Builds the keys describing the definitions of the given entities and, for DDE, the bundles declaring them.
+     * The constructed classes of an entity do not change as long as its key does not change.
+     */
+    private Map<String, String> getEntityKeys(List<Entity> entities) {
+        Map<String, String> keys = new LinkedHashMap<>();
+
+        try {
+            for (Entity entity : entities) {
+                StringBuilder key = new StringBuilder();
+
+                key.append(OBJECT_MAPPER.writeValueAsString(entity.toDto()))
+                        .append(OBJECT_MAPPER.writeValueAsString(entity.getFieldDtos()))
+                        .append(OBJECT_MAPPER.writeValueAsString(entity.advancedSettingsDto()))
+                        .append('\n');
+
+                if (entity.isDDE()) {
+                    appendBundle(key, WebBundleUtil.findBundleByName(bundleContext, entity.getModule()));
+                }
+
+                keys.put(entity.getClassName(), DigestUtils.sha256Hex(key.toString()));
+            }
+        } catch (IOException e) {
+            // the keys decide which classes are reused, they must not match when incomplete
+            throw new EntityCreationException("Unable to describe the entities for the class construction", e);
+        }
+
+        return keys;
+    }
+
+    private String getClassCacheKey(String globalKey, Map<String, String> entityKeys) {
+        StringBuilder key = new StringBuilder(globalKey).append('\n');
+
+        for (Map.Entry<String, String> entry : entityKeys.entrySet()) {
+            key.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+
+        return DigestUtils.sha256Hex(key.toString());
+    }
+
+    private void appendBundle(StringBuilder key, Bundle bundle) {
+        if (null != bundle) {
+            // the install time of a bundle changes on every start, so the content of the bundle is used
+            key.append(MdsBundleHelper.getContentKey(bundle)).append('\n');
+        }
+    }
+
+    private void registerEnhancedClassBytes(List<Entity> entities, Set<String> affected,
+                                            Map<String, ConstructedEntity> previousEntities,
+                                            MdsJDOEnhancer enhancer) {
         for (Entity entity : entities) {
             // register
             String className = entity.getClassName();
             LOGGER.debug("Registering {}", className);
 
-            registerClass(enhancer, entity);
-            if (entity.isRecordHistory()) {
-                registerHistoryClass(enhancer, className);
+            if (affected.contains(className)) {
+                registerClass(enhancer, entity);
+                if (entity.isRecordHistory()) {
+                    registerHistoryClass(enhancer, className);
+                }
+                registerTrashClass(enhancer, className);
+            } else {
+                previousEntities.get(className).register();
             }
-            registerTrashClass(enhancer, className);
 
             LOGGER.debug("Building infrastructure for {}", className);
             buildInfrastructure(entity);
@@ -566,8 +771,66 @@ public class MDSConstructorImpl implements MDSConstructor {
         this.enumBuilder = enumBuilder;
     }
 
+    @Autowired
+    public void setEnhancedClassCache(EnhancedClassCache enhancedClassCache) {
+        this.enhancedClassCache = enhancedClassCache;
+    }
+
     @Autowired
     public void setPersistenceManagerFactory(PersistenceManagerFactory persistenceManagerFactory) {
         this.persistenceManagerFactory = persistenceManagerFactory;
     }
+
+    /**
+     * The enhanced classes constructed for an entity, together with the key of the entity definition they
+     * were constructed from.
+     */
+    private static final class ConstructedEntity {
+        private final String key;
+        private final ClassData classData;
+        private final ClassData historyClassData;
+        private final ClassData trashClassData;
+
+        private ConstructedEntity(String key, ClassData classData, ClassData historyClassData,
+                                  ClassData trashClassData) {
+            this.key = key;
+            this.classData = classData;
+            this.historyClassData = historyClassData;
+            this.trashClassData = trashClassData;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Class<?> define(JavassistLoader loader, Map<String, ClassData> classDataMap) {
+            Class<?> definition = loader.loadClass(classData);
+
+            if (null != historyClassData) {
+                loader.loadClass(historyClassData);
+                classDataMap.put(historyClassData.getClassName(), historyClassData);
+            }
+
+            loader.loadClass(trashClassData);
+            classDataMap.put(trashClassData.getClassName(), trashClassData);
+
+            return definition;
+        }
+
+        public void register() {
+            // register with the classloader so that we avoid issues with the persistence manager
+            MDSClassLoader.getInstance().safeDefineClass(classData.getClassName(), classData.getBytecode());
+            MotechClassPool.registerEnhancedClassData(classData);
+
+            if (null != historyClassData) {
+                MDSClassLoader.getInstance().safeDefineClass(historyClassData.getClassName(),
+                        historyClassData.getBytecode());
+                MotechClassPool.registerHistoryClassData(historyClassData);
+            }
+
+            MDSClassLoader.getInstance().safeDefineClass(trashClassData.getClassName(),
+                    trashClassData.getBytecode());
+            MotechClassPool.registerTrashClassData(trashClassData);
+        }
+    }
 }
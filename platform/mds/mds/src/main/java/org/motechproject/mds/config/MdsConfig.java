@@ -27,6 +27,10 @@ public class MdsConfig {
     private static final String FLYWAY_JAVA_MIGRATION_PATH = "org/motechproject/mdsmigration/java";
     private static final String FLYWAY_DEFAULT_MIGRATION_PATH = "db/migration/default";
 
+    private static final String L2_CACHE_TYPE = "datanucleus.cache.level2.type";
+    private static final String L2_CACHE_MODE = "datanucleus.cache.level2.mode";
+    private static final String VALIDATE_WHEN_CACHED = "datanucleus.findObject.validateWhenCached";
+
     private Map<String, Properties> config = new HashMap<>();
 
     private SqlDBManager sqlDBManager;
@@ -104,6 +108,25 @@ public class MdsConfig {
         return coreConfigurationService.loadDatanucleusConfig();
     }
 
+    /**
+     * Returns the DataNucleus properties used by the entities bundle. Next to the regular properties, they
+     * enable the level 2 cache for the entities marked as cacheable only. Instances found in the level 2 cache
+     * are not validated against the database, since the cache is invalidated whenever they change. Values
+     * from the DataNucleus configuration take precedence.
+     *
+     * @return the DataNucleus properties of the entities bundle
+     */
+    public Properties getEntitiesDataNucleusProperties() {
+        Properties properties = new Properties();
+
+        properties.setProperty(L2_CACHE_TYPE, "soft");
+        properties.setProperty(L2_CACHE_MODE, "ENABLE_SELECTIVE");
+        properties.setProperty(VALIDATE_WHEN_CACHED, "false");
+        properties.putAll(getDataNucleusProperties());
+
+        return properties;
+    }
+
     public String[] getFlywayLocations() {
         String driverName = sqlDBManager.getChosenSQLDriver();
         String sqlMigrationPath = driverName.equals(Constants.Config.MYSQL_DRIVER_CLASSNAME) ? FLYWAY_MYSQL_MIGRATION_PATH : FLYWAY_DEFAULT_MIGRATION_PATH;
@@ -219,6 +219,22 @@ public class Entity {
         return true;
     }
 
+    @NotPersistent
+    public boolean isCacheable() {
+        if (tracking != null) {
+            return tracking.isCacheable();
+        }
+        return false;
+    }
+
+    @NotPersistent
+    public boolean isCompactHistory() {
+        if (tracking != null) {
+            return tracking.isCompactHistory();
+        }
+        return false;
+    }
+
     public List<Lookup> getLookups() {
         if (lookups == null) {
             lookups = new ArrayList<>();
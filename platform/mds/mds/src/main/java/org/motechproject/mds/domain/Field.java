@@ -89,6 +89,9 @@ public class Field {
     @Persistent
     private boolean uiChanged;
 
+    @Persistent
+    private boolean indexed;
+
     @Persistent(mappedBy = "field")
     @Element(dependent = "true")
     private List<FieldMetadata> metadata = new ArrayList<>();
@@ -199,8 +202,11 @@ public class Field {
             typeDto = type.toDto();
         }
 
-        return new FieldDto(id, entity == null ? null : entity.getId(), typeDto, basic, readOnly, nonEditable,
-                nonDisplayable, uiChanged, metaDto, validationDto, settingsDto, lookupDtos);
+        FieldDto fieldDto = new FieldDto(id, entity == null ? null : entity.getId(), typeDto, basic, readOnly,
+                nonEditable, nonDisplayable, uiChanged, metaDto, validationDto, settingsDto, lookupDtos);
+        fieldDto.setIndexed(indexed);
+
+        return fieldDto;
     }
 
     private TypeDto generateTypeForTextArea(FieldSetting setting) {
@@ -430,6 +436,7 @@ public class Field {
         copy.setNonEditable(nonEditable);
         copy.setNonDisplayable(nonDisplayable);
         copy.setUiChanged(uiChanged);
+        copy.setIndexed(indexed);
         copy.setExposedViaRest(exposedViaRest);
         copy.setUIDisplayable(uiDisplayable);
         copy.setUIDisplayPosition(uiDisplayPosition);
@@ -490,6 +497,14 @@ public class Field {
         this.nonDisplayable = nonDisplayable;
     }
 
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
     public Field update(FieldDto field) {
         setDisplayName(field.getBasic().getDisplayName());
         setName(field.getBasic().getName());
@@ -500,6 +515,7 @@ public class Field {
         setNonEditable(field.isNonEditable());
         setNonDisplayable(field.isNonDisplayable());
         setUiChanged(field.isUiChanged());
+        setIndexed(field.isIndexed());
 
         if (field.getBasic().getDefaultValue() != null) {
             this.setDefaultValue(field.getBasic().getDefaultValue().toString());
@@ -512,6 +528,16 @@ public class Field {
         return this;
     }
 
+    /**
+     * Checks whether values of this field are stored in a single column, so that they can be retrieved
+     * by projections, without loading the instances.
+     *
+     * @return true if the field can be used in projections, false otherwise
+     */
+    public boolean isProjectable() {
+        return !type.isRelationship() && !type.isMap() && !(type.isCombobox() && isMultiSelectCombobox());
+    }
+
     public boolean isMultiSelectCombobox() {
         return getSettingByName(Constants.Settings.ALLOW_MULTIPLE_SELECTIONS).getValue().equals(Constants.Util.TRUE);
     }
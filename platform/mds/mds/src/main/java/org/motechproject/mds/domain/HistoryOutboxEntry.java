@@ -0,0 +1,91 @@
+package org.motechproject.mds.domain;
+
+import javax.jdo.annotations.Column;
+import javax.jdo.annotations.IdGeneratorStrategy;
+import javax.jdo.annotations.IdentityType;
+import javax.jdo.annotations.PersistenceCapable;
+import javax.jdo.annotations.Persistent;
+import javax.jdo.annotations.PrimaryKey;
+
+import static org.motechproject.mds.util.Constants.Util;
+
+/**
+ * The <code>HistoryOutboxEntry</code> holds the field values of an instance of an entity with compact history,
+ * captured in the transaction that changed the instance. Entries are saved together with the instance and
+ * are turned into history revisions after the transaction commits, in the order of their ids.
+ * This class is related with table in database with the same name.
+ */
+@PersistenceCapable(identityType = IdentityType.DATASTORE)
+public class HistoryOutboxEntry {
+
+    @PrimaryKey
+    @Persistent(valueStrategy = IdGeneratorStrategy.INCREMENT)
+    private Long id;
+
+    @Persistent
+    @Column(allowsNull = Util.FALSE)
+    private String historyClassName;
+
+    @Persistent
+    @Column(allowsNull = Util.FALSE)
+    private String entityClassName;
+
+    @Persistent
+    @Column(allowsNull = Util.FALSE)
+    private Long instanceId;
+
+    @Persistent(defaultFetchGroup = Util.TRUE)
+    private byte[] changeValues;
+
+    public HistoryOutboxEntry() {
+        this(null, null, null, null);
+    }
+
+    public HistoryOutboxEntry(String historyClassName, String entityClassName, Long instanceId,
+                              byte[] changeValues) {
+        this.historyClassName = historyClassName;
+        this.entityClassName = entityClassName;
+        this.instanceId = instanceId;
+        this.changeValues = changeValues;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getHistoryClassName() {
+        return historyClassName;
+    }
+
+    public void setHistoryClassName(String historyClassName) {
+        this.historyClassName = historyClassName;
+    }
+
+    public String getEntityClassName() {
+        return entityClassName;
+    }
+
+    public void setEntityClassName(String entityClassName) {
+        this.entityClassName = entityClassName;
+    }
+
+    public Long getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(Long instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public byte[] getChangeValues() {
+        return changeValues;
+    }
+
+    public void setChangeValues(byte[] changeValues) {
+        this.changeValues = changeValues;
+    }
+}
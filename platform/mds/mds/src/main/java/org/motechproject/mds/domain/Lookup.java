@@ -51,6 +51,9 @@ public class Lookup {
     @Persistent
     private String methodName;
 
+    @Persistent
+    private boolean indexRequired;
+
     @Persistent(table = "LookupFields")
     @Join
     private List<Field> fields;
@@ -136,8 +139,11 @@ public class Lookup {
             lookupFields.add(lookupField);
         }
 
-        return new LookupDto(id, lookupName, singleObjectReturn, exposedViaRest,
+        LookupDto lookupDto = new LookupDto(id, lookupName, singleObjectReturn, exposedViaRest,
                 lookupFields, readOnly, methodName, fieldsOrder);
+        lookupDto.setIndexRequired(indexRequired);
+
+        return lookupDto;
     }
 
     public Long getId() {
@@ -208,6 +214,14 @@ public class Lookup {
         this.readOnly = readOnly;
     }
 
+    public boolean isIndexRequired() {
+        return indexRequired;
+    }
+
+    public void setIndexRequired(boolean indexRequired) {
+        this.indexRequired = indexRequired;
+    }
+
     public String getMethodName() {
         return (StringUtils.isBlank(methodName)) ? LookupName.lookupMethod(lookupName) : methodName;
     }
@@ -290,8 +304,11 @@ public class Lookup {
             }
         }
 
-        return new Lookup(lookupName, singleObjectReturn, exposedViaRest, lookupFields, readOnly, methodName,
+        Lookup copy = new Lookup(lookupName, singleObjectReturn, exposedViaRest, lookupFields, readOnly, methodName,
                 getRangeLookupFields(), getSetLookupFields(), customOperators, useGenericParams, getFieldsOrder());
+        copy.setIndexRequired(indexRequired);
+
+        return copy;
     }
 
     public final void update(LookupDto lookupDto, List<Field> lookupFields) {
@@ -301,6 +318,7 @@ public class Lookup {
         fields = lookupFields;
         methodName = lookupDto.getMethodName();
         readOnly = lookupDto.isReadOnly();
+        indexRequired = lookupDto.isIndexRequired();
 
         updateFieldsOrder(lookupDto.getFieldsOrder());
         updateCustomOperators(lookupDto);
@@ -45,6 +45,12 @@ public class Tracking {
     @Persistent
     private boolean nonEditable;
 
+    @Persistent
+    private boolean cacheable;
+
+    @Persistent
+    private boolean compactHistory;
+
     public Tracking() {
         this(null);
     }
@@ -65,6 +71,8 @@ public class Tracking {
         dto.setAllowDeleteEvent(allowDeleteEvent);
         dto.setModifiedByUser(modifiedByUser);
         dto.setNonEditable(nonEditable);
+        dto.setCacheable(cacheable);
+        dto.setCompactHistory(compactHistory);
 
         return dto;
     }
@@ -76,6 +84,8 @@ public class Tracking {
         recordHistory = trackingDto.isRecordHistory();
         modifiedByUser = trackingDto.isModifiedByUser();
         nonEditable = trackingDto.isNonEditable();
+        cacheable = trackingDto.isCacheable();
+        compactHistory = trackingDto.isCompactHistory();
     }
 
     public Long getId() {
@@ -142,6 +152,22 @@ public class Tracking {
         this.nonEditable = nonEditable;
     }
 
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    public void setCacheable(boolean cacheable) {
+        this.cacheable = cacheable;
+    }
+
+    public boolean isCompactHistory() {
+        return compactHistory;
+    }
+
+    public void setCompactHistory(boolean compactHistory) {
+        this.compactHistory = compactHistory;
+    }
+
     public Tracking copy() {
         Tracking copy = new Tracking();
 
@@ -151,13 +177,16 @@ public class Tracking {
         copy.setAllowDeleteEvent(allowDeleteEvent);
         copy.setModifiedByUser(modifiedByUser);
         copy.setNonEditable(nonEditable);
+        copy.setCacheable(cacheable);
+        copy.setCompactHistory(compactHistory);
 
         return copy;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(recordHistory, allowCreateEvent, allowUpdateEvent, allowDeleteEvent, nonEditable);
+        return Objects.hash(recordHistory, allowCreateEvent, allowUpdateEvent, allowDeleteEvent, nonEditable, cacheable,
+                compactHistory);
     }
 
     @Override
@@ -176,6 +205,8 @@ public class Tracking {
                 Objects.equals(this.allowCreateEvent, other.allowCreateEvent) &&
                 Objects.equals(this.allowUpdateEvent, other.allowUpdateEvent) &&
                 Objects.equals(this.allowDeleteEvent, other.allowDeleteEvent) &&
-                Objects.equals(this.nonEditable, other.nonEditable);
+                Objects.equals(this.nonEditable, other.nonEditable) &&
+                Objects.equals(this.cacheable, other.cacheable) &&
+                Objects.equals(this.compactHistory, other.compactHistory);
     }
 }
@@ -0,0 +1,118 @@
+package org.motechproject.mds.dto;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+
+/**
+ * The <code>CacheStatisticsDto</code> contains the statistics of the query result cache of a single
+ * cacheable entity.
+ *
+ * @see org.motechproject.mds.query.QueryResultCache
+ */
+public class CacheStatisticsDto {
+
+    private String entityClassName;
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public CacheStatisticsDto() {
+        this(null, 0, 0, 0, 0, 0);
+    }
+
+    public CacheStatisticsDto(String entityClassName, long size, long hits, long misses, long evictions,
+                              long invalidations) {
+        this.entityClassName = entityClassName;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+    }
+
+    public String getEntityClassName() {
+        return entityClassName;
+    }
+
+    public void setEntityClassName(String entityClassName) {
+        this.entityClassName = entityClassName;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public void setMisses(long misses) {
+        this.misses = misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public void setEvictions(long evictions) {
+        this.evictions = evictions;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public void setInvalidations(long invalidations) {
+        this.invalidations = invalidations;
+    }
+
+    /**
+     * Returns the ratio of cache hits to all cache reads.
+     *
+     * @return the hit rate, between 0 and 1, or 0 if the cache was not read yet
+     */
+    public double getHitRate() {
+        long reads = hits + misses;
+        return reads == 0 ? 0 : (double) hits / reads;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return HashCodeBuilder.reflectionHashCode(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return EqualsBuilder.reflectionEquals(this, obj);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+    }
+}
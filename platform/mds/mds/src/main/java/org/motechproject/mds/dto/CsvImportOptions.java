@@ -0,0 +1,71 @@
+package org.motechproject.mds.dto;
+
+import java.io.Serializable;
+
+/**
+ * Options of a CSV import. Rows are imported in chunks, each of them committed in its own transaction.
+ * The number of rows committed so far is reported in the progress and failure events of the import, an
+ * import that failed can be resumed by passing that number as the number of rows to skip.
+ */
+public class CsvImportOptions implements Serializable {
+
+    private static final long serialVersionUID = -3524172883418370712L;
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private long skipRows;
+
+    /**
+     * @return the number of rows imported in a single transaction
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @param chunkSize the number of rows imported in a single transaction
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return the number of threads parsing the rows, the number of processors by default
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the number of threads parsing the rows
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the number of rows, after the header row, that are skipped
+     */
+    public long getSkipRows() {
+        return skipRows;
+    }
+
+    /**
+     * @param skipRows the number of rows, after the header row, that should be skipped, used for resuming
+     *                 an import from the last committed chunk
+     */
+    public void setSkipRows(long skipRows) {
+        if (skipRows < 0) {
+            throw new IllegalArgumentException("The number of rows to skip cannot be negative");
+        }
+        this.skipRows = skipRows;
+    }
+}
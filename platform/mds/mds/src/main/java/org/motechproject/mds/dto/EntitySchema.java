@@ -0,0 +1,85 @@
+package org.motechproject.mds.dto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The <code>EntitySchema</code> holds the committed definition of a single entity - the entity itself, its fields,
+ * lookups and advanced settings - as a part of a {@link SchemaSnapshot}. Instances are never modified after they
+ * are created. The held DTOs are shared by all readers of the snapshot, so they must not be modified either.
+ */
+public final class EntitySchema {
+
+    private final EntityDto entity;
+    private final Long entityVersion;
+    private final List<FieldDto> fields;
+    private final AdvancedSettingsDto advancedSettings;
+    private final Map<String, LookupDto> lookups;
+    private final Map<String, Map<String, FieldDto>> lookupFieldsMappings;
+
+    /**
+     * @param entity the entity
+     * @param entityVersion the schema version of the entity
+     * @param fields the fields of the entity, in the display order
+     * @param advancedSettings the advanced settings of the entity
+     * @param lookups the lookups of the entity
+     * @param lookupFieldsMappings the fields used by the lookups, by the lookup name
+     */
+    public EntitySchema(EntityDto entity, Long entityVersion, List<FieldDto> fields,
+                        AdvancedSettingsDto advancedSettings, List<LookupDto> lookups,
+                        Map<String, Map<String, FieldDto>> lookupFieldsMappings) {
+        this.entity = entity;
+        this.entityVersion = entityVersion;
+        this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+        this.advancedSettings = advancedSettings;
+
+        Map<String, LookupDto> lookupsByName = new HashMap<>();
+        for (LookupDto lookup : lookups) {
+            lookupsByName.put(lookup.getLookupName(), lookup);
+        }
+        this.lookups = Collections.unmodifiableMap(lookupsByName);
+
+        Map<String, Map<String, FieldDto>> mappings = new HashMap<>();
+        for (Map.Entry<String, Map<String, FieldDto>> entry : lookupFieldsMappings.entrySet()) {
+            mappings.put(entry.getKey(), Collections.unmodifiableMap(new HashMap<>(entry.getValue())));
+        }
+        this.lookupFieldsMappings = Collections.unmodifiableMap(mappings);
+    }
+
+    public EntityDto getEntity() {
+        return entity;
+    }
+
+    public Long getEntityVersion() {
+        return entityVersion;
+    }
+
+    public List<FieldDto> getFields() {
+        return fields;
+    }
+
+    public AdvancedSettingsDto getAdvancedSettings() {
+        return advancedSettings;
+    }
+
+    public LookupDto getLookup(String lookupName) {
+        return lookups.get(lookupName);
+    }
+
+    public Map<String, FieldDto> getLookupFieldsMapping(String lookupName) {
+        return lookupFieldsMappings.get(lookupName);
+    }
+
+    public FieldDto getField(Long fieldId) {
+        for (FieldDto field : fields) {
+            if (field.getId() != null && field.getId().equals(fieldId)) {
+                return field;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,123 @@
+package org.motechproject.mds.dto;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+
+/**
+ * The <code>EventStatisticsDto</code> contains the statistics of CRUD events sent for instances of a single
+ * entity.
+ *
+ * @see org.motechproject.mds.service.CrudEventService
+ */
+public class EventStatisticsDto {
+
+    private String entityClassName;
+    private long events;
+    private long instances;
+    private long throttledEvents;
+    private long throttledTime;
+    private long droppedEvents;
+
+    public EventStatisticsDto() {
+        this(null, 0, 0, 0, 0, 0);
+    }
+
+    public EventStatisticsDto(String entityClassName, long events, long instances, long throttledEvents,
+                              long throttledTime, long droppedEvents) {
+        this.entityClassName = entityClassName;
+        this.events = events;
+        this.instances = instances;
+        this.throttledEvents = throttledEvents;
+        this.throttledTime = throttledTime;
+        this.droppedEvents = droppedEvents;
+    }
+
+    public String getEntityClassName() {
+        return entityClassName;
+    }
+
+    public void setEntityClassName(String entityClassName) {
+        this.entityClassName = entityClassName;
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    public void setEvents(long events) {
+        this.events = events;
+    }
+
+    public long getInstances() {
+        return instances;
+    }
+
+    public void setInstances(long instances) {
+        this.instances = instances;
+    }
+
+    public long getThrottledEvents() {
+        return throttledEvents;
+    }
+
+    public void setThrottledEvents(long throttledEvents) {
+        this.throttledEvents = throttledEvents;
+    }
+
+    /**
+     * @return the total time in milliseconds by which events were deferred, because of the rate limit
+     */
+    public long getThrottledTime() {
+        return throttledTime;
+    }
+
+    public void setThrottledTime(long throttledTime) {
+        this.throttledTime = throttledTime;
+    }
+
+    /**
+     * @return the number of events dropped, because too many events of the entity were already deferred
+     */
+    public long getDroppedEvents() {
+        return droppedEvents;
+    }
+
+    public void setDroppedEvents(long droppedEvents) {
+        this.droppedEvents = droppedEvents;
+    }
+
+    /**
+     * Returns the average number of instances reported by a single event.
+     *
+     * @return the average number of instances per event, or 0 if no events were sent yet
+     */
+    public double getInstancesPerEvent() {
+        return events == 0 ? 0 : (double) instances / events;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return HashCodeBuilder.reflectionHashCode(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return EqualsBuilder.reflectionEquals(this, obj);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+    }
+}
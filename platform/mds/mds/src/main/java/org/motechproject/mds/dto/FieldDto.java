@@ -24,6 +24,7 @@ public class FieldDto {
     private boolean nonEditable;
     private boolean nonDisplayable;
     private boolean uiChanged;
+    private boolean indexed;
     private List<MetadataDto> metadata;
     private FieldValidationDto validation;
     private List<SettingDto> settings;
@@ -104,6 +105,17 @@ public class FieldDto {
         return false;
     }
 
+    /**
+     * Checks whether values of this field are stored in a single column, so that they can be retrieved
+     * by projections, without loading the instances.
+     *
+     * @return true if the field can be used in projections, false otherwise
+     */
+    @JsonIgnore
+    public boolean isProjectable() {
+        return !type.isRelationship() && !type.isMap() && !(type.isCombobox() && multiSelect());
+    }
+
     public Long getId() {
         return id;
     }
@@ -268,6 +280,14 @@ public class FieldDto {
         return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
     }
 
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
     public boolean isUiChanged() {
         return uiChanged;
     }
@@ -25,6 +25,7 @@ public class LookupDto {
     private boolean readOnly;
     private String methodName;
     private boolean referenced;
+    private boolean indexRequired;
     private List<String> fieldsOrder;
 
     public LookupDto() {
@@ -194,6 +195,13 @@ public class LookupDto {
         this.referenced = referenced;
     }
 
+    public boolean isIndexRequired() {
+        return indexRequired;
+    }
+
+    public void setIndexRequired(boolean indexRequired) {
+        this.indexRequired = indexRequired;
+    }
 
     public List<String> getFieldsOrder() {
         return fieldsOrder;
@@ -228,7 +236,8 @@ public class LookupDto {
 
         return singleObjectReturn == other.singleObjectReturn && Objects.equals(lookupFields, other.lookupFields) &&
                 Objects.equals(lookupName, other.lookupName) && exposedViaRest == other.exposedViaRest &&
-                Objects.equals(methodName, other.methodName) && referenced == other.referenced;
+                Objects.equals(methodName, other.methodName) && referenced == other.referenced &&
+                indexRequired == other.indexRequired;
     }
 
     /**
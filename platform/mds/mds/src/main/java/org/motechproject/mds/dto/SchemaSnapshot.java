@@ -0,0 +1,149 @@
+package org.motechproject.mds.dto;
+
+import org.motechproject.mds.ex.entity.EntityNotFoundException;
+import org.motechproject.mds.ex.field.FieldNotFoundException;
+import org.motechproject.mds.ex.lookup.LookupNotFoundException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The <code>SchemaSnapshot</code> is an immutable, versioned view of the committed definitions of all entities.
+ * It lets the data access paths read the schema without touching the schema tables. The read methods mirror
+ * the corresponding methods of the {@link org.motechproject.mds.service.EntityService}, including the exceptions
+ * they throw. A snapshot is never modified - when the schema changes, a new snapshot replaces it.
+ *
+ * @see org.motechproject.mds.service.SchemaSnapshotService
+ */
+public class SchemaSnapshot {
+
+    private final long version;
+    private final Map<String, EntitySchema> entitiesByClassName;
+    private final Map<Long, EntitySchema> entitiesById;
+
+    /**
+     * @param version the version of the snapshot, higher for newer snapshots
+     * @param entities the definitions of all entities
+     */
+    public SchemaSnapshot(long version, Collection<EntitySchema> entities) {
+        Map<String, EntitySchema> byClassName = new HashMap<>();
+        Map<Long, EntitySchema> byId = new HashMap<>();
+
+        for (EntitySchema entity : entities) {
+            byClassName.put(entity.getEntity().getClassName(), entity);
+            byId.put(entity.getEntity().getId(), entity);
+        }
+
+        this.version = version;
+        this.entitiesByClassName = Collections.unmodifiableMap(byClassName);
+        this.entitiesById = Collections.unmodifiableMap(byId);
+    }
+
+    /**
+     * Returns a new snapshot, in which the definition of the given entity is replaced. Definitions of other
+     * entities are shared with this snapshot.
+     *
+     * @param newVersion the version of the new snapshot
+     * @param className the class name of the entity
+     * @param entity the new definition of the entity, null removes the entity
+     * @return the new snapshot
+     */
+    public SchemaSnapshot withEntity(long newVersion, String className, EntitySchema entity) {
+        Map<String, EntitySchema> entities = new HashMap<>(entitiesByClassName);
+
+        if (entity == null) {
+            entities.remove(className);
+        } else {
+            entities.put(className, entity);
+        }
+
+        return new SchemaSnapshot(newVersion, entities.values());
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Collection<EntitySchema> getEntitySchemas() {
+        return entitiesByClassName.values();
+    }
+
+    public EntitySchema getEntitySchema(String className) {
+        return entitiesByClassName.get(className);
+    }
+
+    public EntitySchema getEntitySchema(Long entityId) {
+        return entitiesById.get(entityId);
+    }
+
+    public EntityDto getEntity(Long entityId) {
+        EntitySchema entity = getEntitySchema(entityId);
+        return entity == null ? null : entity.getEntity();
+    }
+
+    public EntityDto getEntityByClassName(String className) {
+        EntitySchema entity = getEntitySchema(className);
+        return entity == null ? null : entity.getEntity();
+    }
+
+    public Long getCurrentSchemaVersion(String className) {
+        return getExistingEntity(className).getEntityVersion();
+    }
+
+    public List<FieldDto> getEntityFields(Long entityId) {
+        return getExistingEntity(entityId).getFields();
+    }
+
+    public FieldDto getEntityFieldById(Long entityId, Long fieldId) {
+        EntitySchema entity = getExistingEntity(entityId);
+        FieldDto field = entity.getField(fieldId);
+
+        if (field == null) {
+            throw new FieldNotFoundException(entity.getEntity().getClassName(), fieldId);
+        }
+
+        return field;
+    }
+
+    public AdvancedSettingsDto getAdvancedSettings(Long entityId) {
+        return getExistingEntity(entityId).getAdvancedSettings();
+    }
+
+    public LookupDto getLookupByName(Long entityId, String lookupName) {
+        return getExistingEntity(entityId).getLookup(lookupName);
+    }
+
+    public Map<String, FieldDto> getLookupFieldsMapping(Long entityId, String lookupName) {
+        EntitySchema entity = getExistingEntity(entityId);
+        Map<String, FieldDto> mapping = entity.getLookupFieldsMapping(lookupName);
+
+        if (mapping == null) {
+            throw new LookupNotFoundException(entity.getEntity().getName(), lookupName);
+        }
+
+        return mapping;
+    }
+
+    private EntitySchema getExistingEntity(Long entityId) {
+        EntitySchema entity = getEntitySchema(entityId);
+
+        if (entity == null) {
+            throw new EntityNotFoundException(entityId);
+        }
+
+        return entity;
+    }
+
+    private EntitySchema getExistingEntity(String className) {
+        EntitySchema entity = getEntitySchema(className);
+
+        if (entity == null) {
+            throw new EntityNotFoundException(className);
+        }
+
+        return entity;
+    }
+}
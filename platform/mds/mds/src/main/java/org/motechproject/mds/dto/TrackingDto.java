@@ -16,6 +16,8 @@ public class TrackingDto {
     private boolean allowDeleteEvent;
     private boolean modifiedByUser;
     private boolean nonEditable;
+    private boolean cacheable;
+    private boolean compactHistory;
 
     public TrackingDto() {
         this(false, true, true, true, false, false);
@@ -84,6 +86,22 @@ public class TrackingDto {
         this.nonEditable = nonEditable;
     }
 
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    public void setCacheable(boolean cacheable) {
+        this.cacheable = cacheable;
+    }
+
+    public boolean isCompactHistory() {
+        return compactHistory;
+    }
+
+    public void setCompactHistory(boolean compactHistory) {
+        this.compactHistory = compactHistory;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -3,16 +3,21 @@ package org.motechproject.mds.event;
 import org.apache.commons.lang.StringUtils;
 import org.motechproject.mds.domain.EntityInfo;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.motechproject.mds.util.ClassName.simplifiedModuleName;
 import static org.motechproject.mds.util.Constants.MDSEvents.BASE_SUBJECT;
+import static org.motechproject.mds.util.Constants.MDSEvents.BATCH_SUBJECT_SUFFIX;
 import static org.motechproject.mds.util.Constants.MDSEvents.ENTITY_CLASS;
 import static org.motechproject.mds.util.Constants.MDSEvents.ENTITY_NAME;
 import static org.motechproject.mds.util.Constants.MDSEvents.MODULE_NAME;
 import static org.motechproject.mds.util.Constants.MDSEvents.NAMESPACE;
 import static org.motechproject.mds.util.Constants.MDSEvents.OBJECT_ID;
+import static org.motechproject.mds.util.Constants.MDSEvents.OBJECT_IDS;
 
 /**
  * The <code>MDSCrudEvents</code> class is responsible for creating MDS CRUD events.
@@ -42,6 +47,27 @@ public final class CrudEventBuilder {
         return params;
     }
 
+    /**
+     * Builds parameters for a Motech CRUD event, sent once for a batch of instances affected by
+     * a bulk operation.
+     *
+     * @param module module name of an entity
+     * @param namespace namespace of an entity
+     * @param entity entity name
+     * @param entityClassName entity class name
+     * @param ids ids of the affected instances
+     * @return constructed parameters for the events
+     */
+    public static Map<String, Object> buildBatchEventParams(String module, String namespace, String entity,
+                                                            String entityClassName, List<Long> ids) {
+        Map<String, Object> params = new HashMap<>();
+
+        params.put(OBJECT_IDS, new ArrayList<>(ids));
+        setEntityData(params, module, namespace, entity, entityClassName);
+
+        return params;
+    }
+
     /**
      * Creates subject for a Motech event, sent upon encounter
      * of a CRUD event in MDS.
@@ -93,6 +119,77 @@ public final class CrudEventBuilder {
         return subject;
     }
 
+    /**
+     * Creates subject for a Motech Event, sent once for a batch of instances changed by a transaction,
+     * if events of the entity are batched per transaction. The subject is the subject of the single
+     * instance event, followed by the {@value org.motechproject.mds.util.Constants.MDSEvents#BATCH_SUBJECT_SUFFIX}
+     * suffix.
+     *
+     * @param module module name of an entity
+     * @param namespace namespace of an entity
+     * @param entity entity name
+     * @param action CRUD event type
+     * @return Constructed subject for the Motech Event
+     */
+    public static String createBatchSubject(String module, String namespace, String entity, CrudEventType action) {
+        return createSubject(module, namespace, entity, action) + BATCH_SUBJECT_SUFFIX;
+    }
+
+    /**
+     * Checks whether the given subject is the subject of a batch event.
+     *
+     * @param subject the subject of a Motech Event
+     * @return true if the subject ends with the
+     * {@value org.motechproject.mds.util.Constants.MDSEvents#BATCH_SUBJECT_SUFFIX} suffix, false otherwise
+     */
+    public static boolean isBatchSubject(String subject) {
+        return StringUtils.endsWith(subject, BATCH_SUBJECT_SUFFIX);
+    }
+
+    /**
+     * Returns the ids of instances reported by a CRUD event. Listeners can use it for both regular events,
+     * reporting a single instance, and batch events.
+     *
+     * @param params parameters of a CRUD event
+     * @return ids of the affected instances, empty if the parameters contain none
+     */
+    public static List<Long> getObjectIds(Map<String, Object> params) {
+        List<Long> ids = new ArrayList<>();
+
+        if (params.get(OBJECT_IDS) instanceof Collection) {
+            for (Object id : (Collection<?>) params.get(OBJECT_IDS)) {
+                addId(ids, id);
+            }
+        } else {
+            addId(ids, params.get(OBJECT_ID));
+        }
+
+        return ids;
+    }
+
+    /**
+     * Splits parameters of a batch CRUD event into parameters of regular CRUD events, one per affected
+     * instance. Listeners can process them the same way as parameters of regular events. Parameters of
+     * a regular event are returned as the only element of the list.
+     *
+     * @param params parameters of a CRUD event
+     * @return parameters of regular CRUD events of the affected instances
+     */
+    public static List<Map<String, Object>> unpackBatchEventParams(Map<String, Object> params) {
+        List<Long> ids = getObjectIds(params);
+        List<Map<String, Object>> unpacked = new ArrayList<>(ids.size());
+
+        for (Long id : ids) {
+            Map<String, Object> instanceParams = new HashMap<>(params);
+            instanceParams.remove(OBJECT_IDS);
+            instanceParams.put(OBJECT_ID, id);
+
+            unpacked.add(instanceParams);
+        }
+
+        return unpacked;
+    }
+
     /**
      * Sets properties in the given {@link java.util.Map}.
      *
@@ -110,6 +207,13 @@ public final class CrudEventBuilder {
         setIfNotBlank(params, NAMESPACE, namespace);
     }
 
+    private static void addId(List<Long> ids, Object id) {
+        // ids can be deserialized as other number types, if the event was sent through the broker
+        if (id instanceof Number) {
+            ids.add(((Number) id).longValue());
+        }
+    }
+
     private static void setIfNotBlank(Map<String, Object> params, String property, String value) {
         if (StringUtils.isBlank(property) || StringUtils.isBlank(value)) {
             return;
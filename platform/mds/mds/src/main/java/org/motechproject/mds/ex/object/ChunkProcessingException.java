@@ -0,0 +1,31 @@
+package org.motechproject.mds.ex.object;
+
+import org.motechproject.mds.ex.MdsException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Signals that some chunks of instances could not be processed, even after retrying them.
+ *
+ * @see org.motechproject.mds.service.MotechDataService#processInChunks(int, int,
+ * org.motechproject.mds.query.ChunkCallback)
+ */
+public class ChunkProcessingException extends MdsException {
+
+    private static final long serialVersionUID = 4720153412264894173L;
+
+    private final List<Long> failedIds;
+
+    public ChunkProcessingException(String entityName, List<Long> failedIds, Throwable cause) {
+        super(String.format("Unable to process %d instances of entity %s", failedIds.size(), entityName), cause);
+        this.failedIds = new ArrayList<>(failedIds);
+    }
+
+    /**
+     * @return the ids of the instances from the chunks that failed
+     */
+    public List<Long> getFailedIds() {
+        return failedIds;
+    }
+}
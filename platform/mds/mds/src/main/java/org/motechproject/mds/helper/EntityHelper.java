@@ -11,8 +11,11 @@ import org.motechproject.mds.repository.AllTypes;
 import org.motechproject.mds.util.Constants;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.motechproject.mds.util.Constants.Util.AUTO_GENERATED;
 import static org.motechproject.mds.util.Constants.Util.AUTO_GENERATED_EDITABLE;
@@ -101,4 +104,51 @@ public final class EntityHelper {
         }
         return relatedEntityClasses;
     }
+
+    /**
+     * Retrieves the classes of all entities affected by changes of the given entities. These are the changed
+     * entities, the entities related with them in either direction and all subclasses of the affected entities.
+     * Entities that were removed can also be passed as changed, in order to find the entities related with them.
+     *
+     * @param entities all current entities
+     * @param changedClasses the class names of changed entities
+     * @return the class names of the changed and affected entities
+     */
+    public static Set<String> getAffectedEntityClasses(List<Entity> entities, Collection<String> changedClasses) {
+        Set<String> entityClasses = new LinkedHashSet<>();
+        for (Entity entity : entities) {
+            entityClasses.add(entity.getClassName());
+        }
+
+        Set<String> affectedClasses = new LinkedHashSet<>(changedClasses);
+        for (Entity entity : entities) {
+            for (String relatedClass : getRelatedEntityClasses(entity)) {
+                if (changedClasses.contains(relatedClass)) {
+                    affectedClasses.add(entity.getClassName());
+                } else if (changedClasses.contains(entity.getClassName()) && entityClasses.contains(relatedClass)) {
+                    affectedClasses.add(relatedClass);
+                }
+            }
+        }
+
+        addSubclasses(entities, affectedClasses);
+
+        return affectedClasses;
+    }
+
+    private static void addSubclasses(List<Entity> entities, Set<String> affectedClasses) {
+        // a subclass has to be rebuilt together with its superclass
+        boolean subclassAdded = true;
+        while (subclassAdded) {
+            subclassAdded = false;
+
+            for (Entity entity : entities) {
+                if (!affectedClasses.contains(entity.getClassName())
+                        && affectedClasses.contains(entity.getSuperClass())) {
+                    affectedClasses.add(entity.getClassName());
+                    subclassAdded = true;
+                }
+            }
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package org.motechproject.mds.helper;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang.StringUtils;
 import org.apache.felix.framework.BundleWiringImpl;
 import org.eclipse.gemini.blueprint.util.OsgiBundleUtils;
@@ -14,8 +15,17 @@ import org.slf4j.LoggerFactory;
 
 import javax.jdo.JDOFatalUserException;
 import javax.jdo.spi.JDOImplHelper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.security.AccessController;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivilegedAction;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Helper class, that provides utility methods for MDS OSGi bundles.
@@ -23,6 +33,9 @@ import java.security.PrivilegedAction;
 public final class MdsBundleHelper {
     private static final Logger LOGGER = LoggerFactory.getLogger(MdsBundleHelper.class);
 
+    private static final String BND_LAST_MODIFIED = "Bnd-LastModified";
+    private static final int BUFFER_SIZE = 8192;
+
     public static boolean isBundleMdsDependent(Bundle bundle) {
         if (bundle == null) {
             return false;
@@ -91,6 +104,61 @@ public final class MdsBundleHelper {
         }
     }
 
+    /**
+     * Returns a key identifying the content of the given bundle. Unlike {@link Bundle#getLastModified()}, the key
+     * does not change when the same bundle is installed again, which happens on every start of the server. The key
+     * consists of the symbolic name, the version and the build time of the bundle, taken from the
+     * <b>Bnd-LastModified</b> header. Bundles built without the header are identified by a digest of their entries.
+     *
+     * @param bundle the bundle to identify
+     * @return the key of the bundle content
+     */
+    public static String getContentKey(Bundle bundle) {
+        StringBuilder key = new StringBuilder();
+        key.append(bundle.getSymbolicName()).append(';').append(bundle.getVersion()).append(';');
+
+        String buildTime = new BundleHeaders(bundle).getStringValue(BND_LAST_MODIFIED);
+        key.append(StringUtils.isNotBlank(buildTime) ? buildTime : getContentDigest(bundle));
+
+        return key.toString();
+    }
+
+    private static String getContentDigest(Bundle bundle) {
+        // entries are digested in the order of their paths, the order of findEntries is not defined
+        Map<String, URL> entries = new TreeMap<>();
+
+        Enumeration<URL> urls = bundle.findEntries("/", "*", true);
+        while (null != urls && urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            if (!url.getPath().endsWith("/")) {
+                entries.put(url.getPath(), url);
+            }
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            for (Map.Entry<String, URL> entry : entries.entrySet()) {
+                digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+
+                try (InputStream in = entry.getValue().openStream()) {
+                    int read = in.read(buffer);
+                    while (read >= 0) {
+                        digest.update(buffer, 0, read);
+                        read = in.read(buffer);
+                    }
+                }
+            }
+
+            return new String(Hex.encodeHex(digest.digest()));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            // the key must not match a content, which was not read
+            LOGGER.warn("Unable to read the content of bundle {}", bundle.getSymbolicName(), e);
+            return String.valueOf(bundle.getLastModified());
+        }
+    }
+
     private static JDOImplHelper getJDOImplHelper() {
         return (JDOImplHelper) AccessController.doPrivileged(new PrivilegedAction() {
             public Object run() {
@@ -0,0 +1,312 @@
+package org.motechproject.mds.javassist;
+
+import javassist.ByteArrayClassPath;
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import org.apache.commons.io.FileUtils;
+import org.motechproject.mds.domain.ClassData;
+import org.motechproject.mds.domain.EntityType;
+import org.motechproject.mds.util.MDSClassLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The <code>EnhancedClassCache</code> keeps the enhanced bytecode of the entity, history, trash, enum and interface
+ * classes registered in the {@link MotechClassPool}, together with the entities bundle built from them, on disk.
+ * The cache is stored under a key, describing everything the classes were built from. When the classes are
+ * needed again for the same key, for example after a restart of the server, they are restored from the cache
+ * instead of being constructed and enhanced again, and the cached bundle is reused.
+ * <p/>
+ * The {@link org.motechproject.mds.builder.MDSConstructor} restores the classes or marks the key of the classes
+ * it constructs, the {@link org.motechproject.mds.service.JarGeneratorService} stores the classes together with
+ * the bundle generated from them. Both are called by one thread at a time, during the bundle regeneration.
+ */
+@Component
+public class EnhancedClassCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EnhancedClassCache.class);
+
+    private static final String KEY_FILE = "key";
+    private static final String CLASSES_FILE = "classes.bin";
+    private static final String BUNDLE_FILE = "mds-entities.jar";
+
+    private static final int CLASS = 0;
+    private static final int HISTORY = 1;
+    private static final int TRASH = 2;
+    private static final int ENUM = 3;
+
+    private Path directory = Paths.get(System.getProperty("user.home"), ".motech", "mds-cache");
+
+    private String currentKey;
+    private boolean restored;
+
+    /**
+     * Restores the classes cached under the given key and registers them in the {@link MotechClassPool} and the
+     * {@link MDSClassLoader}, the same way the constructor registers the classes it builds. The pool and the class
+     * loader should be cleared before.
+     *
+     * @param key the key describing the current entity definitions, null if the cache should not be used
+     * @return true if the classes were restored; false if nothing was cached for the key, in which case the
+     * classes must be constructed
+     */
+    public boolean restore(String key) {
+        currentKey = key;
+        restored = false;
+
+        if (null == key || !key.equals(readKey())) {
+            return false;
+        }
+
+        List<CachedClass> classes;
+        try {
+            classes = readClasses();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read the enhanced class cache, the classes will be constructed", e);
+            return false;
+        }
+
+        for (CachedClass cachedClass : classes) {
+            register(cachedClass);
+        }
+
+        LOGGER.info("Restored {} enhanced classes from the cache", classes.size());
+        restored = true;
+
+        return true;
+    }
+
+    /**
+     * Returns whether the classes of the last construction were restored from the cache.
+     *
+     * @return true if the classes were restored, false if they were constructed
+     */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    /**
+     * Returns the entities bundle cached with the restored classes.
+     *
+     * @return the cached bundle jar
+     */
+    public File getBundle() {
+        return directory.resolve(BUNDLE_FILE).toFile();
+    }
+
+    /**
+     * Stores the classes currently registered in the {@link MotechClassPool} and the entities bundle generated
+     * from them, under the key passed to the last {@link #restore(String)} call. Failures are only logged, the
+     * cache is dropped in such case.
+     *
+     * @param bundle the generated entities bundle jar
+     */
+    public void store(File bundle) {
+        if (null == currentKey || restored) {
+            return;
+        }
+
+        try {
+            // the key is written last, a partially written cache is never used
+            Files.deleteIfExists(directory.resolve(KEY_FILE));
+            Files.createDirectories(directory);
+
+            writeClasses();
+            FileUtils.copyFile(bundle, getBundle());
+
+            Path tmpKey = Files.createTempFile(directory, KEY_FILE, ".tmp");
+            Files.write(tmpKey, currentKey.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmpKey, directory.resolve(KEY_FILE), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | CannotCompileException | RuntimeException e) {
+            LOGGER.warn("Unable to store the enhanced class cache", e);
+            invalidate();
+        }
+    }
+
+    /**
+     * Drops the cache, the classes will be constructed on the next regeneration.
+     */
+    public void invalidate() {
+        try {
+            Files.deleteIfExists(directory.resolve(KEY_FILE));
+        } catch (IOException e) {
+            LOGGER.warn("Unable to remove the enhanced class cache key", e);
+        }
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    private String readKey() {
+        Path keyFile = directory.resolve(KEY_FILE);
+
+        try {
+            return Files.exists(keyFile) && getBundle().exists()
+                    ? new String(Files.readAllBytes(keyFile), StandardCharsets.UTF_8)
+                    : null;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read the enhanced class cache key", e);
+            return null;
+        }
+    }
+
+    private void register(CachedClass cachedClass) {
+        ClassData data = cachedClass.getData();
+        String className = data.getClassName();
+
+        switch (cachedClass.getKind()) {
+            case HISTORY:
+                MotechClassPool.registerHistoryClassData(data);
+                break;
+            case TRASH:
+                MotechClassPool.registerTrashClassData(data);
+                break;
+            case ENUM:
+                // enums declared by modules are only defined, they are not part of the entities bundle
+                MotechClassPool.registerEnum(className);
+                break;
+            default:
+                MotechClassPool.registerEnhancedClassData(data);
+
+                if (data.isEnumClassData() || data.isInterfaceClass()) {
+                    MotechClassPool.getDefault().appendClassPath(new ByteArrayClassPath(className,
+                            data.getBytecode()));
+                }
+                break;
+        }
+
+        // service interfaces declared by modules are woven, but never defined by MDS
+        if (!data.isInterfaceClass() || !MotechClassPool.registeredInterfaces().contains(className)) {
+            MDSClassLoader.getInstance().safeDefineClass(className, data.getBytecode());
+        }
+    }
+
+    private void writeClasses() throws IOException, CannotCompileException {
+        Path tmpFile = Files.createTempFile(directory, CLASSES_FILE, ".tmp");
+
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+            // the classes are written in the order, in which they were defined by the constructor
+            for (String enumName : MotechClassPool.registeredEnums()) {
+                if (null == MotechClassPool.getEnhancedClassData(enumName)) {
+                    write(output, ENUM, new ClassData(enumName, getBytecode(enumName)));
+                }
+            }
+
+            for (ClassData data : MotechClassPool.getEnhancedClasses(true)) {
+                write(output, CLASS, data);
+
+                ClassData history = MotechClassPool.getHistoryClassData(data.getClassName());
+                if (null != history) {
+                    write(output, HISTORY, history);
+                }
+
+                ClassData trash = MotechClassPool.getTrashClassData(data.getClassName());
+                if (null != trash) {
+                    write(output, TRASH, trash);
+                }
+            }
+
+            output.writeInt(-1);
+        }
+
+        Files.move(tmpFile, directory.resolve(CLASSES_FILE), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private byte[] getBytecode(String className) throws IOException, CannotCompileException {
+        CtClass ctClass = MotechClassPool.getDefault().getOrNull(className);
+
+        if (null == ctClass) {
+            throw new IOException("No bytecode of " + className);
+        }
+
+        ctClass.defrost();
+        return ctClass.toBytecode();
+    }
+
+    private void write(DataOutputStream output, int kind, ClassData data) throws IOException {
+        output.writeInt(kind);
+        output.writeUTF(data.getClassName());
+        writeNullable(output, data.getModule());
+        writeNullable(output, data.getNamespace());
+        writeNullable(output, null == data.getType() ? null : data.getType().name());
+        output.writeBoolean(data.isInterfaceClass());
+        output.writeBoolean(data.isEnumClassData());
+
+        byte[] bytecode = data.getBytecode();
+        output.writeInt(bytecode.length);
+        output.write(bytecode);
+    }
+
+    private List<CachedClass> readClasses() throws IOException {
+        List<CachedClass> classes = new ArrayList<>();
+
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(directory.resolve(CLASSES_FILE))))) {
+            int kind = input.readInt();
+
+            while (kind >= 0) {
+                String className = input.readUTF();
+                String module = readNullable(input);
+                String namespace = readNullable(input);
+                String type = readNullable(input);
+                boolean interfaceClass = input.readBoolean();
+                boolean enumClassData = input.readBoolean();
+
+                byte[] bytecode = new byte[input.readInt()];
+                input.readFully(bytecode);
+
+                classes.add(new CachedClass(kind, new ClassData(className, module, namespace, bytecode,
+                        interfaceClass, null == type ? null : EntityType.valueOf(type), enumClassData)));
+
+                kind = input.readInt();
+            }
+        }
+
+        return classes;
+    }
+
+    private void writeNullable(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(null != value);
+        if (null != value) {
+            output.writeUTF(value);
+        }
+    }
+
+    private String readNullable(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static final class CachedClass {
+        private final int kind;
+        private final ClassData data;
+
+        private CachedClass(int kind, ClassData data) {
+            this.kind = kind;
+            this.data = data;
+        }
+
+        public int getKind() {
+            return kind;
+        }
+
+        public ClassData getData() {
+            return data;
+        }
+    }
+}
@@ -16,7 +16,10 @@ import org.motechproject.mds.util.MDSClassLoader;
 import org.motechproject.mds.util.TypeHelper;
 
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -27,6 +30,10 @@ import java.util.Set;
  * by the REST api and the Databrowser UI for executing lookups based
  * on only metadata. The dataservice and metadata must be provided during
  * construction.
+ * <p/>
+ * The conversion of every lookup parameter and the lookup methods of the data service are resolved
+ * from the metadata on the first execution and reused afterwards, so executors should be kept for
+ * repeated executions of the same lookup, see {@link LookupExecutorCache}.
  */
 public class LookupExecutor {
 
@@ -36,6 +43,11 @@ public class LookupExecutor {
     private final Class entityClass;
     private final ClassLoader classLoader;
 
+    private volatile List<LookupArgument> lookupArguments;
+    private volatile Method lookupMethod;
+    private volatile Method lookupMethodWithQueryParams;
+    private volatile Method countMethod;
+
     public LookupExecutor(MotechDataService dataService, LookupDto lookup, Map<String, FieldDto> fieldsByName) {
         this.dataService = dataService;
         this.lookup = lookup;
@@ -50,17 +62,14 @@ public class LookupExecutor {
 
     public Object execute(Map<String, ?> lookupMap, QueryParams queryParams) {
         List<Object> args = getLookupArgs(lookupMap);
-        List<Class> argTypes = buildArgTypes();
 
         if (queryParams != null) {
             args.add(queryParams);
-            argTypes.add(QueryParams.class);
         }
 
         try {
-            return MethodUtils.invokeMethod(dataService, lookup.getMethodName(),
-                    args.toArray(new Object[args.size()]),
-                    argTypes.toArray(new Class[argTypes.size()]));
+            Method method = queryParams == null ? getLookupMethod() : getLookupMethodWithQueryParams();
+            return method.invoke(dataService, args.toArray(new Object[args.size()]));
         } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
             throw new LookupExecutorException("Unable to execute lookup " + lookup.getLookupName(), e);
         }
@@ -68,45 +77,86 @@ public class LookupExecutor {
 
     public long executeCount(Map<String, ?> lookupMap) {
         List<Object> args = getLookupArgs(lookupMap);
-        List<Class> argTypes = buildArgTypes();
-
-        String countMethodName = LookupName.lookupCountMethod(lookup.getMethodName());
 
         try {
-            return (long) MethodUtils.invokeMethod(dataService, countMethodName,
-                    args.toArray(new Object[args.size()]),
-                    argTypes.toArray(new Class[argTypes.size()]));
+            return (long) getCountMethod().invoke(dataService, args.toArray(new Object[args.size()]));
         } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
             throw new LookupExecutorException("Unable to execute count lookup " + lookup.getLookupName(), e);
         }
     }
 
-
     private List<Object> getLookupArgs(Map<String, ?> paramMap) {
-        List<Object> args = new ArrayList<>();
-        for (LookupFieldDto lookupField : lookup.getLookupFields()) {
-            FieldDto field = fieldsByName.get(lookupField.getLookupFieldName());
-            if (field == null) {
-                throw new FieldNotFoundException(entityClass.getName(), lookupField.getName());
+        List<LookupArgument> arguments = getLookupArguments();
+
+        List<Object> args = new ArrayList<>(arguments.size() + 1);
+        for (LookupArgument argument : arguments) {
+            args.add(argument.convert(paramMap.get(argument.getLookupFieldName()), classLoader));
+        }
+        return args;
+    }
+
+    private List<LookupArgument> getLookupArguments() {
+        // racing threads can plan the arguments more than once, which is harmless
+        if (lookupArguments == null) {
+            List<LookupArgument> arguments = new ArrayList<>();
+            for (LookupFieldDto lookupField : lookup.getLookupFields()) {
+                FieldDto field = fieldsByName.get(lookupField.getLookupFieldName());
+                if (field == null) {
+                    throw new FieldNotFoundException(entityClass.getName(), lookupField.getName());
+                }
+
+                String targetType = lookupField.isUseGenericParam() && lookupField.getType() == LookupFieldType.VALUE
+                        ? getGenericTypeClass(field)
+                        : getTypeClass(field);
+
+                arguments.add(new LookupArgument(lookupField.getLookupFieldName(), lookupField.getType(),
+                        targetType, loadParamType(lookupField, field)));
             }
+            lookupArguments = Collections.unmodifiableList(arguments);
+        }
+        return lookupArguments;
+    }
 
-            Object val = paramMap.get(lookupField.getLookupFieldName());
+    private Method getLookupMethod() throws NoSuchMethodException {
+        if (lookupMethod == null) {
+            lookupMethod = findMethod(lookup.getMethodName(), false);
+        }
+        return lookupMethod;
+    }
 
-            String typeClass = getTypeClass(field);
-            String genericType = getGenericTypeClass(field);
+    private Method getLookupMethodWithQueryParams() throws NoSuchMethodException {
+        if (lookupMethodWithQueryParams == null) {
+            lookupMethodWithQueryParams = findMethod(lookup.getMethodName(), true);
+        }
+        return lookupMethodWithQueryParams;
+    }
 
-            Object arg;
-            if (lookupField.getType() == LookupFieldType.RANGE) {
-                arg = TypeHelper.toRange(val, typeClass);
-            } else if (lookupField.getType() == LookupFieldType.SET) {
-                arg = TypeHelper.toSet(val, typeClass, classLoader);
-            } else {
-                arg = TypeHelper.parse(val, lookupField.isUseGenericParam() ? genericType : typeClass, classLoader);
-            }
+    private Method getCountMethod() throws NoSuchMethodException {
+        if (countMethod == null) {
+            countMethod = findMethod(LookupName.lookupCountMethod(lookup.getMethodName()), false);
+        }
+        return countMethod;
+    }
 
-            args.add(arg);
+    private Method findMethod(String methodName, boolean withQueryParams) throws NoSuchMethodException {
+        List<Class> argTypes = new ArrayList<>();
+        for (LookupArgument argument : getLookupArguments()) {
+            argTypes.add(argument.getParamType());
         }
-        return args;
+
+        if (withQueryParams) {
+            argTypes.add(QueryParams.class);
+        }
+
+        Class[] parameterTypes = argTypes.toArray(new Class[argTypes.size()]);
+        Method method = MethodUtils.getMatchingAccessibleMethod(dataService.getClass(), methodName, parameterTypes);
+
+        if (method == null) {
+            throw new NoSuchMethodException(String.format("No such accessible method: %s(%s) on object: %s",
+                    methodName, Arrays.toString(parameterTypes), dataService.getClass().getName()));
+        }
+
+        return method;
     }
 
     private String getTypeClass(FieldDto field) {
@@ -136,39 +186,25 @@ public class LookupExecutor {
         return genericType;
     }
 
-    private List<Class> buildArgTypes() {
-        List<Class> argTypes = new ArrayList<>();
-
-        for (LookupFieldDto lookupField : lookup.getLookupFields()) {
-
-            switch (lookupField.getType()) {
-                case RANGE:
-                    argTypes.add(Range.class);
-                    break;
-                case SET:
-                    argTypes.add(Set.class);
-                    break;
-                default:
-                    FieldDto field = fieldsByName.get(lookupField.getLookupFieldName());
-                    if (field == null) {
-                        throw new FieldNotFoundException(entityClass.getName(), lookupField.getName());
-                    }
-
-                    String typeClassName = getTypeClassName(lookupField, field);
-
-                    try {
-                        ClassLoader safeClassLoader = null == classLoader
-                                ? MDSClassLoader.getInstance()
-                                : classLoader;
-
-                        argTypes.add(safeClassLoader.loadClass(typeClassName));
-                    } catch (ClassNotFoundException e) {
-                        throw new IllegalStateException("Type not found " + typeClassName, e);
-                    }
-            }
+    private Class<?> loadParamType(LookupFieldDto lookupField, FieldDto field) {
+        switch (lookupField.getType()) {
+            case RANGE:
+                return Range.class;
+            case SET:
+                return Set.class;
+            default:
+                String typeClassName = getTypeClassName(lookupField, field);
+
+                try {
+                    ClassLoader safeClassLoader = null == classLoader
+                            ? MDSClassLoader.getInstance()
+                            : classLoader;
+
+                    return safeClassLoader.loadClass(typeClassName);
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalStateException("Type not found " + typeClassName, e);
+                }
         }
-
-        return argTypes;
     }
 
     private String getTypeClassName(LookupFieldDto lookupField, FieldDto field) {
@@ -186,4 +222,41 @@ public class LookupExecutor {
 
         return typeClassName;
     }
+
+    /**
+     * The conversion of a lookup parameter into an argument of the lookup method, resolved once from the
+     * lookup field and the entity field it refers to.
+     */
+    private static final class LookupArgument {
+
+        private final String lookupFieldName;
+        private final LookupFieldType type;
+        private final String targetType;
+        private final Class<?> paramType;
+
+        private LookupArgument(String lookupFieldName, LookupFieldType type, String targetType, Class<?> paramType) {
+            this.lookupFieldName = lookupFieldName;
+            this.type = type;
+            this.targetType = targetType;
+            this.paramType = paramType;
+        }
+
+        String getLookupFieldName() {
+            return lookupFieldName;
+        }
+
+        Class<?> getParamType() {
+            return paramType;
+        }
+
+        Object convert(Object val, ClassLoader classLoader) {
+            if (type == LookupFieldType.RANGE) {
+                return TypeHelper.toRange(val, targetType);
+            } else if (type == LookupFieldType.SET) {
+                return TypeHelper.toSet(val, targetType, classLoader);
+            } else {
+                return TypeHelper.parse(val, targetType, classLoader);
+            }
+        }
+    }
 }
@@ -0,0 +1,132 @@
+package org.motechproject.mds.lookup;
+
+import org.motechproject.mds.dto.EntityDto;
+import org.motechproject.mds.dto.FieldDto;
+import org.motechproject.mds.dto.LookupDto;
+import org.motechproject.mds.dto.SchemaSnapshot;
+import org.motechproject.mds.javassist.MotechClassPool;
+import org.motechproject.mds.service.MotechDataService;
+import org.motechproject.mds.service.SchemaSnapshotService;
+import org.motechproject.osgi.web.util.OSGiServiceUtils;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.motechproject.mds.util.Constants.BundleNames.MDS_ENTITIES_SYMBOLIC_NAME;
+
+/**
+ * The <code>LookupExecutorCache</code> keeps {@link LookupExecutor}s by the entity class name and the lookup name,
+ * so that the entity schema and the data service of the entity are not resolved again for every executed lookup.
+ * Executors are built on first use. The data services and lookup methods change only when the entities bundle
+ * is regenerated after a schema change, so the whole cache is invalidated on every lifecycle change of that bundle.
+ */
+@Component
+public class LookupExecutorCache implements BundleListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LookupExecutorCache.class);
+
+    private final ConcurrentMap<String, LookupExecutor> executors = new ConcurrentHashMap<>();
+    // executors built before an invalidation must not be cached after it
+    private final AtomicLong generation = new AtomicLong();
+
+    private SchemaSnapshotService schemaSnapshotService;
+    private BundleContext bundleContext;
+
+    @PostConstruct
+    public void init() {
+        bundleContext.addBundleListener(this);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        bundleContext.removeBundleListener(this);
+    }
+
+    /**
+     * Returns the executor of the given lookup.
+     *
+     * @param entityClassName the class name of the entity
+     * @param lookupName the name of the lookup
+     * @return the executor, or null if the entity, the lookup or the data service of the entity do not exist
+     */
+    public LookupExecutor getExecutor(String entityClassName, String lookupName) {
+        String key = entityClassName + '#' + lookupName;
+
+        LookupExecutor executor = executors.get(key);
+        if (executor == null) {
+            long currentGeneration = generation.get();
+            executor = buildExecutor(entityClassName, lookupName);
+
+            if (executor != null && currentGeneration == generation.get()) {
+                LookupExecutor cached = executors.putIfAbsent(key, executor);
+                executor = cached == null ? executor : cached;
+            }
+        }
+
+        return executor;
+    }
+
+    /**
+     * Removes all executors from the cache.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        executors.clear();
+    }
+
+    @Override
+    public void bundleChanged(BundleEvent event) {
+        Bundle bundle = event.getBundle();
+        if (bundle != null && MDS_ENTITIES_SYMBOLIC_NAME.equals(bundle.getSymbolicName())) {
+            LOGGER.debug("The entities bundle has changed, invalidating the cached lookup executors");
+            invalidate();
+        }
+    }
+
+    private LookupExecutor buildExecutor(String entityClassName, String lookupName) {
+        SchemaSnapshot snapshot = schemaSnapshotService.getSnapshot();
+
+        EntityDto entity = snapshot.getEntityByClassName(entityClassName);
+        if (entity == null) {
+            return null;
+        }
+
+        LookupDto lookup = snapshot.getLookupByName(entity.getId(), lookupName);
+        if (lookup == null) {
+            return null;
+        }
+
+        String serviceName = MotechClassPool.getInterfaceName(entityClassName);
+        MotechDataService dataService = OSGiServiceUtils.findService(bundleContext, serviceName);
+        if (dataService == null) {
+            LOGGER.error("Service {} not found", serviceName);
+            return null;
+        }
+
+        Map<String, FieldDto> fieldsByName = snapshot.getLookupFieldsMapping(entity.getId(), lookupName);
+
+        return new LookupExecutor(dataService, lookup, fieldsByName);
+    }
+
+    @Autowired
+    public void setSchemaSnapshotService(SchemaSnapshotService schemaSnapshotService) {
+        this.schemaSnapshotService = schemaSnapshotService;
+    }
+
+    @Autowired
+    public void setBundleContext(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+    }
+}
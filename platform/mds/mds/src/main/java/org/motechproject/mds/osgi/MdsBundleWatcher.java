@@ -14,6 +14,7 @@ import org.motechproject.mds.dto.JsonLookupDto;
 import org.motechproject.mds.dto.LookupDto;
 import org.motechproject.mds.helper.MdsBundleHelper;
 import org.motechproject.mds.lookup.EntityLookups;
+import org.motechproject.mds.reflections.BundleScanCache;
 import org.motechproject.mds.repository.SchemaChangeLockManager;
 import org.motechproject.mds.service.EntityService;
 import org.motechproject.mds.service.JarGeneratorService;
@@ -42,6 +43,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import static org.apache.commons.lang.StringUtils.startsWith;
@@ -134,6 +139,8 @@ public class MdsBundleWatcher implements SynchronousBundleListener {
     }
 
     private void processInstalledBundles() {
+        prescanBundles(bundleContext.getBundles());
+
         List<MDSProcessorOutput> outputs = new ArrayList<>();
 
         for (Bundle bundle : bundleContext.getBundles()) {
@@ -225,17 +232,68 @@ public class MdsBundleWatcher implements SynchronousBundleListener {
 
         synchronized (lock) {
             // Before we process annotations, we wait until bundle resolves its dependencies
-            int count = 0;
-            while (bundle.getState() < Bundle.RESOLVED && count < MAX_WAIT_TO_RESOLVE) {
-                ThreadSuspender.sleep(500);
-                count++;
-            }
+            waitUntilResolved(bundle);
 
             LOGGER.debug("Processing bundle {}", bundle.getSymbolicName());
             return processor.processAnnotations(bundle);
         }
     }
 
+    private void waitUntilResolved(Bundle bundle) {
+        int count = 0;
+        while (bundle.getState() < Bundle.RESOLVED && count < MAX_WAIT_TO_RESOLVE) {
+            ThreadSuspender.sleep(500);
+            count++;
+        }
+    }
+
+    private void prescanBundles(Bundle[] bundles) {
+        // the annotation scans of the bundles are independent, so they are run in parallel and cached. The scan
+        // results are then processed one bundle at a time, since the annotation processors are stateful
+        List<Bundle> bundlesToScan = new ArrayList<>();
+        for (Bundle bundle : bundles) {
+            if (!skipBundle(bundle)) {
+                bundlesToScan.add(bundle);
+            }
+        }
+
+        if (bundlesToScan.size() < 2 || !BundleScanCache.isEnabled()) {
+            return;
+        }
+
+        int threads = Math.min(bundlesToScan.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<?>> scans = new ArrayList<>();
+            for (final Bundle bundle : bundlesToScan) {
+                scans.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        waitUntilResolved(bundle);
+                        BundleScanCache.getScan(bundle);
+                    }
+                }));
+            }
+
+            for (Future<?> scan : scans) {
+                awaitScan(scan);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void awaitScan(Future<?> scan) throws InterruptedException {
+        try {
+            scan.get();
+        } catch (ExecutionException e) {
+            LOGGER.warn("Unable to scan a bundle in advance, it will be scanned during processing", e.getCause());
+        }
+    }
+
     private boolean skipBundle(Bundle bundle) {
         // we skip the generated entities bundle, MDS bundle and the framework bundle
         if (MdsBundleHelper.isMdsBundle(bundle) || MdsBundleHelper.isMdsEntitiesBundle(bundle) ||
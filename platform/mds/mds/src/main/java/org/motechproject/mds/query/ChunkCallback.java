@@ -0,0 +1,20 @@
+package org.motechproject.mds.query;
+
+import java.util.List;
+
+/**
+ * Processes chunks of instances passed by {@link org.motechproject.mds.service.MotechDataService#processInChunks(int, int, ChunkCallback)}.
+ * Chunks are processed concurrently, so implementations must be thread safe.
+ *
+ * @param <T> the type of entity schema.
+ */
+public interface ChunkCallback<T> {
+
+    /**
+     * Processes a chunk of instances. This is called within the transaction of the chunk, the instances are
+     * persistent and all changes made to them are stored when the transaction commits.
+     *
+     * @param chunk the instances of the chunk
+     */
+    void process(List<T> chunk);
+}
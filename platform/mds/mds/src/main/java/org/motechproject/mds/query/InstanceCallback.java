@@ -0,0 +1,16 @@
+package org.motechproject.mds.query;
+
+/**
+ * Processes instances passed one by one by {@link org.motechproject.mds.service.MotechDataService#forEach(InstanceCallback)}.
+ *
+ * @param <T> the type of entity schema.
+ */
+public interface InstanceCallback<T> {
+
+    /**
+     * Processes a single instance.
+     *
+     * @param instance the detached instance
+     */
+    void process(T instance);
+}
@@ -0,0 +1,70 @@
+package org.motechproject.mds.query;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.motechproject.mds.util.Constants.Util.ID_FIELD_NAME;
+
+/**
+ * The <code>KeysetProperty</code> class represents a property that will be used in JDO query
+ * for retrieving a keyset page. Instances have to come after the instance with the given value of
+ * the order field and the given id, in the order of the order field and then the id.
+ *
+ * @see org.motechproject.mds.query.QueryParams#isKeysetSet()
+ */
+public class KeysetProperty extends Property<Object> {
+
+    private final Long lastId;
+    private final boolean descending;
+
+    public KeysetProperty(String name, Object value, String type, Long lastId, boolean descending) {
+        super(name, value, type);
+        this.lastId = lastId;
+        this.descending = descending;
+    }
+
+    public Long getLastId() {
+        return lastId;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    @Override
+    protected CharSequence generateFilter(int idx) {
+        String operator = descending ? "<" : ">";
+
+        if (isOrderedById()) {
+            return String.format("%s %s param%d", ID_FIELD_NAME, operator, idx);
+        } else if (getValue() == null) {
+            // nulls are not comparable, so we can only continue among instances without a value
+            return String.format("(%s == null && %s %s param%d)", getName(), ID_FIELD_NAME, operator, idx);
+        } else {
+            return String.format("(%1$s %2$s param%3$d_0 || (%1$s == param%3$d_0 && %4$s %2$s param%3$d_1))",
+                    getName(), operator, idx, ID_FIELD_NAME);
+        }
+    }
+
+    @Override
+    protected CharSequence generateDeclareParameter(int idx) {
+        if (isOrderedById() || getValue() == null) {
+            return String.format("%s param%d", Long.class.getName(), idx);
+        } else {
+            return String.format("%s param%d_0, %s param%d_1", getType(), idx, Long.class.getName(), idx);
+        }
+    }
+
+    @Override
+    public Collection unwrap() {
+        if (isOrderedById() || getValue() == null) {
+            return Arrays.asList(lastId);
+        } else {
+            return Arrays.asList(getValue(), lastId);
+        }
+    }
+
+    private boolean isOrderedById() {
+        return ID_FIELD_NAME.equals(getName());
+    }
+}
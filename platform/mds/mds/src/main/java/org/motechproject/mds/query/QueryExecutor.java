@@ -74,11 +74,21 @@ public final class QueryExecutor {
         return query.executeWithArray(unwrappedValues);
     }
 
+    public static long executeDelete(Query query, List<Property> properties) {
+        return query.deletePersistentAll(unwrap(properties.toArray()));
+    }
+
     public static Object executeWithFilters(Query query, Filters filters,
                                             InstanceSecurityRestriction restriction) {
         return executeWithArray(query, filters.valuesForQuery(), restriction, QueryType.RETRIEVE);
     }
 
+    public static Object executeWithFilters(Query query, Filters filters, List<Property> properties,
+                                            InstanceSecurityRestriction restriction) {
+        Object[] values = ArrayUtils.addAll(filters.valuesForQuery(), properties.toArray());
+        return executeWithArray(query, values, restriction, QueryType.RETRIEVE);
+    }
+
     private static Object[] unwrap(Object[] values) {
         List<Object> unwrapped = new ArrayList<>();
 
@@ -3,12 +3,20 @@ package org.motechproject.mds.query;
 import org.apache.commons.lang.StringUtils;
 import org.motechproject.mds.util.Constants;
 import org.motechproject.mds.util.Order;
+import org.motechproject.mds.util.PropertyUtil;
 
 import java.io.Serializable;
+import java.util.Map;
 
 /**
  * Utility class containing parameters which control order and size of query results.
  * Used mainly for paging/ordering queries from the UI.
+ * <p>
+ * Besides paging by page number, the parameters can describe a keyset page: the page of results following
+ * the instance with the given value of the order field and the given id. Keyset pages are retrieved with a condition
+ * on the ordered columns instead of an offset, so retrieving a page costs the same no matter how far into the
+ * results it is. Use {@link #keysetFirst(Integer, Order)} for the first page and {@link #next(Object)} with the last
+ * instance of a page for the following ones.
  */
 public class QueryParams implements Serializable {
     private static final long serialVersionUID = 8635166802886633897L;
@@ -16,6 +24,9 @@ public class QueryParams implements Serializable {
     private final Integer page;
     private final Integer pageSize;
     private final Order order;
+    private final boolean keyset;
+    private final Object lastValue;
+    private final Long lastId;
 
     /**
      * Constant query parameter, that orders records ascending by ID.
@@ -49,9 +60,16 @@ public class QueryParams implements Serializable {
      * @param order specifies order of the records
      */
     public QueryParams(Integer page, Integer pageSize, Order order) {
+        this(page, pageSize, order, false, null, null);
+    }
+
+    private QueryParams(Integer page, Integer pageSize, Order order, boolean keyset, Object lastValue, Long lastId) {
         this.page = page;
         this.pageSize = pageSize;
         this.order = order;
+        this.keyset = keyset;
+        this.lastValue = lastValue;
+        this.lastId = lastId;
     }
 
     public Integer getPage() {
@@ -74,6 +92,71 @@ public class QueryParams implements Serializable {
         return page != null && pageSize != null;
     }
 
+    /**
+     * @return true if these parameters describe a keyset page
+     */
+    public boolean isKeysetSet() {
+        return keyset;
+    }
+
+    /**
+     * @return true if these parameters describe a keyset page following some instance, false if they describe
+     * the first keyset page or are not keyset parameters at all
+     */
+    public boolean isAfterSet() {
+        return keyset && lastId != null;
+    }
+
+    /**
+     * @return the value of the order field of the instance after which the keyset page starts
+     */
+    public Object getLastValue() {
+        return lastValue;
+    }
+
+    /**
+     * @return the id of the instance after which the keyset page starts
+     */
+    public Long getLastId() {
+        return lastId;
+    }
+
+    /**
+     * Returns the name of the field by which a keyset page is ordered. Instances are always additionally ordered
+     * by their id, so that the order is unique.
+     *
+     * @return the name of the order field, or the name of the id field if no order was set
+     */
+    public String getKeysetField() {
+        return isOrderSet() ? order.getField() : Constants.Util.ID_FIELD_NAME;
+    }
+
+    /**
+     * @return true if a keyset page is in descending order
+     */
+    public boolean isKeysetDescending() {
+        return isOrderSet() && order.getDirection() == Order.Direction.DESC;
+    }
+
+    /**
+     * Creates the parameters of the keyset page following the given instance, which should be the last instance
+     * of the page retrieved with these parameters.
+     *
+     * @param lastInstance the last instance or the last projection row of the current page
+     * @return the parameters of the next page
+     * @throws IllegalStateException if these are not keyset parameters
+     */
+    public QueryParams next(Object lastInstance) {
+        if (!keyset) {
+            throw new IllegalStateException("Only keyset query parameters can be advanced with an instance");
+        }
+
+        Object value = getValue(lastInstance, getKeysetField());
+        Long id = (Long) getValue(lastInstance, Constants.Util.ID_FIELD_NAME);
+
+        return keysetAfter(pageSize, order, value, id);
+    }
+
     /**
      * Creates query parameter that sorts records ascending, by the given field.
      *
@@ -93,4 +176,37 @@ public class QueryParams implements Serializable {
     public static QueryParams descOrder(String field) {
         return new QueryParams(new Order(field, Order.Direction.DESC));
     }
+
+    /**
+     * Creates query parameters for the first keyset page.
+     *
+     * @param pageSize amount of entries to include in the page
+     * @param order specifies order of the records, records are ordered by id if it is null
+     * @return query parameters for the first keyset page
+     */
+    public static QueryParams keysetFirst(Integer pageSize, Order order) {
+        return new QueryParams(null, pageSize, order, true, null, null);
+    }
+
+    /**
+     * Creates query parameters for the keyset page following the instance with the given order field value and id.
+     *
+     * @param pageSize amount of entries to include in the page
+     * @param order specifies order of the records, records are ordered by id if it is null
+     * @param lastValue the value of the order field of the last instance of the previous page, ignored
+     *                  if the records are ordered by id
+     * @param lastId the id of the last instance of the previous page
+     * @return query parameters for the keyset page
+     */
+    public static QueryParams keysetAfter(Integer pageSize, Order order, Object lastValue, Long lastId) {
+        if (lastId == null) {
+            throw new IllegalArgumentException("The id of the last instance is required for a keyset page");
+        }
+        return new QueryParams(null, pageSize, order, true, lastValue, lastId);
+    }
+
+    private static Object getValue(Object instance, String field) {
+        // rows of projections are maps
+        return instance instanceof Map ? ((Map) instance).get(field) : PropertyUtil.safeGetProperty(instance, field);
+    }
 }
@@ -0,0 +1,211 @@
+package org.motechproject.mds.query;
+
+import org.motechproject.mds.dto.CacheStatisticsDto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The <code>QueryResultCache</code> class keeps the results of queries executed for a single cacheable entity.
+ * Results should be small and immutable, like the ids of the returned instances or counts. The cache is
+ * bounded: once it is full, the least recently used result is evicted, and every result expires after the
+ * given time to live. A result computed before the last invalidation of the cache is never stored, so that
+ * a query which was running while the data changed does not put an outdated result into the cache.
+ *
+ * @see org.motechproject.mds.service.MdsCacheService
+ */
+public class QueryResultCache {
+
+    private final String entityClassName;
+    private final int maxSize;
+    private final long timeToLive;
+    private final Map<Object, CachedResult> results;
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Creates a cache for the given entity.
+     *
+     * @param entityClassName the class name of the entity
+     * @param maxSize the maximum number of cached results
+     * @param timeToLive the time after which results expire, in milliseconds
+     */
+    public QueryResultCache(String entityClassName, int maxSize, long timeToLive) {
+        if (maxSize < 1 || timeToLive < 1) {
+            throw new IllegalArgumentException("The size and time to live of the cache must be positive");
+        }
+
+        this.entityClassName = entityClassName;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.results = new LinkedHashMap<Object, CachedResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 3236453915634447352L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, CachedResult> eldest) {
+                boolean full = size() > QueryResultCache.this.maxSize;
+                if (full) {
+                    evictions.incrementAndGet();
+                }
+                return full;
+            }
+        };
+    }
+
+    /**
+     * Builds the key of a query. Queries with equal keys return equal results.
+     *
+     * @param operation the name of the operation, distinguishes queries of different kinds
+     * @param properties the properties used by the query
+     * @param queryParams the query parameters, can be null
+     * @param username the name of the user, if the results are restricted to instances of that user, otherwise null
+     * @return the key of the query
+     */
+    public static Object key(String operation, List<Property> properties, QueryParams queryParams, String username) {
+        List<Object> propertyKeys = new ArrayList<>(properties.size());
+
+        for (Property property : properties) {
+            // the filter captures the name, type and operator of the property, the values are compared separately
+            Collection values = property.unwrap();
+            propertyKeys.add(Arrays.asList(String.valueOf(property.asFilter(0)),
+                    values == null ? null : new ArrayList<>(values)));
+        }
+
+        List<Object> queryParamsKey = null;
+        if (queryParams != null) {
+            queryParamsKey = Arrays.asList(queryParams.getPage(), queryParams.getPageSize(),
+                    queryParams.isOrderSet() ? queryParams.getOrder().toString() : null, queryParams.isKeysetSet(),
+                    queryParams.getLastValue(), queryParams.getLastId());
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(operation, username, propertyKeys, queryParamsKey));
+    }
+
+    /**
+     * Returns the cached result of the query with the given key.
+     *
+     * @param key the key of the query
+     * @return the cached result, or null if there is no result or it has expired
+     */
+    public Object get(Object key) {
+        CachedResult result;
+
+        synchronized (results) {
+            result = results.get(key);
+
+            if (result != null && result.isExpired(currentTime())) {
+                results.remove(key);
+                evictions.incrementAndGet();
+                result = null;
+            }
+        }
+
+        if (result == null) {
+            misses.incrementAndGet();
+            return null;
+        } else {
+            hits.incrementAndGet();
+            return result.getValue();
+        }
+    }
+
+    /**
+     * Returns the current generation of the cache. It has to be read before executing a query whose result
+     * will be passed to {@link #put(Object, Object, long)}.
+     *
+     * @return the current generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Stores the result of a query, unless the cache was invalidated since the query started.
+     *
+     * @param key the key of the query
+     * @param value the result of the query
+     * @param queryGeneration the generation of the cache read before the query was executed
+     */
+    public void put(Object key, Object value, long queryGeneration) {
+        synchronized (results) {
+            if (queryGeneration == generation.get()) {
+                results.put(key, new CachedResult(value, currentTime() + timeToLive));
+            }
+        }
+    }
+
+    /**
+     * Removes the result of the query with the given key.
+     *
+     * @param key the key of the query
+     */
+    public void remove(Object key) {
+        synchronized (results) {
+            results.remove(key);
+        }
+    }
+
+    /**
+     * Removes all results from the cache.
+     */
+    public void invalidate() {
+        synchronized (results) {
+            generation.incrementAndGet();
+            results.clear();
+        }
+
+        invalidations.incrementAndGet();
+    }
+
+    public String getEntityClassName() {
+        return entityClassName;
+    }
+
+    /**
+     * Returns the statistics of this cache.
+     *
+     * @return the statistics
+     */
+    public CacheStatisticsDto getStatistics() {
+        int size;
+        synchronized (results) {
+            size = results.size();
+        }
+
+        return new CacheStatisticsDto(entityClassName, size, hits.get(), misses.get(), evictions.get(),
+                invalidations.get());
+    }
+
+    protected long currentTime() {
+        return System.currentTimeMillis();
+    }
+
+    private static final class CachedResult {
+
+        private final Object value;
+        private final long expiresAt;
+
+        private CachedResult(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        Object getValue() {
+            return value;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
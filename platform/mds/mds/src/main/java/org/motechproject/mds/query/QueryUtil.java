@@ -11,6 +11,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import static org.motechproject.mds.util.Constants.Util.ID_FIELD_NAME;
 import static org.motechproject.mds.util.SecurityUtil.getUsername;
 
 /**
@@ -31,7 +32,9 @@ public final class QueryUtil {
             throw new IllegalArgumentException("Cannot set parameters for a null query");
         }
 
-        if (queryParams != null) {
+        if (queryParams != null && queryParams.isKeysetSet()) {
+            setKeysetQueryParams(query, queryParams);
+        } else if (queryParams != null) {
             if (queryParams.isPagingSet()) {
                 long page = queryParams.getPage();
                 long pageSize = queryParams.getPageSize();
@@ -59,12 +62,99 @@ public final class QueryUtil {
         }
     }
 
+    /**
+     * Sets the filter of the query to the given filters joined with the given properties and the
+     * security restriction. The values of the query should be passed in the same order: the values of the
+     * filters, the values of the properties and the user name.
+     *
+     * @param query the query to set the filter for
+     * @param filters the filters, can be null
+     * @param properties the additional properties, like the keyset property
+     * @param restriction the security restriction, can be null
+     */
+    public static void useFilters(Query query, Filters filters, List<Property> properties,
+                                  InstanceSecurityRestriction restriction) {
+        if (query == null) {
+            throw new IllegalArgumentException(QUERY_CANNOT_BE_NULL);
+        }
+
+        List<Property> copy = new ArrayList<>(properties);
+
+        if (restriction != null && !restriction.isEmpty()) {
+            copy.add(new RestrictionProperty(restriction, getUsername()));
+        }
+
+        Collection<CharSequence> filter = new ArrayList<>(copy.size() + 1);
+        Collection<CharSequence> declareParameter = new ArrayList<>(copy.size() + 1);
+
+        if (filters != null && filters.requiresFiltering()) {
+            filter.add(filters.filterForQuery());
+            declareParameter.add(filters.paramsDeclarationForQuery());
+        }
+
+        for (int idx = 0; idx < copy.size(); ++idx) {
+            Property property = copy.get(idx);
+
+            CollectionUtils.addIgnoreNull(filter, property.asFilter(idx));
+            CollectionUtils.addIgnoreNull(declareParameter, property.asDeclareParameter(idx));
+        }
+
+        if (!filter.isEmpty()) {
+            query.setFilter(StringUtils.join(filter, " && "));
+            query.declareParameters(StringUtils.join(declareParameter, ", "));
+        }
+    }
+
+    /**
+     * Returns the given properties with the {@link KeysetProperty} for the given query parameters added,
+     * if they describe a keyset page following some instance.
+     *
+     * @param properties the properties of the query
+     * @param queryParams the query parameters, can be null
+     * @param fieldTypeMap the map of field names to their types, can be null
+     * @return the properties to use in the query
+     */
+    public static List<Property> withKeyset(List<Property> properties, QueryParams queryParams,
+                                            Map<String, String> fieldTypeMap) {
+        if (queryParams == null || !queryParams.isAfterSet()) {
+            return properties;
+        }
+
+        List<Property> list = new ArrayList<>(properties);
+        String field = queryParams.getKeysetField();
+        Object value = queryParams.getLastValue();
+
+        String type = null == fieldTypeMap ? null : fieldTypeMap.get(field);
+        if (type == null && value != null) {
+            type = value.getClass().getName();
+        }
+
+        list.add(new KeysetProperty(field, value, type, queryParams.getLastId(),
+                queryParams.isKeysetDescending()));
+
+        return list;
+    }
+
     public static void useFilter(Query query, String[] properties, Object[] values, Map<String, String> fieldTypeMap) {
         useFilter(query, properties, values, fieldTypeMap, null);
     }
 
     public static void useFilter(Query query, String[] properties, Object[] values, Map<String, String> fieldTypeMap,
                                  InstanceSecurityRestriction restriction) {
+        useFilter(query, createProperties(properties, values, fieldTypeMap), restriction);
+    }
+
+    /**
+     * Creates query properties for the given names and values of fields. Fields which type cannot be
+     * determined are skipped.
+     *
+     * @param properties the names of the fields
+     * @param values the values of the fields
+     * @param fieldTypeMap the map of field names to their types, can be null
+     * @return the query properties
+     */
+    public static List<Property> createProperties(String[] properties, Object[] values,
+                                                  Map<String, String> fieldTypeMap) {
         if (properties.length != values.length) {
             throw new IllegalArgumentException("properties length must equal to values length");
         }
@@ -83,7 +173,7 @@ public final class QueryUtil {
             }
         }
 
-        useFilter(query, list, restriction);
+        return list;
     }
 
     public static void useFilter(Query query, List<Property> properties) {
@@ -140,6 +230,52 @@ public final class QueryUtil {
         return StringUtils.isNotEmpty(string) ? String.format(".*%s.*", string) : string;
     }
 
+    /**
+     * Makes the query read its results through a forward-only database cursor, fetching the given number
+     * of rows at once, instead of loading all of them when it is executed. The query results are not cached,
+     * so instances that were already read can be garbage collected.
+     *
+     * @param query the query
+     * @param fetchSize the number of rows fetched at once
+     */
+    public static void useCursor(Query query, int fetchSize) {
+        if (query == null) {
+            throw new IllegalArgumentException(QUERY_CANNOT_BE_NULL);
+        }
+
+        query.getFetchPlan().setFetchSize(fetchSize);
+        query.addExtension("datanucleus.rdbms.query.resultSetType", "forward-only");
+        query.addExtension("datanucleus.rdbms.query.fetchDirection", "forward");
+        query.addExtension("datanucleus.query.resultCacheType", "none");
+        query.addExtension("datanucleus.query.loadResultsAtCommit", "false");
+    }
+
+    /**
+     * Makes the query return only the values of the given fields, instead of whole instances. Every field
+     * is selected under its own name, so that results can be put into a {@link java.util.Map} or into
+     * a bean with properties named as the fields.
+     *
+     * @param query the query
+     * @param fields the names of the fields to select, only fields stored in a single column can be used
+     * @param resultClass the class of the results, a {@link java.util.Map} implementation or a bean class
+     */
+    public static void useProjection(Query query, List<String> fields, Class<?> resultClass) {
+        if (query == null) {
+            throw new IllegalArgumentException(QUERY_CANNOT_BE_NULL);
+        }
+        if (CollectionUtils.isEmpty(fields)) {
+            throw new IllegalArgumentException("At least one field is required for a projection");
+        }
+
+        List<String> result = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            result.add(String.format("%1$s AS %1$s", field));
+        }
+
+        query.setResult(StringUtils.join(result, ", "));
+        query.setResultClass(resultClass);
+    }
+
     public static void setCountResult(Query query) {
         if (query == null) {
             throw new IllegalArgumentException(QUERY_CANNOT_BE_NULL);
@@ -147,6 +283,21 @@ public final class QueryUtil {
         query.setResult("count(this)");
     }
 
+    private static void setKeysetQueryParams(Query query, QueryParams queryParams) {
+        if (queryParams.getPageSize() != null) {
+            query.setRange(0, queryParams.getPageSize());
+        }
+
+        String direction = queryParams.isKeysetDescending() ? "descending" : "ascending";
+        String field = queryParams.getKeysetField();
+
+        if (ID_FIELD_NAME.equals(field)) {
+            query.setOrdering(String.format("%s %s", ID_FIELD_NAME, direction));
+        } else {
+            query.setOrdering(String.format("%s %s, %s %s", field, direction, ID_FIELD_NAME, direction));
+        }
+    }
+
     private static String getFieldType(String property, Map<String, String> fieldTypeMap, Object value) {
         String type = null;
 
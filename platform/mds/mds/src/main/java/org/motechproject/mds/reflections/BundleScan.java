@@ -0,0 +1,53 @@
+package org.motechproject.mds.reflections;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The <code>BundleScan</code> holds the names of the classes, methods and interfaces found while scanning a bundle
+ * for MDS annotations. Methods are described by the name of the declaring class, the method name and the names of
+ * the parameter types. The scan is stored under a key describing the scanned bundle.
+ *
+ * @see org.motechproject.mds.reflections.BundleScanCache
+ */
+public class BundleScan {
+
+    private String key;
+    private Map<String, Set<String>> annotatedClasses = new HashMap<>();
+    private Map<String, Set<String>> annotatedMethods = new HashMap<>();
+    private Set<String> mdsInterfaces = new HashSet<>();
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public Map<String, Set<String>> getAnnotatedClasses() {
+        return annotatedClasses;
+    }
+
+    public void setAnnotatedClasses(Map<String, Set<String>> annotatedClasses) {
+        this.annotatedClasses = annotatedClasses;
+    }
+
+    public Map<String, Set<String>> getAnnotatedMethods() {
+        return annotatedMethods;
+    }
+
+    public void setAnnotatedMethods(Map<String, Set<String>> annotatedMethods) {
+        this.annotatedMethods = annotatedMethods;
+    }
+
+    public Set<String> getMdsInterfaces() {
+        return mdsInterfaces;
+    }
+
+    public void setMdsInterfaces(Set<String> mdsInterfaces) {
+        this.mdsInterfaces = mdsInterfaces;
+    }
+}
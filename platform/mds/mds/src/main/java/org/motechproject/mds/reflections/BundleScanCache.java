@@ -0,0 +1,189 @@
+package org.motechproject.mds.reflections;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.motechproject.mds.annotations.Entity;
+import org.motechproject.mds.annotations.InstanceLifecycleListener;
+import org.motechproject.mds.annotations.InstanceLifecycleListeners;
+import org.motechproject.mds.annotations.Lookup;
+import org.motechproject.mds.helper.MdsBundleHelper;
+import org.osgi.framework.Bundle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The <code>BundleScanCache</code> keeps the results of scanning bundles for the annotations processed by MDS.
+ * A bundle is scanned once for all of these annotations, instead of once per annotation, and the result is stored
+ * on disk. The stored result is keyed by the symbolic name, version and location of the bundle, together with the
+ * modification time and size of its file. Bundles not installed from a file are keyed by their content instead -
+ * the build time of the bundle or a digest of its entries, see {@link MdsBundleHelper#getContentKey(Bundle)}. As
+ * long as the bundle does not change, for example after a restart of the server, it is not scanned again. The cache is used by the {@link ReflectionsUtil} only when enabled, it is
+ * safe to use from many threads.
+ */
+public final class BundleScanCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BundleScanCache.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final List<Class<? extends Annotation>> CLASS_ANNOTATIONS =
+            Arrays.<Class<? extends Annotation>>asList(Entity.class, InstanceLifecycleListeners.class);
+    private static final List<Class<? extends Annotation>> METHOD_ANNOTATIONS =
+            Arrays.<Class<? extends Annotation>>asList(Lookup.class, InstanceLifecycleListener.class);
+
+    private static final Map<String, BundleScan> SCANS = new ConcurrentHashMap<>();
+    // the install times of bundles, for which the scans kept in memory were checked
+    private static final Map<String, Long> CHECKED = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled;
+    private static volatile Path directory = Paths.get(System.getProperty("user.home"), ".motech", "mds-cache",
+            "bundle-scans");
+
+    private BundleScanCache() {
+    }
+
+    /**
+     * Returns the scan of the given bundle. The bundle is scanned only if it was not scanned before in its current
+     * form.
+     *
+     * @param bundle the bundle to scan
+     * @return the scan of the bundle, or null if the cache is disabled or the bundle has no symbolic name
+     */
+    public static BundleScan getScan(Bundle bundle) {
+        if (!enabled || null == bundle.getSymbolicName()) {
+            return null;
+        }
+
+        BundleScan scan = SCANS.get(bundle.getSymbolicName());
+        Long checked = CHECKED.get(bundle.getSymbolicName());
+
+        // the key is not computed again, as long as the bundle is not installed again
+        if (null != scan && null != checked && checked == bundle.getLastModified()) {
+            return scan;
+        }
+
+        String key = getKey(bundle);
+
+        if (null == scan || !key.equals(scan.getKey())) {
+            scan = read(bundle, key);
+
+            if (null == scan) {
+                LOGGER.debug("Scanning bundle {} for MDS annotations", bundle.getSymbolicName());
+
+                scan = ReflectionsUtil.scanBundle(bundle, CLASS_ANNOTATIONS, METHOD_ANNOTATIONS);
+                scan.setKey(key);
+                write(bundle, scan);
+            } else {
+                LOGGER.debug("Reusing the annotation scan of bundle {}", bundle.getSymbolicName());
+            }
+
+            SCANS.put(bundle.getSymbolicName(), scan);
+        }
+
+        CHECKED.put(bundle.getSymbolicName(), bundle.getLastModified());
+
+        return scan;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        BundleScanCache.enabled = enabled;
+    }
+
+    public static void setDirectory(Path directory) {
+        BundleScanCache.directory = directory;
+    }
+
+    /**
+     * Removes the scans kept in memory. The scans stored on disk are left untouched.
+     */
+    public static void clear() {
+        SCANS.clear();
+        CHECKED.clear();
+    }
+
+    static Collection<String> getAnnotatedClasses(Bundle bundle, Class<? extends Annotation> annotation) {
+        BundleScan scan = getScan(bundle);
+        return null == scan ? null : scan.getAnnotatedClasses().get(annotation.getName());
+    }
+
+    static Collection<String> getAnnotatedMethods(Bundle bundle, Class<? extends Annotation> annotation) {
+        BundleScan scan = getScan(bundle);
+        return null == scan ? null : scan.getAnnotatedMethods().get(annotation.getName());
+    }
+
+    static Collection<String> getMdsInterfaces(Bundle bundle) {
+        BundleScan scan = getScan(bundle);
+        return null == scan ? null : scan.getMdsInterfaces();
+    }
+
+    private static String getKey(Bundle bundle) {
+        StringBuilder key = new StringBuilder();
+        key.append(bundle.getLocation()).append(';');
+
+        File file = getFile(bundle);
+        if (null != file && file.isFile()) {
+            key.append(bundle.getSymbolicName()).append(';').append(bundle.getVersion()).append(';')
+                    .append(file.lastModified()).append(';').append(file.length());
+        } else {
+            // the install time of a bundle changes on every start, so the content of the bundle is used
+            key.append(MdsBundleHelper.getContentKey(bundle));
+        }
+
+        return key.toString();
+    }
+
+    private static File getFile(Bundle bundle) {
+        try {
+            URL location = new URL(bundle.getLocation());
+            return "file".equals(location.getProtocol()) ? new File(location.toURI()) : null;
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            LOGGER.trace("The location of bundle {} is not a file", bundle.getSymbolicName(), e);
+            return null;
+        }
+    }
+
+    private static BundleScan read(Bundle bundle, String key) {
+        Path file = directory.resolve(bundle.getSymbolicName() + ".json");
+
+        try {
+            if (Files.exists(file)) {
+                BundleScan scan = OBJECT_MAPPER.readValue(file.toFile(), BundleScan.class);
+                return key.equals(scan.getKey()) ? scan : null;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read the annotation scan of bundle {}", bundle.getSymbolicName(), e);
+        }
+
+        return null;
+    }
+
+    private static void write(Bundle bundle, BundleScan scan) {
+        try {
+            Files.createDirectories(directory);
+
+            Path tmpFile = Files.createTempFile(directory, bundle.getSymbolicName(), ".tmp");
+            OBJECT_MAPPER.writeValue(tmpFile.toFile(), scan);
+            Files.move(tmpFile, directory.resolve(bundle.getSymbolicName() + ".json"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to store the annotation scan of bundle {}", bundle.getSymbolicName(), e);
+        }
+    }
+}
@@ -29,6 +29,7 @@ import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
@@ -71,11 +72,28 @@ public final class ReflectionsUtil extends AnnotationUtils {
     public static List<Class<? extends MotechDataService>> getMdsInterfaces(Bundle bundle) {
         LOGGER.debug("Looking for MDS interfaces in bundle: {}", bundle.getSymbolicName());
 
-        Reflections reflections = configureReflection(bundle, new WrappedBundleClassLoader(bundle),
-                new SubTypesScanner());
-        Set<Class<? extends MotechDataService>> set = reflections.getSubTypesOf(MotechDataService.class);
+        Collection<String> interfaceNames = BundleScanCache.getMdsInterfaces(bundle);
 
-        return new ArrayList<>(set);
+        if (null == interfaceNames) {
+            Reflections reflections = configureReflection(bundle, new WrappedBundleClassLoader(bundle),
+                    new SubTypesScanner());
+            Set<Class<? extends MotechDataService>> set = reflections.getSubTypesOf(MotechDataService.class);
+
+            return new ArrayList<>(set);
+        }
+
+        WrappedBundleClassLoader classLoader = new WrappedBundleClassLoader(bundle);
+        List<Class<? extends MotechDataService>> interfaces = new ArrayList<>();
+
+        for (String interfaceName : interfaceNames) {
+            try {
+                interfaces.add(classLoader.loadClass(interfaceName).asSubclass(MotechDataService.class));
+            } catch (ClassNotFoundException e) {
+                LOGGER.error("Could not find class", e);
+            }
+        }
+
+        return interfaces;
     }
 
     /**
@@ -89,10 +107,14 @@ public final class ReflectionsUtil extends AnnotationUtils {
         LOGGER.debug("Scanning bundle: {}", bundle.getSymbolicName());
         LOGGER.debug("Searching for classes with annotations: {}", annotation.getName());
 
-        Reflections reflections = configureReflection(bundle, new PristineBundleClassLoader(bundle),
-                new TypeAnnotationsScanner(), new SubTypesScanner());
+        Collection<String> classNames = BundleScanCache.getAnnotatedClasses(bundle, annotation);
+
+        if (null == classNames) {
+            Reflections reflections = configureReflection(bundle, new PristineBundleClassLoader(bundle),
+                    new TypeAnnotationsScanner(), new SubTypesScanner());
 
-        Set<Class<?>> classes = reflections.getTypesAnnotatedWith(annotation);
+            classNames = getNames(reflections.getTypesAnnotatedWith(annotation));
+        }
 
         // in order to prevent processing of user defined or auto generated fields
         // we have to load the bytecode from the jar and define the class in a temporary
@@ -100,9 +122,9 @@ public final class ReflectionsUtil extends AnnotationUtils {
         PristineBundleClassLoader pristineBundleClassLoader = new PristineBundleClassLoader(bundle);
 
         Set<Class<?>> result = new HashSet<>();
-        for (Class clazz : classes) {
+        for (String className : classNames) {
             try {
-                result.add(pristineBundleClassLoader.loadClass(clazz.getName()));
+                result.add(pristineBundleClassLoader.loadClass(className));
             } catch (ClassNotFoundException e) {
                 LOGGER.error("Could not find class", e);
             }
@@ -124,9 +146,16 @@ public final class ReflectionsUtil extends AnnotationUtils {
     public static Set<Method> getMethods(Class<? extends Annotation> annotation, Bundle bundle) {
         LOGGER.debug("Searching for methods with annotations: {}", annotation.getName());
 
-        Reflections reflections = configureReflection(bundle, new WrappedBundleClassLoader(bundle),
-                new MethodAnnotationsScanner());
-        Set<Method> methods = reflections.getMethodsAnnotatedWith(annotation);
+        Collection<String> methodDescriptions = BundleScanCache.getAnnotatedMethods(bundle, annotation);
+        Set<Method> methods;
+
+        if (null == methodDescriptions) {
+            Reflections reflections = configureReflection(bundle, new WrappedBundleClassLoader(bundle),
+                    new MethodAnnotationsScanner());
+            methods = reflections.getMethodsAnnotatedWith(annotation);
+        } else {
+            methods = findMethods(new WrappedBundleClassLoader(bundle), methodDescriptions);
+        }
 
         LOGGER.debug("Searched for methods with annotations: {}", annotation.getName());
         LOGGER.trace("Found {} methods with annotations: {}", methods.size(), annotation.getName());
@@ -134,6 +163,44 @@ public final class ReflectionsUtil extends AnnotationUtils {
         return methods;
     }
 
+    /**
+     * Scans the given bundle once for all given annotations and for the interfaces extending the
+     * {@link MotechDataService} interface.
+     *
+     * @param bundle the bundle to scan
+     * @param classAnnotations the annotations of classes to look for
+     * @param methodAnnotations the annotations of methods to look for
+     * @return the names of the found classes, methods and interfaces
+     */
+    static BundleScan scanBundle(Bundle bundle, List<Class<? extends Annotation>> classAnnotations,
+                                 List<Class<? extends Annotation>> methodAnnotations) {
+        BundleScan scan = new BundleScan();
+
+        Reflections classReflections = configureReflection(bundle, new PristineBundleClassLoader(bundle),
+                new TypeAnnotationsScanner(), new SubTypesScanner());
+
+        for (Class<? extends Annotation> annotation : classAnnotations) {
+            scan.getAnnotatedClasses().put(annotation.getName(),
+                    getNames(classReflections.getTypesAnnotatedWith(annotation)));
+        }
+
+        Reflections memberReflections = configureReflection(bundle, new WrappedBundleClassLoader(bundle),
+                new MethodAnnotationsScanner(), new SubTypesScanner());
+
+        for (Class<? extends Annotation> annotation : methodAnnotations) {
+            Set<String> descriptions = new HashSet<>();
+            for (Method method : memberReflections.getMethodsAnnotatedWith(annotation)) {
+                descriptions.add(describe(method));
+            }
+
+            scan.getAnnotatedMethods().put(annotation.getName(), descriptions);
+        }
+
+        scan.setMdsInterfaces(getNames(memberReflections.getSubTypesOf(MotechDataService.class)));
+
+        return scan;
+    }
+
     /**
      * Looks for class members, that match the given predicate.
      *
@@ -300,6 +367,45 @@ public final class ReflectionsUtil extends AnnotationUtils {
         return annotation;
     }
 
+    private static Set<String> getNames(Set<? extends Class<?>> classes) {
+        Set<String> names = new HashSet<>();
+        for (Class<?> clazz : classes) {
+            names.add(clazz.getName());
+        }
+        return names;
+    }
+
+    private static String describe(Method method) {
+        StringBuilder description = new StringBuilder(method.getDeclaringClass().getName())
+                .append('#').append(method.getName());
+
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            description.append(';').append(parameterType.getName());
+        }
+
+        return description.toString();
+    }
+
+    private static Set<Method> findMethods(ClassLoader classLoader, Collection<String> descriptions) {
+        Set<Method> methods = new HashSet<>();
+
+        for (String description : descriptions) {
+            String[] parts = description.split("[#;]");
+
+            try {
+                for (Method method : classLoader.loadClass(parts[0]).getDeclaredMethods()) {
+                    if (method.getName().equals(parts[1]) && description.equals(describe(method))) {
+                        methods.add(method);
+                    }
+                }
+            } catch (ClassNotFoundException e) {
+                LOGGER.error("Could not find class", e);
+            }
+        }
+
+        return methods;
+    }
+
     private static Reflections configureReflection(Bundle bundle, ClassLoader classLoader, Scanner... scanners) {
         ConfigurationBuilder configuration = new ConfigurationBuilder();
         configuration.addUrls(resolveLocation(bundle));
@@ -1,10 +1,12 @@
 package org.motechproject.mds.repository;
 
 import org.motechproject.mds.filter.Filters;
+import org.motechproject.mds.query.InstanceCallback;
 import org.motechproject.mds.query.Property;
 import org.motechproject.mds.query.QueryExecutor;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.query.QueryUtil;
+import org.motechproject.mds.query.SetProperty;
 import org.motechproject.mds.util.InstanceSecurityRestriction;
 import org.motechproject.mds.util.PropertyUtil;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,9 +18,12 @@ import javax.jdo.PersistenceManagerFactory;
 import javax.jdo.Query;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
+import static org.motechproject.mds.util.Constants.Util.ID_FIELD_NAME;
+
 /**
  * This is a basic repository class with standard CRUD operations. It should be used by other
  * repositories inside this package.
@@ -78,6 +83,10 @@ public abstract class MotechDataRepository<T> {
         return getPersistenceManager().makePersistent(object);
     }
 
+    public List<T> createAll(Collection<T> objects) {
+        return new ArrayList<>(getPersistenceManager().makePersistentAll(objects));
+    }
+
     public List<T> retrieveAll() {
         return retrieveAll(new String[0], new Object[0], null);
     }
@@ -103,6 +112,10 @@ public abstract class MotechDataRepository<T> {
 
     public List<T> retrieveAll(String[] properties, Object[] values, QueryParams queryParams,
                                InstanceSecurityRestriction restriction) {
+        if (queryParams != null && queryParams.isAfterSet()) {
+            return retrieveAfter(QueryUtil.createProperties(properties, values, fieldTypeMap), queryParams, restriction);
+        }
+
         Query query = createQuery(properties, values, restriction);
         QueryUtil.setQueryParams(query, queryParams);
 
@@ -112,6 +125,10 @@ public abstract class MotechDataRepository<T> {
     }
 
     public List<T> retrieveAll(QueryParams queryParams, InstanceSecurityRestriction restriction) {
+        if (queryParams != null && queryParams.isAfterSet()) {
+            return retrieveAfter(new ArrayList<Property>(), queryParams, restriction);
+        }
+
         Query query = createQuery(new String[0], new Object[0], restriction);
         QueryUtil.setQueryParams(query, queryParams);
         Collection collection = (Collection) QueryExecutor.execute(query, restriction);
@@ -119,6 +136,65 @@ public abstract class MotechDataRepository<T> {
         return new ArrayList<T>(collection);
     }
 
+    /**
+     * Retrieves the ids of instances. Used with keyset query parameters, for walking through all instances
+     * without loading them.
+     *
+     * @param queryParams the query parameters
+     * @param restriction the security restriction, can be null
+     * @return the ids of the instances
+     */
+    public List<Long> retrieveIds(QueryParams queryParams, InstanceSecurityRestriction restriction) {
+        List<Property> list = QueryUtil.withKeyset(new ArrayList<Property>(), queryParams, fieldTypeMap);
+
+        Query query = createQuery(list, restriction);
+        QueryUtil.setQueryParams(query, queryParams);
+        query.setResult(ID_FIELD_NAME);
+
+        Collection collection = (Collection) QueryExecutor.executeWithArray(query, list.toArray(), restriction);
+
+        return new ArrayList<Long>(collection);
+    }
+
+    /**
+     * Passes all instances, ordered by id, to the given callback. The instances are read through a database
+     * cursor, every instance is detached before being passed to the callback and evicted from the persistence
+     * manager right after, so that the memory usage does not grow with the number of instances. Must be called
+     * within a transaction.
+     *
+     * @param restriction the security restriction, can be null
+     * @param fetchSize the number of rows fetched from the cursor at once
+     * @param callback the callback processing the instances
+     */
+    public void forEach(InstanceSecurityRestriction restriction, int fetchSize, InstanceCallback<T> callback) {
+        PersistenceManager pm = getPersistenceManager();
+
+        Query query = createQuery(new String[0], new Object[0], restriction);
+        QueryUtil.setQueryParams(query, QueryParams.ORDER_ID_ASC);
+        QueryUtil.useCursor(query, fetchSize);
+
+        try {
+            Collection collection = (Collection) QueryExecutor.execute(query, restriction);
+
+            for (Object result : collection) {
+                T instance = (T) result;
+                T detached = pm.detachCopy(instance);
+                pm.evict(instance);
+
+                callback.process(detached);
+            }
+        } finally {
+            query.closeAll();
+        }
+    }
+
+    public List<T> retrieveByIds(Collection<Long> ids) {
+        List<Property> properties = new ArrayList<>(1);
+        properties.add(new SetProperty<>(ID_FIELD_NAME, new HashSet<>(ids), Long.class.getName()));
+
+        return retrieveAll(properties, null);
+    }
+
     public T retrieve(String property, Object value) {
         return retrieve(new String[]{property}, new Object[]{value}, null);
     }
@@ -150,10 +226,18 @@ public abstract class MotechDataRepository<T> {
         return getPersistenceManager().makePersistent(object);
     }
 
+    public List<T> updateAll(Collection<T> objects) {
+        return new ArrayList<>(getPersistenceManager().makePersistentAll(objects));
+    }
+
     public void delete(T object) {
         getPersistenceManager().deletePersistent(object);
     }
 
+    public void deleteAll(Collection<T> objects) {
+        getPersistenceManager().deletePersistentAll(objects);
+    }
+
     public long delete(String property, Object value) {
         return delete(new String[]{property}, new Object[]{value}, null);
     }
@@ -183,18 +267,61 @@ public abstract class MotechDataRepository<T> {
     }
 
     public List<T> filter(Filters filters, QueryParams queryParams, InstanceSecurityRestriction restriction) {
-        Query query = queryForFilters(filters, queryParams, restriction);
+        List<Property> properties = QueryUtil.withKeyset(new ArrayList<Property>(), queryParams, fieldTypeMap);
+        Query query = queryForFilters(filters, properties, queryParams, restriction);
 
-        Collection collection = (Collection) QueryExecutor.executeWithFilters(query, filters, restriction);
+        Collection collection = (Collection) QueryExecutor.executeWithFilters(query, filters, properties, restriction);
 
         return new ArrayList<T>(collection);
     }
 
+    /**
+     * Retrieves only the values of the given fields of instances, without loading the instances themselves.
+     *
+     * @param fields the names of the fields to retrieve, only fields stored in a single column can be used
+     * @param resultClass the class of rows, a {@link java.util.Map} implementation for rows keyed by field names
+     *                    or a bean class with properties named as the fields
+     * @param queryParams the query parameters, can be null
+     * @param restriction the security restriction, can be null
+     * @param <R> the type of rows
+     * @return the rows with values of the given fields
+     */
+    public <R> List<R> retrieveProjection(List<String> fields, Class<R> resultClass, QueryParams queryParams,
+                                          InstanceSecurityRestriction restriction) {
+        List<Property> list = QueryUtil.withKeyset(new ArrayList<Property>(), queryParams, fieldTypeMap);
+
+        Query query = createQuery(list, restriction);
+        QueryUtil.setQueryParams(query, queryParams);
+        useProjection(query, fields, resultClass);
+
+        Collection collection = (Collection) QueryExecutor.executeWithArray(query, list.toArray(), restriction);
+
+        return new ArrayList<R>(collection);
+    }
+
+    /**
+     * Retrieves only the values of the given fields of instances matching the given filters.
+     *
+     * @see #retrieveProjection(java.util.List, Class, org.motechproject.mds.query.QueryParams,
+     * org.motechproject.mds.util.InstanceSecurityRestriction)
+     */
+    public <R> List<R> filterProjection(List<String> fields, Class<R> resultClass, Filters filters,
+                                        QueryParams queryParams, InstanceSecurityRestriction restriction) {
+        List<Property> properties = QueryUtil.withKeyset(new ArrayList<Property>(), queryParams, fieldTypeMap);
+        Query query = queryForFilters(filters, properties, queryParams, restriction);
+        useProjection(query, fields, resultClass);
+
+        Collection collection = (Collection) QueryExecutor.executeWithFilters(query, filters, properties, restriction);
+
+        return new ArrayList<R>(collection);
+    }
+
     public long countForFilters(Filters filters, InstanceSecurityRestriction restriction) {
-        Query query = queryForFilters(filters, null, restriction);
+        List<Property> properties = new ArrayList<>();
+        Query query = queryForFilters(filters, properties, null, restriction);
         QueryUtil.setCountResult(query);
 
-        return (long) QueryExecutor.executeWithFilters(query, filters, restriction);
+        return (long) QueryExecutor.executeWithFilters(query, filters, properties, restriction);
     }
 
     private Query createQuery(String[] properties, Object[] values, InstanceSecurityRestriction restriction) {
@@ -211,27 +338,56 @@ public abstract class MotechDataRepository<T> {
         return query;
     }
 
-    private Query queryForFilters(Filters filters, QueryParams queryParams, InstanceSecurityRestriction restriction) {
-        Query query = createQuery(new String[0], new Object[0], restriction);
+    private Query queryForFilters(Filters filters, List<Property> properties, QueryParams queryParams,
+                                  InstanceSecurityRestriction restriction) {
+        Query query = getPersistenceManager().newQuery(classType);
         QueryUtil.setQueryParams(query, queryParams);
-        QueryUtil.useFilters(query, filters);
+        QueryUtil.useFilters(query, filters, properties, restriction);
 
         return query;
     }
 
+    private void useProjection(Query query, List<String> fields, Class<?> resultClass) {
+        // field names end up in the query text, so only the names of entity fields are accepted
+        if (fieldTypeMap != null && fields != null) {
+            for (String field : fields) {
+                if (!ID_FIELD_NAME.equals(field) && !fieldTypeMap.containsKey(field)) {
+                    throw new IllegalArgumentException(String.format("Field %s does not exist in %s",
+                            field, classType.getName()));
+                }
+            }
+        }
+
+        QueryUtil.useProjection(query, fields, resultClass);
+    }
+
+    private List<T> retrieveAfter(List<Property> properties, QueryParams queryParams,
+                                  InstanceSecurityRestriction restriction) {
+        List<Property> list = QueryUtil.withKeyset(properties, queryParams, fieldTypeMap);
+
+        Query query = createQuery(list, restriction);
+        QueryUtil.setQueryParams(query, queryParams);
+
+        Collection collection = (Collection) QueryExecutor.executeWithArray(query, list.toArray(), restriction);
+
+        return new ArrayList<T>(collection);
+    }
+
     public List<T> retrieveAll(List<Property> properties, InstanceSecurityRestriction restriction) {
         Query query = createQuery(properties, restriction);
 
-        Collection collection = (Collection) QueryExecutor.executeWithArray(query, properties);
+        Collection collection = (Collection) QueryExecutor.executeWithArray(query, properties.toArray(), restriction);
 
         return new ArrayList<T>(collection);
     }
 
     public List<T> retrieveAll(List<Property> properties, QueryParams queryParams, InstanceSecurityRestriction restriction) {
-        Query query = createQuery(properties, restriction);
+        List<Property> list = QueryUtil.withKeyset(properties, queryParams, fieldTypeMap);
+
+        Query query = createQuery(list, restriction);
         QueryUtil.setQueryParams(query, queryParams);
 
-        Collection collection = (Collection) QueryExecutor.executeWithArray(query, properties);
+        Collection collection = (Collection) QueryExecutor.executeWithArray(query, list.toArray(), restriction);
 
         return new ArrayList<T>(collection);
     }
@@ -240,13 +396,13 @@ public abstract class MotechDataRepository<T> {
         Query query = createQuery(properties, restriction);
         query.setUnique(true);
 
-        return (T) QueryExecutor.executeWithArray(query, properties);
+        return (T) QueryExecutor.executeWithArray(query, properties.toArray(), restriction);
     }
 
     public long count(List<Property> properties, InstanceSecurityRestriction restriction) {
         Query query = createQuery(properties, restriction);
         QueryUtil.setCountResult(query);
 
-        return (long) QueryExecutor.executeWithArray(query, properties);
+        return (long) QueryExecutor.executeWithArray(query, properties.toArray(), restriction);
     }
 }
@@ -0,0 +1,82 @@
+package org.motechproject.mds.rest;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+import org.motechproject.mds.query.QueryParams;
+import org.motechproject.mds.util.Order;
+import org.motechproject.mds.util.TypeHelper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The <code>ContinuationToken</code> util class creates and reads the opaque tokens returned by the REST API
+ * for keyset pages. A token identifies the last instance of a page by the value of its order field and its id,
+ * passing it back retrieves the following page. Values are kept in the token in their {@link String} form,
+ * the REST facade parses them back to the type of the order field.
+ *
+ * @see org.motechproject.mds.query.QueryParams#isKeysetSet()
+ */
+public final class ContinuationToken {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private ContinuationToken() {
+    }
+
+    /**
+     * Creates the token of the page following the given instance.
+     *
+     * @param queryParams the keyset query parameters used for retrieving the current page
+     * @param lastInstance the last instance of the current page
+     * @return the continuation token
+     */
+    public static String create(QueryParams queryParams, Object lastInstance) {
+        QueryParams next = queryParams.next(lastInstance);
+        Object lastValue = next.getLastValue();
+
+        List<Object> content = Arrays.asList(next.getKeysetField(), next.getLastId(),
+                lastValue == null ? null : TypeHelper.format(lastValue));
+
+        try {
+            return Base64.encodeBase64URLSafeString(OBJECT_MAPPER.writeValueAsBytes(content));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create the continuation token", e);
+        }
+    }
+
+    /**
+     * Reads the given token into the query parameters of the page it points to. The value of the order field
+     * is returned as a {@link String}.
+     *
+     * @param token the continuation token
+     * @param pageSize the size of the page
+     * @param order the order of the instances, must be the same as the order of the page that returned the token
+     * @return the keyset query parameters
+     * @throws IllegalArgumentException if the token is malformed or was created for a different order
+     */
+    public static QueryParams parse(String token, Integer pageSize, Order order) {
+        List<Object> content;
+        try {
+            content = OBJECT_MAPPER.readValue(Base64.decodeBase64(token), new TypeReference<List<Object>>() { });
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Malformed continuation token: " + token, e);
+        }
+
+        if (content == null || content.size() != 3 || !(content.get(1) instanceof Number)) {
+            throw new IllegalArgumentException("Malformed continuation token: " + token);
+        }
+
+        QueryParams queryParams = QueryParams.keysetAfter(pageSize, order, content.get(2),
+                ((Number) content.get(1)).longValue());
+
+        if (!StringUtils.equals(queryParams.getKeysetField(), String.valueOf(content.get(0)))) {
+            throw new IllegalArgumentException("The continuation token was created for a different order");
+        }
+
+        return queryParams;
+    }
+}
@@ -21,23 +21,30 @@ import org.motechproject.mds.ex.rest.RestLookupNotFoundException;
 import org.motechproject.mds.ex.rest.RestNoLookupResultException;
 import org.motechproject.mds.ex.rest.RestOperationNotSupportedException;
 import org.motechproject.mds.lookup.LookupExecutor;
+import org.motechproject.mds.query.QueryExecution;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.repository.AllEntities;
 import org.motechproject.mds.service.MotechDataService;
 import org.motechproject.mds.util.BlobDeserializer;
+import org.motechproject.mds.util.InstanceSecurityRestriction;
 import org.motechproject.mds.util.PropertyUtil;
+import org.motechproject.mds.util.TypeHelper;
 
 import javax.annotation.PostConstruct;
+import javax.jdo.Query;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import static org.motechproject.mds.util.Constants.Util.ID_FIELD_NAME;
+
 /**
  * This {@link org.motechproject.mds.rest.MdsRestFacade} implementation
  * retrieves REST related metadata on initialization. It uses an instance of
@@ -48,6 +55,7 @@ import java.util.Set;
 public class MdsRestFacadeImpl<T> implements MdsRestFacade<T> {
 
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int BLOB_BATCH_SIZE = 500;
 
     private MotechDataService<T> dataService;
     private AllEntities allEntities;
@@ -63,6 +71,8 @@ public class MdsRestFacadeImpl<T> implements MdsRestFacade<T> {
 
     private List<String> restFields;
     private List<String> blobFields;
+    private boolean restFieldsProjectable;
+    private Map<String, String> fieldTypes;
 
     private RestOptionsDto restOptions;
 
@@ -85,6 +95,11 @@ public class MdsRestFacadeImpl<T> implements MdsRestFacade<T> {
 
         Map<String, FieldDto> fieldMap = DtoHelper.asFieldMapByName(entity.getFieldDtos());
 
+        fieldTypes = new HashMap<>();
+        for (Map.Entry<String, FieldDto> entry : fieldMap.entrySet()) {
+            fieldTypes.put(entry.getKey(), entry.getValue().getType().getTypeClass());
+        }
+
         readLookups(entity);
         readFieldsExposedByRest(fieldMap);
         readBlobFieldsExposedByRest(fieldMap);
@@ -95,15 +110,25 @@ public class MdsRestFacadeImpl<T> implements MdsRestFacade<T> {
         if (!restOptions.isRead()) {
             throw operationNotSupportedEx("READ");
         }
-        List<T> values = dataService.retrieveAll(queryParams);
-        if (includeBlob) {
-            for (T value : values) {
-                getBlobs(value);
+        QueryParams params = parseKeysetValue(queryParams);
+        List<?> values;
+        if (restFieldsProjectable) {
+            // only the exposed fields are selected, without loading whole instances
+            values = dataService.retrieveProjection(getProjectedFields(params, includeBlob), params);
+        } else {
+            List<T> instances = dataService.retrieveAll(params);
+            if (includeBlob) {
+                getBlobs(instances);
             }
+            values = instances;
         }
 
-        return new RestResponse(entityName, entityClass.getName(), moduleName, namespace, dataService.count(), queryParams,
-                RestProjection.createProjectionCollection(values, restFields, blobFields));
+        // the projections are created while the response is written, the total comes from the count cache
+        RestResponse response = new RestResponse(entityName, entityClass.getName(), moduleName, namespace,
+                dataService.count(), params, RestProjection.createProjectionView(values, restFields, blobFields));
+        setContinuationToken(response, params, values);
+
+        return response;
     }
 
     @Override
@@ -175,15 +200,19 @@ public class MdsRestFacadeImpl<T> implements MdsRestFacade<T> {
     public Object executeLookup(String lookupName, Map<String, String> lookupMap, QueryParams queryParams, boolean includeBlob) {
         if (lookupExecutors.containsKey(lookupName)) {
             LookupExecutor executor = lookupExecutors.get(lookupName);
-            Object result = executor.execute(lookupMap, queryParams);
+            QueryParams params = parseKeysetValue(queryParams);
+            Object result = executor.execute(lookupMap, params);
             if (result instanceof Collection) {
+                List<T> values = new ArrayList<>((Collection<T>) result);
                 if (includeBlob) {
-                    for (T value : ((Collection<T>) result)) {
-                        getBlobs(value);
-                    }
+                    getBlobs(values);
                 }
-                return new RestResponse(entityName, entityClass.getName(), moduleName, namespace, executor.executeCount(lookupMap),
-                        queryParams, RestProjection.createProjectionCollection((Collection) result, restFields, blobFields));
+                RestResponse response = new RestResponse(entityName, entityClass.getName(), moduleName, namespace,
+                        executor.executeCount(lookupMap), params,
+                        RestProjection.createProjectionView(values, restFields, blobFields));
+                setContinuationToken(response, params, values);
+
+                return response;
             } else {
                 if (result == null) {
                     throw new RestNoLookupResultException("No result for lookup:" + lookupName);
@@ -201,12 +230,79 @@ public class MdsRestFacadeImpl<T> implements MdsRestFacade<T> {
         }
     }
 
+    private QueryParams parseKeysetValue(QueryParams queryParams) {
+        // values from continuation tokens are strings, they have to be parsed to the type of the order field
+        if (queryParams != null && queryParams.isAfterSet() && queryParams.getLastValue() instanceof String) {
+            String type = fieldTypes.get(queryParams.getKeysetField());
+
+            if (type == null) {
+                throw new IllegalArgumentException("Unknown order field: " + queryParams.getKeysetField());
+            } else if (!String.class.getName().equals(type)) {
+                Object value = TypeHelper.parse(queryParams.getLastValue(), type, entityClass.getClassLoader());
+                return QueryParams.keysetAfter(queryParams.getPageSize(), queryParams.getOrder(), value,
+                        queryParams.getLastId());
+            }
+        }
+
+        return queryParams;
+    }
+
+    private void setContinuationToken(RestResponse response, QueryParams queryParams, Collection<?> values) {
+        // a page smaller than requested is the last one
+        if (queryParams != null && queryParams.isKeysetSet() && queryParams.getPageSize() != null
+                && !values.isEmpty() && values.size() >= queryParams.getPageSize()) {
+            Object last = new ArrayList<>(values).get(values.size() - 1);
+            response.getMetadata().setContinuationToken(ContinuationToken.create(queryParams, last));
+        }
+    }
+
+    private List<String> getProjectedFields(QueryParams queryParams, boolean includeBlob) {
+        Set<String> fields = new LinkedHashSet<>();
+        for (String field : restFields) {
+            if (includeBlob || !blobFields.contains(field)) {
+                fields.add(field);
+            }
+        }
+
+        // the id and the order field are needed for continuation tokens
+        fields.add(ID_FIELD_NAME);
+        if (queryParams != null && queryParams.isKeysetSet()) {
+            fields.add(queryParams.getKeysetField());
+        }
+
+        return new ArrayList<>(fields);
+    }
+
     private void getBlobs(T value) {
         for (String field : blobFields) {
             PropertyUtil.safeSetProperty(value, field, dataService.getDetachedField(value, field));
         }
     }
 
+    private void getBlobs(List<T> instances) {
+        if (blobFields.isEmpty() || instances.isEmpty()) {
+            return;
+        }
+
+        Map<Object, T> instancesById = new HashMap<>();
+        for (T instance : instances) {
+            instancesById.put(PropertyUtil.safeGetProperty(instance, ID_FIELD_NAME), instance);
+        }
+
+        // the blobs of all instances are selected at once, instead of one query per instance and field
+        List<Object> ids = new ArrayList<>(instancesById.keySet());
+        for (int from = 0; from < ids.size(); from += BLOB_BATCH_SIZE) {
+            List<Object> batch = ids.subList(from, Math.min(from + BLOB_BATCH_SIZE, ids.size()));
+
+            for (Object[] row : dataService.executeQuery(new BlobQueryExecution(blobFields, batch))) {
+                T instance = instancesById.get(row[0]);
+                for (int i = 0; i < blobFields.size(); ++i) {
+                    PropertyUtil.safeSetProperty(instance, blobFields.get(i), row[i + 1]);
+                }
+            }
+        }
+    }
+
     private RestOperationNotSupportedException operationNotSupportedEx(String operation) {
         return new RestOperationNotSupportedException(String.format("%s operation not supported for entity: %s",
                 operation, entityClass));
@@ -227,10 +323,12 @@ public class MdsRestFacadeImpl<T> implements MdsRestFacade<T> {
 
     private void readFieldsExposedByRest(Map<String, FieldDto> fieldMap) {
         restFields = new ArrayList<>(restOptions.getFieldNames().size());
+        restFieldsProjectable = true;
         for (String restFieldName : restOptions.getFieldNames()) {
             FieldDto field = fieldMap.get(restFieldName);
             if (null != field) {
                 restFields.add(field.getBasic().getName());
+                restFieldsProjectable &= field.isProjectable();
             }
         }
     }
@@ -285,4 +383,26 @@ public class MdsRestFacadeImpl<T> implements MdsRestFacade<T> {
             }
         }
     }
+
+    /**
+     * Selects the values of the given blob fields of the instances with the given ids, as rows starting with the id.
+     */
+    private static final class BlobQueryExecution implements QueryExecution<List<Object[]>> {
+
+        private final List<String> blobFields;
+        private final List<Object> ids;
+
+        private BlobQueryExecution(List<String> blobFields, List<Object> ids) {
+            this.blobFields = blobFields;
+            this.ids = ids;
+        }
+
+        @Override
+        public List<Object[]> execute(Query query, InstanceSecurityRestriction restriction) {
+            query.setFilter(":ids.contains(" + ID_FIELD_NAME + ")");
+            query.setResult(ID_FIELD_NAME + ", " + StringUtils.join(blobFields, ", "));
+
+            return new ArrayList<>((Collection<Object[]>) query.execute(ids));
+        }
+    }
 }
@@ -26,6 +26,8 @@ public class RestMetadata {
 
     private int pageSize;
 
+    private String continuationToken;
+
     /**
      * Default constructor.
      */
@@ -48,8 +50,8 @@ public class RestMetadata {
         this.module = moduleName;
         this.namespace = namespace;
         this.totalCount = totalCount;
-        this.page = queryParams.getPage();
-        this.pageSize = queryParams.getPageSize();
+        this.page = queryParams.getPage() == null ? 0 : queryParams.getPage();
+        this.pageSize = queryParams.getPageSize() == null ? 0 : queryParams.getPageSize();
     }
 
     /**
@@ -149,4 +151,19 @@ public class RestMetadata {
     public void setPageSize(int pageSize) {
         this.pageSize = pageSize;
     }
+
+    /**
+     * @return the token for retrieving the next keyset page, null if this is the last page
+     * or the instances were not retrieved by keyset pages
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    /**
+     * @param continuationToken the token for retrieving the next keyset page
+     */
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
 }
@@ -4,10 +4,12 @@ import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang.ArrayUtils;
 import org.motechproject.mds.util.PropertyUtil;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The <code>RestProjection</code> class represents entity fields projection onto entity fields exposed
@@ -28,10 +30,36 @@ public class RestProjection extends LinkedHashMap<String, Object> {
         return projectionCollection;
     }
 
+    /**
+     * Returns a read-only view of the given elements, projected onto the given fields. Unlike
+     * {@link #createProjectionCollection(Collection, List, List)}, the projections are not kept in memory - each
+     * one is created when it is read, for example while the response is written, and can be discarded right after.
+     *
+     * @param elements the elements to project
+     * @param fields the fields exposed over REST
+     * @param blobFields the blob fields exposed over REST
+     * @param <T> the type of the elements
+     * @return the view of the projections
+     */
+    public static <T> List<RestProjection> createProjectionView(final List<T> elements, final List<String> fields,
+                                                                final List<String> blobFields) {
+        return new AbstractList<RestProjection>() {
+            @Override
+            public RestProjection get(int index) {
+                return createProjection(elements.get(index), fields, blobFields);
+            }
+
+            @Override
+            public int size() {
+                return elements.size();
+            }
+        };
+    }
+
     public static <T> RestProjection createProjection(T element, List<String> fields, List<String> blobFields) {
         RestProjection projection = new RestProjection();
         for (String field : fields) {
-            Object value = PropertyUtil.safeGetProperty(element, field);
+            Object value = getValue(element, field);
             if (blobFields.contains(field)) {
                 value = Base64.encodeBase64(ArrayUtils.toPrimitive((Byte[]) value));
             }
@@ -39,4 +67,9 @@ public class RestProjection extends LinkedHashMap<String, Object> {
         }
         return projection;
     }
+
+    private static Object getValue(Object element, String field) {
+        // rows of projections are maps, other elements are entity instances
+        return element instanceof Map ? ((Map) element).get(field) : PropertyUtil.safeGetProperty(element, field);
+    }
 }
@@ -0,0 +1,211 @@
+package org.motechproject.mds.service;
+
+import org.motechproject.mds.domain.ComboboxHolder;
+import org.motechproject.mds.domain.Field;
+import org.motechproject.mds.util.PropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The <code>ComboboxValues</code> keeps the values of combobox fields allowing user supplied values, that are
+ * already stored in the schema of an entity. The values are loaded once, so checking whether an instance uses
+ * only known values does not require any database access. Values that are not known yet are stored through
+ * the {@link EntityService} by the given executor, in batches of distinct values.
+ */
+class ComboboxValues {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ComboboxValues.class);
+
+    private static final long KEEP_ALIVE = 60;
+
+    /**
+     * Stores new values of all entities, one batch at a time. The thread is stopped when it is idle.
+     */
+    private static final Executor DEFAULT_EXECUTOR = new ThreadPoolExecutor(0, 1, KEEP_ALIVE, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "mds-combobox-values");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final Long entityId;
+    private final String entityClassName;
+    private final EntityService entityService;
+    private final SchemaSnapshotService schemaSnapshotService;
+    private final Executor executor;
+
+    private final Map<String, Set<String>> knownValues = new HashMap<>();
+    private final Map<String, Queue<String>> pendingValues = new HashMap<>();
+    private final AtomicBoolean storeScheduled = new AtomicBoolean();
+
+    private final Runnable storeTask = new Runnable() {
+        @Override
+        public void run() {
+            storePendingValues();
+        }
+    };
+
+    ComboboxValues(Long entityId, String entityClassName, List<Field> fields, EntityService entityService,
+                   SchemaSnapshotService schemaSnapshotService) {
+        this(entityId, entityClassName, fields, entityService, schemaSnapshotService, DEFAULT_EXECUTOR);
+    }
+
+    ComboboxValues(Long entityId, String entityClassName, List<Field> fields, EntityService entityService,
+                   SchemaSnapshotService schemaSnapshotService, Executor executor) {
+        this.entityId = entityId;
+        this.entityClassName = entityClassName;
+        this.entityService = entityService;
+        this.schemaSnapshotService = schemaSnapshotService;
+        this.executor = executor;
+
+        // the maps are never modified after construction, only the concurrent sets they contain
+        for (Field field : fields) {
+            Set<String> known = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            known.addAll(Arrays.asList(new ComboboxHolder(field).getValues()));
+
+            knownValues.put(field.getName(), known);
+            pendingValues.put(field.getName(), new ConcurrentLinkedQueue<String>());
+        }
+    }
+
+    /**
+     * Returns the values of combobox fields of the given instances, which are not stored in the schema yet.
+     *
+     * @param instances the instances to check
+     * @return the new values by field name, empty if the instances use only known values
+     */
+    Map<String, Set<String>> findNewValues(Collection<?> instances) {
+        Map<String, Set<String>> newValues = new HashMap<>();
+
+        for (Map.Entry<String, Set<String>> entry : knownValues.entrySet()) {
+            Set<String> fieldValues = null;
+
+            for (Object instance : instances) {
+                for (String value : getValues(instance, entry.getKey())) {
+                    if (!entry.getValue().contains(value)) {
+                        fieldValues = null == fieldValues ? new LinkedHashSet<String>() : fieldValues;
+                        fieldValues.add(value);
+                    }
+                }
+            }
+
+            if (null != fieldValues) {
+                newValues.put(entry.getKey(), fieldValues);
+            }
+        }
+
+        return newValues;
+    }
+
+    /**
+     * Marks the given values as known and schedules storing those, that were not known yet.
+     *
+     * @param newValues the values by field name, as returned by {@link #findNewValues(Collection)}
+     */
+    void add(Map<String, Set<String>> newValues) {
+        boolean added = false;
+
+        for (Map.Entry<String, Set<String>> entry : newValues.entrySet()) {
+            Set<String> known = knownValues.get(entry.getKey());
+
+            for (String value : entry.getValue()) {
+                // only the first thread adding a value stores it
+                if (known.add(value)) {
+                    pendingValues.get(entry.getKey()).add(value);
+                    added = true;
+                }
+            }
+        }
+
+        if (added && storeScheduled.compareAndSet(false, true)) {
+            executor.execute(storeTask);
+        }
+    }
+
+    /**
+     * Stores all pending values in the schema of the entity. Storing them changes the schema version of the entity,
+     * so the schema snapshot of the entity is refreshed afterwards.
+     */
+    void storePendingValues() {
+        storeScheduled.set(false);
+
+        Map<String, Collection> batch = new HashMap<>();
+        for (Map.Entry<String, Queue<String>> entry : pendingValues.entrySet()) {
+            List<String> values = new ArrayList<>();
+
+            // values are kept in the order in which they were committed
+            String value = entry.getValue().poll();
+            while (value != null) {
+                values.add(value);
+                value = entry.getValue().poll();
+            }
+
+            if (!values.isEmpty()) {
+                batch.put(entry.getKey(), values);
+            }
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            entityService.updateComboboxValues(entityId, batch);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to store new combobox values {} of entity {}", batch, entityId, e);
+
+            // the values will be stored again, when they are used next time
+            for (Map.Entry<String, Collection> entry : batch.entrySet()) {
+                knownValues.get(entry.getKey()).removeAll(entry.getValue());
+            }
+
+            return;
+        }
+
+        if (null != schemaSnapshotService) {
+            schemaSnapshotService.refreshEntity(entityClassName);
+        }
+    }
+
+    private Collection<String> getValues(Object instance, String fieldName) {
+        Object value = PropertyUtil.safeGetProperty(instance, fieldName);
+
+        if (null == value) {
+            return Collections.emptyList();
+        }
+
+        Collection<?> values = value instanceof Collection ? (Collection<?>) value : Arrays.asList(value);
+        List<String> result = new ArrayList<>(values.size());
+
+        for (Object item : values) {
+            if (null != item) {
+                // values are stored the same way by the EntityService
+                result.add(item.toString().trim().replaceAll(" ", "%20"));
+            }
+        }
+
+        return result;
+    }
+}
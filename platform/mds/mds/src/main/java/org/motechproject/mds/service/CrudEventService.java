@@ -0,0 +1,41 @@
+package org.motechproject.mds.service;
+
+import org.motechproject.mds.dto.EventStatisticsDto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The <code>CrudEventService</code> interface sends the CRUD events of the MDS data services. It limits the rate
+ * of events sent for a single entity and keeps statistics of the sent events. The configuration of the service
+ * also decides whether the data services coalesce the events of a transaction into batch events.
+ */
+public interface CrudEventService {
+
+    /**
+     * Checks whether the CRUD events of instances of the given entity changed by a transaction should be sent
+     * as batch events, once the transaction commits, instead of an event per instance.
+     *
+     * @param entityClassName the class name of the entity
+     * @return true if events of the entity should be batched per transaction, false otherwise
+     */
+    boolean isBatchPerTransaction(String entityClassName);
+
+    /**
+     * Sends a CRUD event of the given entity. If the rate limit of the entity was reached, the event is deferred
+     * and sent by another thread, or dropped if too many events of the entity are already deferred.
+     *
+     * @param entityClassName the class name of the entity
+     * @param subject the subject of the event
+     * @param params the parameters of the event
+     * @param instanceCount the number of instances reported by the event
+     */
+    void sendEvent(String entityClassName, String subject, Map<String, Object> params, int instanceCount);
+
+    /**
+     * Returns the statistics of CRUD events of all entities that sent them.
+     *
+     * @return the statistics of the events
+     */
+    List<EventStatisticsDto> getStatistics();
+}
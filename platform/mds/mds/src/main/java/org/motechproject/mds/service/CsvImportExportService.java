@@ -1,5 +1,6 @@
 package org.motechproject.mds.service;
 
+import org.motechproject.mds.dto.CsvImportOptions;
 import org.motechproject.mds.dto.CsvImportResults;
 import org.motechproject.mds.query.QueryParams;
 
@@ -210,6 +211,21 @@ public interface CsvImportExportService {
      */
     CsvImportResults importCsv(long entityId, Reader reader, String fileName, CsvImportCustomizer importCustomizer);
 
+    /**
+     * Import instances from a CSV file. The file is imported in chunks, each of them committed in its own
+     * transaction, and a progress event is sent after every chunk. If the import fails, the chunks committed before
+     * the failure are not rolled back and the failure event contains the number of processed rows, which can be
+     * passed in the options to resume the import.
+     * @param entityId id of the entity for which the instances will be imported
+     * @param reader the reader that will be used for reading the file contents
+     * @param fileName the name of the CSV file
+     * @param importCustomizer the customizer that will be used during import
+     * @param options the options of the import, such as the size of the chunks or the number of rows to skip
+     * @return IDs of instances updated/added during import
+     */
+    CsvImportResults importCsv(long entityId, Reader reader, String fileName, CsvImportCustomizer importCustomizer,
+                               CsvImportOptions options);
+
     /**
      * Import instances from a CSV file
      * @param entityClassName class name of the entity for which the instances will be imported
@@ -218,4 +234,17 @@ public interface CsvImportExportService {
      * @return IDs of instances updated/added during import
      */
     CsvImportResults importCsv(String entityClassName, Reader reader, String fileName);
+
+    /**
+     * Import instances from a CSV file. The file is imported in chunks, each of them committed in its own
+     * transaction, and a progress event is sent after every chunk. If the import fails, the chunks committed before
+     * the failure are not rolled back and the failure event contains the number of processed rows, which can be
+     * passed in the options to resume the import.
+     * @param entityClassName class name of the entity for which the instances will be imported
+     * @param reader the reader that will be used for reading the file contents
+     * @param fileName the name of the CSV file
+     * @param options the options of the import, such as the size of the chunks or the number of rows to skip
+     * @return IDs of instances updated/added during import
+     */
+    CsvImportResults importCsv(String entityClassName, Reader reader, String fileName, CsvImportOptions options);
 }
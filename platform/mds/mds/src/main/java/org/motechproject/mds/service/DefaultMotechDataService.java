@@ -5,11 +5,16 @@ import org.motechproject.mds.domain.Entity;
 import org.motechproject.mds.domain.Field;
 import org.motechproject.mds.event.CrudEventType;
 import org.motechproject.mds.ex.entity.EntityNotFoundException;
+import org.motechproject.mds.ex.object.ChunkProcessingException;
 import org.motechproject.mds.ex.object.SecurityException;
 import org.motechproject.mds.filter.Filters;
+import org.motechproject.mds.query.ChunkCallback;
+import org.motechproject.mds.query.InstanceCallback;
 import org.motechproject.mds.query.Property;
 import org.motechproject.mds.query.QueryExecution;
 import org.motechproject.mds.query.QueryParams;
+import org.motechproject.mds.query.QueryResultCache;
+import org.motechproject.mds.query.SetProperty;
 import org.motechproject.mds.query.SqlQueryExecution;
 import org.motechproject.mds.repository.AllEntities;
 import org.motechproject.mds.repository.MotechDataRepository;
@@ -23,6 +28,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.orm.jdo.JdoTransactionManager;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
@@ -32,21 +39,38 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
 import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.PostConstruct;
+import javax.jdo.JDOHelper;
+import javax.jdo.JDOObjectNotFoundException;
 import javax.jdo.Query;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.apache.commons.lang.StringUtils.defaultIfBlank;
 import static org.motechproject.commons.date.util.DateUtil.now;
+import static org.motechproject.mds.event.CrudEventBuilder.buildBatchEventParams;
 import static org.motechproject.mds.event.CrudEventBuilder.buildEventParams;
+import static org.motechproject.mds.event.CrudEventBuilder.createBatchSubject;
 import static org.motechproject.mds.event.CrudEventBuilder.createSubject;
 import static org.motechproject.mds.event.CrudEventType.CREATE;
 import static org.motechproject.mds.event.CrudEventType.DELETE;
 import static org.motechproject.mds.event.CrudEventType.UPDATE;
+import static org.motechproject.mds.util.Constants.MDSEvents.MAX_BATCH_EVENT_SIZE;
 import static org.motechproject.mds.util.Constants.Util.CREATOR_FIELD_NAME;
 import static org.motechproject.mds.util.Constants.Util.MODIFICATION_DATE_FIELD_NAME;
 import static org.motechproject.mds.util.Constants.Util.MODIFIED_BY_FIELD_NAME;
@@ -65,6 +89,15 @@ import static org.motechproject.mds.util.SecurityUtil.getUsername;
 @Service
 public abstract class DefaultMotechDataService<T> implements MotechDataService<T> {
 
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final int MAX_CHUNK_ATTEMPTS = 3;
+    private static final int SECURITY_CHECK_CHUNK_SIZE = 1000;
+    private static final int ID_QUERY_BATCH_SIZE = 1000;
+
+    private static final String RETRIEVE_ALL_QUERY = "retrieveAll";
+    private static final String RETRIEVE_UNIQUE_QUERY = "retrieveUnique";
+    private static final String COUNT_QUERY = "count";
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private MotechDataRepository<T> repository;
@@ -73,10 +106,16 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
     private AllEntities allEntities;
     private EntityService entityService;
     private OsgiEventProxy osgiEventProxy;
+    private MdsCacheService cacheService;
+    private CrudEventService crudEventService;
+    private SchemaSnapshotService schemaSnapshotService;
+    private QueryResultCache queryResultCache;
+    private QueryResultCache countResultCache;
     private SecurityMode securityMode;
     private Long schemaVersion;
     private Long entityId;
-    private List<Field> comboboxStringFields;
+    private ComboboxValues comboboxValues;
+    private final Object transactionEventsKey = new Object();
     private JdoTransactionManager transactionManager;
     private boolean recordHistory;
     private boolean allowCreateEvent;
@@ -114,6 +153,20 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
         }
 
         repository.setFieldTypeMap(fieldTypeMap);
+
+        List<Field> comboboxStringFields = entity.getStringComboboxFields();
+        if (!comboboxStringFields.isEmpty()) {
+            comboboxValues = new ComboboxValues(entityId, name, comboboxStringFields, entityService,
+                    schemaSnapshotService);
+        }
+
+        if (entity.isCacheable() && cacheService != null) {
+            queryResultCache = cacheService.getQueryResultCache(clazz);
+            countResultCache = queryResultCache;
+        } else if (cacheService != null && cacheService.isCountCacheEnabled()) {
+            // instances are not cached, but counts are cheap to keep and expensive to compute
+            countResultCache = cacheService.getQueryResultCache(clazz);
+        }
     }
 
     @Override
@@ -123,7 +176,7 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
 
         final T createdInstance = repository.create(object);
 
-        if (!getComboboxStringFields().isEmpty()) {
+        if (comboboxValues != null) {
             updateComboList(object);
         }
 
@@ -131,23 +184,48 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
             historyService.record(createdInstance);
         }
 
-        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
-            @Override
-            public void afterCommit() {
-                if (allowCreateEvent) {
-                    sendEvent((Long) getId(createdInstance), CREATE);
-                }
-            }
-        });
+        registerCacheInvalidation();
+
+        if (allowCreateEvent) {
+            registerEvent((Long) getId(createdInstance), CREATE);
+        }
 
         return createdInstance;
     }
 
+    @Override
+    @Transactional
+    public List<T> createAll(Collection<T> objects) {
+        validateCredentials();
+
+        final List<T> createdInstances = repository.createAll(objects);
+
+        if (comboboxValues != null) {
+            updateComboList(createdInstances);
+        }
+
+        if (recordHistory) {
+            historyService.recordAll(createdInstances);
+        }
+
+        registerCacheInvalidation();
+
+        if (allowCreateEvent) {
+            registerEvents(getIds(createdInstances), CREATE);
+        }
+
+        return createdInstances;
+    }
+
     @Override
     @Transactional
     public T retrieve(String primaryKeyName, Object value) {
         T instance = repository.retrieve(primaryKeyName, value);
-        validateCredentials(instance);
+
+        if (instance != null) {
+            // the instance was just read, so its creator and owner can be checked without reading it again
+            checkLoadedInstanceAccess(instance, validateCredentials());
+        }
 
         return instance;
     }
@@ -155,15 +233,95 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
     @Override
     @Transactional
     public List<T> retrieveAll() {
+        return retrieveAll(QueryParams.ORDER_ID_ASC);
+    }
+
+    @Override
+    @Transactional
+    public List<T> retrieveAll(final QueryParams queryParams) {
+        final InstanceSecurityRestriction securityRestriction = validateCredentials();
+
+        if (!isCacheUsable()) {
+            return repository.retrieveAll(queryParams, securityRestriction);
+        }
+
+        Object key = cacheKey(RETRIEVE_ALL_QUERY, new ArrayList<Property>(), queryParams, securityRestriction);
+        return retrieveCached(key, new CachedQuery<List<T>>() {
+            @Override
+            public List<T> execute() {
+                return repository.retrieveAll(queryParams, securityRestriction);
+            }
+        });
+    }
+
+    @Override
+    @Transactional
+    public List<Map<String, Object>> retrieveProjection(List<String> fields, QueryParams queryParams) {
         InstanceSecurityRestriction securityRestriction = validateCredentials();
-        return repository.retrieveAll(QueryParams.ORDER_ID_ASC, securityRestriction);
+        List rows = repository.retrieveProjection(fields, HashMap.class, queryParams, securityRestriction);
+        return (List<Map<String, Object>>) rows;
     }
 
     @Override
     @Transactional
-    public List<T> retrieveAll(QueryParams queryParams) {
+    public <P> List<P> retrieveProjection(Class<P> projectionClass, List<String> fields, QueryParams queryParams) {
         InstanceSecurityRestriction securityRestriction = validateCredentials();
-        return repository.retrieveAll(queryParams, securityRestriction);
+        return repository.retrieveProjection(fields, projectionClass, queryParams, securityRestriction);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEach(InstanceCallback<T> callback) {
+        InstanceSecurityRestriction securityRestriction = validateCredentials();
+        repository.forEach(securityRestriction, STREAM_FETCH_SIZE, callback);
+    }
+
+    @Override
+    public long processInChunks(int chunkSize, int parallelism, ChunkCallback<T> callback) {
+        if (chunkSize < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("The chunk size and parallelism must be positive");
+        }
+
+        final InstanceSecurityRestriction securityRestriction = validateCredentials();
+        // the worker threads need the user for the security checks of the callback
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        Deque<Future<Integer>> futures = new ArrayDeque<>();
+        ChunkResults results = new ChunkResults();
+
+        try {
+            QueryParams queryParams = QueryParams.keysetFirst(chunkSize, null);
+            List<Long> ids = retrieveIds(queryParams, securityRestriction);
+
+            while (!ids.isEmpty()) {
+                futures.add(executor.submit(new ChunkTask(ids, callback, securityContext)));
+
+                // ids are read ahead only by a few chunks
+                if (futures.size() > parallelism) {
+                    results.await(futures.poll());
+                }
+
+                if (ids.size() < chunkSize) {
+                    ids = Collections.emptyList();
+                } else {
+                    queryParams = QueryParams.keysetAfter(chunkSize, null, null, ids.get(ids.size() - 1));
+                    ids = retrieveIds(queryParams, securityRestriction);
+                }
+            }
+
+            while (!futures.isEmpty()) {
+                results.await(futures.poll());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!results.getFailedIds().isEmpty()) {
+            throw new ChunkProcessingException(entityName, results.getFailedIds(), results.getLastError());
+        }
+
+        return results.getProcessed();
     }
 
     @Override
@@ -174,7 +332,7 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
         updateModificationData(object);
         final T updatedInstance = repository.update(object);
 
-        if (!getComboboxStringFields().isEmpty()) {
+        if (comboboxValues != null) {
             updateComboList(object);
         }
 
@@ -182,18 +340,43 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
             historyService.record(updatedInstance);
         }
 
-        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
-            @Override
-            public void afterCommit() {
-                if (allowUpdateEvent) {
-                    sendEvent((Long) getId(updatedInstance), UPDATE);
-                }
-            }
-        });
+        registerCacheInvalidation();
+
+        if (allowUpdateEvent) {
+            registerEvent((Long) getId(updatedInstance), UPDATE);
+        }
 
         return updatedInstance;
     }
 
+    @Override
+    @Transactional
+    public List<T> updateAll(Collection<T> objects) {
+        validateAllCredentials(objects);
+
+        for (T object : objects) {
+            updateModificationData(object);
+        }
+
+        final List<T> updatedInstances = repository.updateAll(objects);
+
+        if (comboboxValues != null) {
+            updateComboList(updatedInstances);
+        }
+
+        if (recordHistory) {
+            historyService.recordAll(updatedInstances);
+        }
+
+        registerCacheInvalidation();
+
+        if (allowUpdateEvent) {
+            registerEvents(getIds(updatedInstances), UPDATE);
+        }
+
+        return updatedInstances;
+    }
+
     @Override
     @Transactional
     public T createOrUpdate (final T object) {
@@ -215,9 +398,11 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
     @Override
     @Transactional
     public T updateFromTransient(final T transientObject, final Set<String> fieldsToUpdate) {
-        validateCredentials(transientObject);
+        InstanceSecurityRestriction securityRestriction = validateCredentials();
 
         T fromDbInstance = findById((Long) getId(transientObject));
+        checkLoadedInstanceAccess(fromDbInstance, securityRestriction);
+
         if (fromDbInstance == null) {
             fromDbInstance = create(transientObject);
         } else {
@@ -226,7 +411,7 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
 
         updateModificationData(fromDbInstance);
 
-        if (!getComboboxStringFields().isEmpty()) {
+        if (comboboxValues != null) {
             updateComboList(fromDbInstance);
         }
 
@@ -234,15 +419,11 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
             historyService.record(fromDbInstance);
         }
 
-        final T finalFromDbInstance = fromDbInstance;
-        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
-            @Override
-            public void afterCommit() {
-                if (allowUpdateEvent) {
-                    sendEvent((Long) getId(finalFromDbInstance), UPDATE);
-                }
-            }
-        });
+        registerCacheInvalidation();
+
+        if (allowUpdateEvent) {
+            registerEvent((Long) getId(fromDbInstance), UPDATE);
+        }
 
         return fromDbInstance;
     }
@@ -258,11 +439,17 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
             throw new IllegalArgumentException("Unable to delete null object");
         }
 
-        validateCredentials(object);
+        final InstanceSecurityRestriction securityRestriction = validateCredentials();
 
-        Long deletedInstanceId = doInTransaction(new TransactionCallback<Long>() {
+        doInTransaction(new TransactionCallback<Void>() {
             @Override
-            public Long doInTransaction(TransactionStatus status) {
+            public Void doInTransaction(TransactionStatus status) {
+                // We retrieve the object using the current pm, the instance security is checked on the
+                // retrieved instance
+                Long id = (Long) getId(object);
+                T existing = findById(id);
+                checkLoadedInstanceAccess(existing, securityRestriction);
+
                 boolean trashMode = trashService.isTrashMode();
                 if (trashMode) {
                     // move object to trash if trash mode is active
@@ -274,18 +461,58 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
 
                 // independent of trash mode remove object. If trash mode is active then the same object
                 // exists in the trash so this one is unnecessary.
-                // We retrieve the object using the current pm
-                Long id = (Long) getId(object);
-                T existing = findById(id);
-
                 repository.delete(existing);
-                return id;
+                registerCacheInvalidation();
+
+                if (allowDeleteEvent) {
+                    registerEvent(id, DELETE);
+                }
+
+                return null;
             }
         });
+    }
 
-        if (allowDeleteEvent) {
-            sendEvent(deletedInstanceId, DELETE);
+    @Override
+    public void deleteAll(final Collection<T> objects) {
+        if (objects == null) {
+            throw new IllegalArgumentException("Unable to delete null collection");
         }
+
+        final InstanceSecurityRestriction securityRestriction = validateCredentials();
+
+        doInTransaction(new TransactionCallback<Void>() {
+            @Override
+            public Void doInTransaction(TransactionStatus status) {
+                // we retrieve the objects using the current pm, the instance security is checked on the
+                // retrieved instances
+                List<Long> ids = getIds(objects);
+                List<T> existing = ids.isEmpty() ? Collections.<T>emptyList() : repository.retrieveByIds(ids);
+
+                if (!securityRestriction.isEmpty()) {
+                    checkLoadedInstancesAccess(ids, existing, securityRestriction);
+                }
+
+                if (trashService.isTrashMode()) {
+                    // move objects to trash if trash mode is active
+                    for (T object : objects) {
+                        trashService.moveToTrash(object, schemaVersion, recordHistory);
+                    }
+                } else if (recordHistory) {
+                    // remove all historical data if history recording is active
+                    historyService.removeAll(objects);
+                }
+
+                repository.deleteAll(existing);
+                registerCacheInvalidation();
+
+                if (allowDeleteEvent) {
+                    registerEvents(ids, DELETE);
+                }
+
+                return null;
+            }
+        });
     }
 
     @Override
@@ -314,13 +541,25 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
     public void revertFromTrash(Object newInstance, Object trash) {
         validateCredentials();
         trashService.moveFromTrash(repository.create((T) newInstance), trash, recordHistory);
+        registerCacheInvalidation();
     }
 
     @Override
     @Transactional
     public long count() {
-        InstanceSecurityRestriction securityRestriction = validateCredentials();
-        return repository.count(securityRestriction);
+        final InstanceSecurityRestriction securityRestriction = validateCredentials();
+
+        if (!isCountCacheUsable()) {
+            return repository.count(securityRestriction);
+        }
+
+        Object key = cacheKey(COUNT_QUERY, new ArrayList<Property>(), null, securityRestriction);
+        return countCached(key, new CachedQuery<Long>() {
+            @Override
+            public Long execute() {
+                return repository.count(securityRestriction);
+            }
+        });
     }
 
     @Override
@@ -336,6 +575,14 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
         return repository.filter(filters, queryParams, securityRestriction);
     }
 
+    @Override
+    @Transactional
+    public List<Map<String, Object>> filterProjection(List<String> fields, Filters filters, QueryParams queryParams) {
+        InstanceSecurityRestriction securityRestriction = validateCredentials();
+        List rows = repository.filterProjection(fields, HashMap.class, filters, queryParams, securityRestriction);
+        return (List<Map<String, Object>>) rows;
+    }
+
     @Override
     @Transactional
     public long countForFilters(Filters filters) {
@@ -348,6 +595,7 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
     public void deleteAll() {
         InstanceSecurityRestriction securityRestriction = validateCredentials();
         repository.delete(new String[0], new Object[0], securityRestriction);
+        registerCacheInvalidation();
     }
 
     @Override
@@ -368,6 +616,9 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
     public T findById(Long id) {
         if (id == null) {
             return null;
+        } else if (queryResultCache != null && validateCredentials().isEmpty()) {
+            // unrestricted instances of cacheable entities are served from the level 2 cache
+            return retrieveById(id);
         }
         return retrieve(Constants.Util.ID_FIELD_NAME, id);
     }
@@ -385,19 +636,108 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
         return queryExecution.execute(query);
     }
 
+    private List<Long> retrieveIds(final QueryParams queryParams,
+                                   final InstanceSecurityRestriction securityRestriction) {
+        return doInTransaction(new TransactionCallback<List<Long>>() {
+            @Override
+            public List<Long> doInTransaction(TransactionStatus status) {
+                return repository.retrieveIds(queryParams, securityRestriction);
+            }
+        });
+    }
+
     protected List<T> retrieveAll(List<Property> properties) {
         InstanceSecurityRestriction securityRestriction = validateCredentials();
-        return repository.retrieveAll(properties, securityRestriction);
+        return retrieveAllRestricted(properties, null, securityRestriction);
     }
 
     protected List<T> retrieveAll(List<Property> properties, QueryParams queryParams) {
         InstanceSecurityRestriction securityRestriction = validateCredentials();
-        return repository.retrieveAll(properties, queryParams, securityRestriction);
+        return retrieveAllRestricted(properties, queryParams, securityRestriction);
     }
 
     protected long count(List<Property> properties) {
         InstanceSecurityRestriction securityRestriction = validateCredentials();
-        return repository.count(properties, securityRestriction);
+        return countRestricted(properties, securityRestriction);
+    }
+
+    /**
+     * Executes a lookup. The results of lookups of cacheable entities are kept in the query result cache.
+     *
+     * @param properties the properties of the lookup
+     * @param queryParams the query parameters, can be null
+     * @param securityRestriction the security restriction
+     * @return the matching instances
+     */
+    protected List<T> retrieveAllRestricted(final List<Property> properties, final QueryParams queryParams,
+                                            final InstanceSecurityRestriction securityRestriction) {
+        if (!isCacheUsable()) {
+            return doRetrieveAll(properties, queryParams, securityRestriction);
+        }
+
+        Object key = cacheKey(RETRIEVE_ALL_QUERY, properties, queryParams, securityRestriction);
+        return retrieveCached(key, new CachedQuery<List<T>>() {
+            @Override
+            public List<T> execute() {
+                return doRetrieveAll(properties, queryParams, securityRestriction);
+            }
+        });
+    }
+
+    private List<T> doRetrieveAll(List<Property> properties, QueryParams queryParams,
+                                  InstanceSecurityRestriction securityRestriction) {
+        return queryParams == null
+                ? repository.retrieveAll(properties, securityRestriction)
+                : repository.retrieveAll(properties, queryParams, securityRestriction);
+    }
+
+    /**
+     * Executes a lookup returning a single instance. The results of lookups of cacheable entities are kept
+     * in the query result cache.
+     *
+     * @param properties the properties of the lookup
+     * @param securityRestriction the security restriction
+     * @return the matching instance or null
+     */
+    protected T retrieveUniqueRestricted(final List<Property> properties,
+                                         final InstanceSecurityRestriction securityRestriction) {
+        if (!isCacheUsable()) {
+            return repository.retrieveUnique(properties, securityRestriction);
+        }
+
+        Object key = cacheKey(RETRIEVE_UNIQUE_QUERY, properties, null, securityRestriction);
+        List<T> instances = retrieveCached(key, new CachedQuery<List<T>>() {
+            @Override
+            public List<T> execute() {
+                T instance = repository.retrieveUnique(properties, securityRestriction);
+                return instance == null ? new ArrayList<T>() : new ArrayList<>(Arrays.asList(instance));
+            }
+        });
+
+        return instances.isEmpty() ? null : instances.get(0);
+    }
+
+    /**
+     * Counts the instances matching a lookup. The counts are kept in the query result cache, unless the count
+     * cache is disabled for an entity which is not cacheable.
+     *
+     * @param properties the properties of the lookup
+     * @param securityRestriction the security restriction
+     * @return the number of matching instances
+     */
+    protected long countRestricted(final List<Property> properties,
+                                   final InstanceSecurityRestriction securityRestriction) {
+        if (!isCountCacheUsable()) {
+            return repository.count(properties, securityRestriction);
+        }
+
+        Object key = cacheKey(COUNT_QUERY, properties, null, securityRestriction);
+        return countCached(key, new CachedQuery<Long>() {
+            @Override
+            public Long execute() {
+                return repository.count(properties, securityRestriction);
+            }
+        });
     }
 
     protected InstanceSecurityRestriction validateCredentials() {
@@ -405,70 +745,337 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
     }
 
     protected InstanceSecurityRestriction validateCredentials(T instance) {
+        return validateAllCredentials(null == instance
+                ? Collections.<T>emptyList()
+                : Collections.singletonList(instance));
+    }
+
+    protected InstanceSecurityRestriction validateAllCredentials(Collection<T> instances) {
         InstanceSecurityRestriction restriction = new InstanceSecurityRestriction();
         restriction.setByOwner(securityMode == SecurityMode.OWNER);
         restriction.setByCreator(securityMode == SecurityMode.CREATOR);
 
-        if (!restriction.isEmpty() && instance != null) {
-            restriction = checkInstanceAccess(instance, restriction);
+        if (!restriction.isEmpty() && !instances.isEmpty()) {
+            checkInstancesAccess(instances, restriction);
         }
 
         return restriction;
     }
 
-    private InstanceSecurityRestriction checkInstanceAccess(T instance, InstanceSecurityRestriction restriction) {
-        T fromDb = repository.retrieve(getId(instance));
+    /**
+     * Checks whether the current user can access the stored versions of the given instances. Persistent
+     * instances were loaded in the current transaction, so their creator and owner are checked directly.
+     * Detached instances passed by the caller may have been changed, so instead of reading them again one by
+     * one, their ids are counted in a single query restricted to instances of the user, for every chunk of
+     * instances.
+     */
+    private void checkInstancesAccess(Collection<T> instances, InstanceSecurityRestriction restriction) {
+        Set<Long> ids = new HashSet<>();
+
+        for (T instance : instances) {
+            Long id = (Long) getId(instance);
+            if (id == null) {
+                // the instance does not exist, so it can't belong to the user
+                throw new SecurityException();
+            }
 
-        String creator = (String) PropertyUtil.safeGetProperty(fromDb, CREATOR_FIELD_NAME);
-        String owner = (String) PropertyUtil.safeGetProperty(fromDb, OWNER_FIELD_NAME);
+            if (JDOHelper.isPersistent(instance)) {
+                checkLoadedInstanceAccess(instance, restriction);
+                continue;
+            }
 
-        String username = getUsername();
+            ids.add(id);
 
-        boolean authorized = false;
+            if (ids.size() == SECURITY_CHECK_CHUNK_SIZE) {
+                checkIdsAccess(ids, restriction);
+                ids.clear();
+            }
+        }
 
-        if (restriction.isByOwner()) {
-            authorized = StringUtils.equals(username, owner);
-        } else if (restriction.isByCreator()) {
-            authorized = StringUtils.equals(username, creator);
+        if (!ids.isEmpty()) {
+            checkIdsAccess(ids, restriction);
         }
+    }
+
+    private void checkIdsAccess(Set<Long> ids, InstanceSecurityRestriction restriction) {
+        List<Property> properties = new ArrayList<>(1);
+        properties.add(new SetProperty<>(Constants.Util.ID_FIELD_NAME, new HashSet<>(ids), Long.class.getName()));
 
-        if (!authorized) {
+        if (repository.count(properties, restriction) != ids.size()) {
             throw new SecurityException();
         }
+    }
 
-        return restriction;
+    /**
+     * Checks whether the current user can access the given instances, retrieved in the current transaction.
+     * Instances which were not found are treated as not accessible.
+     */
+    private void checkLoadedInstancesAccess(Collection<Long> ids, Collection<T> instances,
+                                            InstanceSecurityRestriction restriction) {
+        if (instances.size() < new HashSet<>(ids).size()) {
+            throw new SecurityException();
+        }
+
+        for (T instance : instances) {
+            checkLoadedInstanceAccess(instance, restriction);
+        }
+    }
+
+    private void checkLoadedInstanceAccess(T instance, InstanceSecurityRestriction restriction) {
+        if (restriction.isEmpty()) {
+            return;
+        }
+
+        String fieldName = restriction.isByOwner() ? OWNER_FIELD_NAME : CREATOR_FIELD_NAME;
+        String username = getUsername();
+
+        if (instance == null
+                || !StringUtils.equals(username, (String) PropertyUtil.safeGetProperty(instance, fieldName))) {
+            throw new SecurityException();
+        }
     }
 
     private void updateComboList(T instance) {
-        Entity entity = allEntities.retrieveById(entityId);
-        Map<String, Collection> fieldUpdateMap = new HashMap<>();
+        updateComboList(Collections.singletonList(instance));
+    }
 
-        for (Field listField : entity.getStringComboboxFields()) {
-            Object value = PropertyUtil.safeGetProperty(instance, listField.getName());
+    private void updateComboList(Collection<T> instances) {
+        final Map<String, Set<String>> newValues = comboboxValues.findNewValues(instances);
 
-            if (value != null) {
-                Collection valAsColl = (value instanceof Collection) ? (Collection) value : Arrays.asList(value);
-                fieldUpdateMap.put(listField.getName(), valAsColl);
-            }
+        if (!newValues.isEmpty()) {
+            // the schema is updated only once the new values are committed
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    comboboxValues.add(newValues);
+                }
+            });
+        }
+    }
+
+    private List<Long> getIds(Collection<T> instances) {
+        List<Long> ids = new ArrayList<>(instances.size());
+        for (T instance : instances) {
+            ids.add((Long) getId(instance));
         }
+        return ids;
+    }
 
-        if (!fieldUpdateMap.isEmpty()) {
-            entityService.updateComboboxValues(entityId, fieldUpdateMap);
+    /**
+     * Registers the CRUD event of the given instance, sent once the current transaction commits. If events
+     * are batched per transaction, the event is coalesced with other events of the transaction.
+     */
+    private void registerEvent(final Long id, final CrudEventType action) {
+        if (isBatchPerTransaction()) {
+            getTransactionEvents().add(action, Collections.singletonList(id));
+        } else {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    sendEvent(id, action);
+                }
+            });
+        }
+    }
+
+    /**
+     * Registers the CRUD events of the given instances, sent once the current transaction commits. Unless
+     * events are batched per transaction, an event is sent for every instance.
+     */
+    private void registerEvents(final List<Long> ids, final CrudEventType action) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        if (isBatchPerTransaction()) {
+            getTransactionEvents().add(action, ids);
+        } else {
+            // a single synchronization sends the events of all instances
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    for (Long id : ids) {
+                        sendEvent(id, action);
+                    }
+                }
+            });
         }
     }
 
-    private List<Field> getComboboxStringFields() {
-        if (comboboxStringFields == null) {
-            comboboxStringFields = allEntities.retrieveById(entityId).getStringComboboxFields();
+    private boolean isBatchPerTransaction() {
+        return crudEventService != null && crudEventService.isBatchPerTransaction(getClassType().getName());
+    }
+
+    /**
+     * Returns the events of instances changed by the current transaction, which will be sent as batch events
+     * once the transaction commits.
+     */
+    private TransactionEvents getTransactionEvents() {
+        TransactionEvents events = (TransactionEvents) TransactionSynchronizationManager.getResource(
+                transactionEventsKey);
+
+        if (events == null) {
+            final TransactionEvents created = new TransactionEvents();
+
+            TransactionSynchronizationManager.bindResource(transactionEventsKey, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    for (Map.Entry<CrudEventType, Set<Long>> entry : created.getIds().entrySet()) {
+                        sendBatchEvents(new ArrayList<>(entry.getValue()), entry.getKey());
+                    }
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResource(transactionEventsKey);
+                }
+            });
+
+            events = created;
         }
 
-        return comboboxStringFields;
+        return events;
+    }
+
+    private void sendBatchEvents(List<Long> ids, CrudEventType action) {
+        String subject = createBatchSubject(module, namespace, entityName, action);
+
+        // large batches are split, so that a single event doesn't carry an unbounded list of ids
+        for (int from = 0; from < ids.size(); from += MAX_BATCH_EVENT_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + MAX_BATCH_EVENT_SIZE, ids.size()));
+            Map<String, Object> params = buildBatchEventParams(module, namespace, entityName,
+                    getClassType().getName(), chunk);
+            publishEvent(subject, params, chunk.size());
+        }
     }
 
     private void sendEvent(Long id, CrudEventType action) {
         String subject = createSubject(module, namespace, entityName, action);
         Map<String, Object> params = buildEventParams(module, namespace, entityName, getClassType().getName(), id);
-        osgiEventProxy.sendEvent(subject, params);
+        publishEvent(subject, params, 1);
+    }
+
+    private void publishEvent(String subject, Map<String, Object> params, int instanceCount) {
+        if (crudEventService != null) {
+            crudEventService.sendEvent(getClassType().getName(), subject, params, instanceCount);
+        } else {
+            osgiEventProxy.sendEvent(subject, params);
+        }
+    }
+
+    /**
+     * Checks whether the query result cache can be used. It can't be used by a transaction that changed
+     * instances of the entity, because cached results don't reflect changes that were not committed yet.
+     */
+    private boolean isCacheUsable() {
+        return queryResultCache != null && !TransactionSynchronizationManager.hasResource(queryResultCache);
+    }
+
+    /**
+     * Checks whether the cached counts can be used, for the same reasons as {@link #isCacheUsable()}.
+     */
+    private boolean isCountCacheUsable() {
+        return countResultCache != null && !TransactionSynchronizationManager.hasResource(countResultCache);
+    }
+
+    private Object cacheKey(String operation, List<Property> properties, QueryParams queryParams,
+                            InstanceSecurityRestriction securityRestriction) {
+        // restricted results depend on the user
+        String username = securityRestriction == null || securityRestriction.isEmpty() ? null : getUsername();
+        return QueryResultCache.key(operation, properties, queryParams, username);
+    }
+
+    private List<T> retrieveCached(Object key, CachedQuery<List<T>> query) {
+        List<Long> ids = (List<Long>) queryResultCache.get(key);
+
+        if (ids != null) {
+            List<T> instances = retrieveByIds(ids);
+            if (instances != null) {
+                return instances;
+            }
+            // one of the instances is gone, so the result is outdated
+            queryResultCache.remove(key);
+        }
+
+        long generation = queryResultCache.getGeneration();
+        List<T> instances = query.execute();
+        queryResultCache.put(key, Collections.unmodifiableList(getIds(instances)), generation);
+
+        return instances;
+    }
+
+    private long countCached(Object key, CachedQuery<Long> query) {
+        Long count = (Long) countResultCache.get(key);
+
+        if (count == null) {
+            long generation = countResultCache.getGeneration();
+            count = query.execute();
+            countResultCache.put(key, count, generation);
+        }
+
+        return count;
+    }
+
+    /*
+     * Loads the instances with the given ids in the order of the ids, querying them in batches. Returns null if any
+     * of the instances no longer exists.
+     */
+    private List<T> retrieveByIds(List<Long> ids) {
+        Map<Long, T> instancesById = new HashMap<>();
+
+        for (int from = 0; from < ids.size(); from += ID_QUERY_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + ID_QUERY_BATCH_SIZE, ids.size()));
+            for (T instance : repository.retrieveByIds(batch)) {
+                instancesById.put((Long) getId(instance), instance);
+            }
+        }
+
+        List<T> instances = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            T instance = instancesById.get(id);
+            if (instance == null) {
+                return null;
+            }
+            instances.add(instance);
+        }
+
+        return instances;
+    }
+
+    private T retrieveById(Long id) {
+        try {
+            return repository.retrieve(id);
+        } catch (JDOObjectNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Invalidates the caches of the entity once the current transaction commits. Until then, the
+     * transaction doesn't use the query result cache.
+     */
+    private void registerCacheInvalidation() {
+        // the count cache is either the query result cache of a cacheable entity, or a cache of counts only
+        if (countResultCache == null) {
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cacheService.invalidate(getClassType());
+        } else if (!TransactionSynchronizationManager.hasResource(countResultCache)) {
+            TransactionSynchronizationManager.bindResource(countResultCache, Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResource(countResultCache);
+
+                    if (status != STATUS_ROLLED_BACK) {
+                        cacheService.invalidate(getClassType());
+                    }
+                }
+            });
+        }
     }
 
     protected Object getId(T instance) {
@@ -513,9 +1120,129 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
         this.osgiEventProxy = osgiEventProxy;
     }
 
+    @Autowired(required = false)
+    public void setCacheService(MdsCacheService cacheService) {
+        this.cacheService = cacheService;
+    }
+
+    @Autowired(required = false)
+    public void setSchemaSnapshotService(SchemaSnapshotService schemaSnapshotService) {
+        this.schemaSnapshotService = schemaSnapshotService;
+    }
+
+    @Autowired(required = false)
+    public void setCrudEventService(CrudEventService crudEventService) {
+        this.crudEventService = crudEventService;
+    }
+
     @Autowired
     @Qualifier("transactionManager")
     public void setTransactionManager(JdoTransactionManager transactionManager) {
         this.transactionManager = transactionManager;
     }
+
+    private class ChunkTask implements Callable<Integer> {
+
+        private final List<Long> ids;
+        private final ChunkCallback<T> callback;
+        private final SecurityContext securityContext;
+
+        ChunkTask(List<Long> ids, ChunkCallback<T> callback, SecurityContext securityContext) {
+            this.ids = ids;
+            this.callback = callback;
+            this.securityContext = securityContext;
+        }
+
+        @Override
+        public Integer call() {
+            SecurityContextHolder.setContext(securityContext);
+
+            try {
+                RuntimeException lastError = null;
+
+                for (int attempt = 1; attempt <= MAX_CHUNK_ATTEMPTS; ++attempt) {
+                    try {
+                        return doInTransaction(new TransactionCallback<Integer>() {
+                            @Override
+                            public Integer doInTransaction(TransactionStatus status) {
+                                List<T> chunk = repository.retrieveByIds(ids);
+                                callback.process(chunk);
+                                return chunk.size();
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        logger.warn("Attempt {} of {} to process a chunk of {} instances of {} failed",
+                                attempt, MAX_CHUNK_ATTEMPTS, ids.size(), entityName, e);
+                        lastError = e;
+                    }
+                }
+
+                throw new ChunkProcessingException(entityName, ids, lastError);
+            } finally {
+                SecurityContextHolder.clearContext();
+            }
+        }
+    }
+
+    private interface CachedQuery<R> {
+
+        R execute();
+    }
+
+    private static final class ChunkResults {
+
+        private final List<Long> failedIds = new ArrayList<>();
+        private long processed;
+        private Throwable lastError;
+
+        void await(Future<Integer> future) {
+            try {
+                processed += future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while processing chunks", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof ChunkProcessingException) {
+                    ChunkProcessingException chunkEx = (ChunkProcessingException) e.getCause();
+                    failedIds.addAll(chunkEx.getFailedIds());
+                    lastError = chunkEx.getCause();
+                } else {
+                    throw new IllegalStateException("Unable to process a chunk", e.getCause());
+                }
+            }
+        }
+
+        List<Long> getFailedIds() {
+            return failedIds;
+        }
+
+        long getProcessed() {
+            return processed;
+        }
+
+        Throwable getLastError() {
+            return lastError;
+        }
+    }
+
+    private static final class TransactionEvents {
+
+        private final Map<CrudEventType, Set<Long>> ids = new EnumMap<>(CrudEventType.class);
+
+        void add(CrudEventType action, Collection<Long> instanceIds) {
+            Set<Long> actionIds = ids.get(action);
+
+            if (actionIds == null) {
+                actionIds = new LinkedHashSet<>();
+                ids.put(action, actionIds);
+            }
+
+            // an instance changed many times by the transaction is reported once
+            actionIds.addAll(instanceIds);
+        }
+
+        Map<CrudEventType, Set<Long>> getIds() {
+            return ids;
+        }
+    }
 }
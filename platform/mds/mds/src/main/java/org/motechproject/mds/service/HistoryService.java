@@ -2,6 +2,7 @@ package org.motechproject.mds.service;
 
 import org.motechproject.mds.query.QueryParams;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -14,12 +15,22 @@ public interface HistoryService {
      * Records changes made on the given instance of entity. The first historical data should be
      * equal to data inside the given instance. Two instance of historical data should be
      * connected using appropriate fields (defined in history class definition). This method should
-     * be used only for instances that are not in the MDS trash.
+     * be used only for instances that are not in the MDS trash. For entities with compact history, only
+     * the values of the instance are captured by this method, the revision is stored after the current
+     * transaction commits.
      *
      * @param instance an instance created from the given entity definition.
      */
     void record(Object instance);
 
+    /**
+     * Records changes made on the given instances of the same entity. Works the same as
+     * {@link #record(Object)}, but stores all historical data at once.
+     *
+     * @param instances instances created from the given entity definition.
+     */
+    void recordAll(Collection<?> instances);
+
     /**
      * Removes all historical data with information what changes were made on the given instance
      * of entity.
@@ -28,6 +39,14 @@ public interface HistoryService {
      */
     void remove(Object instance);
 
+    /**
+     * Removes all historical data of the given instances of the same entity. Works the same as
+     * {@link #remove(Object)}, but removes the data of all instances at once.
+     *
+     * @param instances instances created from the given entity definition.
+     */
+    void removeAll(Collection<?> instances);
+
     /**
      * Sets the trash flag for historical data related with the given instance object.
      *
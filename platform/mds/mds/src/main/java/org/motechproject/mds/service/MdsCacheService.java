@@ -0,0 +1,48 @@
+package org.motechproject.mds.service;
+
+import org.motechproject.mds.dto.CacheStatisticsDto;
+import org.motechproject.mds.query.QueryResultCache;
+
+import java.util.List;
+
+/**
+ * The <code>MdsCacheService</code> interface manages the caches of entities marked as cacheable. Instances of
+ * these entities are kept in the DataNucleus level 2 cache, the results of their lookups and counts in a
+ * {@link org.motechproject.mds.query.QueryResultCache}. Invalidations are broadcast to all Motech instances.
+ */
+public interface MdsCacheService {
+
+    String CACHE_INVALIDATE = "org_motechproject_mds_cache_invalidate";
+
+    /**
+     * Returns the query result cache of the given entity, creating it on first use.
+     *
+     * @param entityClass the class of the entity
+     * @return the query result cache of the entity
+     */
+    QueryResultCache getQueryResultCache(Class<?> entityClass);
+
+    /**
+     * Returns whether the counts of instances should be cached also for entities which are not cacheable.
+     * The query result caches of such entities keep only counts.
+     *
+     * @return true if counts should be cached, false otherwise
+     */
+    boolean isCountCacheEnabled();
+
+    /**
+     * Invalidates the query result cache of the given entity on this Motech instance and commands other
+     * Motech instances to invalidate both the query result cache and the level 2 cache of the entity.
+     * Should be called after a change of instances of the entity was committed.
+     *
+     * @param entityClass the class of the entity
+     */
+    void invalidate(Class<?> entityClass);
+
+    /**
+     * Returns the statistics of the query result caches of all cacheable entities.
+     *
+     * @return the statistics of the caches
+     */
+    List<CacheStatisticsDto> getStatistics();
+}
@@ -1,12 +1,16 @@
 package org.motechproject.mds.service;
 
 import org.motechproject.mds.filter.Filters;
+import org.motechproject.mds.query.ChunkCallback;
+import org.motechproject.mds.query.InstanceCallback;
 import org.motechproject.mds.query.QueryExecution;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.query.SqlQueryExecution;
 import org.springframework.transaction.support.TransactionCallback;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -27,6 +31,17 @@ public interface MotechDataService<T> {
      */
     T create(T object);
 
+    /**
+     * Creates the given instances in MDS, in a single transaction. The combobox values and the history of all
+     * instances are handled together, which makes this method much faster than calling {@link #create(Object)}
+     * for every instance. A CRUD event is sent for every created instance, unless events of the entity are
+     * batched per transaction, see {@link org.motechproject.mds.event.CrudEventBuilder#createBatchSubject}.
+     *
+     * @param objects instances to create
+     * @return created instances, in the same order as the given ones
+     */
+    List<T> createAll(Collection<T> objects);
+
     /**
      * Retrieves instance from MDS based on the value of the given primary key.
      *
@@ -52,6 +67,58 @@ public interface MotechDataService<T> {
      */
     List<T> retrieveAll(QueryParams queryParams);
 
+    /**
+     * Retrieves only the values of the given fields of instances of the {@value T} type, matching the provided
+     * parameters. The values are selected directly from the database, without loading the instances, so this
+     * method is much cheaper than {@link #retrieveAll(QueryParams)} when only some fields are needed. Only
+     * fields stored in a single column can be retrieved, which excludes relationships, maps and multi-select
+     * comboboxes.
+     *
+     * @param fields the names of the fields to retrieve
+     * @param queryParams query parameters to be used retrieving the values
+     * @return the rows with the values, keyed by field names
+     */
+    List<Map<String, Object>> retrieveProjection(List<String> fields, QueryParams queryParams);
+
+    /**
+     * Works like {@link #retrieveProjection(List, QueryParams)}, but puts the values of every row into an instance
+     * of the given class. The class must have a public no-argument constructor and properties named as the fields.
+     *
+     * @param projectionClass the class of the rows
+     * @param fields the names of the fields to retrieve
+     * @param queryParams query parameters to be used retrieving the values
+     * @param <P> the type of the rows
+     * @return the rows with the values
+     */
+    <P> List<P> retrieveProjection(Class<P> projectionClass, List<String> fields, QueryParams queryParams);
+
+    /**
+     * Passes all instances of the {@value T} type, ordered by id, to the given callback one by one. The instances
+     * are read through a database cursor in a single transaction. Every instance is detached before it is passed
+     * to the callback and evicted right after, so the memory usage does not grow with the number of instances,
+     * which makes this method suitable for reading entities too large for {@link #retrieveAll()}. Changes made
+     * to the passed instances are not stored, use {@link #processInChunks(int, int, ChunkCallback)} for that.
+     *
+     * @param callback the callback processing the instances
+     */
+    void forEach(InstanceCallback<T> callback);
+
+    /**
+     * Processes all instances of the {@value T} type in chunks of the given size. Every chunk is processed
+     * in its own transaction by one of the worker threads, so processing a large entity neither holds a long
+     * transaction nor all instances in memory. Changes made to the instances of a chunk are stored when its
+     * transaction commits, the callback can also call the update methods of this service, which join that
+     * transaction. A chunk that fails is rolled back and retried, up to three attempts in total.
+     *
+     * @param chunkSize the number of instances in a chunk
+     * @param parallelism the number of worker threads
+     * @param callback the callback processing the chunks, called concurrently from the worker threads
+     * @return the number of processed instances
+     * @throws org.motechproject.mds.ex.object.ChunkProcessingException after all chunks were processed, if some
+     * of them failed in all attempts, it contains the ids of the instances from the failed chunks
+     */
+    long processInChunks(int chunkSize, int parallelism, ChunkCallback<T> callback);
+
     /**
      * Updates the given instance in MDS.
      *
@@ -60,6 +127,17 @@ public interface MotechDataService<T> {
      */
     T update(T object);
 
+    /**
+     * Updates the given instances in MDS, in a single transaction. The combobox values and the history of all
+     * instances are handled together, which makes this method much faster than calling {@link #update(Object)}
+     * for every instance. A CRUD event is sent for every updated instance, unless events of the entity are
+     * batched per transaction, see {@link org.motechproject.mds.event.CrudEventBuilder#createBatchSubject}.
+     *
+     * @param objects instances to update
+     * @return updated instances, in the same order as the given ones
+     */
+    List<T> updateAll(Collection<T> objects);
+
     /**
      * Updates the given instance in MDS if it exists (checks the presence of the instances id to verify that)
      * or creates a new one if it doesn't.
@@ -96,6 +174,16 @@ public interface MotechDataService<T> {
      */
     void delete(T object);
 
+    /**
+     * Deletes the given instances from MDS, in a single transaction. The history of all instances is removed
+     * together, which makes this method much faster than calling {@link #delete(Object)} for every instance.
+     * A CRUD event is sent for every deleted instance, unless events of the entity are batched per transaction,
+     * see {@link org.motechproject.mds.event.CrudEventBuilder#createBatchSubject}.
+     *
+     * @param objects instances to delete
+     */
+    void deleteAll(Collection<T> objects);
+
     /**
      * Deletes instance from MDS, by its id.
      *
@@ -156,6 +244,18 @@ public interface MotechDataService<T> {
      */
     List<T> filter(Filters filters, QueryParams queryParams);
 
+    /**
+     * Retrieves only the values of the given fields of instances of type {@value T}, filtered using specified
+     * filters and query params.
+     *
+     * @param fields the names of the fields to retrieve
+     * @param filters filters to use filtering instances
+     * @param queryParams query parameters to use filtering instances
+     * @return the rows with the values, keyed by field names
+     * @see #retrieveProjection(List, QueryParams)
+     */
+    List<Map<String, Object>> filterProjection(List<String> fields, Filters filters, QueryParams queryParams);
+
     /**
      * Gets a total number of instances, after being filtered by the given filter.
      *
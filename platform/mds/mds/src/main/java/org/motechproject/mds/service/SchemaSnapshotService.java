@@ -0,0 +1,36 @@
+package org.motechproject.mds.service;
+
+import org.motechproject.mds.dto.SchemaSnapshot;
+
+/**
+ * The <code>SchemaSnapshotService</code> interface provides the committed definitions of all entities as an
+ * in-memory {@link SchemaSnapshot}, so that the data access paths do not have to read the schema tables on every
+ * request. The snapshot is rebuilt whenever the entities bundle is regenerated and refreshed for a single entity
+ * when its definition changes without a regeneration. Such refreshes are broadcast to all Motech instances.
+ */
+public interface SchemaSnapshotService {
+
+    String SCHEMA_CHANGED = "org_motechproject_mds_schema_changed";
+
+    /**
+     * Returns the current snapshot of the schema, building it on first use. The returned snapshot never
+     * changes, callers that need a consistent view should use one snapshot for the whole operation.
+     *
+     * @return the current snapshot of the schema
+     */
+    SchemaSnapshot getSnapshot();
+
+    /**
+     * Rebuilds the snapshot of all entities on this Motech instance. Should be called after the entities were
+     * constructed for a new entities bundle, which happens on all instances.
+     */
+    void refresh();
+
+    /**
+     * Rebuilds the definition of the given entity in the snapshot of this Motech instance and commands other
+     * Motech instances to do the same. Should be called after a change of the entity definition was committed.
+     *
+     * @param className the class name of the entity
+     */
+    void refreshEntity(String className);
+}
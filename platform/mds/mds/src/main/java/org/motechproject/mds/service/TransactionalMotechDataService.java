@@ -22,7 +22,7 @@ public abstract class TransactionalMotechDataService<T> extends DefaultMotechDat
             @Override
             public Long doInTransaction(TransactionStatus status) {
                 InstanceSecurityRestriction securityRestriction = validateCredentials();
-                return getRepository().count(properties, securityRestriction);
+                return countRestricted(properties, securityRestriction);
             }
         });
     }
@@ -33,7 +33,7 @@ public abstract class TransactionalMotechDataService<T> extends DefaultMotechDat
             @Override
             public List<T> doInTransaction(TransactionStatus status) {
                 InstanceSecurityRestriction securityRestriction = validateCredentials();
-                return getRepository().retrieveAll(properties, securityRestriction);
+                return retrieveAllRestricted(properties, null, securityRestriction);
             }
         });
     }
@@ -44,7 +44,7 @@ public abstract class TransactionalMotechDataService<T> extends DefaultMotechDat
             @Override
             public List<T> doInTransaction(TransactionStatus status) {
                 InstanceSecurityRestriction securityRestriction = validateCredentials();
-                return getRepository().retrieveAll(properties, queryParams, securityRestriction);
+                return retrieveAllRestricted(properties, queryParams, securityRestriction);
             }
         });
     }
@@ -58,7 +58,7 @@ public abstract class TransactionalMotechDataService<T> extends DefaultMotechDat
             @Override
             public T doInTransaction(TransactionStatus status) {
                 InstanceSecurityRestriction securityRestriction = validateCredentials();
-                return getRepository().retrieveUnique(properties, securityRestriction);
+                return retrieveUniqueRestricted(properties, securityRestriction);
             }
         });
     }
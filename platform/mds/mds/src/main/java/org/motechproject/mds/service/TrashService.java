@@ -59,7 +59,9 @@ public interface TrashService {
 
     /**
      * Cleans the module trash. All instances in trash should be removed permanently and if they
-     * contain any historical data they should also be removed permanently.
+     * contain any historical data they should also be removed permanently. Only instances moved to
+     * trash earlier than the time specified in the module settings are removed. The instances are removed
+     * in chunks, each in a separate transaction.
      * <p/>
      * This method should only be executed by the job created in the
      * {@link #scheduleEmptyTrashJob()} method.
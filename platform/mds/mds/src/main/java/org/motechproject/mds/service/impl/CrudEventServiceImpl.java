@@ -0,0 +1,219 @@
+package org.motechproject.mds.service.impl;
+
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.mds.config.MdsConfig;
+import org.motechproject.mds.dto.EventStatisticsDto;
+import org.motechproject.mds.service.CrudEventService;
+import org.motechproject.server.osgi.event.OsgiEventProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.motechproject.mds.util.Constants.Config.MDS_EVENTS_BATCH_PER_TRANSACTION;
+import static org.motechproject.mds.util.Constants.Config.MDS_EVENTS_MAX_PER_SECOND;
+import static org.motechproject.mds.util.Constants.Config.MODULE_FILE;
+
+/**
+ * Default implementation of the <code>CrudEventService</code> interface. It lives in the MDS Entities Bundle,
+ * next to the data services using it. Events are sent using the {@link OsgiEventProxy}, in order to avoid
+ * a dependency on the event module. Events over the rate limit of their entity are sent by a dispatcher
+ * thread, so that the committing threads never wait for them.
+ */
+public class CrudEventServiceImpl implements CrudEventService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrudEventServiceImpl.class);
+
+    private static final int MAX_DEFERRED_EVENTS = 10000;
+    private static final long SHUTDOWN_TIMEOUT = 5;
+
+    private final ConcurrentMap<String, EntityEventCounter> counters = new ConcurrentHashMap<>();
+
+    private boolean batchPerTransaction;
+    private Map<String, Boolean> entityBatchPerTransaction = new HashMap<>();
+    private int maxPerSecond;
+    private Map<String, Integer> entityMaxPerSecond = new HashMap<>();
+    private ScheduledExecutorService dispatcher;
+
+    private MdsConfig mdsConfig;
+    private OsgiEventProxy osgiEventProxy;
+
+    @PostConstruct
+    public void init() {
+        if (mdsConfig != null) {
+            Properties properties = mdsConfig.getProperties(MODULE_FILE);
+            batchPerTransaction = getBoolean(properties, MDS_EVENTS_BATCH_PER_TRANSACTION);
+            maxPerSecond = getNonNegativeInt(properties, MDS_EVENTS_MAX_PER_SECOND);
+
+            entityBatchPerTransaction = new HashMap<>();
+            for (Map.Entry<String, String> entry : getEntityKeys(properties, MDS_EVENTS_BATCH_PER_TRANSACTION)
+                    .entrySet()) {
+                entityBatchPerTransaction.put(entry.getKey(), getBoolean(properties, entry.getValue()));
+            }
+
+            entityMaxPerSecond = new HashMap<>();
+            for (Map.Entry<String, String> entry : getEntityKeys(properties, MDS_EVENTS_MAX_PER_SECOND).entrySet()) {
+                entityMaxPerSecond.put(entry.getKey(), getNonNegativeInt(properties, entry.getValue()));
+            }
+        }
+
+        if ((maxPerSecond > 0 || !entityMaxPerSecond.isEmpty()) && dispatcher == null) {
+            dispatcher = Executors.newSingleThreadScheduledExecutor(new DispatcherThreadFactory());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (dispatcher != null) {
+            // deferred events are still sent, but no longer than the timeout allows
+            dispatcher.shutdown();
+            try {
+                dispatcher.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            dispatcher = null;
+        }
+    }
+
+    @Override
+    public boolean isBatchPerTransaction(String entityClassName) {
+        Boolean entityValue = entityBatchPerTransaction.get(entityClassName);
+        return entityValue == null ? batchPerTransaction : entityValue;
+    }
+
+    @Override
+    public void sendEvent(String entityClassName, final String subject, final Map<String, Object> params,
+                          final int instanceCount) {
+        final EntityEventCounter counter = getCounter(entityClassName);
+        long wait = counter.reserve();
+
+        if (wait == EntityEventCounter.SEND_NOW) {
+            send(counter, subject, params, instanceCount);
+        } else if (wait == EntityEventCounter.DROP) {
+            LOGGER.warn("Too many events of {} are waiting to be sent, dropping the event {}", entityClassName,
+                    subject);
+        } else {
+            defer(counter, subject, params, instanceCount, wait);
+        }
+    }
+
+    @Override
+    public List<EventStatisticsDto> getStatistics() {
+        List<EventStatisticsDto> statistics = new ArrayList<>(counters.size());
+
+        for (EntityEventCounter counter : counters.values()) {
+            statistics.add(counter.getStatistics());
+        }
+
+        return statistics;
+    }
+
+    private void defer(final EntityEventCounter counter, final String subject, final Map<String, Object> params,
+                       final int instanceCount, long wait) {
+        ScheduledExecutorService executor = dispatcher;
+
+        if (executor != null) {
+            try {
+                executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        counter.deferredHandled();
+                        try {
+                            send(counter, subject, params, instanceCount);
+                        } catch (RuntimeException e) {
+                            LOGGER.error("Unable to send the event " + subject, e);
+                        }
+                    }
+                }, wait, TimeUnit.NANOSECONDS);
+                return;
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("The dispatcher is shut down, sending the event {} right away", subject);
+            }
+        }
+
+        // the event reports a committed change, so it is sent even if the service is shutting down
+        counter.deferredHandled();
+        send(counter, subject, params, instanceCount);
+    }
+
+    private void send(EntityEventCounter counter, String subject, Map<String, Object> params, int instanceCount) {
+        osgiEventProxy.sendEvent(subject, params);
+        counter.sent(instanceCount);
+    }
+
+    private EntityEventCounter getCounter(String entityClassName) {
+        EntityEventCounter counter = counters.get(entityClassName);
+
+        if (counter == null) {
+            Integer limit = entityMaxPerSecond.get(entityClassName);
+
+            EntityEventCounter created = new EntityEventCounter(entityClassName,
+                    limit == null ? maxPerSecond : limit, MAX_DEFERRED_EVENTS);
+            counter = counters.putIfAbsent(entityClassName, created);
+            counter = counter == null ? created : counter;
+        }
+
+        return counter;
+    }
+
+    /**
+     * Returns the keys of properties overriding the given property for a single entity, by the class names
+     * of entities. The key of such a property is the key of the given property followed by a dot and the
+     * class name of the entity.
+     */
+    private Map<String, String> getEntityKeys(Properties properties, String key) {
+        Map<String, String> keys = new HashMap<>();
+        String prefix = key + '.';
+
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(prefix)) {
+                keys.put(name.substring(prefix.length()), name);
+            }
+        }
+
+        return keys;
+    }
+
+    private boolean getBoolean(Properties properties, String key) {
+        return Boolean.parseBoolean(StringUtils.trim(properties.getProperty(key)));
+    }
+
+    private int getNonNegativeInt(Properties properties, String key) {
+        String value = StringUtils.trim(properties.getProperty(key));
+        return StringUtils.isNotBlank(value) && StringUtils.isNumeric(value) ? Integer.parseInt(value) : 0;
+    }
+
+    @Autowired
+    public void setMdsConfig(MdsConfig mdsConfig) {
+        this.mdsConfig = mdsConfig;
+    }
+
+    @Autowired
+    public void setOsgiEventProxy(OsgiEventProxy osgiEventProxy) {
+        this.osgiEventProxy = osgiEventProxy;
+    }
+
+    private static final class DispatcherThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "mds-crud-events");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.motechproject.mds.service.impl;
+
+import org.motechproject.mds.dto.EventStatisticsDto;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The <code>EntityEventCounter</code> counts the CRUD events sent for a single entity and, if their rate is
+ * limited, assigns evenly spaced slots to them. Events over the limit are deferred to their slots, events over
+ * the limit of deferred events are dropped.
+ */
+class EntityEventCounter {
+
+    /**
+     * Returned by {@link #reserve()} if the event can be sent right away.
+     */
+    static final long SEND_NOW = -1;
+
+    /**
+     * Returned by {@link #reserve()} if the event must be dropped.
+     */
+    static final long DROP = -2;
+
+    private final String entityClassName;
+    private final long interval;
+    private final int maxDeferred;
+
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong instances = new AtomicLong();
+    private final AtomicLong throttledEvents = new AtomicLong();
+    private final AtomicLong throttledTime = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    private long nextSlot = System.nanoTime();
+    private int deferred;
+
+    /**
+     * @param entityClassName the class name of the entity
+     * @param maxPerSecond the maximum number of events per second, 0 or less disables the limit
+     * @param maxDeferred the maximum number of events waiting for their slots
+     */
+    EntityEventCounter(String entityClassName, int maxPerSecond, int maxDeferred) {
+        this.entityClassName = entityClassName;
+        this.interval = maxPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxPerSecond : 0;
+        this.maxDeferred = maxDeferred;
+    }
+
+    /**
+     * Reserves the slot of the next event. An event is deferred if its slot is in the future or if earlier
+     * events are still deferred, so that events are always sent in order.
+     *
+     * @return {@link #SEND_NOW}, {@link #DROP} or the number of nanoseconds the event must be deferred by
+     */
+    synchronized long reserve() {
+        if (interval == 0) {
+            return SEND_NOW;
+        }
+
+        long now = System.nanoTime();
+        // nano times are compared by their difference, as they can overflow
+        long slot = nextSlot - now > 0 ? nextSlot : now;
+        long wait = slot - now;
+
+        if (wait == 0 && deferred == 0) {
+            nextSlot = slot + interval;
+            return SEND_NOW;
+        } else if (deferred >= maxDeferred) {
+            droppedEvents.incrementAndGet();
+            return DROP;
+        }
+
+        nextSlot = slot + interval;
+        ++deferred;
+
+        throttledEvents.incrementAndGet();
+        throttledTime.addAndGet(TimeUnit.NANOSECONDS.toMillis(wait));
+
+        return wait;
+    }
+
+    /**
+     * Marks a deferred event as handled, whether it was sent or not.
+     */
+    synchronized void deferredHandled() {
+        --deferred;
+    }
+
+    void sent(int instanceCount) {
+        events.incrementAndGet();
+        instances.addAndGet(instanceCount);
+    }
+
+    EventStatisticsDto getStatistics() {
+        return new EventStatisticsDto(entityClassName, events.get(), instances.get(), throttledEvents.get(),
+                throttledTime.get(), droppedEvents.get());
+    }
+}
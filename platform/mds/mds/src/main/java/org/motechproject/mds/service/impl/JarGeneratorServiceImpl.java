@@ -22,12 +22,14 @@ import org.motechproject.mds.event.CrudEventBuilder;
 import org.motechproject.mds.ex.MdsException;
 import org.motechproject.mds.helper.ActionParameterTypeResolver;
 import org.motechproject.mds.helper.MdsBundleHelper;
+import org.motechproject.mds.javassist.EnhancedClassCache;
 import org.motechproject.mds.javassist.MotechClassPool;
 import org.motechproject.mds.osgi.EntitiesBundleMonitor;
 import org.motechproject.mds.repository.AllEntities;
 import org.motechproject.mds.repository.MetadataHolder;
 import org.motechproject.mds.service.JarGeneratorService;
 import org.motechproject.mds.service.JdoListenerRegistryService;
+import org.motechproject.mds.service.SchemaSnapshotService;
 import org.motechproject.mds.util.ClassName;
 import org.motechproject.mds.util.JavassistUtil;
 import org.motechproject.osgi.web.util.BundleHeaders;
@@ -59,6 +61,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -67,6 +70,7 @@ import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
 
 import static java.util.jar.Attributes.Name;
@@ -102,6 +106,8 @@ public class JarGeneratorServiceImpl implements JarGeneratorService {
     private EntitiesBundleMonitor monitor;
     private BundleContext bundleContext;
     private AllEntities allEntities;
+    private SchemaSnapshotService schemaSnapshotService;
+    private EnhancedClassCache enhancedClassCache;
     private final Object lock = new Object();
     private boolean moduleRefreshed;
 
@@ -122,13 +128,21 @@ public class JarGeneratorServiceImpl implements JarGeneratorService {
         regenerateMdsDataBundle(startBundle, new String[0]);
     }
 
-    private synchronized void regenerateMdsDataBundle(boolean startBundle, String... moduleNames) {
+    private synchronized void regenerateMdsDataBundle(boolean startBundle, String... requestedModuleNames) {
         LOGGER.info("Regenerating the mds entities bundle");
+        long startTime = System.currentTimeMillis();
 
-        clearModulesCache(moduleNames);
         cleanEntitiesBundleCachedClasses();
 
         boolean constructed = mdsConstructor.constructEntities();
+        long constructionTime = System.currentTimeMillis() - startTime;
+
+        // only the modules declaring entities, which classes were built again, have to be refreshed
+        String[] moduleNames = getModulesToRefresh(requestedModuleNames);
+        clearModulesCache(moduleNames);
+
+        // every instance regenerates the bundle, so every instance refreshes its own snapshot here
+        schemaSnapshotService.refresh();
 
         if (!constructed) {
             return;
@@ -145,15 +159,16 @@ public class JarGeneratorServiceImpl implements JarGeneratorService {
         }
 
         File tmpBundleFile;
+        long generationStartTime = System.currentTimeMillis();
 
         try {
-            LOGGER.info("Generating bundle jar");
-            tmpBundleFile = generate();
-            LOGGER.info("Generated bundle jar");
+            tmpBundleFile = createBundleJar();
         } catch (IOException e) {
             throw new MdsException("Unable to generate entities bundle", e);
         }
 
+        long installationStartTime = System.currentTimeMillis();
+
         FileUtils.deleteQuietly(dest);
 
         try {
@@ -184,10 +199,40 @@ public class JarGeneratorServiceImpl implements JarGeneratorService {
         // Start bundles again if we stopped them manually
         startModulesForCoreBundleRefresh(moduleNames);
 
+        long endTime = System.currentTimeMillis();
+        LOGGER.info("Regenerated the mds entities bundle in {} ms - classes {} in {} ms, bundle jar in {} ms, " +
+                        "installation in {} ms", endTime - startTime,
+                enhancedClassCache.isRestored() ? "restored from the cache" : "constructed", constructionTime,
+                installationStartTime - generationStartTime, endTime - installationStartTime);
+
         // Give framework some time before returning to the caller
         ThreadSuspender.sleep(2000);
     }
 
+    private String[] getModulesToRefresh(String... moduleNames) {
+        Set<String> affectedModules = new HashSet<>();
+
+        for (String className : mdsConstructor.getLastBuiltEntities()) {
+            ClassData classData = MotechClassPool.getEnhancedClassData(className);
+
+            if (null != classData && classData.isDDE()) {
+                affectedModules.add(classData.getModule());
+            }
+        }
+
+        List<String> modulesToRefresh = new ArrayList<>();
+
+        for (String moduleName : moduleNames) {
+            if (affectedModules.contains(moduleName)) {
+                modulesToRefresh.add(moduleName);
+            } else if (StringUtils.isNotBlank(moduleName)) {
+                LOGGER.info("Skipping the refresh of module '{}', none of its entities was affected", moduleName);
+            }
+        }
+
+        return modulesToRefresh.toArray(new String[modulesToRefresh.size()]);
+    }
+
     private void stopModulesForCoreBundleRefresh(String[] moduleNames) {
         if (Arrays.asList(moduleNames).contains(WEB_SECURITY_MODULE)) {
             stopBundle(WEB_SECURITY_MODULE);
@@ -263,6 +308,61 @@ public class JarGeneratorServiceImpl implements JarGeneratorService {
         ResourceBundle.clearCache();
     }
 
+    private File createBundleJar() throws IOException {
+        if (enhancedClassCache.isRestored()) {
+            LOGGER.info("Reusing the cached bundle jar");
+            return copyCachedBundleJar();
+        }
+
+        LOGGER.info("Generating bundle jar");
+        File bundleFile = generate();
+        enhancedClassCache.store(bundleFile);
+        LOGGER.info("Generated bundle jar");
+
+        return bundleFile;
+    }
+
+    private File copyCachedBundleJar() throws IOException {
+        Path tempDir = Files.createTempDirectory("mds");
+        Path tempFile = Files.createTempFile(tempDir, "mds-entities", ".jar");
+
+        StringBuilder entityNamesSb = new StringBuilder();
+        for (ClassData classData : MotechClassPool.getEnhancedClasses(false)) {
+            if (!classData.isEnumClassData()) {
+                entityNamesSb.append(classData.getClassName()).append('\n');
+            }
+        }
+
+        // listeners are registered by modules, so they are not described by the cache key
+        jdoListenerRegistryService.updateEntityNames();
+        jdoListenerRegistryService.removeInactiveListeners(entityNamesSb.toString());
+        String entityWithListenersNames = jdoListenerRegistryService.getEntitiesListenerStr();
+
+        try (JarFile cachedJar = new JarFile(enhancedClassCache.getBundle());
+             FileOutputStream fileOutput = new FileOutputStream(tempFile.toFile());
+             JarOutputStream output = new JarOutputStream(fileOutput, cachedJar.getManifest())) {
+            Enumeration<JarEntry> entries = cachedJar.entries();
+
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+
+                if (!isManifestEntry(entry) && !LISTENER_LIST_FILE.equals(entry.getName())) {
+                    try (InputStream in = cachedJar.getInputStream(entry)) {
+                        addEntry(output, entry.getName(), IOUtils.toByteArray(in));
+                    }
+                }
+            }
+
+            addEntry(output, LISTENER_LIST_FILE, entityWithListenersNames.getBytes());
+        }
+
+        return tempFile.toFile();
+    }
+
+    private boolean isManifestEntry(JarEntry entry) {
+        return JarFile.MANIFEST_NAME.equals(entry.getName()) || "META-INF/".equals(entry.getName());
+    }
+
     @Override
     @Transactional
     public File generate() throws IOException {
@@ -672,6 +772,16 @@ public class JarGeneratorServiceImpl implements JarGeneratorService {
         this.allEntities = allEntities;
     }
 
+    @Autowired
+    public void setEnhancedClassCache(EnhancedClassCache enhancedClassCache) {
+        this.enhancedClassCache = enhancedClassCache;
+    }
+
+    @Autowired
+    public void setSchemaSnapshotService(SchemaSnapshotService schemaSnapshotService) {
+        this.schemaSnapshotService = schemaSnapshotService;
+    }
+
     @Autowired
     public void setListenerRegistryService(JdoListenerRegistryService jdoListenerRegistryService) {
         this.jdoListenerRegistryService = jdoListenerRegistryService;
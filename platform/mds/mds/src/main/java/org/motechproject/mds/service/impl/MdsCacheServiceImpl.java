@@ -0,0 +1,248 @@
+package org.motechproject.mds.service.impl;
+
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.mds.config.MdsConfig;
+import org.motechproject.mds.dto.CacheStatisticsDto;
+import org.motechproject.mds.query.QueryResultCache;
+import org.motechproject.mds.service.MdsCacheService;
+import org.motechproject.server.osgi.event.OsgiEventProxy;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.jdo.PersistenceManagerFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.motechproject.mds.util.Constants.Config.MDS_CACHE_INVALIDATION_DELAY;
+import static org.motechproject.mds.util.Constants.Config.MDS_CACHE_MAX_SIZE;
+import static org.motechproject.mds.util.Constants.Config.MDS_CACHE_TIME_TO_LIVE;
+import static org.motechproject.mds.util.Constants.Config.MDS_COUNT_CACHE_ENABLED;
+import static org.motechproject.mds.util.Constants.Config.MODULE_FILE;
+
+/**
+ * Default implementation of the <code>MdsCacheService</code> interface. It lives in the MDS Entities Bundle,
+ * next to the data services using it. Invalidations of other Motech instances are received as OSGi events,
+ * the {@link OsgiEventProxy} is used for broadcasting them, in order to avoid a dependency on the event module.
+ * Broadcasts are coalesced per entity - all invalidations of an entity within the invalidation delay are sent
+ * to other instances as a single event.
+ */
+public class MdsCacheServiceImpl implements MdsCacheService, EventHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MdsCacheServiceImpl.class);
+
+    private static final String ENTITY_CLASS_NAME_EVENT_PARAM = "entity_class_name";
+    private static final String INSTANCE_ID_EVENT_PARAM = "instance_id";
+
+    private static final int DEFAULT_MAX_SIZE = 1000;
+    private static final int DEFAULT_TIME_TO_LIVE = 300;
+    private static final int DEFAULT_INVALIDATION_DELAY = 1000;
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    // identifies this Motech instance, so that its own broadcasts are ignored
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<String, QueryResultCache> caches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Class<?>> entityClasses = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Boolean> pendingBroadcasts = new ConcurrentHashMap<>();
+
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private int timeToLive = DEFAULT_TIME_TO_LIVE;
+    private boolean countCacheEnabled;
+    private long invalidationDelay = DEFAULT_INVALIDATION_DELAY;
+    private ScheduledExecutorService broadcastExecutor;
+
+    private MdsConfig mdsConfig;
+    private OsgiEventProxy osgiEventProxy;
+    private PersistenceManagerFactory persistenceManagerFactory;
+
+    @PostConstruct
+    public void init() {
+        if (mdsConfig != null) {
+            Properties properties = mdsConfig.getProperties(MODULE_FILE);
+            maxSize = getPositiveInt(properties, MDS_CACHE_MAX_SIZE, DEFAULT_MAX_SIZE);
+            timeToLive = getPositiveInt(properties, MDS_CACHE_TIME_TO_LIVE, DEFAULT_TIME_TO_LIVE);
+            countCacheEnabled = Boolean.parseBoolean(StringUtils.trim(properties.getProperty(MDS_COUNT_CACHE_ENABLED)));
+            invalidationDelay = getNonNegativeInt(properties, MDS_CACHE_INVALIDATION_DELAY, DEFAULT_INVALIDATION_DELAY);
+        }
+
+        if (invalidationDelay > 0 && broadcastExecutor == null) {
+            broadcastExecutor = Executors.newSingleThreadScheduledExecutor(new BroadcastThreadFactory());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (broadcastExecutor != null) {
+            broadcastExecutor.shutdownNow();
+            broadcastExecutor = null;
+        }
+
+        // invalidations which were not broadcast yet are sent right away
+        for (String className : pendingBroadcasts.keySet()) {
+            broadcast(className);
+        }
+    }
+
+    @Override
+    public QueryResultCache getQueryResultCache(Class<?> entityClass) {
+        String className = entityClass.getName();
+        QueryResultCache cache = caches.get(className);
+
+        if (cache == null) {
+            entityClasses.put(className, entityClass);
+
+            QueryResultCache created = new QueryResultCache(className, maxSize, timeToLive * MILLIS_PER_SECOND);
+            cache = caches.putIfAbsent(className, created);
+            cache = cache == null ? created : cache;
+        }
+
+        return cache;
+    }
+
+    @Override
+    public boolean isCountCacheEnabled() {
+        return countCacheEnabled;
+    }
+
+    @Override
+    public void invalidate(Class<?> entityClass) {
+        // the level 2 cache of this instance is kept up to date by DataNucleus
+        String className = entityClass.getName();
+        invalidateQueryResults(className);
+
+        ScheduledExecutorService executor = broadcastExecutor;
+        if (executor == null) {
+            broadcast(className);
+        } else if (pendingBroadcasts.putIfAbsent(className, Boolean.TRUE) == null) {
+            scheduleBroadcast(executor, className);
+        }
+    }
+
+    @Override
+    public List<CacheStatisticsDto> getStatistics() {
+        List<CacheStatisticsDto> statistics = new ArrayList<>(caches.size());
+
+        for (QueryResultCache cache : caches.values()) {
+            statistics.add(cache.getStatistics());
+        }
+
+        return statistics;
+    }
+
+    @Override
+    public void handleEvent(Event event) {
+        if (!CACHE_INVALIDATE.equals(event.getTopic())) {
+            throw new IllegalStateException("Received an event with an unknown subject/topic: " + event.getTopic());
+        }
+
+        if (StringUtils.equals(instanceId, (String) event.getProperty(INSTANCE_ID_EVENT_PARAM))) {
+            return;
+        }
+
+        String className = (String) event.getProperty(ENTITY_CLASS_NAME_EVENT_PARAM);
+        LOGGER.debug("Instances of {} were changed by another Motech instance, invalidating caches", className);
+
+        invalidateQueryResults(className);
+
+        Class<?> entityClass = entityClasses.get(className);
+        if (entityClass != null) {
+            persistenceManagerFactory.getDataStoreCache().evictAll(false, entityClass);
+        }
+    }
+
+    private void scheduleBroadcast(ScheduledExecutorService executor, final String className) {
+        try {
+            // later invalidations of the entity are covered by this broadcast
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    broadcast(className);
+                }
+            }, invalidationDelay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            broadcast(className);
+        }
+    }
+
+    private void broadcast(String className) {
+        // removed before sending, so that invalidations made in the meantime are broadcast again
+        pendingBroadcasts.remove(className);
+
+        Map<String, Object> params = new HashMap<>();
+        params.put(ENTITY_CLASS_NAME_EVENT_PARAM, className);
+        params.put(INSTANCE_ID_EVENT_PARAM, instanceId);
+
+        try {
+            osgiEventProxy.broadcastEvent(CACHE_INVALIDATE, params, true);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to broadcast the invalidation of caches of " + className, e);
+        }
+    }
+
+    private void invalidateQueryResults(String className) {
+        QueryResultCache cache = caches.get(className);
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    private int getPositiveInt(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+
+        if (StringUtils.isNotBlank(value) && StringUtils.isNumeric(value.trim())) {
+            int intValue = Integer.parseInt(value.trim());
+            if (intValue > 0) {
+                return intValue;
+            }
+        }
+
+        return defaultValue;
+    }
+
+    private int getNonNegativeInt(Properties properties, String key, int defaultValue) {
+        String value = StringUtils.trim(properties.getProperty(key));
+        return StringUtils.isNotBlank(value) && StringUtils.isNumeric(value) ? Integer.parseInt(value) : defaultValue;
+    }
+
+    @Autowired
+    public void setMdsConfig(MdsConfig mdsConfig) {
+        this.mdsConfig = mdsConfig;
+    }
+
+    @Autowired
+    public void setOsgiEventProxy(OsgiEventProxy osgiEventProxy) {
+        this.osgiEventProxy = osgiEventProxy;
+    }
+
+    @Autowired
+    @Qualifier("persistenceManagerFactory")
+    public void setPersistenceManagerFactory(PersistenceManagerFactory persistenceManagerFactory) {
+        this.persistenceManagerFactory = persistenceManagerFactory;
+    }
+
+    private static final class BroadcastThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "mds-cache-invalidation");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -1,12 +1,11 @@
 package org.motechproject.mds.service.impl;
 
-import org.motechproject.mds.dto.EntityDto;
-import org.motechproject.mds.dto.LookupDto;
+import org.motechproject.mds.ex.lookup.LookupNotFoundException;
 import org.motechproject.mds.ex.lookup.SingleResultFromLookupExpectedException;
 import org.motechproject.mds.javassist.MotechClassPool;
 import org.motechproject.mds.lookup.LookupExecutor;
+import org.motechproject.mds.lookup.LookupExecutorCache;
 import org.motechproject.mds.query.QueryParams;
-import org.motechproject.mds.service.EntityService;
 import org.motechproject.mds.service.MDSLookupService;
 import org.motechproject.mds.service.MotechDataService;
 import org.motechproject.mds.util.Constants;
@@ -33,7 +32,7 @@ public class MdsLookupServiceImpl implements MDSLookupService {
     private BundleContext bundleContext;
 
     @Autowired
-    private EntityService entityService;
+    private LookupExecutorCache lookupExecutorCache;
 
     @Override
     public <T> T findOne(Class<T> entityClass, String lookupName, Map<String, ?> lookupParams) {
@@ -42,7 +41,7 @@ public class MdsLookupServiceImpl implements MDSLookupService {
 
     @Override
     public <T> T findOne(String entityClassName, String lookupName, Map<String, ?> lookupParams) {
-        LookupExecutor lookupExecutor = buildLookupExecutor(entityClassName, lookupName);
+        LookupExecutor lookupExecutor = getLookupExecutor(entityClassName, lookupName);
 
         Object result = lookupExecutor.execute(lookupParams);
 
@@ -66,7 +65,7 @@ public class MdsLookupServiceImpl implements MDSLookupService {
 
     @Override
     public <T> List<T> findMany(String entityClassName, String lookupName, Map<String, ?> lookupParams, QueryParams queryParams) {
-        LookupExecutor lookupExecutor = buildLookupExecutor(entityClassName, lookupName);
+        LookupExecutor lookupExecutor = getLookupExecutor(entityClassName, lookupName);
 
         Object result = lookupExecutor.execute(lookupParams, queryParams);
 
@@ -103,7 +102,7 @@ public class MdsLookupServiceImpl implements MDSLookupService {
 
     @Override
     public long count(String entityClassName, String lookupName, Map<String, ?> lookupParams) {
-        LookupExecutor lookupExecutor = buildLookupExecutor(entityClassName, lookupName);
+        LookupExecutor lookupExecutor = getLookupExecutor(entityClassName, lookupName);
 
         return lookupExecutor.executeCount(lookupParams);
     }
@@ -121,20 +120,20 @@ public class MdsLookupServiceImpl implements MDSLookupService {
         return dataService.count();
     }
 
-    private LookupExecutor buildLookupExecutor(String entityClassName, String lookupName) {
+    private LookupExecutor getLookupExecutor(String entityClassName, String lookupName) {
         String fullyQualifiedEntityClassName;
         if (entityClassName.contains(".")) {
             fullyQualifiedEntityClassName = entityClassName;
         } else {
             fullyQualifiedEntityClassName = Constants.PackagesGenerated.ENTITY + "." + entityClassName;
         }
-        MotechDataService dataService = OSGiServiceUtils.findService(bundleContext,
-                MotechClassPool.getInterfaceName(fullyQualifiedEntityClassName));
 
-        EntityDto entity = entityService.getEntityByClassName(fullyQualifiedEntityClassName);
-        LookupDto lookup = entityService.getLookupByName(entity.getId(), lookupName);
+        LookupExecutor lookupExecutor = lookupExecutorCache.getExecutor(fullyQualifiedEntityClassName, lookupName);
+        if (lookupExecutor == null) {
+            throw new LookupNotFoundException(fullyQualifiedEntityClassName, lookupName);
+        }
 
-        return new LookupExecutor(dataService, lookup, entityService.getLookupFieldsMapping(entity.getId(), lookupName));
+        return lookupExecutor;
     }
 
     private <T> T assertAndReturnSingleResult(Object result, String lookupName) {
@@ -0,0 +1,183 @@
+package org.motechproject.mds.service.impl;
+
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.mds.dto.AdvancedSettingsDto;
+import org.motechproject.mds.dto.EntityDto;
+import org.motechproject.mds.dto.EntitySchema;
+import org.motechproject.mds.dto.FieldDto;
+import org.motechproject.mds.dto.LookupDto;
+import org.motechproject.mds.dto.SchemaSnapshot;
+import org.motechproject.mds.service.EntityService;
+import org.motechproject.mds.service.SchemaSnapshotService;
+import org.motechproject.server.osgi.event.OsgiEventProxy;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.orm.jdo.JdoTransactionManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Default implementation of the <code>SchemaSnapshotService</code> interface. The snapshot is built from the
+ * {@link EntityService} in a single read-only transaction and replaced atomically, readers never block.
+ * Refreshes of other Motech instances are received as OSGi events, the {@link OsgiEventProxy} is used for
+ * broadcasting them.
+ */
+@Service("schemaSnapshotService")
+public class SchemaSnapshotServiceImpl implements SchemaSnapshotService, EventHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SchemaSnapshotServiceImpl.class);
+
+    private static final String ENTITY_CLASS_NAME_EVENT_PARAM = "entity_class_name";
+    private static final String INSTANCE_ID_EVENT_PARAM = "instance_id";
+
+    // identifies this Motech instance, so that its own broadcasts are ignored
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final AtomicLong versions = new AtomicLong();
+    private volatile SchemaSnapshot snapshot;
+
+    private EntityService entityService;
+    private JdoTransactionManager transactionManager;
+    private OsgiEventProxy osgiEventProxy;
+
+    @Override
+    public SchemaSnapshot getSnapshot() {
+        SchemaSnapshot current = snapshot;
+
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = buildSnapshot();
+                    snapshot = current;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    @Override
+    public synchronized void refresh() {
+        snapshot = buildSnapshot();
+        LOGGER.debug("Rebuilt the schema snapshot, version {}", snapshot.getVersion());
+    }
+
+    @Override
+    public void refreshEntity(String className) {
+        refreshEntityLocally(className);
+
+        Map<String, Object> params = new HashMap<>();
+        params.put(ENTITY_CLASS_NAME_EVENT_PARAM, className);
+        params.put(INSTANCE_ID_EVENT_PARAM, instanceId);
+
+        osgiEventProxy.broadcastEvent(SCHEMA_CHANGED, params, true);
+    }
+
+    @Override
+    public void handleEvent(Event event) {
+        if (!SCHEMA_CHANGED.equals(event.getTopic())) {
+            throw new IllegalStateException("Received an event with an unknown subject/topic: " + event.getTopic());
+        }
+
+        if (StringUtils.equals(instanceId, (String) event.getProperty(INSTANCE_ID_EVENT_PARAM))) {
+            return;
+        }
+
+        String className = (String) event.getProperty(ENTITY_CLASS_NAME_EVENT_PARAM);
+        LOGGER.debug("The schema of {} was changed by another Motech instance, refreshing it", className);
+
+        refreshEntityLocally(className);
+    }
+
+    private synchronized void refreshEntityLocally(final String className) {
+        if (snapshot == null) {
+            // the snapshot will be built on first use, including the entity
+            return;
+        }
+
+        EntitySchema entitySchema = getTransactionTemplate().execute(new TransactionCallback<EntitySchema>() {
+            @Override
+            public EntitySchema doInTransaction(TransactionStatus status) {
+                EntityDto entity = entityService.getEntityByClassName(className);
+                return entity == null ? null : buildEntitySchema(entity);
+            }
+        });
+
+        snapshot = snapshot.withEntity(versions.incrementAndGet(), className, entitySchema);
+    }
+
+    private SchemaSnapshot buildSnapshot() {
+        List<EntitySchema> entities = getTransactionTemplate().execute(new TransactionCallback<List<EntitySchema>>() {
+            @Override
+            public List<EntitySchema> doInTransaction(TransactionStatus status) {
+                List<EntitySchema> result = new ArrayList<>();
+
+                for (EntityDto entity : entityService.listEntities()) {
+                    try {
+                        result.add(buildEntitySchema(entity));
+                    } catch (RuntimeException e) {
+                        // a broken entity must not make the other entities unavailable
+                        LOGGER.error("Unable to read the schema of " + entity.getClassName(), e);
+                    }
+                }
+
+                return result;
+            }
+        });
+
+        return new SchemaSnapshot(versions.incrementAndGet(), entities);
+    }
+
+    private EntitySchema buildEntitySchema(EntityDto entity) {
+        Long entityId = entity.getId();
+        AdvancedSettingsDto advancedSettings = entityService.getAdvancedSettings(entityId, true);
+
+        List<LookupDto> lookups = new ArrayList<>();
+        Map<String, Map<String, FieldDto>> lookupFieldsMappings = new HashMap<>();
+
+        for (LookupDto index : advancedSettings.getIndexes()) {
+            String lookupName = index.getLookupName();
+            lookups.add(entityService.getLookupByName(entityId, lookupName));
+            lookupFieldsMappings.put(lookupName, entityService.getLookupFieldsMapping(entityId, lookupName));
+        }
+
+        return new EntitySchema(entity, entityService.getCurrentSchemaVersion(entity.getClassName()),
+                entityService.getEntityFields(entityId), advancedSettings, lookups, lookupFieldsMappings);
+    }
+
+    private TransactionTemplate getTransactionTemplate() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate;
+    }
+
+    @Autowired
+    public void setEntityService(EntityService entityService) {
+        this.entityService = entityService;
+    }
+
+    @Autowired
+    @Qualifier("transactionManager")
+    public void setTransactionManager(JdoTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    @Autowired
+    public void setOsgiEventProxy(OsgiEventProxy osgiEventProxy) {
+        this.osgiEventProxy = osgiEventProxy;
+    }
+}
@@ -8,21 +8,35 @@ import org.motechproject.mds.ex.csv.DataExportException;
 import org.motechproject.mds.ex.entity.EntityNotFoundException;
 import org.motechproject.mds.helper.DataServiceHelper;
 import org.motechproject.mds.helper.FieldHelper;
+import org.motechproject.mds.query.CustomOperatorProperty;
+import org.motechproject.mds.query.Property;
+import org.motechproject.mds.query.QueryExecution;
+import org.motechproject.mds.query.QueryExecutor;
 import org.motechproject.mds.query.QueryParams;
+import org.motechproject.mds.query.QueryUtil;
 import org.motechproject.mds.repository.AllEntities;
 import org.motechproject.mds.service.CsvExportCustomizer;
 import org.motechproject.mds.service.DefaultCsvExportCustomizer;
 import org.motechproject.mds.service.MDSLookupService;
 import org.motechproject.mds.service.MotechDataService;
 import org.motechproject.mds.service.impl.csv.writer.TableWriter;
+import org.motechproject.mds.util.Constants;
+import org.motechproject.mds.util.InstanceSecurityRestriction;
+import org.motechproject.mds.util.Order;
 import org.motechproject.mds.util.PropertyUtil;
 import org.motechproject.mds.util.TypeHelper;
 import org.osgi.framework.BundleContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 
+import javax.jdo.PersistenceManager;
+import javax.jdo.PersistenceManagerFactory;
+import javax.jdo.Query;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -37,6 +51,7 @@ import java.util.TreeSet;
 public abstract class AbstractMdsExporter {
 
     private static final char LIST_JOIN_CHAR = ',';
+    private static final int EXPORT_CHUNK_SIZE = 1000;
 
     @Autowired
     private BundleContext bundleContext;
@@ -47,6 +62,10 @@ public abstract class AbstractMdsExporter {
     @Autowired
     private MDSLookupService mdsLookupService;
 
+    @Autowired
+    @Qualifier("persistenceManagerFactory")
+    private PersistenceManagerFactory persistenceManagerFactory;
+
     protected long exportData(Entity entity, TableWriter writer) {
         return exportData(entity, writer, new DefaultCsvExportCustomizer());
     }
@@ -70,13 +89,26 @@ public abstract class AbstractMdsExporter {
             long rowsExported = 0;
             Map<String, String> row = new HashMap<>();
 
-            List<Object> instances = StringUtils.isBlank(lookupName) ? dataService.retrieveAll(params) :
-                    mdsLookupService.findMany(entity.getClassName(), lookupName, lookupFields, params);
+            // without a lookup, only the exported columns are retrieved if none of them requires whole instances
+            List<String> projectedFields = StringUtils.isBlank(lookupName)
+                    ? getProjectedFields(fieldMap, orderedHeaders)
+                    : null;
+
+            InstanceChunks chunks = StringUtils.isBlank(lookupName) ?
+                    new RetrieveAllChunks(dataService, params, projectedFields) :
+                    new LookupChunks(entity.getClassName(), lookupName, lookupFields, params);
 
-            for (Object instance : instances) {
-                buildCsvRow(row, fieldMap, instance, orderedHeaders, exportCustomizer);
-                writer.writeRow(row, orderedHeaders);
-                rowsExported++;
+            List<Object> instances = chunks.next();
+            while (!instances.isEmpty()) {
+                for (Object instance : instances) {
+                    buildCsvRow(row, fieldMap, instance, orderedHeaders, exportCustomizer);
+                    writer.writeRow(row, orderedHeaders);
+                    rowsExported++;
+                }
+                if (projectedFields == null) {
+                    evictFromCache(chunks.getLastRetrieved());
+                }
+                instances = chunks.next();
             }
 
             return rowsExported;
@@ -126,13 +158,30 @@ public abstract class AbstractMdsExporter {
         return fieldNames.toArray(new String[fieldNames.size()]);
     }
 
+    private List<String> getProjectedFields(Map<String, Field> fieldMap, String[] headers) {
+        List<String> projectedFields = new ArrayList<>(headers.length + 1);
+        for (String fieldName : headers) {
+            if (!fieldMap.get(fieldName).isProjectable()) {
+                return null;
+            }
+            projectedFields.add(fieldName);
+        }
+
+        // the id is needed for retrieving consecutive chunks
+        if (!projectedFields.contains(Constants.Util.ID_FIELD_NAME)) {
+            projectedFields.add(Constants.Util.ID_FIELD_NAME);
+        }
+
+        return projectedFields;
+    }
+
     private void buildCsvRow(Map<String, String> row, Map<String, Field> fieldMap, Object instance, String[] headers,
                              CsvExportCustomizer exportCustomizer) {
         row.clear();
         for (String fieldName : headers) {
             Field field = fieldMap.get(fieldName);
 
-            Object value = PropertyUtil.safeGetProperty(instance, fieldName);
+            Object value = getValue(instance, fieldName);
             String csvValue;
 
             if (field.getType().isRelationship()) {
@@ -144,6 +193,24 @@ public abstract class AbstractMdsExporter {
         }
     }
 
+    private static Object getValue(Object instance, String fieldName) {
+        // rows of projections are maps, other rows are entity instances
+        return instance instanceof Map
+                ? ((Map) instance).get(fieldName)
+                : PropertyUtil.safeGetProperty(instance, fieldName);
+    }
+
+    private void evictFromCache(List<Object> instances) {
+        PersistenceManager pm = null != persistenceManagerFactory
+                ? persistenceManagerFactory.getPersistenceManager()
+                : null;
+
+        // exports run in a single transaction, so exported instances would be kept by the pm until it ends
+        if (pm != null) {
+            pm.evictAll(instances);
+        }
+    }
+
     protected BundleContext getBundleContext() {
         return bundleContext;
     }
@@ -155,4 +222,197 @@ public abstract class AbstractMdsExporter {
     protected MDSLookupService getMdsLookupService() {
         return mdsLookupService;
     }
+
+    /**
+     * Returns the instances to export in consecutive chunks, so that the whole result never has to be kept in
+     * memory. Chunks are retrieved as pages of at most {@link #EXPORT_CHUNK_SIZE} instances. A requested page
+     * larger than that is split into such pages, of which the first and the last one may be only partly exported,
+     * so no chunk is ever larger than {@link #EXPORT_CHUNK_SIZE} or than the rest of the requested page. Retrieved
+     * chunks are evicted from the persistence manager by the exporter.
+     */
+    private abstract static class InstanceChunks {
+
+        private final long offset;
+        private final Long limit;
+        private final int chunkSize;
+        private long retrieved;
+        private boolean finished;
+        private List<Object> lastRetrieved = Collections.emptyList();
+
+        InstanceChunks(QueryParams params) {
+            if (params != null && params.isPagingSet()) {
+                offset = (long) (params.getPage() - 1) * params.getPageSize();
+                limit = (long) params.getPageSize();
+                // a smaller requested page is retrieved with a single query
+                chunkSize = Math.min(EXPORT_CHUNK_SIZE, params.getPageSize());
+            } else {
+                offset = 0;
+                limit = null;
+                chunkSize = EXPORT_CHUNK_SIZE;
+            }
+        }
+
+        /**
+         * Retrieves the next chunk of instances.
+         *
+         * @return the next chunk, empty if all instances were already retrieved
+         */
+        List<Object> next() {
+            long start = offset + retrieved;
+            int skipped = (int) (start % chunkSize);
+            int size = chunkSize - skipped;
+            if (limit != null) {
+                size = (int) Math.min(size, limit - retrieved);
+            }
+
+            if (finished || size <= 0) {
+                lastRetrieved = Collections.emptyList();
+                return lastRetrieved;
+            }
+
+            lastRetrieved = retrieve(chunkSize, start / chunkSize + 1);
+            // a page without all of the wanted instances is the last one
+            finished = lastRetrieved.size() < skipped + size;
+
+            List<Object> chunk = lastRetrieved.subList(Math.min(skipped, lastRetrieved.size()),
+                    Math.min(skipped + size, lastRetrieved.size()));
+            retrieved += chunk.size();
+
+            return chunk;
+        }
+
+        /**
+         * Returns all instances retrieved for the last chunk, including the ones outside of the requested page.
+         *
+         * @return the instances retrieved by the last call to {@link #next()}
+         */
+        List<Object> getLastRetrieved() {
+            return lastRetrieved;
+        }
+
+        protected Order getOrder(QueryParams params) {
+            return params != null && params.isOrderSet() ? params.getOrder() : QueryParams.ORDER_ID_ASC.getOrder();
+        }
+
+        protected int getChunkSize() {
+            return chunkSize;
+        }
+
+        /**
+         * Retrieves a chunk of instances.
+         *
+         * @param size the maximum number of instances to retrieve
+         * @param page the number of the chunk, when chunks are treated as pages of {@link #getChunkSize()} instances
+         * @return the chunk of instances
+         */
+        protected abstract List<Object> retrieve(int size, long page);
+    }
+
+    /**
+     * Chunks of all instances of the entity. When the instances are ordered by id, the chunks are retrieved using
+     * the last exported id instead of an offset, so that the database does not have to skip over the previously
+     * exported rows for every chunk. When projected fields are given, chunks contain projection rows with
+     * the values of these fields instead of instances.
+     */
+    private static class RetrieveAllChunks extends InstanceChunks {
+
+        private final MotechDataService dataService;
+        private final Order order;
+        private final boolean keyset;
+        private final List<String> projectedFields;
+        private Object lastId;
+
+        RetrieveAllChunks(MotechDataService dataService, QueryParams params, List<String> projectedFields) {
+            super(params);
+            this.dataService = dataService;
+            this.projectedFields = projectedFields;
+            this.order = getOrder(params);
+            this.keyset = Constants.Util.ID_FIELD_NAME.equals(order.getField()) && (params == null || !params.isPagingSet());
+        }
+
+        @Override
+        protected List<Object> retrieve(final int size, long page) {
+            List<Object> chunk;
+
+            if (projectedFields != null) {
+                chunk = retrieveProjection(size, page);
+            } else if (keyset) {
+                chunk = (List<Object>) dataService.executeQuery(new QueryExecution<List<Object>>() {
+                    @Override
+                    public List<Object> execute(Query query, InstanceSecurityRestriction restriction) {
+                        return retrieveAfterLastId(query, restriction, size);
+                    }
+                });
+                if (!chunk.isEmpty()) {
+                    lastId = PropertyUtil.safeGetProperty(chunk.get(chunk.size() - 1), Constants.Util.ID_FIELD_NAME);
+                }
+            } else {
+                chunk = dataService.retrieveAll(new QueryParams((int) page, getChunkSize(), order));
+            }
+
+            return chunk;
+        }
+
+        private List<Object> retrieveProjection(int size, long page) {
+            List<Object> chunk;
+
+            if (keyset) {
+                QueryParams queryParams = lastId == null
+                        ? QueryParams.keysetFirst(size, order)
+                        : QueryParams.keysetAfter(size, order, lastId, (Long) lastId);
+                chunk = dataService.retrieveProjection(projectedFields, queryParams);
+                if (!chunk.isEmpty()) {
+                    lastId = getValue(chunk.get(chunk.size() - 1), Constants.Util.ID_FIELD_NAME);
+                }
+            } else {
+                QueryParams queryParams = new QueryParams((int) page, getChunkSize(), order);
+                chunk = dataService.retrieveProjection(projectedFields, queryParams);
+            }
+
+            return chunk;
+        }
+
+        private List<Object> retrieveAfterLastId(Query query, InstanceSecurityRestriction restriction, int size) {
+            List<Property> properties = new ArrayList<>();
+            if (lastId != null) {
+                String operator = order.getDirection() == Order.Direction.DESC ? "<" : ">";
+                properties.add(new CustomOperatorProperty<>(Constants.Util.ID_FIELD_NAME, lastId,
+                        Long.class.getName(), operator));
+            }
+
+            QueryUtil.useFilter(query, properties, restriction);
+            query.setOrdering(order.toString());
+            query.setRange(0, size);
+
+            Object[] values = lastId == null ? new Object[0] : new Object[] {lastId};
+            Collection collection = (Collection) QueryExecutor.executeWithArray(query, values, restriction);
+
+            return new ArrayList<Object>(collection);
+        }
+    }
+
+    /**
+     * Chunks of the instances returned by a lookup, retrieved page by page.
+     */
+    private class LookupChunks extends InstanceChunks {
+
+        private final String entityClassName;
+        private final String lookupName;
+        private final Map<String, Object> lookupFields;
+        private final Order order;
+
+        LookupChunks(String entityClassName, String lookupName, Map<String, Object> lookupFields, QueryParams params) {
+            super(params);
+            this.entityClassName = entityClassName;
+            this.lookupName = lookupName;
+            this.lookupFields = lookupFields;
+            this.order = getOrder(params);
+        }
+
+        @Override
+        protected List<Object> retrieve(int size, long page) {
+            return mdsLookupService.findMany(entityClassName, lookupName, lookupFields,
+                    new QueryParams((int) page, getChunkSize(), order));
+        }
+    }
 }
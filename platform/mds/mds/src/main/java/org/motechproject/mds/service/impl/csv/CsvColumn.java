@@ -0,0 +1,205 @@
+package org.motechproject.mds.service.impl.csv;
+
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.mds.domain.ComboboxHolder;
+import org.motechproject.mds.domain.Field;
+import org.motechproject.mds.domain.FieldMetadata;
+import org.motechproject.mds.domain.RelationshipHolder;
+import org.motechproject.mds.domain.Type;
+import org.motechproject.mds.ex.csv.CsvImportException;
+import org.motechproject.mds.util.TypeHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.motechproject.mds.util.Constants.MetadataKeys.MAP_KEY_TYPE;
+import static org.motechproject.mds.util.Constants.MetadataKeys.MAP_VALUE_TYPE;
+
+/**
+ * Converts the values of a single CSV column into values of an entity field. Everything needed for the conversion
+ * is copied from the field when the column is created, so that the values can be parsed by the import worker
+ * threads, outside of the transaction in which the entity schema was loaded.
+ * <p>
+ * Values of relationship columns are parsed into the ids of the related instances, the instances themselves are
+ * retrieved for the whole chunk at once and set using {@link #resolveRelationship(Object, Map)}.
+ */
+class CsvColumn {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CsvColumn.class);
+
+    private final String name;
+    private final String propertyName;
+    private final Class<?> typeClass;
+
+    private final boolean combobox;
+    private final boolean comboboxCollection;
+    private final String comboboxTypeClassName;
+    private final String comboboxUnderlyingType;
+
+    private final boolean map;
+    private final String mapKeyType;
+    private final String mapValueType;
+
+    private final boolean relationship;
+    private final boolean toManyRelationship;
+    private final String relatedClass;
+    private final String relationshipCollectionClassName;
+
+    CsvColumn(Field field) {
+        Type type = field.getType();
+
+        name = field.getName();
+        propertyName = StringUtils.uncapitalize(name);
+        typeClass = type.getTypeClass();
+
+        combobox = type.isCombobox();
+        if (combobox) {
+            ComboboxHolder comboboxHolder = new ComboboxHolder(field);
+            comboboxCollection = comboboxHolder.isCollection();
+            comboboxTypeClassName = comboboxHolder.getTypeClassName();
+            comboboxUnderlyingType = comboboxHolder.getUnderlyingType();
+        } else {
+            comboboxCollection = false;
+            comboboxTypeClassName = null;
+            comboboxUnderlyingType = null;
+        }
+
+        map = !combobox && type.isMap();
+        if (map) {
+            FieldMetadata keyMetadata = field.getMetadata(MAP_KEY_TYPE);
+            FieldMetadata valueMetadata = field.getMetadata(MAP_VALUE_TYPE);
+            mapKeyType = keyMetadata == null ? null : keyMetadata.getValue();
+            mapValueType = valueMetadata == null ? null : valueMetadata.getValue();
+        } else {
+            mapKeyType = null;
+            mapValueType = null;
+        }
+
+        relationship = !combobox && type.isRelationship();
+        if (relationship) {
+            RelationshipHolder relationshipHolder = new RelationshipHolder(field);
+            toManyRelationship = relationshipHolder.isManyToMany() || relationshipHolder.isOneToMany();
+            relatedClass = relationshipHolder.getRelatedClass();
+            relationshipCollectionClassName = relationshipHolder.getCollectionClassName();
+        } else {
+            toManyRelationship = false;
+            relatedClass = null;
+            relationshipCollectionClassName = null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPropertyName() {
+        return propertyName;
+    }
+
+    public boolean isRelationship() {
+        return relationship;
+    }
+
+    public String getRelatedClass() {
+        return relatedClass;
+    }
+
+    /**
+     * Parses the value from the CSV file. For relationships the ids of the related instances are returned.
+     *
+     * @param csvValue the value from the CSV file
+     * @param entityCl the class loader of the entity
+     * @return the parsed value
+     */
+    public Object parse(String csvValue, ClassLoader entityCl) {
+        Object value;
+        if (combobox) {
+            value = comboboxCollection
+                    ? TypeHelper.parse(csvValue, comboboxTypeClassName, comboboxUnderlyingType, entityCl)
+                    : TypeHelper.parse(csvValue, comboboxUnderlyingType, entityCl);
+        } else if (relationship) {
+            value = toManyRelationship
+                    ? TypeHelper.parse(csvValue, List.class.getName(), Long.class.getName())
+                    : TypeHelper.parse(csvValue, Long.class);
+        } else if (map) {
+            value = TypeHelper.parseStringToMap(mapKeyType, mapValueType, csvValue);
+        } else {
+            value = TypeHelper.parse(csvValue, typeClass);
+        }
+
+        // for strings, return a blank if the columns is in the file
+        if (value == null && String.class.equals(typeClass)) {
+            value = "";
+        }
+
+        return value;
+    }
+
+    /**
+     * Returns the ids of related instances, parsed by {@link #parse(String, ClassLoader)}.
+     *
+     * @param parsedValue the parsed value of a relationship column
+     * @return the ids of related instances
+     */
+    public Collection<Long> getRelatedIds(Object parsedValue) {
+        if (parsedValue == null) {
+            return Collections.emptyList();
+        } else if (toManyRelationship) {
+            return (List<Long>) parsedValue;
+        } else {
+            return Collections.singletonList((Long) parsedValue);
+        }
+    }
+
+    /**
+     * Builds the value of a relationship field from the ids parsed by {@link #parse(String, ClassLoader)}.
+     * Ids of instances that do not exist are ignored.
+     *
+     * @param parsedValue the parsed value of a relationship column
+     * @param relatedInstances the related instances, by their ids
+     * @return the related instance or a collection of related instances
+     */
+    public Object resolveRelationship(Object parsedValue, Map<Long, Object> relatedInstances) {
+        if (toManyRelationship) {
+            Collection<Object> relatedObjects = buildRelationshipCollection();
+            for (Long id : getRelatedIds(parsedValue)) {
+                Object relatedObj = getRelatedObject(id, relatedInstances);
+                if (relatedObj != null) {
+                    relatedObjects.add(relatedObj);
+                }
+            }
+            return relatedObjects;
+        } else {
+            return parsedValue == null ? null : getRelatedObject((Long) parsedValue, relatedInstances);
+        }
+    }
+
+    private Object getRelatedObject(Long id, Map<Long, Object> relatedInstances) {
+        Object obj = relatedInstances.get(id);
+
+        if (obj == null) {
+            LOGGER.warn("Unable to find {} instance with id {}. Ignoring, you will have to create this relationship manually",
+                    relatedClass, id);
+        }
+
+        return obj;
+    }
+
+    private Collection<Object> buildRelationshipCollection() {
+        Class collectionClass = TypeHelper.suggestCollectionImplementation(relationshipCollectionClassName);
+        if (collectionClass == null) {
+            return new ArrayList<>();
+        } else {
+            try {
+                return (Collection<Object>) collectionClass.newInstance();
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new CsvImportException("Unable to parse collection type " + relationshipCollectionClassName, e);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.motechproject.mds.service.impl.csv;
 
 import org.apache.commons.lang.exception.ExceptionUtils;
+import org.motechproject.mds.dto.CsvImportOptions;
 import org.motechproject.mds.dto.CsvImportResults;
 import org.motechproject.mds.dto.EntityDto;
 import org.motechproject.mds.event.CrudEventBuilder;
@@ -27,7 +28,7 @@ import java.util.Map;
  * Implementation of the {@link org.motechproject.mds.service.CsvImportExportService}.
  * Uses the SuperCSV library for handling CSV files.
  * {@link CsvImporterExporter} is used for handling import/export logic.
- * This service implementation also fires MOTECH events upon import completion or import failure.
+ * This service implementation also fires MOTECH events upon import progress, completion or import failure.
  * This bean lives in the context of the generated MDS entities bundle.
  *
  * @see CsvImporterExporter
@@ -161,14 +162,22 @@ public class CsvImportExportServiceImpl implements CsvImportExportService {
     @Override
     public CsvImportResults importCsv(long entityId, Reader reader, String fileName,
                                       CsvImportCustomizer importCustomizer) {
+        return importCsv(entityId, reader, fileName, importCustomizer, new CsvImportOptions());
+    }
+
+    @Override
+    public CsvImportResults importCsv(long entityId, Reader reader, String fileName,
+                                      CsvImportCustomizer importCustomizer, CsvImportOptions options) {
         LOGGER.debug("Importing instances of entity with ID: {}", entityId);
 
+        CsvImportProgress progress = new EventSendingProgress(fileName);
+
         CsvImportResults importResults;
         try {
-            importResults = csvImporterExporter.importCsv(entityId, reader, importCustomizer);
+            importResults = csvImporterExporter.importCsv(entityId, reader, importCustomizer, options, progress);
         } catch (RuntimeException e) {
             EntityDto entity = entityService.getEntity(entityId);
-            sendImportFailureEvent(entity, fileName, e);
+            sendImportFailureEvent(entity, fileName, progress, e);
             throw e;
         }
 
@@ -179,14 +188,23 @@ public class CsvImportExportServiceImpl implements CsvImportExportService {
 
     @Override
     public CsvImportResults importCsv(String entityClassName, Reader reader, String fileName) {
+        return importCsv(entityClassName, reader, fileName, new CsvImportOptions());
+    }
+
+    @Override
+    public CsvImportResults importCsv(String entityClassName, Reader reader, String fileName,
+                                      CsvImportOptions options) {
         LOGGER.debug("Importing instances of entity: {}", entityClassName);
 
+        CsvImportProgress progress = new EventSendingProgress(fileName);
+
         CsvImportResults importResults;
         try {
-            importResults = csvImporterExporter.importCsv(entityClassName, reader);
+            importResults = csvImporterExporter.importCsv(entityClassName, reader, new DefaultCsvImportCustomizer(),
+                    options, progress);
         } catch (RuntimeException e) {
             EntityDto entity = entityService.getEntityByClassName(entityClassName);
-            sendImportFailureEvent(entity, fileName, e);
+            sendImportFailureEvent(entity, fileName, progress, e);
             throw e;
         }
 
@@ -195,7 +213,8 @@ public class CsvImportExportServiceImpl implements CsvImportExportService {
         return importResults;
     }
 
-    private void sendImportFailureEvent(EntityDto entity, String fileName, RuntimeException e) {
+    private void sendImportFailureEvent(EntityDto entity, String fileName, CsvImportProgress progress,
+                                        RuntimeException e) {
         Map<String, Object> params = new HashMap<>();
 
         CrudEventBuilder.setEntityData(params, entity.getModule(), entity.getNamespace(), entity.getName(), entity.getClassName());
@@ -203,6 +222,7 @@ public class CsvImportExportServiceImpl implements CsvImportExportService {
         params.put(Constants.MDSEvents.CSV_IMPORT_FAILURE_MSG, e.getMessage());
         params.put(Constants.MDSEvents.CSV_IMPORT_FAILURE_STACKTRACE, ExceptionUtils.getStackTrace(e));
         params.put(Constants.MDSEvents.CSV_IMPORT_FILENAME, fileName);
+        params.put(Constants.MDSEvents.CSV_IMPORT_PROCESSED_ROWS, progress.getProcessedRows());
 
         String subject = CrudEventBuilder.createSubject(entity.getModule(), entity.getNamespace(), entity.getName(),
                 Constants.MDSEvents.CSV_IMPORT_FAILURE);
@@ -210,6 +230,23 @@ public class CsvImportExportServiceImpl implements CsvImportExportService {
         osgiEventProxy.sendEvent(subject, params);
     }
 
+    private void sendImportProgressEvent(CsvImportProgress progress, String fileName) {
+        Map<String, Object> params = new HashMap<>();
+
+        EntityDto entity = progress.getEntity();
+
+        CrudEventBuilder.setEntityData(params, entity.getModule(), entity.getNamespace(), entity.getName(), entity.getClassName());
+
+        params.put(Constants.MDSEvents.CSV_IMPORT_PROCESSED_ROWS, progress.getProcessedRows());
+        params.put(Constants.MDSEvents.CSV_IMPORT_CREATED_COUNT, progress.getNewInstanceIDs().size());
+        params.put(Constants.MDSEvents.CSV_IMPORT_UPDATED_COUNT, progress.getUpdatedInstanceIDs().size());
+        params.put(Constants.MDSEvents.CSV_IMPORT_FILENAME, fileName);
+
+        String subject = CrudEventBuilder.createSubject(entity.getModule(), entity.getNamespace(), entity.getName(),
+                Constants.MDSEvents.CSV_IMPORT_PROGRESS);
+
+        osgiEventProxy.sendEvent(subject, params);
+    }
 
     private void sendImportSuccessEvent(CsvImportResults importResults, String fileName) {
         Map<String, Object> params = new HashMap<>();
@@ -249,4 +286,21 @@ public class CsvImportExportServiceImpl implements CsvImportExportService {
     private void logPdfExport(String entityClassName) {
         LOGGER.debug("Exporting instances of entity: {} to a PDF File", entityClassName);
     }
+
+    /**
+     * Sends a progress event after every chunk committed by the importer.
+     */
+    private class EventSendingProgress extends CsvImportProgress {
+
+        private final String fileName;
+
+        EventSendingProgress(String fileName) {
+            this.fileName = fileName;
+        }
+
+        @Override
+        protected void onChunkCommitted() {
+            sendImportProgressEvent(this, fileName);
+        }
+    }
 }
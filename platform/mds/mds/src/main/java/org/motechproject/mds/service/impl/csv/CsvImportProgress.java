@@ -0,0 +1,59 @@
+package org.motechproject.mds.service.impl.csv;
+
+import org.motechproject.mds.dto.EntityDto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracks the progress of a CSV import. It is updated by the {@link CsvImporterExporter} after every committed chunk,
+ * so when an import fails, it holds the results of the chunks that were committed before the failure.
+ */
+public class CsvImportProgress {
+
+    private final List<Long> newInstanceIDs = new ArrayList<>();
+    private final List<Long> updatedInstanceIDs = new ArrayList<>();
+    private EntityDto entity;
+    private long processedRows;
+
+    /**
+     * @return the entity for which the import is performed, null until the import has started
+     */
+    public EntityDto getEntity() {
+        return entity;
+    }
+
+    /**
+     * @return the number of rows, after the header row, that were either skipped or committed to the database
+     */
+    public long getProcessedRows() {
+        return processedRows;
+    }
+
+    public List<Long> getNewInstanceIDs() {
+        return newInstanceIDs;
+    }
+
+    public List<Long> getUpdatedInstanceIDs() {
+        return updatedInstanceIDs;
+    }
+
+    void started(EntityDto importedEntity, long skippedRows) {
+        this.entity = importedEntity;
+        this.processedRows = skippedRows;
+    }
+
+    void chunkCommitted(int rowCount, List<Long> newIds, List<Long> updatedIds) {
+        processedRows += rowCount;
+        newInstanceIDs.addAll(newIds);
+        updatedInstanceIDs.addAll(updatedIds);
+
+        onChunkCommitted();
+    }
+
+    /**
+     * Called after every committed chunk. Does nothing by default.
+     */
+    protected void onChunkCommitted() {
+    }
+}
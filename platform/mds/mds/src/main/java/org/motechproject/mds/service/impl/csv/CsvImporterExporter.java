@@ -1,17 +1,19 @@
 package org.motechproject.mds.service.impl.csv;
 
 import org.apache.commons.lang.StringUtils;
-import org.motechproject.mds.domain.ComboboxHolder;
 import org.motechproject.mds.domain.Entity;
 import org.motechproject.mds.domain.Field;
-import org.motechproject.mds.domain.FieldMetadata;
-import org.motechproject.mds.domain.RelationshipHolder;
-import org.motechproject.mds.domain.Type;
+import org.motechproject.mds.dto.CsvImportOptions;
 import org.motechproject.mds.dto.CsvImportResults;
+import org.motechproject.mds.dto.EntityDto;
 import org.motechproject.mds.ex.csv.CsvImportException;
 import org.motechproject.mds.helper.DataServiceHelper;
-import org.motechproject.mds.helper.FieldHelper;
+import org.motechproject.mds.query.Property;
+import org.motechproject.mds.query.QueryExecution;
+import org.motechproject.mds.query.QueryExecutor;
 import org.motechproject.mds.query.QueryParams;
+import org.motechproject.mds.query.QueryUtil;
+import org.motechproject.mds.query.SetProperty;
 import org.motechproject.mds.service.CsvExportCustomizer;
 import org.motechproject.mds.service.CsvImportCustomizer;
 import org.motechproject.mds.service.DefaultCsvExportCustomizer;
@@ -19,34 +21,57 @@ import org.motechproject.mds.service.DefaultCsvImportCustomizer;
 import org.motechproject.mds.service.MotechDataService;
 import org.motechproject.mds.service.impl.csv.writer.CsvTableWriter;
 import org.motechproject.mds.util.Constants;
+import org.motechproject.mds.util.InstanceSecurityRestriction;
+import org.motechproject.mds.util.PropertyAccessor;
 import org.motechproject.mds.util.PropertyUtil;
-import org.motechproject.mds.util.TypeHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.orm.jdo.JdoTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.supercsv.io.CsvMapReader;
 import org.supercsv.prefs.CsvPreference;
 
+import javax.jdo.Query;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-
-import static org.motechproject.mds.util.Constants.MetadataKeys.MAP_KEY_TYPE;
-import static org.motechproject.mds.util.Constants.MetadataKeys.MAP_VALUE_TYPE;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Component used for importing CSV records to the database.
- * The reason for separating import logic is keeping the db transaction and sending the MOTECH event at completion separate.
+ * The reason for separating import logic is keeping the db transactions and sending the MOTECH events separate.
+ * Imports are done in chunks, existing and related instances are retrieved for a whole chunk at once and
+ * instances of a chunk are stored together, when the default import customizer is used.
  * This bean lives in the context of the generated MDS entities bundle.
  */
 public class CsvImporterExporter extends AbstractMdsExporter {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CsvImporterExporter.class);
+    private static final int ID_QUERY_BATCH_SIZE = 1000;
+
+    @Autowired
+    @Qualifier("transactionManager")
+    private JdoTransactionManager transactionManager;
 
     /**
      * Imports instances of the given entity to the database.
@@ -54,10 +79,8 @@ public class CsvImporterExporter extends AbstractMdsExporter {
      * @param reader reader from which the csv file will be read
      * @return IDs of instances updated/added during import
      */
-    @Transactional
     public CsvImportResults importCsv(final long entityId, final Reader reader) {
-        Entity entity = getEntity(entityId);
-        return importCsv(entity, reader);
+        return importCsv(entityId, reader, new DefaultCsvImportCustomizer());
     }
 
     /**
@@ -67,10 +90,8 @@ public class CsvImporterExporter extends AbstractMdsExporter {
      * @param importCustomizer the customizer that will be used during instance import from rows
      * @return IDs of instances updated/added during import
      */
-    @Transactional
     public CsvImportResults importCsv(final long entityId, final Reader reader, CsvImportCustomizer importCustomizer) {
-        Entity entity = getEntity(entityId);
-        return importCsv(entity, reader, importCustomizer);
+        return importCsv(entityId, reader, importCustomizer, new CsvImportOptions(), new CsvImportProgress());
     }
 
     /**
@@ -79,10 +100,54 @@ public class CsvImporterExporter extends AbstractMdsExporter {
      * @param reader reader from which the csv file will be read
      * @return IDs of instances updated/added during import
      */
-    @Transactional
     public CsvImportResults importCsv(final String entityClassName, final Reader reader) {
-        Entity entity = getEntity(entityClassName);
-        return importCsv(entity, reader);
+        return importCsv(entityClassName, reader, new DefaultCsvImportCustomizer(), new CsvImportOptions(),
+                new CsvImportProgress());
+    }
+
+    /**
+     * Imports instances of the given entity to the database. Rows are parsed in parallel and imported in chunks,
+     * each of them committed in its own transaction. If the import fails, the chunks committed before the failure
+     * stay in the database and the progress holds the number of rows to skip in order to resume the import.
+     * @param entityId the ID of the entity for which instances will be imported
+     * @param reader reader from which the csv file will be read
+     * @param importCustomizer the customizer that will be used during instance import from rows
+     * @param options the options of this import
+     * @param progress the progress of this import, updated after every committed chunk
+     * @return IDs of instances updated/added during import
+     */
+    public CsvImportResults importCsv(final long entityId, final Reader reader, CsvImportCustomizer importCustomizer,
+                                      CsvImportOptions options, CsvImportProgress progress) {
+        ImportSchema schema = new TransactionTemplate(transactionManager).execute(new TransactionCallback<ImportSchema>() {
+            @Override
+            public ImportSchema doInTransaction(TransactionStatus status) {
+                return new ImportSchema(getEntity(entityId));
+            }
+        });
+        return importCsv(schema, reader, importCustomizer, options, progress);
+    }
+
+    /**
+     * Imports instances of the given entity to the database. Rows are parsed in parallel and imported in chunks,
+     * each of them committed in its own transaction. If the import fails, the chunks committed before the failure
+     * stay in the database and the progress holds the number of rows to skip in order to resume the import.
+     * @param entityClassName the class name of the entity for which instances will be imported
+     * @param reader reader from which the csv file will be read
+     * @param importCustomizer the customizer that will be used during instance import from rows
+     * @param options the options of this import
+     * @param progress the progress of this import, updated after every committed chunk
+     * @return IDs of instances updated/added during import
+     */
+    public CsvImportResults importCsv(final String entityClassName, final Reader reader,
+                                      CsvImportCustomizer importCustomizer, CsvImportOptions options,
+                                      CsvImportProgress progress) {
+        ImportSchema schema = new TransactionTemplate(transactionManager).execute(new TransactionCallback<ImportSchema>() {
+            @Override
+            public ImportSchema doInTransaction(TransactionStatus status) {
+                return new ImportSchema(getEntity(entityClassName));
+            }
+        });
+        return importCsv(schema, reader, importCustomizer, options, progress);
     }
 
     /**
@@ -219,199 +284,402 @@ public class CsvImporterExporter extends AbstractMdsExporter {
         }
     }
 
-    private CsvImportResults importCsv(final Entity entity, final Reader reader) {
-        return importCsv(entity, reader, new DefaultCsvImportCustomizer());
-    }
+    private CsvImportResults importCsv(ImportSchema schema, Reader reader, CsvImportCustomizer importCustomizer,
+                                       CsvImportOptions options, CsvImportProgress progress) {
+        final MotechDataService dataService = DataServiceHelper.getDataService(getBundleContext(),
+                schema.getEntity().getClassName());
+        final Class entityClass = dataService.getClassType();
 
-    private CsvImportResults importCsv(final Entity entity, final Reader reader, CsvImportCustomizer importCustomizer) {
-        final MotechDataService dataService = DataServiceHelper.getDataService(getBundleContext(), entity);
-
-        final Map<String, Field> fieldMap = FieldHelper.fieldMapByName(entity.getFields());
+        ExecutorService executor = Executors.newFixedThreadPool(options.getParallelism());
 
         try (CsvMapReader csvMapReader = new CsvMapReader(reader, CsvPreference.STANDARD_PREFERENCE)) {
+            final String headers[] = csvMapReader.getHeader(true);
+            final List<CsvColumn> columns = schema.getColumns(headers, entityClass.getName());
 
-            List<Long> newInstanceIDs = new ArrayList<>();
-            List<Long> updatedInstanceIDs = new ArrayList<>();
+            progress.started(schema.getEntity(), skipRows(csvMapReader, headers, options.getSkipRows()));
 
-            Map<String, String> row;
+            List<Future<List<ParsedRow>>> parsedChunk = parse(executor, readChunk(csvMapReader, headers, options),
+                    columns, entityClass.getClassLoader(), options.getParallelism());
 
-            final String headers[] = csvMapReader.getHeader(true);
+            while (!parsedChunk.isEmpty()) {
+                List<ParsedRow> rows = await(parsedChunk);
 
-            while ((row = csvMapReader.read(headers)) != null) {
-                // import a row
-                RowImportResult rowImportResult = importInstanceFromRow(row, headers, fieldMap, dataService, importCustomizer);
-                Long id = rowImportResult.getId();
+                // the next chunk is parsed while the current one is being stored
+                parsedChunk = parse(executor, readChunk(csvMapReader, headers, options), columns,
+                        entityClass.getClassLoader(), options.getParallelism());
 
-                // put its ID in the correct list
-                if (rowImportResult.isNewInstance()) {
-                    newInstanceIDs.add(id);
-                } else {
-                    updatedInstanceIDs.add(id);
-                }
+                ChunkImportResult result = importChunk(rows, columns, dataService, importCustomizer);
+                progress.chunkCommitted(rows.size(), result.getNewInstanceIDs(), result.getUpdatedInstanceIDs());
+
+                LOGGER.debug("Imported {} rows of {}", progress.getProcessedRows(), entityClass.getName());
             }
 
-            return new CsvImportResults(entity.toDto(), newInstanceIDs, updatedInstanceIDs);
+            return new CsvImportResults(schema.getEntity(), progress.getNewInstanceIDs(),
+                    progress.getUpdatedInstanceIDs());
         } catch (IOException e) {
             throw new CsvImportException("IO Error when importing CSV", e);
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-    private RowImportResult importInstanceFromRow(Map<String, String> row, String[] headers, Map<String, Field> fieldMap,
-                                              MotechDataService dataService, CsvImportCustomizer importCustomizer) {
-        Class entityClass = dataService.getClassType();
+    private long skipRows(CsvMapReader csvMapReader, String[] headers, long rowCount) throws IOException {
+        long skipped = 0;
+        while (skipped < rowCount && csvMapReader.read(headers) != null) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    private List<Map<String, String>> readChunk(CsvMapReader csvMapReader, String[] headers, CsvImportOptions options)
+            throws IOException {
+        List<Map<String, String>> rows = new ArrayList<>(options.getChunkSize());
+
+        Map<String, String> row;
+        while (rows.size() < options.getChunkSize() && (row = csvMapReader.read(headers)) != null) {
+            rows.add(row);
+        }
+
+        return rows;
+    }
+
+    private List<Future<List<ParsedRow>>> parse(ExecutorService executor, List<Map<String, String>> rows,
+                                                final List<CsvColumn> columns, final ClassLoader entityCl,
+                                                int parallelism) {
+        List<Future<List<ParsedRow>>> futures = new ArrayList<>(parallelism);
+        int sliceSize = (rows.size() + parallelism - 1) / parallelism;
+
+        for (int from = 0; from < rows.size(); from += sliceSize) {
+            final List<Map<String, String>> slice = rows.subList(from, Math.min(from + sliceSize, rows.size()));
+
+            futures.add(executor.submit(new Callable<List<ParsedRow>>() {
+                @Override
+                public List<ParsedRow> call() {
+                    List<ParsedRow> parsedRows = new ArrayList<>(slice.size());
+                    for (Map<String, String> row : slice) {
+                        parsedRows.add(new ParsedRow(row, columns, entityCl));
+                    }
+                    return parsedRows;
+                }
+            }));
+        }
+
+        return futures;
+    }
+
+    private List<ParsedRow> await(List<Future<List<ParsedRow>>> futures) {
+        List<ParsedRow> rows = new ArrayList<>();
 
-        boolean isNewInstance = true;
-        Object instance;
         try {
-            instance = importCustomizer.findExistingInstance(row, dataService);
+            for (Future<List<ParsedRow>> future : futures) {
+                rows.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CsvImportException("Interrupted while parsing the CSV file", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CsvImportException("Error when parsing the CSV file", e.getCause());
+        }
+
+        return rows;
+    }
+
+    private ChunkImportResult importChunk(final List<ParsedRow> rows, final List<CsvColumn> columns,
+                                          final MotechDataService dataService,
+                                          final CsvImportCustomizer importCustomizer) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        return template.execute(new TransactionCallback<ChunkImportResult>() {
+            @Override
+            public ChunkImportResult doInTransaction(TransactionStatus status) {
+                Map<String, Map<Long, Object>> relatedInstances = retrieveRelatedInstances(rows, columns);
+
+                // custom customizers decide on their own how instances are found and stored, so they
+                // are called for every row
+                if (DefaultCsvImportCustomizer.class.equals(importCustomizer.getClass())) {
+                    return importInBulk(rows, columns, relatedInstances, dataService);
+                } else {
+                    return importWithCustomizer(rows, columns, relatedInstances, dataService, importCustomizer);
+                }
+            }
+        });
+    }
+
+    private ChunkImportResult importInBulk(List<ParsedRow> rows, List<CsvColumn> columns,
+                                           Map<String, Map<Long, Object>> relatedInstances,
+                                           MotechDataService dataService) {
+        Set<Long> ids = new HashSet<>();
+        for (ParsedRow row : rows) {
+            if (row.getId() != null) {
+                ids.add(row.getId());
+            }
+        }
+
+        // the access to existing instances is verified when they are updated
+        Map<Long, Object> existingInstances = retrieveByIds(dataService, ids, false);
+
+        List<Object> newInstances = new ArrayList<>();
+        List<Object> updatedInstances = new ArrayList<>();
+        Set<Object> updated = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        List<Long> updatedIds = new ArrayList<>();
+
+        for (ParsedRow row : rows) {
+            Object instance = row.getId() == null ? null : existingInstances.get(row.getId());
+
             if (instance == null) {
+                instance = newInstance(dataService.getClassType());
+                newInstances.add(instance);
+            } else {
+                if (updated.add(instance)) {
+                    updatedInstances.add(instance);
+                }
+                updatedIds.add(row.getId());
+            }
+
+            setValues(instance, row, columns, relatedInstances);
+        }
+
+        List<Long> newIds = new ArrayList<>(newInstances.size());
+        if (!newInstances.isEmpty()) {
+            for (Object created : dataService.createAll(newInstances)) {
+                newIds.add((Long) PropertyUtil.safeGetProperty(created, Constants.Util.ID_FIELD_NAME));
+            }
+        }
+        if (!updatedInstances.isEmpty()) {
+            dataService.updateAll(updatedInstances);
+        }
+
+        return new ChunkImportResult(newIds, updatedIds);
+    }
+
+    private ChunkImportResult importWithCustomizer(List<ParsedRow> rows, List<CsvColumn> columns,
+                                                   Map<String, Map<Long, Object>> relatedInstances,
+                                                   MotechDataService dataService,
+                                                   CsvImportCustomizer importCustomizer) {
+        Class entityClass = dataService.getClassType();
+
+        List<Long> newIds = new ArrayList<>();
+        List<Long> updatedIds = new ArrayList<>();
+
+        for (ParsedRow row : rows) {
+            Object instance = importCustomizer.findExistingInstance(row.getRow(), dataService);
+
+            boolean isNewInstance = instance == null;
+            if (isNewInstance) {
                 LOGGER.debug("Creating new {}", entityClass.getName());
-                instance = entityClass.newInstance();
+                instance = newInstance(entityClass);
             } else {
-                isNewInstance = false;
-                LOGGER.debug("Updating {} with id {}", entityClass.getName(), row.get(Constants.Util.ID_FIELD_NAME));
+                LOGGER.debug("Updating {} with id {}", entityClass.getName(), row.getRow().get(Constants.Util.ID_FIELD_NAME));
             }
+
+            setValues(instance, row, columns, relatedInstances);
+
+            Object importedInstance;
+            if (isNewInstance) {
+                importedInstance = importCustomizer.doCreate(instance, dataService);
+            } else {
+                importedInstance = importCustomizer.doUpdate(instance, dataService);
+            }
+
+            Long importedId = (Long) PropertyUtil.safeGetProperty(importedInstance, Constants.Util.ID_FIELD_NAME);
+
+            if (isNewInstance) {
+                newIds.add(importedId);
+            } else {
+                updatedIds.add(importedId);
+            }
+        }
+
+        return new ChunkImportResult(newIds, updatedIds);
+    }
+
+    private Object newInstance(Class entityClass) {
+        try {
+            return entityClass.newInstance();
         } catch (InstantiationException | IllegalAccessException e) {
             throw new CsvImportException("Unable to create instance of " + entityClass.getName(), e);
         }
+    }
 
-        for (String fieldName : headers) {
-            Field field = fieldMap.get(fieldName);
-
-            if (field == null) {
-                LOGGER.warn("No field with name {} in entity {}, however such row exists in CSV. Ignoring.",
-                        fieldName, entityClass.getName());
-                continue;
-            }
+    private void setValues(Object instance, ParsedRow row, List<CsvColumn> columns,
+                           Map<String, Map<Long, Object>> relatedInstances) {
+        PropertyAccessor accessor = PropertyAccessor.forBean(instance);
 
-            if (row.containsKey(fieldName)) {
-                String csvValue = row.get(field.getName());
+        for (int i = 0; i < columns.size(); i++) {
+            CsvColumn column = columns.get(i);
 
-                Object parsedValue = parseValue(csvValue, field, entityClass.getClassLoader());
+            if (row.getRow().containsKey(column.getName())) {
+                Object value = row.getValue(i);
+                if (column.isRelationship()) {
+                    value = column.resolveRelationship(value, relatedInstances.get(column.getRelatedClass()));
+                }
 
                 try {
-                    PropertyUtil.setProperty(instance, StringUtils.uncapitalize(fieldName), parsedValue);
+                    accessor.set(instance, accessor.indexOf(column.getPropertyName()), value);
                 } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
                     String msg = String.format("Error when processing field: %s, value in CSV file is %s",
-                            field.getName(), csvValue);
+                            column.getName(), row.getRow().get(column.getName()));
                     throw new CsvImportException(msg, e);
                 }
             }
         }
+    }
 
-        Object importedInstance;
-        if (isNewInstance) {
-            importedInstance = importCustomizer.doCreate(instance, dataService);
-        } else {
-            importedInstance = importCustomizer.doUpdate(instance, dataService);
-        }
+    private Map<String, Map<Long, Object>> retrieveRelatedInstances(List<ParsedRow> rows, List<CsvColumn> columns) {
+        Map<String, Set<Long>> idsByClass = new HashMap<>();
 
-        Long importedId = (Long) PropertyUtil.safeGetProperty(importedInstance, Constants.Util.ID_FIELD_NAME);
+        for (int i = 0; i < columns.size(); i++) {
+            CsvColumn column = columns.get(i);
 
-        return new RowImportResult(importedId, isNewInstance);
-    }
+            if (column.isRelationship()) {
+                Set<Long> ids = idsByClass.get(column.getRelatedClass());
+                if (ids == null) {
+                    ids = new HashSet<>();
+                    idsByClass.put(column.getRelatedClass(), ids);
+                }
 
-    private Object parseValue(String csvValue, Field field, ClassLoader entityCl) {
-        final Type type = field.getType();
-
-        Object value;
-        if (type.isCombobox()) {
-            value = parseComboboxValue(csvValue, field, entityCl);
-        } else if (type.isRelationship()) {
-            value = parseRelationshipValue(csvValue, field);
-        } else if (type.isMap()) {
-            FieldMetadata keyMetadata = field.getMetadata(MAP_KEY_TYPE);
-            FieldMetadata valueMetadata = field.getMetadata(MAP_VALUE_TYPE);
-            value = TypeHelper.parseStringToMap(keyMetadata.getValue(), valueMetadata.getValue(), csvValue);
-        } else {
-            value = TypeHelper.parse(csvValue, type.getTypeClass());
+                for (ParsedRow row : rows) {
+                    ids.addAll(column.getRelatedIds(row.getValue(i)));
+                }
+                ids.remove(null);
+            }
         }
 
-        // for strings, return a blank if the columns is in the file
-        if (value == null && String.class.equals(type.getTypeClass())) {
-            value = "";
+        Map<String, Map<Long, Object>> relatedInstances = new HashMap<>();
+        for (Map.Entry<String, Set<Long>> entry : idsByClass.entrySet()) {
+            MotechDataService relatedDataService = DataServiceHelper.getDataService(getBundleContext(), entry.getKey());
+            relatedInstances.put(entry.getKey(), retrieveByIds(relatedDataService, entry.getValue(), true));
         }
 
-        return value;
+        return relatedInstances;
     }
 
-    private Object parseComboboxValue(String csvValue, Field field, ClassLoader classLoader) {
-        ComboboxHolder comboboxHolder = new ComboboxHolder(field);
-        if (comboboxHolder.isCollection()) {
-            return TypeHelper.parse(csvValue, comboboxHolder.getTypeClassName(),
-                    comboboxHolder.getUnderlyingType(), classLoader);
-        } else {
-            return TypeHelper.parse(csvValue, comboboxHolder.getUnderlyingType(), classLoader);
-        }
-    }
+    private Map<Long, Object> retrieveByIds(MotechDataService dataService, Set<Long> ids, final boolean restricted) {
+        Map<Long, Object> instances = new HashMap<>();
+        List<Long> idList = new ArrayList<>(ids);
 
-    private Object parseRelationshipValue(String csvValue, Field field) {
-        RelationshipHolder relationshipHolder = new RelationshipHolder(field);
-        if (relationshipHolder.isManyToMany() || relationshipHolder.isOneToMany()) {
-            List<Long> ids = (List<Long>) TypeHelper.parse(csvValue, List.class.getName(), Long.class.getName());
-
-            Collection<Object> relatedObjects = buildRelationshipCollection(relationshipHolder);
-            if (ids != null) {
-                for (Long id : ids) {
-                    Object relatedObj = getRelatedObject(id, relationshipHolder.getRelatedClass());
-                    if (relatedObj != null) {
-                        relatedObjects.add(relatedObj);
-                    }
+        for (int from = 0; from < idList.size(); from += ID_QUERY_BATCH_SIZE) {
+            final Set<Long> batch = new HashSet<>(idList.subList(from, Math.min(from + ID_QUERY_BATCH_SIZE, idList.size())));
+
+            List<Object> found = (List<Object>) dataService.executeQuery(new QueryExecution<List<Object>>() {
+                @Override
+                public List<Object> execute(Query query, InstanceSecurityRestriction restriction) {
+                    InstanceSecurityRestriction appliedRestriction = restricted ? restriction : null;
+
+                    List<Property> properties = new ArrayList<>();
+                    properties.add(new SetProperty<>(Constants.Util.ID_FIELD_NAME, batch, Long.class.getName()));
+                    QueryUtil.useFilter(query, properties, appliedRestriction);
+
+                    Collection collection = (Collection) QueryExecutor.executeWithArray(query, new Object[] {batch},
+                            appliedRestriction);
+
+                    return new ArrayList<Object>(collection);
                 }
+            });
+
+            for (Object instance : found) {
+                instances.put((Long) PropertyUtil.safeGetProperty(instance, Constants.Util.ID_FIELD_NAME), instance);
             }
-            return relatedObjects;
-        } else {
-            Long id = (Long) TypeHelper.parse(csvValue, Long.class);
-            return getRelatedObject(id, relationshipHolder.getRelatedClass());
         }
+
+        return instances;
     }
 
-    private Collection<Object> buildRelationshipCollection(RelationshipHolder relationshipHolder) {
-        String collectionClassName = relationshipHolder.getCollectionClassName();
-        Class collectionClass = TypeHelper.suggestCollectionImplementation(collectionClassName);
-        if (collectionClass == null) {
-            return new ArrayList<>();
-        } else {
-            try {
-                return (Collection<Object>) collectionClass.newInstance();
-            } catch (InstantiationException | IllegalAccessException e) {
-                throw new CsvImportException("Unable to parse collection type " + relationshipHolder.getCollectionClassName(), e);
+    /**
+     * The schema of the imported entity, loaded before the import starts.
+     */
+    private static class ImportSchema {
+        private final EntityDto entity;
+        private final Map<String, CsvColumn> columns = new HashMap<>();
+
+        public ImportSchema(Entity entity) {
+            this.entity = entity.toDto();
+            for (Field field : entity.getFields()) {
+                columns.put(field.getName(), new CsvColumn(field));
             }
         }
-    }
-
-    private Object getRelatedObject(Long id, String entityClass) {
-        MotechDataService dataService = DataServiceHelper.getDataService(getBundleContext(), entityClass);
-        Object obj = dataService.findById(id);
 
-        if (obj == null) {
-            LOGGER.warn("Unable to find {} instance with id {}. Ignoring, you will have to create this relationship manually",
-                    entityClass, id);
+        public EntityDto getEntity() {
+            return entity;
         }
 
-        return obj;
+        public List<CsvColumn> getColumns(String[] headers, String entityClassName) {
+            List<CsvColumn> headerColumns = new ArrayList<>(headers.length);
+
+            for (String header : headers) {
+                CsvColumn column = columns.get(header);
+
+                if (column == null) {
+                    LOGGER.warn("No field with name {} in entity {}, however such row exists in CSV. Ignoring.",
+                            header, entityClassName);
+                } else {
+                    headerColumns.add(column);
+                }
+            }
+
+            return headerColumns;
+        }
     }
 
     /**
-     * This class represents a result of a single row import.
-     * It contains the ID of the created instance, it also contains information about whether it is a
-     * new instance.
+     * A row from the CSV file, with its values parsed for the imported columns.
      */
-    private class RowImportResult {
+    private static class ParsedRow {
+        private final Map<String, String> row;
+        private final Object[] values;
         private final Long id;
-        private final boolean newInstance;
 
-        public RowImportResult(Long id, boolean newInstance) {
-            this.id = id;
-            this.newInstance = newInstance;
+        public ParsedRow(Map<String, String> row, List<CsvColumn> columns, ClassLoader entityCl) {
+            this.row = row;
+            this.values = new Object[columns.size()];
+
+            for (int i = 0; i < columns.size(); i++) {
+                CsvColumn column = columns.get(i);
+                if (row.containsKey(column.getName())) {
+                    values[i] = column.parse(row.get(column.getName()), entityCl);
+                }
+            }
+
+            String idValue = row.get(Constants.Util.ID_FIELD_NAME);
+            this.id = StringUtils.isNotBlank(idValue) ? Long.valueOf(idValue) : null;
+        }
+
+        public Map<String, String> getRow() {
+            return row;
+        }
+
+        public Object getValue(int columnIndex) {
+            return values[columnIndex];
         }
 
         public Long getId() {
             return id;
         }
+    }
+
+    /**
+     * This class represents a result of a single chunk import.
+     * It contains the IDs of the created instances and the IDs of updated instances.
+     */
+    private static class ChunkImportResult {
+        private final List<Long> newInstanceIDs;
+        private final List<Long> updatedInstanceIDs;
+
+        public ChunkImportResult(List<Long> newInstanceIDs, List<Long> updatedInstanceIDs) {
+            this.newInstanceIDs = newInstanceIDs;
+            this.updatedInstanceIDs = updatedInstanceIDs;
+        }
+
+        public List<Long> getNewInstanceIDs() {
+            return newInstanceIDs;
+        }
 
-        public boolean isNewInstance() {
-            return newInstance;
+        public List<Long> getUpdatedInstanceIDs() {
+            return updatedInstanceIDs;
         }
     }
 }
@@ -18,13 +18,18 @@ import java.util.Map;
 
 /**
  * An implementation of the table writer that writes the table data in PDF format.
- * Uses the iText PDF library underneath.
+ * Uses the iText PDF library underneath. The table is written as an incomplete large table,
+ * which is flushed to the document every {@value #FLUSH_ROW_COUNT} rows, so that only the
+ * rows which were not flushed yet are kept in memory.
  */
 public class PdfTableWriter implements TableWriter {
 
+    private static final int FLUSH_ROW_COUNT = 500;
+
     private final PdfWriter pdfWriter;
     private final Document pdfDocument;
     private PdfPTable dataTable;
+    private int unflushedRows;
 
     public PdfTableWriter(OutputStream outputStream) {
         pdfDocument = new Document(PageSize.A0);
@@ -50,12 +55,19 @@ public class PdfTableWriter implements TableWriter {
             PdfPCell cell = new PdfPCell(new Phrase(chunk));
             dataTable.addCell(cell);
         }
+
+        if (++unflushedRows >= FLUSH_ROW_COUNT) {
+            addTableToDocument();
+            unflushedRows = 0;
+        }
     }
 
     @Override
     public void writeHeader(String[] headers) throws IOException {
         dataTable = new PdfPTable(headers.length);
         dataTable.setWidthPercentage(100);
+        dataTable.setHeaderRows(1);
+        dataTable.setComplete(false);
 
         for (String header : headers) {
             PdfPCell cell = new PdfPCell(new Phrase(header));
@@ -67,12 +79,19 @@ public class PdfTableWriter implements TableWriter {
     @Override
     public void close() {
         try {
-            pdfDocument.add(dataTable);
+            dataTable.setComplete(true);
+            addTableToDocument();
             pdfDocument.close();
-        } catch (DocumentException e) {
-            throw new DataExportException("Unable to add a table to the PDF file", e);
         } finally {
             pdfWriter.close();
         }
     }
+
+    private void addTableToDocument() {
+        try {
+            pdfDocument.add(dataTable);
+        } catch (DocumentException e) {
+            throw new DataExportException("Unable to add a table to the PDF file", e);
+        }
+    }
 }
@@ -5,6 +5,7 @@ import org.motechproject.mds.domain.Entity;
 import org.motechproject.mds.domain.EntityType;
 import org.motechproject.mds.domain.Field;
 import org.motechproject.mds.repository.AllEntities;
+import org.motechproject.mds.service.SchemaSnapshotService;
 import org.motechproject.mds.util.ObjectReferenceRepository;
 import org.motechproject.mds.util.PropertyUtil;
 import org.osgi.framework.BundleContext;
@@ -26,14 +27,18 @@ public abstract class BasePersistenceService {
     private PersistenceManagerFactory persistenceManagerFactory;
     private BundleContext bundleContext;
     private AllEntities allEntities;
+    private SchemaSnapshotService schemaSnapshotService;
 
     protected Long getEntitySchemaVersion(Object src) {
         String instanceClassName = HistoryTrashClassHelper.getInstanceClassName(src);
-        return allEntities.retrieveByClassName(instanceClassName).getEntityVersion();
+        return getCurrentSchemaVersion(instanceClassName);
     }
 
     protected Long getCurrentSchemaVersion(String className) {
-        return allEntities.retrieveByClassName(className).getEntityVersion();
+        // the snapshot spares a query of the schema for every recorded history or trash instance
+        return null == schemaSnapshotService
+                ? allEntities.retrieveByClassName(className).getEntityVersion()
+                : schemaSnapshotService.getSnapshot().getCurrentSchemaVersion(className);
     }
 
     protected Entity getEntity(Long id) {
@@ -110,6 +115,11 @@ public abstract class BasePersistenceService {
         this.allEntities = allEntities;
     }
 
+    @Autowired(required = false)
+    public void setSchemaSnapshotService(SchemaSnapshotService schemaSnapshotService) {
+        this.schemaSnapshotService = schemaSnapshotService;
+    }
+
     protected AllEntities getAllEntities() {
         return allEntities;
     }
@@ -0,0 +1,39 @@
+package org.motechproject.mds.service.impl.history;
+
+import java.util.Map;
+
+/**
+ * The <code>HistoryChange</code> holds the state of an instance captured when its compact revision was
+ * requested, read back from its {@link org.motechproject.mds.domain.HistoryOutboxEntry} when the revision
+ * is written by the {@link HistoryOutbox}.
+ */
+class HistoryChange {
+
+    private final Class<?> historyClass;
+    private final String entityClassName;
+    private final Long instanceId;
+    private final Map<String, Object> values;
+
+    HistoryChange(Class<?> historyClass, String entityClassName, Long instanceId, Map<String, Object> values) {
+        this.historyClass = historyClass;
+        this.entityClassName = entityClassName;
+        this.instanceId = instanceId;
+        this.values = values;
+    }
+
+    public Class<?> getHistoryClass() {
+        return historyClass;
+    }
+
+    public String getEntityClassName() {
+        return entityClassName;
+    }
+
+    public Long getInstanceId() {
+        return instanceId;
+    }
+
+    public Map<String, Object> getValues() {
+        return values;
+    }
+}
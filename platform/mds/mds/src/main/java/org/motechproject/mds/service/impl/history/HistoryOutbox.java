@@ -0,0 +1,102 @@
+package org.motechproject.mds.service.impl.history;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The <code>HistoryOutbox</code> turns the pending compact revisions, saved in the database together with
+ * the changed instances, into history revisions. The work is done in batches, on a single background thread,
+ * whenever a transaction with pending revisions commits and periodically, so that revisions left behind by
+ * a restart or by another node are written as well. Pending revisions are removed only in the transaction
+ * that writes them, so they are never lost.
+ */
+class HistoryOutbox {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HistoryOutbox.class);
+
+    private static final long CLOSE_TIMEOUT = 5;
+
+    private final Writer writer;
+    private final long pollInterval;
+    private final Semaphore signals = new Semaphore(0);
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    HistoryOutbox(Writer writer, long pollInterval) {
+        this.writer = writer;
+        this.pollInterval = pollInterval;
+
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processChanges();
+            }
+        }, "mds-history-outbox");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Wakes up the background thread, because new pending revisions were committed.
+     */
+    void signal() {
+        signals.release();
+    }
+
+    /**
+     * Stops the background thread. Pending revisions that were not written yet stay in the database.
+     */
+    void close() {
+        running = false;
+        signals.release();
+
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void processChanges() {
+        // revisions left behind by the previous run are written right away
+        signal();
+
+        while (running) {
+            try {
+                signals.tryAcquire(pollInterval, TimeUnit.SECONDS);
+                signals.drainPermits();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            writePending();
+        }
+    }
+
+    private void writePending() {
+        try {
+            int written;
+            do {
+                written = writer.write();
+            } while (running && written > 0);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to write pending history revisions, they will be retried", e);
+        }
+    }
+
+    /**
+     * Writes the next batch of pending revisions.
+     */
+    interface Writer {
+
+        /**
+         * @return the number of pending revisions processed, 0 if there are none left
+         */
+        int write();
+    }
+}
@@ -1,10 +1,19 @@
 package org.motechproject.mds.service.impl.history;
 
+import org.apache.commons.io.input.ClassLoaderObjectInputStream;
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.SerializationException;
+import org.apache.commons.lang.SerializationUtils;
+import org.motechproject.mds.domain.Entity;
 import org.motechproject.mds.domain.EntityType;
+import org.motechproject.mds.domain.Field;
+import org.motechproject.mds.domain.HistoryOutboxEntry;
 import org.motechproject.mds.query.Property;
 import org.motechproject.mds.query.PropertyBuilder;
+import org.motechproject.mds.query.QueryExecutor;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.query.QueryUtil;
+import org.motechproject.mds.query.SetProperty;
 import org.motechproject.mds.service.HistoryService;
 import org.motechproject.mds.util.ClassName;
 import org.motechproject.mds.util.Order;
@@ -12,28 +21,73 @@ import org.motechproject.mds.util.PropertyUtil;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.orm.jdo.JdoTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.jdo.PersistenceManager;
 import javax.jdo.Query;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.motechproject.mds.util.Constants.Util.ID_FIELD_NAME;
 
 /**
  * Default implementation of {@link org.motechproject.mds.service.HistoryService} interface.
+ * The history of entities with compact history enabled is recorded asynchronously - the values of fields are
+ * saved as a {@link HistoryOutboxEntry} in the business transaction, while the revisions containing only
+ * the changed fields are written in batches by the {@link HistoryOutbox} after the transaction commits.
+ * A crash between the two steps only delays the revisions. Every {@value #FULL_REVISION_INTERVAL} compact
+ * revisions, a revision containing all fields is written, which bounds the work needed to reconstruct
+ * the latest revision of an instance.
  */
 public class HistoryServiceImpl extends BasePersistenceService implements HistoryService {
     private static final Logger LOGGER = LoggerFactory.getLogger(HistoryServiceImpl.class);
 
+    private static final int OUTBOX_BATCH_SIZE = 100;
+    private static final long OUTBOX_POLL_INTERVAL = 30;
+    private static final int FULL_REVISION_INTERVAL = 20;
+    private static final String CHANGED_FIELDS_SEPARATOR = ",";
+
+    private final ConcurrentMap<String, HistoryDefinition> definitions = new ConcurrentHashMap<>();
+    private final Object outboxLock = new Object();
+
+    private HistoryOutbox outbox;
+    private JdoTransactionManager transactionManager;
+
     @Override
     @Transactional
     public void record(Object instance) {
         Class<?> historyClass = HistoryTrashClassHelper.getClass(instance, EntityType.HISTORY, getBundleContext());
 
         if (null != historyClass) {
+            HistoryDefinition definition = getDefinition(instance.getClass().getName());
+            if (definition.isCompact()) {
+                recordCompact(historyClass, Collections.singletonList(instance), definition);
+                return;
+            }
+
             LOGGER.debug("Recording history for: {}", instance.getClass().getName());
 
             create(historyClass, instance, EntityType.HISTORY);
@@ -42,6 +96,38 @@ public class HistoryServiceImpl extends BasePersistenceService implements Histor
         }
     }
 
+    @Override
+    @Transactional
+    public void recordAll(Collection<?> instances) {
+        if (instances.isEmpty()) {
+            return;
+        }
+
+        Object first = instances.iterator().next();
+        Class<?> historyClass = HistoryTrashClassHelper.getClass(first, EntityType.HISTORY, getBundleContext());
+
+        if (null != historyClass) {
+            HistoryDefinition definition = getDefinition(first.getClass().getName());
+            if (definition.isCompact()) {
+                recordCompact(historyClass, instances, definition);
+                return;
+            }
+
+            LOGGER.debug("Recording history for {} instances of: {}", instances.size(), first.getClass().getName());
+
+            ValueGetter valueGetter = new HistoryValueGetter(this, getBundleContext());
+            List<Object> historyInstances = new ArrayList<>(instances.size());
+            for (Object instance : instances) {
+                historyInstances.add(build(historyClass, instance, EntityType.HISTORY, valueGetter));
+            }
+
+            PersistenceManager manager = getPersistenceManagerFactory().getPersistenceManager();
+            manager.makePersistentAll(historyInstances);
+
+            LOGGER.debug("Recorded history for {} instances of: {}", instances.size(), first.getClass().getName());
+        }
+    }
+
     @Override
     @Transactional
     public void remove(Object instance) {
@@ -51,12 +137,44 @@ public class HistoryServiceImpl extends BasePersistenceService implements Histor
 
         if (null != historyClass) {
             Long objId = getInstanceId(instance);
+            discardPendingRevisions(historyClass, Collections.singleton(objId));
 
             Query query = initQuery(historyClass);
             query.deletePersistentAll(objId, false);
         }
     }
 
+    @Override
+    @Transactional
+    public void removeAll(Collection<?> instances) {
+        if (instances.isEmpty()) {
+            return;
+        }
+
+        Object first = instances.iterator().next();
+        Class<?> historyClass = HistoryTrashClassHelper.getClass(ClassName.trimTrashHistorySuffix(
+                HistoryTrashClassHelper.getInstanceClassName(first)), EntityType.HISTORY, getBundleContext());
+
+        if (null != historyClass) {
+            Set<Long> objIds = new HashSet<>();
+            for (Object instance : instances) {
+                objIds.add(getInstanceId(instance));
+            }
+            discardPendingRevisions(historyClass, objIds);
+
+            List<Property> properties = new ArrayList<>(2);
+            properties.add(new SetProperty<>(HistoryTrashClassHelper.currentVersion(historyClass), objIds,
+                    Long.class.getName()));
+            properties.add(PropertyBuilder.create(HistoryTrashClassHelper.trashFlag(historyClass), false, Boolean.class));
+
+            PersistenceManager manager = getPersistenceManagerFactory().getPersistenceManager();
+            Query query = manager.newQuery(historyClass);
+            QueryUtil.useFilter(query, properties);
+
+            QueryExecutor.executeDelete(query, properties);
+        }
+    }
+
     @Override
     @Transactional
     public void setTrashFlag(Object instance, Object trash, boolean flag) {
@@ -67,6 +185,10 @@ public class HistoryServiceImpl extends BasePersistenceService implements Histor
             Long objId = getInstanceId(instance);
             Long trashId = getInstanceId(trash);
 
+            if (flag) {
+                discardPendingRevisions(historyClass, Collections.singleton(objId));
+            }
+
             Query query = initQuery(historyClass, true);
 
             // we have to find entries with the correct instance id and trash flag that is reverse
@@ -100,6 +222,10 @@ public class HistoryServiceImpl extends BasePersistenceService implements Histor
         if (null != historyClass) {
             Long objId = getInstanceId(instance);
 
+            if (hasCompactRevisions(historyClass, objId)) {
+                return getReconstructedHistory(historyClass, instance.getClass().getName(), objId, queryParams);
+            }
+
             Query query = initQuery(historyClass, false);
             QueryUtil.setQueryParams(query, queryParams);
 
@@ -137,16 +263,80 @@ public class HistoryServiceImpl extends BasePersistenceService implements Histor
             query.setUnique(true);
 
             obj = query.execute(historyId);
+
+            if (isCompactRevision(historyClass, obj)) {
+                obj = getReconstructedRevision(historyClass, instance.getClass().getName(), obj, historyId);
+            }
         }
 
         return obj;
     }
 
+    /**
+     * Writes the next batch of pending compact revisions, in a new transaction which also removes their
+     * outbox entries. The entries are locked for the duration of the transaction, so that each of them
+     * is written by a single node.
+     *
+     * @return the number of outbox entries processed
+     */
+    public int writePendingRevisions() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        return template.execute(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(TransactionStatus status) {
+                PersistenceManager manager = getPersistenceManagerFactory().getPersistenceManager();
+
+                Boolean originalSerializeRead = manager.currentTransaction().getSerializeRead();
+                try {
+                    manager.currentTransaction().setSerializeRead(true);
+
+                    Query query = manager.newQuery(HistoryOutboxEntry.class);
+                    query.setOrdering(ID_FIELD_NAME + " ascending");
+                    query.setRange(0, OUTBOX_BATCH_SIZE);
+
+                    List<HistoryOutboxEntry> entries = new ArrayList<>((List<HistoryOutboxEntry>) query.execute());
+                    if (!entries.isEmpty()) {
+                        writeCompactRevisions(readChanges(entries));
+                        manager.deletePersistentAll(entries);
+                    }
+
+                    return entries.size();
+                } finally {
+                    manager.currentTransaction().setSerializeRead(originalSerializeRead);
+                }
+            }
+        });
+    }
+
+    @PostConstruct
+    public void initOutbox() {
+        synchronized (outboxLock) {
+            if (null == outbox) {
+                outbox = new HistoryOutbox(new HistoryOutbox.Writer() {
+                    @Override
+                    public int write() {
+                        return writePendingRevisions();
+                    }
+                }, OUTBOX_POLL_INTERVAL);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void closeOutbox() {
+        synchronized (outboxLock) {
+            if (null != outbox) {
+                outbox.close();
+                outbox = null;
+            }
+        }
+    }
+
     private <T> Object create(Class<T> historyClass, Object instance, EntityType type) {
         ValueGetter valueGetter = new HistoryValueGetter(this, getBundleContext());
-        Object currentHistoryInstance = create(historyClass, instance, type, valueGetter);
-
-        setHistoryProperties(currentHistoryInstance, instance);
+        Object currentHistoryInstance = build(historyClass, instance, type, valueGetter);
 
         PersistenceManager manager = getPersistenceManagerFactory().getPersistenceManager();
 
@@ -156,6 +346,12 @@ public class HistoryServiceImpl extends BasePersistenceService implements Histor
         return currentHistoryInstance;
     }
 
+    private <T> Object build(Class<T> historyClass, Object instance, EntityType type, ValueGetter valueGetter) {
+        Object historyInstance = create(historyClass, instance, type, valueGetter);
+        setHistoryProperties(historyInstance, instance);
+        return historyInstance;
+    }
+
     private void setHistoryProperties(Object newHistoryObj, Object realCurrentObj) {
         // creates connection between instance object and history object
         Long id = getInstanceId(realCurrentObj);
@@ -198,6 +394,332 @@ public class HistoryServiceImpl extends BasePersistenceService implements Histor
         return query;
     }
 
+    private HistoryDefinition getDefinition(String className) {
+        HistoryDefinition definition = definitions.get(className);
+
+        if (null == definition) {
+            Entity entity = getAllEntities().retrieveByClassName(className);
+            List<String> fieldNames = new ArrayList<>();
+
+            if (null != entity) {
+                for (Field field : entity.getFields()) {
+                    // relationships and blobs are recorded only in revisions containing all fields
+                    if (!ID_FIELD_NAME.equals(field.getName()) && !field.getType().isRelationship()
+                            && !field.getType().isBlob()) {
+                        fieldNames.add(field.getName());
+                    }
+                }
+            }
+
+            definition = new HistoryDefinition(null != entity && entity.isCompactHistory(), fieldNames);
+            definitions.putIfAbsent(className, definition);
+        }
+
+        return definition;
+    }
+
+    private void recordCompact(Class<?> historyClass, Collection<?> instances, HistoryDefinition definition) {
+        List<HistoryOutboxEntry> entries = new ArrayList<>(instances.size());
+
+        for (Object instance : instances) {
+            HashMap<String, Object> values = new HashMap<>();
+            for (String fieldName : definition.getFieldNames()) {
+                values.put(fieldName, PropertyUtil.safeGetProperty(instance, fieldName));
+            }
+
+            // the values are serialized right away, the instance can be changed before the revision is written
+            entries.add(new HistoryOutboxEntry(historyClass.getName(), instance.getClass().getName(),
+                    getInstanceId(instance), SerializationUtils.serialize(values)));
+        }
+
+        getPersistenceManagerFactory().getPersistenceManager().makePersistentAll(entries);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    signalOutbox();
+                }
+            });
+        } else {
+            signalOutbox();
+        }
+    }
+
+    private void signalOutbox() {
+        synchronized (outboxLock) {
+            if (null != outbox) {
+                outbox.signal();
+            }
+        }
+    }
+
+    private void discardPendingRevisions(Class<?> historyClass, Collection<Long> instanceIds) {
+        PersistenceManager manager = getPersistenceManagerFactory().getPersistenceManager();
+
+        Query query = manager.newQuery(HistoryOutboxEntry.class);
+        query.setFilter("historyClassName == param0 && param1.contains(instanceId)");
+        query.declareParameters("java.lang.String param0, java.util.Collection param1");
+
+        query.deletePersistentAll(historyClass.getName(), instanceIds);
+    }
+
+    private List<HistoryChange> readChanges(List<HistoryOutboxEntry> entries) {
+        List<HistoryChange> changes = new ArrayList<>(entries.size());
+
+        for (HistoryOutboxEntry entry : entries) {
+            try {
+                Class<?> historyClass = HistoryTrashClassHelper.getClass(entry.getEntityClassName(),
+                        EntityType.HISTORY, getBundleContext());
+
+                changes.add(new HistoryChange(historyClass, entry.getEntityClassName(), entry.getInstanceId(),
+                        readValues(entry.getChangeValues(), historyClass.getClassLoader())));
+            } catch (IllegalStateException | SerializationException e) {
+                // the entry is removed anyway, otherwise it would block the entries queued after it
+                LOGGER.error("Unable to read the pending history revision of {} instance {}, skipping it",
+                        entry.getEntityClassName(), entry.getInstanceId(), e);
+            }
+        }
+
+        return changes;
+    }
+
+    private Map<String, Object> readValues(byte[] changeValues, ClassLoader classLoader) {
+        try (ObjectInputStream input = new ClassLoaderObjectInputStream(classLoader,
+                new ByteArrayInputStream(changeValues))) {
+            return (Map<String, Object>) input.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SerializationException(e);
+        }
+    }
+
+    private void writeCompactRevisions(List<HistoryChange> changes) {
+        ValueGetter valueGetter = new HistoryValueGetter(this, getBundleContext());
+        Map<String, Entity> entities = new HashMap<>();
+        Map<String, RevisionState> states = new HashMap<>();
+        List<Object> revisions = new ArrayList<>(changes.size());
+
+        for (HistoryChange change : changes) {
+            String className = change.getEntityClassName();
+            if (!entities.containsKey(className)) {
+                entities.put(className, getAllEntities().retrieveByClassName(className));
+            }
+
+            Entity entity = entities.get(className);
+            if (null == entity) {
+                LOGGER.warn("Entity {} no longer exists, skipping its history revision", className);
+                continue;
+            }
+
+            String key = change.getHistoryClass().getName() + '#' + change.getInstanceId();
+            RevisionState previous = states.containsKey(key)
+                    ? states.get(key)
+                    : loadRevisionState(change.getHistoryClass(), change.getInstanceId(),
+                            change.getValues().keySet());
+
+            Object revision = newRevision(change.getHistoryClass());
+            states.put(key, fillCompactRevision(revision, change, entity, previous, valueGetter));
+            revisions.add(revision);
+        }
+
+        LOGGER.debug("Writing {} compact history revisions", revisions.size());
+        getPersistenceManagerFactory().getPersistenceManager().makePersistentAll(revisions);
+    }
+
+    private RevisionState fillCompactRevision(Object revision, HistoryChange change, Entity entity,
+                                              RevisionState previous, ValueGetter valueGetter) {
+        Class<?> historyClass = change.getHistoryClass();
+        boolean full = null == previous || previous.getCompactRevisions() >= FULL_REVISION_INTERVAL;
+
+        PropertyUtil.safeSetProperty(revision, HistoryTrashClassHelper.currentVersion(historyClass),
+                change.getInstanceId());
+        PropertyUtil.safeSetProperty(revision, HistoryTrashClassHelper.schemaVersion(historyClass),
+                entity.getEntityVersion());
+
+        Map<String, Object> values = new HashMap<>();
+        StringBuilder changedFields = new StringBuilder(CHANGED_FIELDS_SEPARATOR);
+
+        for (Map.Entry<String, Object> entry : change.getValues().entrySet()) {
+            Field field = entity.getField(entry.getKey());
+            if (null == field) {
+                continue;
+            }
+
+            Object value = valueGetter.convertValue(field, entry.getValue(), revision);
+            boolean changed = full || !previous.getValues().containsKey(entry.getKey())
+                    || !ObjectUtils.equals(value, previous.getValues().get(entry.getKey()));
+
+            if (changed) {
+                PropertyUtil.safeSetProperty(revision, entry.getKey(), value);
+                changedFields.append(entry.getKey()).append(CHANGED_FIELDS_SEPARATOR);
+            }
+
+            values.put(entry.getKey(), value);
+        }
+
+        if (!full) {
+            PropertyUtil.safeSetProperty(revision, HistoryTrashClassHelper.changedFields(historyClass),
+                    changedFields.toString());
+        }
+
+        return new RevisionState(values, full ? 0 : previous.getCompactRevisions() + 1);
+    }
+
+    private RevisionState loadRevisionState(Class<?> historyClass, Long instanceId, Collection<String> fieldNames) {
+        String changedFields = HistoryTrashClassHelper.changedFields(historyClass);
+
+        Query lastFullQuery = initRevisionQuery(historyClass, changedFields + " == null", "");
+        lastFullQuery.setOrdering(ID_FIELD_NAME + " descending");
+        lastFullQuery.setRange(0, 1);
+        lastFullQuery.setUnique(true);
+
+        Object lastFull = lastFullQuery.execute(instanceId, false);
+        if (null == lastFull) {
+            return null;
+        }
+
+        Query query = initRevisionQuery(historyClass, ID_FIELD_NAME + " >= param2", ", java.lang.Long param2");
+        query.setOrdering(ID_FIELD_NAME + " ascending");
+
+        List revisions = (List) query.execute(instanceId, false, getInstanceId(lastFull));
+        List<Object> reconstructed = reconstruct(historyClass, revisions, fieldNames);
+
+        Object latest = reconstructed.get(reconstructed.size() - 1);
+        Map<String, Object> values = new HashMap<>();
+        for (String fieldName : fieldNames) {
+            values.put(fieldName, PropertyUtil.safeGetProperty(latest, fieldName));
+        }
+
+        return new RevisionState(values, reconstructed.size() - 1);
+    }
+
+    private boolean hasCompactRevisions(Class<?> historyClass, Long instanceId) {
+        String changedFields = HistoryTrashClassHelper.changedFields(historyClass);
+
+        Query query = initRevisionQuery(historyClass, changedFields + " != null", "");
+        query.setResult("count(this)");
+
+        Object count = query.execute(instanceId, false);
+        return count instanceof Number && ((Number) count).longValue() > 0;
+    }
+
+    private List getReconstructedHistory(Class<?> historyClass, String className, Long instanceId,
+                                         QueryParams queryParams) {
+        Query query = initRevisionQuery(historyClass, "", "");
+        query.setOrdering(ID_FIELD_NAME + " ascending");
+
+        List revisions = (List) query.execute(instanceId, false);
+        List<Object> history = reconstruct(historyClass, revisions, getDefinition(className).getFieldNames());
+
+        // Remove current revision from the list of historical revisions
+        if (!history.isEmpty()) {
+            history.remove(history.size() - 1);
+        }
+
+        if (null != queryParams && queryParams.isOrderSet()) {
+            Collections.sort(history, new RevisionComparator(queryParams.getOrder()));
+        }
+
+        if (null != queryParams && queryParams.isPagingSet()) {
+            int from = Math.min((queryParams.getPage() - 1) * queryParams.getPageSize(), history.size());
+            int to = Math.min(from + queryParams.getPageSize(), history.size());
+            history = new ArrayList<>(history.subList(from, to));
+        }
+
+        return history;
+    }
+
+    private Object getReconstructedRevision(Class<?> historyClass, String className, Object revision, Long historyId) {
+        Long instanceId = (Long) PropertyUtil.safeGetProperty(revision,
+                HistoryTrashClassHelper.currentVersion(historyClass));
+        Boolean fromTrash = (Boolean) PropertyUtil.safeGetProperty(revision,
+                HistoryTrashClassHelper.trashFlag(historyClass));
+
+        Query query = initRevisionQuery(historyClass, ID_FIELD_NAME + " <= param2", ", java.lang.Long param2");
+        query.setOrdering(ID_FIELD_NAME + " ascending");
+
+        List revisions = (List) query.execute(instanceId, Boolean.TRUE.equals(fromTrash), historyId);
+        List<Object> reconstructed = reconstruct(historyClass, revisions, getDefinition(className).getFieldNames());
+
+        return reconstructed.isEmpty() ? revision : reconstructed.get(reconstructed.size() - 1);
+    }
+
+    /**
+     * Reconstructs full revisions from the given revisions of a single instance, ordered by their ids. Compact
+     * revisions are replaced with new history objects, holding the fields of the compact revision and the
+     * remaining fields of the previous revisions. Revisions containing all fields are returned as they are.
+     */
+    private List<Object> reconstruct(Class<?> historyClass, List<?> revisions, Collection<String> fieldNames) {
+        String changedFieldsName = HistoryTrashClassHelper.changedFields(historyClass);
+        String[] revisionProperties = {
+                ID_FIELD_NAME, HistoryTrashClassHelper.currentVersion(historyClass),
+                HistoryTrashClassHelper.schemaVersion(historyClass), HistoryTrashClassHelper.trashFlag(historyClass)
+        };
+
+        List<Object> reconstructed = new ArrayList<>(revisions.size());
+        Map<String, Object> values = new HashMap<>();
+
+        for (Object revision : revisions) {
+            String changedFields = (String) PropertyUtil.safeGetProperty(revision, changedFieldsName);
+            Object full = revision;
+
+            if (null != changedFields) {
+                full = newRevision(historyClass);
+
+                for (String property : revisionProperties) {
+                    PropertyUtil.safeSetProperty(full, property, PropertyUtil.safeGetProperty(revision, property));
+                }
+
+                for (String fieldName : fieldNames) {
+                    boolean changed = changedFields.contains(
+                            CHANGED_FIELDS_SEPARATOR + fieldName + CHANGED_FIELDS_SEPARATOR);
+                    Object value = changed ? PropertyUtil.safeGetProperty(revision, fieldName) : values.get(fieldName);
+
+                    PropertyUtil.safeSetProperty(full, fieldName, value);
+                }
+            }
+
+            for (String fieldName : fieldNames) {
+                values.put(fieldName, PropertyUtil.safeGetProperty(full, fieldName));
+            }
+
+            reconstructed.add(full);
+        }
+
+        return reconstructed;
+    }
+
+    private boolean isCompactRevision(Class<?> historyClass, Object revision) {
+        return null != revision
+                && null != PropertyUtil.safeGetProperty(revision, HistoryTrashClassHelper.changedFields(historyClass));
+    }
+
+    private Object newRevision(Class<?> historyClass) {
+        try {
+            return historyClass.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException("There was a problem with creating new instance of " + historyClass, e);
+        }
+    }
+
+    private Query initRevisionQuery(Class<?> historyClass, String filter, String parameters) {
+        PersistenceManager manager = getPersistenceManagerFactory().getPersistenceManager();
+
+        Query query = manager.newQuery(historyClass);
+        query.setFilter(String.format("%s == param0 && %s == param1%s",
+                HistoryTrashClassHelper.currentVersion(historyClass), HistoryTrashClassHelper.trashFlag(historyClass),
+                filter.isEmpty() ? "" : " && " + filter));
+        query.declareParameters("java.lang.Long param0, java.lang.Boolean param1" + parameters);
+
+        return query;
+    }
+
+    @Autowired
+    @Qualifier("transactionManager")
+    public void setTransactionManager(JdoTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
     /**
      * We override the default behaviour because the history service needs to set additional information.
      * For relationship fields, we must set the ids tying them to real object. We must also properly handle
@@ -215,4 +737,74 @@ public class HistoryServiceImpl extends BasePersistenceService implements Histor
             setHistoryProperties(newHistoryRecord, realCurrentObj);
         }
     }
+
+    /**
+     * Describes how the history of an entity is recorded.
+     */
+    private static final class HistoryDefinition {
+
+        private final boolean compact;
+        private final List<String> fieldNames;
+
+        private HistoryDefinition(boolean compact, List<String> fieldNames) {
+            this.compact = compact;
+            this.fieldNames = fieldNames;
+        }
+
+        public boolean isCompact() {
+            return compact;
+        }
+
+        public List<String> getFieldNames() {
+            return fieldNames;
+        }
+    }
+
+    /**
+     * The values of the latest revision of an instance and the number of compact revisions written since
+     * the last revision containing all fields.
+     */
+    private static final class RevisionState {
+
+        private final Map<String, Object> values;
+        private final int compactRevisions;
+
+        private RevisionState(Map<String, Object> values, int compactRevisions) {
+            this.values = values;
+            this.compactRevisions = compactRevisions;
+        }
+
+        public Map<String, Object> getValues() {
+            return values;
+        }
+
+        public int getCompactRevisions() {
+            return compactRevisions;
+        }
+    }
+
+    private static final class RevisionComparator implements Comparator<Object> {
+
+        private final Order order;
+
+        private RevisionComparator(Order order) {
+            this.order = order;
+        }
+
+        @Override
+        public int compare(Object first, Object second) {
+            Object firstValue = PropertyUtil.safeGetProperty(first, order.getField());
+            Object secondValue = PropertyUtil.safeGetProperty(second, order.getField());
+
+            int result;
+            if (firstValue instanceof Comparable && null != secondValue) {
+                result = ((Comparable) firstValue).compareTo(secondValue);
+            } else {
+                result = ObjectUtils.compare(null == firstValue ? null : firstValue.toString(),
+                        null == secondValue ? null : secondValue.toString());
+            }
+
+            return order.getDirection() == Order.Direction.DESC ? -result : result;
+        }
+    }
 }
@@ -68,6 +68,10 @@ public final class HistoryTrashClassHelper {
         return uncapitalize(historyClass.getSimpleName() + "FromTrash");
     }
 
+    public static String changedFields(Class<?> historyClass) {
+        return uncapitalize(historyClass.getSimpleName() + "ChangedFields");
+    }
+
     private HistoryTrashClassHelper() {
     }
 }
@@ -1,24 +1,36 @@
 package org.motechproject.mds.service.impl.history;
 
 import org.apache.commons.beanutils.MethodUtils;
+import org.joda.time.DateTime;
+import org.motechproject.commons.date.util.DateUtil;
 import org.motechproject.mds.config.DeleteMode;
 import org.motechproject.mds.config.SettingsService;
+import org.motechproject.mds.config.TimeUnit;
 import org.motechproject.mds.domain.Entity;
 import org.motechproject.mds.domain.EntityType;
 import org.motechproject.mds.domain.Field;
 import org.motechproject.mds.query.Property;
 import org.motechproject.mds.query.PropertyBuilder;
+import org.motechproject.mds.query.QueryExecutor;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.query.QueryUtil;
+import org.motechproject.mds.query.SetProperty;
 import org.motechproject.mds.service.HistoryService;
 import org.motechproject.mds.service.MdsSchedulerService;
 import org.motechproject.mds.service.TrashService;
 import org.motechproject.mds.util.ObjectReferenceRepository;
+import org.motechproject.mds.util.PropertyUtil;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.orm.jdo.JdoTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.PostConstruct;
 import javax.jdo.PersistenceManager;
@@ -26,7 +38,12 @@ import javax.jdo.Query;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+
+import static org.motechproject.mds.util.Constants.Util.ID_FIELD_NAME;
+import static org.motechproject.mds.util.Constants.Util.MODIFICATION_DATE_FIELD_NAME;
 
 /**
  * Default implementation of {@link org.motechproject.mds.service.TrashService} interface.
@@ -34,10 +51,13 @@ import java.util.List;
 public class TrashServiceImpl extends BasePersistenceService implements TrashService {
     private static final Logger LOGGER = LoggerFactory.getLogger(TrashServiceImpl.class);
 
+    private static final int PURGE_CHUNK_SIZE = 1000;
+
     private MdsSchedulerService mdsSchedulerService;
     private SettingsService settingsService;
     private HistoryService historyService;
     private ValueGetter trashValueGetter;
+    private JdoTransactionManager transactionManager;
 
     @Override
     public boolean isTrashMode() {
@@ -71,6 +91,9 @@ public class TrashServiceImpl extends BasePersistenceService implements TrashSer
                 LOGGER.error("Failed to set schema version of the trash instance.");
             }
 
+            // the trash is emptied based on the time the instance was moved to it
+            PropertyUtil.safeSetProperty(trash, MODIFICATION_DATE_FIELD_NAME, DateUtil.now());
+
             PersistenceManager manager = getPersistenceManagerFactory().getPersistenceManager();
 
             manager.makePersistent(trash);
@@ -175,24 +198,120 @@ public class TrashServiceImpl extends BasePersistenceService implements TrashSer
     }
 
     @Override
-    @Transactional
     public void emptyTrash() {
-        PersistenceManager manager = getPersistenceManagerFactory().getPersistenceManager();
+        DateTime cutoff = getEmptyTrashCutoff();
+
+        for (TrashedEntity entity : getTrashedEntities()) {
+            long start = System.currentTimeMillis();
 
-        for (Entity entity : getEntities()) {
-            Class<?> trashClass =  HistoryTrashClassHelper.getClass(entity.getClassName(), EntityType.TRASH,
+            Class<?> trashClass = HistoryTrashClassHelper.getClass(entity.getClassName(), EntityType.TRASH,
                     getBundleContext());
+            Class<?> historyClass = entity.isRecordHistory()
+                    ? HistoryTrashClassHelper.getClass(entity.getClassName(), EntityType.HISTORY, getBundleContext())
+                    : null;
+            DateTime entityCutoff = entity.hasModificationDate() ? cutoff : null;
+
+            long instances = 0;
+            long revisions = 0;
+            PurgedChunk chunk;
+
+            do {
+                chunk = purgeChunk(trashClass, historyClass, entityCutoff);
+                instances += chunk.getInstances();
+                revisions += chunk.getRevisions();
+            } while (chunk.getInstances() == PURGE_CHUNK_SIZE);
+
+            if (instances > 0) {
+                LOGGER.info("Purged {} instances and {} history revisions of {} from trash in {} ms", instances,
+                        revisions, entity.getClassName(), System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    /**
+     * Removes a chunk of trash instances, older than the given cutoff, together with their history in a separate
+     * transaction, so that the size of a transaction does not depend on the size of the trash.
+     *
+     * @return the number of removed trash instances and history revisions
+     */
+    private PurgedChunk purgeChunk(final Class<?> trashClass, final Class<?> historyClass, final DateTime cutoff) {
+        return getTransactionTemplate().execute(new TransactionCallback<PurgedChunk>() {
+            @Override
+            public PurgedChunk doInTransaction(TransactionStatus status) {
+                PersistenceManager manager = getPersistenceManagerFactory().getPersistenceManager();
+
+                List<Property> properties = new ArrayList<>(1);
+                if (null != cutoff) {
+                    properties.add(PropertyBuilder.create(MODIFICATION_DATE_FIELD_NAME, cutoff,
+                            DateTime.class.getName(), "<"));
+                }
 
-            Query query = manager.newQuery(trashClass);
-            Collection instances = (Collection) query.execute();
-            if (entity.isRecordHistory()) {
-                for (Object instance : instances) {
-                    historyService.remove(instance);
+                Query idQuery = manager.newQuery(trashClass);
+                QueryUtil.useFilter(idQuery, properties);
+                idQuery.setResult(ID_FIELD_NAME);
+                idQuery.setOrdering(ID_FIELD_NAME + " ascending");
+                idQuery.setRange(0, PURGE_CHUNK_SIZE);
+
+                Set<Long> ids = new HashSet<>((Collection<Long>) QueryExecutor.executeWithArray(idQuery, properties));
+                if (ids.isEmpty()) {
+                    return new PurgedChunk(0, 0);
+                }
+
+                long revisions = 0;
+                if (null != historyClass) {
+                    // history of trashed instances points at the trash instance
+                    List<Property> historyProperties = new ArrayList<>(2);
+                    historyProperties.add(new SetProperty<>(HistoryTrashClassHelper.currentVersion(historyClass),
+                            ids, Long.class.getName()));
+                    historyProperties.add(PropertyBuilder.create(HistoryTrashClassHelper.trashFlag(historyClass),
+                            true, Boolean.class));
+
+                    Query historyQuery = manager.newQuery(historyClass);
+                    QueryUtil.useFilter(historyQuery, historyProperties);
+                    revisions = QueryExecutor.executeDelete(historyQuery, historyProperties);
                 }
+
+                List<Property> trashProperties = new ArrayList<>(1);
+                trashProperties.add(new SetProperty<>(ID_FIELD_NAME, ids, Long.class.getName()));
+
+                Query trashQuery = manager.newQuery(trashClass);
+                QueryUtil.useFilter(trashQuery, trashProperties);
+                QueryExecutor.executeDelete(trashQuery, trashProperties);
+
+                return new PurgedChunk(ids.size(), revisions);
             }
+        });
+    }
 
-            manager.deletePersistentAll(instances);
+    private List<TrashedEntity> getTrashedEntities() {
+        return getTransactionTemplate().execute(new TransactionCallback<List<TrashedEntity>>() {
+            @Override
+            public List<TrashedEntity> doInTransaction(TransactionStatus status) {
+                List<TrashedEntity> entities = new ArrayList<>();
+
+                for (Entity entity : getEntities()) {
+                    entities.add(new TrashedEntity(entity.getClassName(), entity.isRecordHistory(),
+                            null != entity.getField(MODIFICATION_DATE_FIELD_NAME)));
+                }
+
+                return entities;
             }
+        });
+    }
+
+    private DateTime getEmptyTrashCutoff() {
+        Integer timeValue = settingsService.getTimeValue();
+        TimeUnit timeUnit = settingsService.getTimeUnit();
+
+        return null == timeValue || null == timeUnit
+                ? DateUtil.now()
+                : DateUtil.now().minus(timeValue * timeUnit.inMillis());
+    }
+
+    private TransactionTemplate getTransactionTemplate() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template;
     }
 
     @Autowired
@@ -210,6 +329,56 @@ public class TrashServiceImpl extends BasePersistenceService implements TrashSer
         this.historyService = historyService;
     }
 
+    @Autowired
+    @Qualifier("transactionManager")
+    public void setTransactionManager(JdoTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    private static final class TrashedEntity {
+
+        private final String className;
+        private final boolean recordHistory;
+        private final boolean modificationDate;
+
+        private TrashedEntity(String className, boolean recordHistory, boolean modificationDate) {
+            this.className = className;
+            this.recordHistory = recordHistory;
+            this.modificationDate = modificationDate;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public boolean isRecordHistory() {
+            return recordHistory;
+        }
+
+        public boolean hasModificationDate() {
+            return modificationDate;
+        }
+    }
+
+    private static final class PurgedChunk {
+
+        private final long instances;
+        private final long revisions;
+
+        private PurgedChunk(long instances, long revisions) {
+            this.instances = instances;
+            this.revisions = revisions;
+        }
+
+        public long getInstances() {
+            return instances;
+        }
+
+        public long getRevisions() {
+            return revisions;
+        }
+    }
+
     /**
      * We do not create deep trash copies, hence this getter implementation.
      */
@@ -58,9 +58,27 @@ public class ValueGetter {
             objectReferenceRepository.saveHistoricalObject(instance, recordInstance);
             value = parseRelationshipValue(field, type, value, objectReferenceRepository);
             value = adjustRelationshipValue(value, field);
-        } else if (!TypeHelper.isPrimitive(value.getClass()) && !fieldType.isBlob() && !fieldType.isMap()) {
+        } else {
+            value = convertValue(field, value, recordInstance);
+        }
+
+        return value;
+    }
+
+    /**
+     * Converts the value of a field, that is not a relationship, to the type used by the given record.
+     *
+     * @param field the field of the value
+     * @param value the value from an instance of the entity
+     * @param recordInstance the history or trash record that will hold the value
+     * @return the converted value
+     */
+    public Object convertValue(Field field, Object value, Object recordInstance) {
+        Type fieldType = field.getType();
+
+        if (null != value && !TypeHelper.isPrimitive(value.getClass()) && !fieldType.isBlob() && !fieldType.isMap()) {
             ComboboxHolder holder = fieldType.isCombobox() ? new ComboboxHolder(field) : null;
-            value = parseValue(recordInstance, fieldType, holder, value);
+            return parseValue(recordInstance, fieldType, holder, value);
         }
 
         return value;
@@ -223,6 +223,78 @@ public final class Constants {
          */
         public static final String MDS_TIME_UNIT = "mds.emptyTrash.afterTimeUnit";
 
+        /**
+         * The integer property that specifies how many query results of a single cacheable entity
+         * are cached. The least recently used results are evicted first.
+         *
+         * @see #MDS_CACHE_TIME_TO_LIVE
+         */
+        public static final String MDS_CACHE_MAX_SIZE = "mds.cache.maxSize";
+
+        /**
+         * The integer property that specifies after how many seconds cached query results expire.
+         *
+         * @see #MDS_CACHE_MAX_SIZE
+         */
+        public static final String MDS_CACHE_TIME_TO_LIVE = "mds.cache.timeToLive";
+
+        /**
+         * The boolean property that specifies whether the counts of instances of entities which are not cacheable
+         * are cached. Cached counts are invalidated after every committed change of the instances, on all Motech
+         * instances. Disabled by default.
+         *
+         * @see #MDS_CACHE_TIME_TO_LIVE
+         */
+        public static final String MDS_COUNT_CACHE_ENABLED = "mds.countCache.enabled";
+
+        /**
+         * The integer property that specifies for how many milliseconds invalidations of the caches of an entity
+         * are collected, before they are broadcast to other Motech instances as a single event. The value 0
+         * broadcasts every invalidation right away.
+         *
+         * @see #MDS_CACHE_TIME_TO_LIVE
+         */
+        public static final String MDS_CACHE_INVALIDATION_DELAY = "mds.cache.invalidationDelay";
+
+        /**
+         * The boolean property that specifies whether CRUD events of a transaction are sent as batch events,
+         * once the transaction commits, instead of an event per instance. The value for a single entity can be
+         * set with this property followed by a dot and the class name of the entity.
+         *
+         * @see #MDS_EVENTS_MAX_PER_SECOND
+         */
+        public static final String MDS_EVENTS_BATCH_PER_TRANSACTION = "mds.events.batchPerTransaction";
+
+        /**
+         * The integer property that specifies how many CRUD events of a single entity can be sent per second.
+         * Events over the limit are deferred and sent by a dispatcher thread, the sending threads do not wait.
+         * The value 0 disables the limit. The limit of a single entity can be set with this property followed
+         * by a dot and the class name of the entity.
+         *
+         * @see #MDS_EVENTS_BATCH_PER_TRANSACTION
+         */
+        public static final String MDS_EVENTS_MAX_PER_SECOND = "mds.events.maxPerSecond";
+
+        /**
+         * The boolean property that specifies whether the enhanced entity classes and the entities bundle are
+         * cached on disk. When the entity definitions did not change, the cached classes and bundle are reused
+         * instead of being constructed again, which speeds up the start of the server.
+         */
+        public static final String MDS_CLASS_CACHE_ENABLED = "mds.classCache.enabled";
+
+        /**
+         * The boolean property that specifies whether the entity classes are built incrementally. When enabled,
+         * only the classes of entities affected by a schema change are built and enhanced again, classes of
+         * other entities are reused from the previous construction.
+         */
+        public static final String MDS_INCREMENTAL_BUILD_ENABLED = "mds.incrementalBuild.enabled";
+
+        /**
+         * The boolean property that specifies whether the annotation scans of module bundles are cached. When
+         * enabled, each bundle is scanned once and the results are kept on disk, until the bundle changes.
+         */
+        public static final String MDS_SCAN_CACHE_ENABLED = "mds.scanCache.enabled";
+
         /**
          * Constant <code>EMPTY_TRASH_JOB</code> presents a name of job scheduled by scheduler
          * module.
@@ -329,6 +401,16 @@ public final class Constants {
          */
         public static final String MAX_FETCH_DEPTH = "maxFetchDepth";
 
+        /**
+         * Constant <code>CACHEABLE</code> corresponding to the @Entity attribute named {@code cacheable}
+         */
+        public static final String CACHEABLE = "cacheable";
+
+        /**
+         * Constant <code>COMPACT_HISTORY</code> corresponding to the @Entity attribute named {@code compactHistory}
+         */
+        public static final String COMPACT_HISTORY = "compactHistory";
+
         /**
          * Constant <code>CRUD_EVENTS</code> corresponding to the @Entity attribute named {@code crudEvents}
          */
@@ -548,6 +630,7 @@ public final class Constants {
         public static final String NAMESPACE = "namespace";
         public static final String ENTITY_CLASS = "entity_class";
         public static final String OBJECT_ID = "object_id";
+        public static final String OBJECT_IDS = "object_ids";
 
         private static final String CSV_IMPORT_PREFIX = "csv-import.";
         public static final String CSV_IMPORT_CREATED_IDS = CSV_IMPORT_PREFIX + "created_ids";
@@ -558,11 +641,15 @@ public final class Constants {
         public static final String CSV_IMPORT_FAILURE_MSG = CSV_IMPORT_PREFIX + "failure_message";
         public static final String CSV_IMPORT_FAILURE_STACKTRACE = CSV_IMPORT_PREFIX + "failure_stacktrace";
         public static final String CSV_IMPORT_FILENAME = CSV_IMPORT_PREFIX + "filename";
+        public static final String CSV_IMPORT_PROCESSED_ROWS = CSV_IMPORT_PREFIX + "processed_rows";
 
         // subject
         public static final String BASE_SUBJECT = "mds.crud.";
+        public static final String BATCH_SUBJECT_SUFFIX = ".batch";
+        public static final int MAX_BATCH_EVENT_SIZE = 1000;
         public static final String CSV_IMPORT_SUCCESS = "csv-import.success";
         public static final String CSV_IMPORT_FAILURE = "csv-import.failure";
+        public static final String CSV_IMPORT_PROGRESS = "csv-import.progress";
     }
 
     public static final class DisplayNames {
@@ -0,0 +1,178 @@
+package org.motechproject.mds.util;
+
+import org.apache.commons.beanutils.PropertyUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The <code>PropertyAccessor</code> reads and writes properties of instances of a single class. The getters and
+ * setters of the class are resolved once and kept in arrays indexed by the ordinal of a property, so that
+ * repeated access to properties of many instances, like during exports or history recording, does not
+ * introspect the class again. Accessors are created lazily and kept for as long as their class is loaded.
+ */
+public final class PropertyAccessor {
+
+    private static final ClassValue<PropertyAccessor> ACCESSORS = new ClassValue<PropertyAccessor>() {
+        @Override
+        protected PropertyAccessor computeValue(Class<?> type) {
+            return new PropertyAccessor(type);
+        }
+    };
+
+    private final Class<?> beanClass;
+    private final String[] names;
+    private final Class<?>[] types;
+    private final Method[] getters;
+    private final Method[] setters;
+    private final Map<String, Integer> ordinals;
+
+    /**
+     * Returns the accessor for the given class.
+     *
+     * @param beanClass the class of instances which properties will be accessed
+     * @return the accessor for the class, never null
+     */
+    public static PropertyAccessor forClass(Class<?> beanClass) {
+        return ACCESSORS.get(beanClass);
+    }
+
+    /**
+     * Returns the accessor for the class of the given instance.
+     *
+     * @param bean the instance which properties will be accessed
+     * @return the accessor for the class of the instance, never null
+     */
+    public static PropertyAccessor forBean(Object bean) {
+        return forClass(bean.getClass());
+    }
+
+    private PropertyAccessor(Class<?> beanClass) {
+        PropertyDescriptor[] descriptors = PropertyUtils.getPropertyDescriptors(beanClass);
+
+        this.beanClass = beanClass;
+        this.names = new String[descriptors.length];
+        this.types = new Class<?>[descriptors.length];
+        this.getters = new Method[descriptors.length];
+        this.setters = new Method[descriptors.length];
+        this.ordinals = new HashMap<>();
+
+        for (int i = 0; i < descriptors.length; ++i) {
+            names[i] = descriptors[i].getName();
+            types[i] = descriptors[i].getPropertyType();
+            getters[i] = accessible(descriptors[i].getReadMethod());
+            setters[i] = accessible(descriptors[i].getWriteMethod());
+            ordinals.put(names[i], i);
+        }
+    }
+
+    /**
+     * Returns the ordinal of the property with the given name, which can be used for accessing it.
+     *
+     * @param name the name of the property
+     * @return the ordinal of the property or -1 if the class does not have such property
+     */
+    public int indexOf(String name) {
+        Integer ordinal = ordinals.get(name);
+        return null == ordinal ? -1 : ordinal;
+    }
+
+    public boolean isReadable(int ordinal) {
+        return ordinal >= 0 && ordinal < getters.length && null != getters[ordinal];
+    }
+
+    public boolean isWriteable(int ordinal) {
+        return ordinal >= 0 && ordinal < setters.length && null != setters[ordinal];
+    }
+
+    public boolean isReadable(String name) {
+        return isReadable(indexOf(name));
+    }
+
+    public boolean isWriteable(String name) {
+        return isWriteable(indexOf(name));
+    }
+
+    /**
+     * Returns the value of the property with the given ordinal.
+     *
+     * @param bean the instance of the class of this accessor
+     * @param ordinal the ordinal of the property
+     * @return the value of the property
+     * @throws NoSuchMethodException if the property can't be read
+     * @throws IllegalAccessException if the getter can't be accessed
+     * @throws InvocationTargetException if the getter throws an exception
+     */
+    public Object get(Object bean, int ordinal)
+            throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        if (!isReadable(ordinal)) {
+            throw new NoSuchMethodException(String.format("Property with ordinal %d of %s has no getter",
+                    ordinal, beanClass.getName()));
+        }
+
+        return getters[ordinal].invoke(bean);
+    }
+
+    /**
+     * Sets the value of the property with the given ordinal.
+     *
+     * @param bean the instance of the class of this accessor
+     * @param ordinal the ordinal of the property
+     * @param value the new value of the property
+     * @throws NoSuchMethodException if the property can't be written
+     * @throws IllegalAccessException if the setter can't be accessed
+     * @throws InvocationTargetException if the setter throws an exception
+     */
+    public void set(Object bean, int ordinal, Object value)
+            throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        if (!isWriteable(ordinal)) {
+            throw new NoSuchMethodException(String.format("Property with ordinal %d of %s has no setter",
+                    ordinal, beanClass.getName()));
+        }
+
+        setters[ordinal].invoke(bean, value);
+    }
+
+    public Object get(Object bean, String name)
+            throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        return get(bean, indexOf(name));
+    }
+
+    public void set(Object bean, String name, Object value)
+            throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        set(bean, indexOf(name), value);
+    }
+
+    public Class<?> getPropertyType(int ordinal) {
+        return ordinal >= 0 && ordinal < types.length ? types[ordinal] : null;
+    }
+
+    public String getPropertyName(int ordinal) {
+        return names[ordinal];
+    }
+
+    public int getPropertyCount() {
+        return names.length;
+    }
+
+    public Class<?> getBeanClass() {
+        return beanClass;
+    }
+
+    private static Method accessible(Method method) {
+        if (null != method && !method.isAccessible()) {
+            try {
+                // skips the access check on every invocation
+                method.setAccessible(true);
+            } catch (SecurityException e) {
+                // the check will be performed on invocation
+                return method;
+            }
+        }
+
+        return method;
+    }
+}
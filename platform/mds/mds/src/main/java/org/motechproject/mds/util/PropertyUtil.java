@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -28,6 +29,8 @@ import java.util.Set;
 public final class PropertyUtil extends PropertyUtils {
     private static final Logger LOGGER = LoggerFactory.getLogger(PropertyUtil.class);
 
+    private static final char[] NESTED_PROPERTY_CHARS = {'.', '[', '('};
+
     private PropertyUtil() {
     }
 
@@ -91,7 +94,12 @@ public final class PropertyUtil extends PropertyUtils {
     public static void safeSetProperty(Object bean, String name, Object value) {
         try {
             if (null != bean) {
-                if (isWriteable(bean, name)) {
+                PropertyAccessor accessor = getAccessor(bean, name);
+                int ordinal = null == accessor ? -1 : accessor.indexOf(name);
+
+                if (null != accessor && accessor.isWriteable(ordinal)) {
+                    accessor.set(bean, ordinal, value);
+                } else if (null == accessor && isWriteable(bean, name)) {
                     setProperty(bean, name, value);
                 } else if (Character.isUpperCase(name.charAt(0))) {
                     safeSetProperty(bean, StringUtils.uncapitalize(name), value);
@@ -109,7 +117,12 @@ public final class PropertyUtil extends PropertyUtils {
 
         try {
             if (null != bean) {
-                if (isReadable(bean, name)) {
+                PropertyAccessor accessor = getAccessor(bean, name);
+                int ordinal = null == accessor ? -1 : accessor.indexOf(name);
+
+                if (null != accessor && accessor.isReadable(ordinal)) {
+                    value = accessor.get(bean, ordinal);
+                } else if (null == accessor && isReadable(bean, name)) {
                     value = getProperty(bean, name);
                 } else if (Character.isUpperCase(name.charAt(0))) {
                     return safeGetProperty(bean, StringUtils.uncapitalize(name));
@@ -124,6 +137,17 @@ public final class PropertyUtil extends PropertyUtils {
         return value;
     }
 
+    /**
+     * Returns the cached {@link PropertyAccessor} for the given bean, if the given property is a simple
+     * property of a regular bean. Nested, indexed and mapped properties, as well as properties of maps are
+     * accessed through {@link PropertyUtils}.
+     */
+    private static PropertyAccessor getAccessor(Object bean, String name) {
+        return bean instanceof Map || StringUtils.containsAny(name, NESTED_PROPERTY_CHARS)
+                ? null
+                : PropertyAccessor.forBean(bean);
+    }
+
     public static Class<?> safeGetPropertyType(Object bean, String name) {
         Class<?> type = null;
         try {
@@ -0,0 +1,24 @@
+-- adds indexed and indexRequired columns ---
+
+DO
+$$
+BEGIN
+    IF NOT EXISTS (SELECT column_name
+            FROM information_schema.columns
+            WHERE table_schema = current_schema()
+            AND table_name = 'Field'
+            AND column_name = 'indexed')
+    THEN
+        ALTER TABLE "Field" ADD "indexed" boolean NOT NULL DEFAULT false;
+    END IF;
+
+    IF NOT EXISTS (SELECT column_name
+            FROM information_schema.columns
+            WHERE table_schema = current_schema()
+            AND table_name = 'Lookup'
+            AND column_name = 'indexRequired')
+    THEN
+        ALTER TABLE "Lookup" ADD "indexRequired" boolean NOT NULL DEFAULT false;
+    END IF;
+END
+$$
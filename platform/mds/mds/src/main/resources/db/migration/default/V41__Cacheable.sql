@@ -0,0 +1,3 @@
+-- adds cacheable column ---
+
+ALTER TABLE "Tracking" ADD "cacheable" boolean NOT NULL DEFAULT false;
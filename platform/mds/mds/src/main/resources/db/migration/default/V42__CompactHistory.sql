@@ -0,0 +1,3 @@
+-- adds compactHistory column ---
+
+ALTER TABLE "Tracking" ADD "compactHistory" boolean NOT NULL DEFAULT false;
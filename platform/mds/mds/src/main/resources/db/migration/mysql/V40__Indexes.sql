@@ -0,0 +1,28 @@
+-- adds indexed and indexRequired columns ---
+
+DELIMITER $$
+CREATE PROCEDURE insert_index_columns()
+BEGIN
+    IF NOT EXISTS (SELECT column_name
+            FROM INFORMATION_SCHEMA.COLUMNS
+            WHERE table_schema = DATABASE()
+            AND table_name = "Field"
+            AND column_name = "indexed")
+    THEN
+        ALTER TABLE Field add indexed bit(1) NOT NULL default 0;
+    END IF;
+
+    IF NOT EXISTS (SELECT column_name
+            FROM INFORMATION_SCHEMA.COLUMNS
+            WHERE table_schema = DATABASE()
+            AND table_name = "Lookup"
+            AND column_name = "indexRequired")
+    THEN
+        ALTER TABLE Lookup add indexRequired bit(1) NOT NULL default 0;
+    END IF;
+END
+$$
+
+DELIMITER ;
+CALL insert_index_columns();
+DROP PROCEDURE insert_index_columns;
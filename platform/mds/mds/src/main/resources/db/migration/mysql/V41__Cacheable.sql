@@ -0,0 +1,3 @@
+-- adds cacheable column ---
+
+ALTER TABLE Tracking add cacheable bit(1) NOT NULL default 0;
@@ -0,0 +1,3 @@
+-- adds compactHistory column ---
+
+ALTER TABLE Tracking add compactHistory bit(1) NOT NULL default 0;
@@ -0,0 +1,10 @@
+-- adds the outbox of compact history revisions ---
+
+CREATE TABLE IF NOT EXISTS HistoryOutboxEntry (
+    id bigint(20) NOT NULL,
+    historyClassName varchar(255) NOT NULL,
+    entityClassName varchar(255) NOT NULL,
+    instanceId bigint(20) NOT NULL,
+    changeValues MEDIUMBLOB DEFAULT NULL,
+    PRIMARY KEY (id)
+);
@@ -10,9 +10,12 @@ import org.motechproject.mds.dto.EntityDto;
 import org.motechproject.mds.dto.FieldDto;
 import org.motechproject.mds.dto.LookupDto;
 import org.motechproject.mds.dto.LookupFieldDto;
+import org.motechproject.mds.dto.SchemaSnapshot;
 import org.motechproject.mds.javassist.MotechClassPool;
+import org.motechproject.mds.lookup.LookupExecutorCache;
 import org.motechproject.mds.service.DefaultMotechDataService;
 import org.motechproject.mds.service.EntityService;
+import org.motechproject.mds.service.SchemaSnapshotService;
 import org.motechproject.mds.testutil.FieldTestHelper;
 import org.motechproject.mds.testutil.records.Record;
 import org.osgi.framework.BundleContext;
@@ -42,6 +45,12 @@ public class MdsDataProviderTest {
     @Mock
     private EntityService entityService;
 
+    @Mock
+    private SchemaSnapshotService schemaSnapshotService;
+
+    @Mock
+    private SchemaSnapshot schemaSnapshot;
+
     @Mock
     private BundleContext bundleContext;
 
@@ -59,10 +68,12 @@ public class MdsDataProviderTest {
     @Before
     public void setUp() {
         when(entityService.getEntityByClassName(Record.class.getName())).thenReturn(entity);
+        when(schemaSnapshotService.getSnapshot()).thenReturn(schemaSnapshot);
+        when(schemaSnapshot.getEntityByClassName(Record.class.getName())).thenReturn(entity);
         when(entity.getId()).thenReturn(ENTITY_ID);
 
         FieldDto fieldDto = FieldTestHelper.fieldDto(1L, "field", String.class.getName(), "disp", null);
-        when(entityService.getEntityFields(ENTITY_ID)).thenReturn(asList(fieldDto));
+        when(schemaSnapshot.getEntityFields(ENTITY_ID)).thenReturn(asList(fieldDto));
 
         LookupFieldDto lookupField = FieldTestHelper.lookupFieldDto(1L, "field");
         LookupDto singleLookup = new LookupDto("singleLookup", true, false, asList(lookupField), false);
@@ -72,25 +83,30 @@ public class MdsDataProviderTest {
         lookupField.setRelatedName("stringVar");
         LookupDto relatedLookup = new LookupDto("relatedLookup", false, false, asList(lookupField), false);
 
-        when(entityService.getLookupByName(ENTITY_ID, "singleLookup")).thenReturn(singleLookup);
-        when(entityService.getLookupByName(ENTITY_ID, "multiLookup")).thenReturn(multiLookup);
-        when(entityService.getLookupByName(ENTITY_ID, "relatedLookup")).thenReturn(relatedLookup);
+        when(schemaSnapshot.getLookupByName(ENTITY_ID, "singleLookup")).thenReturn(singleLookup);
+        when(schemaSnapshot.getLookupByName(ENTITY_ID, "multiLookup")).thenReturn(multiLookup);
+        when(schemaSnapshot.getLookupByName(ENTITY_ID, "relatedLookup")).thenReturn(relatedLookup);
 
         Map<String, FieldDto> mapping = new HashMap<>();
         mapping.put("field", fieldDto);
-        when(entityService.getLookupFieldsMapping(ENTITY_ID, "singleLookup")).thenReturn(mapping);
-        when(entityService.getLookupFieldsMapping(ENTITY_ID, "multiLookup")).thenReturn(mapping);
+        when(schemaSnapshot.getLookupFieldsMapping(ENTITY_ID, "singleLookup")).thenReturn(mapping);
+        when(schemaSnapshot.getLookupFieldsMapping(ENTITY_ID, "multiLookup")).thenReturn(mapping);
 
         mapping = new HashMap<>();
         mapping.put("related.stringVar", fieldDto);
-        when(entityService.getLookupFieldsMapping(ENTITY_ID, "relatedLookup")).thenReturn(mapping);
+        when(schemaSnapshot.getLookupFieldsMapping(ENTITY_ID, "relatedLookup")).thenReturn(mapping);
 
         when(bundleContext.getServiceReference(LookupService.class.getName())).thenReturn(serviceReference);
         when(bundleContext.getService(serviceReference)).thenReturn(new LookupService());
 
+        LookupExecutorCache lookupExecutorCache = new LookupExecutorCache();
+        lookupExecutorCache.setSchemaSnapshotService(schemaSnapshotService);
+        lookupExecutorCache.setBundleContext(bundleContext);
+
         dataProvider = new MDSDataProvider(resourceLoader);
         dataProvider.setEntityService(entityService);
         dataProvider.setBundleContext(bundleContext);
+        dataProvider.setLookupExecutorCache(lookupExecutorCache);
 
         MotechClassPool.registerServiceInterface(Record.class.getName(), LookupService.class.getName());
     }
@@ -10,6 +10,7 @@ import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -19,6 +20,7 @@ import org.motechproject.mds.domain.ClassData;
 import org.motechproject.mds.domain.Entity;
 import org.motechproject.mds.domain.EntityType;
 import org.motechproject.mds.domain.Field;
+import org.motechproject.mds.domain.Lookup;
 import org.motechproject.mds.domain.OneToManyRelationship;
 import org.motechproject.mds.domain.OneToOneRelationship;
 import org.motechproject.mds.domain.Type;
@@ -34,6 +36,7 @@ import javax.jdo.metadata.ClassMetadata;
 import javax.jdo.metadata.ClassPersistenceModifier;
 import javax.jdo.metadata.CollectionMetadata;
 import javax.jdo.metadata.FieldMetadata;
+import javax.jdo.metadata.IndexMetadata;
 import javax.jdo.metadata.InheritanceMetadata;
 import javax.jdo.metadata.JDOMetadata;
 import javax.jdo.metadata.PackageMetadata;
@@ -48,6 +51,7 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -299,8 +303,8 @@ public class EntityMetadataBuilderTest {
     public void shouldSetIndexOnMetadataLookupField() throws Exception {
         Field lookupField = mock(Field.class);
         Type string = new Type(String.class);
-        Set<org.motechproject.mds.domain.Lookup> lookups = new HashSet<>();
-        lookups.add(new org.motechproject.mds.domain.Lookup());
+        Set<Lookup> lookups = new HashSet<>();
+        lookups.add(new Lookup());
 
         when(lookupField.getName()).thenReturn("lookupField");
         when(lookupField.getType()).thenReturn(string);
@@ -323,6 +327,58 @@ public class EntityMetadataBuilderTest {
         verify(fmd).setIndexed(true);
     }
 
+    @Test
+    public void shouldSetIndexOnIndexedField() {
+        Field indexedField = new Field(entity, "indexedField", "Indexed field", new Type(String.class), false, false);
+        indexedField.setIndexed(true);
+
+        FieldMetadata fmd = mock(FieldMetadata.class);
+
+        when(entity.getName()).thenReturn(ENTITY_NAME);
+        when(entity.getFields()).thenReturn(asList(indexedField));
+        when(entity.getTableName()).thenReturn(TABLE_NAME);
+        when(jdoMetadata.newPackageMetadata(PACKAGE)).thenReturn(packageMetadata);
+        when(packageMetadata.newClassMetadata(ENTITY_NAME)).thenReturn(classMetadata);
+        when(classMetadata.newFieldMetadata("indexedField")).thenReturn(fmd);
+
+        entityMetadataBuilder.addEntityMetadata(jdoMetadata, entity, Sample.class);
+
+        verifyCommonClassMetadata();
+        verify(fmd).setIndexed(true);
+    }
+
+    @Test
+    public void shouldAddCompositeIndexForLookupThatRequiresIt() {
+        Type string = new Type(String.class);
+        Field nameField = new Field(entity, "name", "Name", string, false, false);
+        Field valueField = new Field(entity, "value", "Value", string, false, false);
+
+        Lookup indexedLookup = new Lookup("By name and value", false, false, asList(nameField, valueField));
+        indexedLookup.setIndexRequired(true);
+        Lookup notIndexedLookup = new Lookup("By value and name", false, false, asList(valueField, nameField));
+
+        IndexMetadata imd = mock(IndexMetadata.class);
+
+        when(entity.getName()).thenReturn(ENTITY_NAME);
+        when(entity.getFields()).thenReturn(asList(nameField, valueField));
+        when(entity.getLookups()).thenReturn(asList(indexedLookup, notIndexedLookup));
+        when(entity.getTableName()).thenReturn(TABLE_NAME);
+        when(jdoMetadata.newPackageMetadata(PACKAGE)).thenReturn(packageMetadata);
+        when(packageMetadata.newClassMetadata(ENTITY_NAME)).thenReturn(classMetadata);
+        when(classMetadata.newFieldMetadata("name")).thenReturn(mock(FieldMetadata.class));
+        when(classMetadata.newFieldMetadata("value")).thenReturn(mock(FieldMetadata.class));
+        when(classMetadata.newIndexMetadata()).thenReturn(imd);
+
+        entityMetadataBuilder.addEntityMetadata(jdoMetadata, entity, Sample.class);
+
+        verify(classMetadata).newIndexMetadata();
+        verify(imd).setName(TABLE_NAME_1 + "_byNameAndValue_IDX");
+
+        InOrder inOrder = inOrder(imd);
+        inOrder.verify(imd).newFieldMetadata("name");
+        inOrder.verify(imd).newFieldMetadata("value");
+    }
+
     @Test
     public void shouldAddObjectValueGeneratorToAppropriateFields() throws Exception {
         when(entity.getName()).thenReturn(ENTITY_NAME);
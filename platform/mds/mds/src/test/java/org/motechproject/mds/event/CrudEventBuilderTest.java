@@ -2,9 +2,19 @@ package org.motechproject.mds.event;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.motechproject.mds.util.Constants.MDSEvents.BASE_SUBJECT;
+import static org.motechproject.mds.util.Constants.MDSEvents.BATCH_SUBJECT_SUFFIX;
+import static org.motechproject.mds.util.Constants.MDSEvents.ENTITY_NAME;
+import static org.motechproject.mds.util.Constants.MDSEvents.OBJECT_IDS;
 import static org.motechproject.mds.event.CrudEventType.CREATE;
 
 public class CrudEventBuilderTest {
@@ -36,4 +46,52 @@ public class CrudEventBuilderTest {
 
         assertThat(subject, equalTo(expected));
     }
+
+    @Test
+    public void shouldReturnValidBatchSubject() {
+        String subject = CrudEventBuilder.createBatchSubject(MODULE, NAMESPACE, ENTITY, CREATE);
+        String expected = BASE_SUBJECT + MODULE + "." + NAMESPACE + "." + ENTITY + "." + CREATE + BATCH_SUBJECT_SUFFIX;
+
+        assertThat(subject, equalTo(expected));
+    }
+
+    @Test
+    public void shouldBuildBatchEventParams() {
+        List<Long> ids = Arrays.asList(1L, 2L, 3L);
+        Map<String, Object> params = CrudEventBuilder.buildBatchEventParams(MODULE, NAMESPACE, ENTITY, "Entity", ids);
+
+        assertEquals(ids, params.get(OBJECT_IDS));
+        assertEquals(ENTITY, params.get(ENTITY_NAME));
+    }
+
+    @Test
+    public void shouldRecognizeBatchSubjects() {
+        assertTrue(CrudEventBuilder.isBatchSubject(
+                CrudEventBuilder.createBatchSubject(MODULE, NAMESPACE, ENTITY, CREATE)));
+        assertFalse(CrudEventBuilder.isBatchSubject(CrudEventBuilder.createSubject(MODULE, NAMESPACE, ENTITY, CREATE)));
+    }
+
+    @Test
+    public void shouldReturnObjectIdsOfRegularAndBatchEvents() {
+        Map<String, Object> params = CrudEventBuilder.buildEventParams(MODULE, NAMESPACE, ENTITY, "Entity", 5L);
+        assertEquals(Arrays.asList(5L), CrudEventBuilder.getObjectIds(params));
+
+        params = CrudEventBuilder.buildBatchEventParams(MODULE, NAMESPACE, ENTITY, "Entity", Arrays.asList(1L, 2L));
+        assertEquals(Arrays.asList(1L, 2L), CrudEventBuilder.getObjectIds(params));
+
+        params.put(OBJECT_IDS, Arrays.asList(3, 4L));
+        assertEquals(Arrays.asList(3L, 4L), CrudEventBuilder.getObjectIds(params));
+    }
+
+    @Test
+    public void shouldUnpackBatchEventParams() {
+        Map<String, Object> params = CrudEventBuilder.buildBatchEventParams(MODULE, NAMESPACE, ENTITY, "Entity",
+                Arrays.asList(1L, 2L));
+
+        List<Map<String, Object>> unpacked = CrudEventBuilder.unpackBatchEventParams(params);
+
+        assertEquals(2, unpacked.size());
+        assertEquals(CrudEventBuilder.buildEventParams(MODULE, NAMESPACE, ENTITY, "Entity", 1L), unpacked.get(0));
+        assertEquals(CrudEventBuilder.buildEventParams(MODULE, NAMESPACE, ENTITY, "Entity", 2L), unpacked.get(1));
+    }
 }
@@ -0,0 +1,52 @@
+package org.motechproject.mds.helper;
+
+import org.junit.Test;
+import org.motechproject.mds.domain.Entity;
+import org.motechproject.mds.testutil.EntitySchemaBuilder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class EntityHelperTest extends EntitiesTopologyTest {
+
+    @Test
+    public void shouldFindEntitiesAffectedThroughRelationships() {
+        setupComplexTopology();
+        List<Entity> entities = asList(entityA, entityB, entityC, entityD, entityE, entityF);
+
+        assertEquals(asSet("B", "C", "E", "F"),
+                EntityHelper.getAffectedEntityClasses(entities, Collections.singletonList("C")));
+        assertEquals(asSet("A", "C", "E"),
+                EntityHelper.getAffectedEntityClasses(entities, Collections.singletonList("E")));
+        assertEquals(asSet("D"),
+                EntityHelper.getAffectedEntityClasses(asList(entityD, entityE), Collections.singletonList("D")));
+    }
+
+    @Test
+    public void shouldFindEntitiesRelatedWithRemovedEntity() {
+        setupSimpleTopology();
+        List<Entity> entities = asList(entityA, entityB, entityC);
+
+        assertEquals(asSet("B", "D"), EntityHelper.getAffectedEntityClasses(entities, Arrays.asList("D")));
+    }
+
+    @Test
+    public void shouldFindSubclassesOfAffectedEntities() {
+        setupSimpleTopology();
+
+        Entity subclass = EntitySchemaBuilder.eude("SubD").build();
+        subclass.setSuperClass("D");
+        Entity subSubclass = EntitySchemaBuilder.eude("SubSubD").build();
+        subSubclass.setSuperClass("SubD");
+
+        List<Entity> entities = asList(entityA, entityB, entityC, entityD, subSubclass, subclass);
+
+        assertEquals(asSet("B", "D", "SubD", "SubSubD"),
+                EntityHelper.getAffectedEntityClasses(entities, Collections.singletonList("D")));
+        assertEquals(asSet("SubD", "SubSubD"),
+                EntityHelper.getAffectedEntityClasses(entities, Collections.singletonList("SubD")));
+    }
+}
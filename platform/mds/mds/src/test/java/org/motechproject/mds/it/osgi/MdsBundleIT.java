@@ -625,11 +625,21 @@ public class MdsBundleIT extends BasePaxIT {
                 DATE_TOMORROW, DOUBLE_VALUE_2, NIGHT_TIME, 3, toEnum(objClass, "two"));
         service.update(retrieved);
 
+        // new values are stored in the schema shortly after the commit
+        String expectedValues = "[1, 2, 3, 4, 0, 35]";
         FieldDto comboboxField = entityService.findEntityFieldByName(entityId, "someList");
+        for (int i = 0; i < 50 && !expectedValues.equals(getComboboxValues(comboboxField)); ++i) {
+            Thread.sleep(100);
+            comboboxField = entityService.findEntityFieldByName(entityId, "someList");
+        }
 
         // If this test fails be sure to check if any unexpected values were added to comboboxField earlier.
         // At the moment all values remain in comboboxField, even after the object instances that added them were deleted.
-        assertEquals("[1, 2, 3, 4, 0, 35]", comboboxField.getSetting(Constants.Settings.COMBOBOX_VALUES).getValue().toString());
+        assertEquals(expectedValues, getComboboxValues(comboboxField));
+    }
+
+    private String getComboboxValues(FieldDto comboboxField) {
+        return comboboxField.getSetting(Constants.Settings.COMBOBOX_VALUES).getValue().toString();
     }
 
 
@@ -0,0 +1,153 @@
+package org.motechproject.mds.javassist;
+
+import javassist.CtClass;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.motechproject.mds.domain.ClassData;
+import org.motechproject.mds.domain.EntityType;
+import org.motechproject.mds.helper.MdsBundleHelper;
+import org.motechproject.mds.util.MDSClassLoader;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Version;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EnhancedClassCacheTest {
+
+    private static final String CLASS_NAME = "org.motechproject.mds.cache.CachedEntity";
+    private static final String HISTORY_NAME = "org.motechproject.mds.cache.history.CachedEntity__History";
+    private static final String KEY = "key";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EnhancedClassCache cache;
+    private File bundle;
+
+    @Before
+    public void setUp() throws Exception {
+        MDSClassLoader.reloadClassLoader();
+        MotechClassPool.clearEnhancedData();
+
+        cache = new EnhancedClassCache();
+        cache.setDirectory(folder.newFolder("cache").toPath());
+
+        bundle = folder.newFile("mds-entities.jar");
+        Files.write(bundle.toPath(), new byte[]{1, 2, 3});
+    }
+
+    @After
+    public void tearDown() {
+        MotechClassPool.clearEnhancedData();
+        MDSClassLoader.reloadClassLoader();
+    }
+
+    @Test
+    public void shouldStoreAndRestoreClasses() throws Exception {
+        ClassData classData = new ClassData(CLASS_NAME, "module", "namespace", bytecode(CLASS_NAME), false,
+                EntityType.STANDARD, false);
+        ClassData historyData = new ClassData(HISTORY_NAME, bytecode(HISTORY_NAME));
+
+        assertFalse(cache.restore(KEY));
+
+        MotechClassPool.registerEnhancedClassData(classData);
+        MotechClassPool.registerHistoryClassData(historyData);
+        cache.store(bundle);
+
+        MotechClassPool.clearEnhancedData();
+        MDSClassLoader.reloadClassLoader();
+
+        assertTrue(cache.restore(KEY));
+        assertTrue(cache.isRestored());
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(cache.getBundle().toPath()));
+
+        ClassData restored = MotechClassPool.getEnhancedClassData(CLASS_NAME);
+        assertNotNull(restored);
+        assertEquals("module", restored.getModule());
+        assertEquals("namespace", restored.getNamespace());
+        assertEquals(EntityType.STANDARD, restored.getType());
+        assertArrayEquals(classData.getBytecode(), restored.getBytecode());
+
+        assertNotNull(MotechClassPool.getHistoryClassData(CLASS_NAME));
+        assertNull(MotechClassPool.getTrashClassData(CLASS_NAME));
+        assertEquals(CLASS_NAME, MDSClassLoader.getInstance().loadClass(CLASS_NAME).getName());
+    }
+
+    @Test
+    public void shouldNotRestoreClassesForDifferentKey() throws Exception {
+        cache.restore(KEY);
+        MotechClassPool.registerEnhancedClassData(new ClassData(CLASS_NAME, bytecode(CLASS_NAME)));
+        cache.store(bundle);
+
+        MotechClassPool.clearEnhancedData();
+
+        assertFalse(cache.restore("otherKey"));
+        assertFalse(cache.isRestored());
+        assertNull(MotechClassPool.getEnhancedClassData(CLASS_NAME));
+
+        assertFalse(cache.restore(null));
+    }
+
+    @Test
+    public void shouldNotRestoreInvalidatedClasses() throws Exception {
+        cache.restore(KEY);
+        MotechClassPool.registerEnhancedClassData(new ClassData(CLASS_NAME, bytecode(CLASS_NAME)));
+        cache.store(bundle);
+
+        cache.invalidate();
+        MotechClassPool.clearEnhancedData();
+
+        assertFalse(cache.restore(KEY));
+    }
+
+    @Test
+    public void shouldRestoreClassesAfterBundleIsInstalledAgain() throws Exception {
+        Bundle mdsBundle = mock(Bundle.class);
+        Dictionary<String, String> headers = new Hashtable<>();
+        headers.put("Bnd-LastModified", "1400000000000");
+
+        when(mdsBundle.getSymbolicName()).thenReturn("org.motechproject.motech-platform-dataservices");
+        when(mdsBundle.getVersion()).thenReturn(new Version(0, 25, 0));
+        when(mdsBundle.getHeaders()).thenReturn(headers);
+        when(mdsBundle.getLastModified()).thenReturn(100L);
+
+        cache.restore(KEY + MdsBundleHelper.getContentKey(mdsBundle));
+        MotechClassPool.registerEnhancedClassData(new ClassData(CLASS_NAME, bytecode(CLASS_NAME)));
+        cache.store(bundle);
+
+        MotechClassPool.clearEnhancedData();
+        MDSClassLoader.reloadClassLoader();
+
+        // the bundles are installed again on every start of the server
+        when(mdsBundle.getLastModified()).thenReturn(200L);
+
+        assertTrue(cache.restore(KEY + MdsBundleHelper.getContentKey(mdsBundle)));
+        assertNotNull(MotechClassPool.getEnhancedClassData(CLASS_NAME));
+    }
+
+    private byte[] bytecode(String className) throws Exception {
+        CtClass ctClass = MotechClassPool.getDefault().getOrNull(className);
+
+        if (null == ctClass) {
+            ctClass = MotechClassPool.getDefault().makeClass(className);
+        }
+
+        ctClass.defrost();
+        return ctClass.toBytecode();
+    }
+}
@@ -0,0 +1,147 @@
+package org.motechproject.mds.lookup;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.motechproject.mds.dto.EntityDto;
+import org.motechproject.mds.dto.FieldDto;
+import org.motechproject.mds.dto.LookupDto;
+import org.motechproject.mds.dto.LookupFieldDto;
+import org.motechproject.mds.dto.LookupFieldType;
+import org.motechproject.mds.dto.SchemaSnapshot;
+import org.motechproject.mds.javassist.MotechClassPool;
+import org.motechproject.mds.service.DefaultMotechDataService;
+import org.motechproject.mds.service.SchemaSnapshotService;
+import org.motechproject.mds.testutil.FieldTestHelper;
+import org.motechproject.mds.testutil.records.Record;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.ServiceReference;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.motechproject.mds.util.Constants.BundleNames.MDS_ENTITIES_SYMBOLIC_NAME;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LookupExecutorCacheTest {
+
+    private static final String ENTITY_CLASS_NAME = Record.class.getName();
+    private static final long ENTITY_ID = 4;
+    private static final String LOOKUP_NAME = "byValue";
+    private static final String VALUE_FIELD = "value";
+
+    @Mock
+    private SchemaSnapshotService schemaSnapshotService;
+
+    @Mock
+    private SchemaSnapshot schemaSnapshot;
+
+    @Mock
+    private BundleContext bundleContext;
+
+    @Mock
+    private ServiceReference serviceReference;
+
+    @Mock
+    private Bundle bundle;
+
+    private LookupExecutorCache lookupExecutorCache;
+
+    @Before
+    public void setUp() {
+        MotechClassPool.registerServiceInterface(ENTITY_CLASS_NAME, RecordService.class.getName());
+
+        FieldDto valueField = FieldTestHelper.fieldDto(1L, VALUE_FIELD, String.class.getName(), "Value", null);
+        LookupDto lookup = new LookupDto(LOOKUP_NAME, false, false,
+                asList(new LookupFieldDto(1L, VALUE_FIELD, LookupFieldType.VALUE)), false, "byValue",
+                asList(VALUE_FIELD));
+
+        Map<String, FieldDto> mapping = new HashMap<>();
+        mapping.put(VALUE_FIELD, valueField);
+
+        when(schemaSnapshotService.getSnapshot()).thenReturn(schemaSnapshot);
+        when(schemaSnapshot.getEntityByClassName(ENTITY_CLASS_NAME))
+                .thenReturn(new EntityDto(ENTITY_ID, ENTITY_CLASS_NAME));
+        when(schemaSnapshot.getLookupByName(ENTITY_ID, LOOKUP_NAME)).thenReturn(lookup);
+        when(schemaSnapshot.getLookupFieldsMapping(ENTITY_ID, LOOKUP_NAME)).thenReturn(mapping);
+
+        when(bundleContext.getServiceReference(RecordService.class.getName())).thenReturn(serviceReference);
+        when(bundleContext.getService(serviceReference)).thenReturn(new RecordService());
+
+        lookupExecutorCache = new LookupExecutorCache();
+        lookupExecutorCache.setSchemaSnapshotService(schemaSnapshotService);
+        lookupExecutorCache.setBundleContext(bundleContext);
+    }
+
+    @After
+    public void tearDown() {
+        MotechClassPool.clearEnhancedData();
+    }
+
+    @Test
+    public void shouldResolveLookupOnlyOnce() {
+        LookupExecutor executor = lookupExecutorCache.getExecutor(ENTITY_CLASS_NAME, LOOKUP_NAME);
+
+        assertSame(executor, lookupExecutorCache.getExecutor(ENTITY_CLASS_NAME, LOOKUP_NAME));
+        assertEquals("found", ((List<Record>) executor.execute(Collections.singletonMap(VALUE_FIELD, "found")))
+                .get(0).getValue());
+
+        verify(schemaSnapshot, times(1)).getLookupByName(ENTITY_ID, LOOKUP_NAME);
+        verify(schemaSnapshot, times(1)).getLookupFieldsMapping(ENTITY_ID, LOOKUP_NAME);
+    }
+
+    @Test
+    public void shouldInvalidateWhenEntitiesBundleChanges() {
+        LookupExecutor executor = lookupExecutorCache.getExecutor(ENTITY_CLASS_NAME, LOOKUP_NAME);
+
+        when(bundle.getSymbolicName()).thenReturn(MDS_ENTITIES_SYMBOLIC_NAME);
+        lookupExecutorCache.bundleChanged(new BundleEvent(BundleEvent.STOPPED, bundle));
+
+        assertNotSame(executor, lookupExecutorCache.getExecutor(ENTITY_CLASS_NAME, LOOKUP_NAME));
+        verify(schemaSnapshot, times(2)).getLookupByName(ENTITY_ID, LOOKUP_NAME);
+    }
+
+    @Test
+    public void shouldNotInvalidateWhenOtherBundleChanges() {
+        LookupExecutor executor = lookupExecutorCache.getExecutor(ENTITY_CLASS_NAME, LOOKUP_NAME);
+
+        when(bundle.getSymbolicName()).thenReturn("org.motechproject.other-module");
+        lookupExecutorCache.bundleChanged(new BundleEvent(BundleEvent.STOPPED, bundle));
+
+        assertSame(executor, lookupExecutorCache.getExecutor(ENTITY_CLASS_NAME, LOOKUP_NAME));
+    }
+
+    @Test
+    public void shouldReturnNullForUnknownLookup() {
+        assertNull(lookupExecutorCache.getExecutor(ENTITY_CLASS_NAME, "unknown"));
+    }
+
+    public static class RecordService extends DefaultMotechDataService<Record> {
+
+        public List<Record> byValue(String value) {
+            Record record = new Record();
+            record.setValue(value);
+            return asList(record);
+        }
+
+        @Override
+        public Class<Record> getClassType() {
+            return Record.class;
+        }
+    }
+}
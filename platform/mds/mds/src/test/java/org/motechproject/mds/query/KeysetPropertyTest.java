@@ -0,0 +1,44 @@
+package org.motechproject.mds.query;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeysetPropertyTest {
+
+    @Test
+    public void shouldGenerateFilterForOrderField() {
+        KeysetProperty property = new KeysetProperty("name", "abc", String.class.getName(), 7L, false);
+
+        assertEquals("(name > param2_0 || (name == param2_0 && id > param2_1))", property.asFilter(2));
+        assertEquals("java.lang.String param2_0, java.lang.Long param2_1", property.asDeclareParameter(2));
+        assertEquals(Arrays.asList("abc", 7L), property.unwrap());
+    }
+
+    @Test
+    public void shouldGenerateFilterForDescendingOrder() {
+        KeysetProperty property = new KeysetProperty("name", "abc", String.class.getName(), 7L, true);
+
+        assertEquals("(name < param0_0 || (name == param0_0 && id < param0_1))", property.asFilter(0));
+    }
+
+    @Test
+    public void shouldGenerateFilterForIdOrder() {
+        KeysetProperty property = new KeysetProperty("id", 7L, Long.class.getName(), 7L, false);
+
+        assertEquals("id > param1", property.asFilter(1));
+        assertEquals("java.lang.Long param1", property.asDeclareParameter(1));
+        assertEquals(Arrays.asList(7L), property.unwrap());
+    }
+
+    @Test
+    public void shouldContinueAmongNullValues() {
+        KeysetProperty property = new KeysetProperty("name", null, String.class.getName(), 7L, false);
+
+        assertEquals("(name == null && id > param1)", property.asFilter(1));
+        assertEquals("java.lang.Long param1", property.asDeclareParameter(1));
+        assertEquals(Arrays.asList(7L), property.unwrap());
+    }
+}
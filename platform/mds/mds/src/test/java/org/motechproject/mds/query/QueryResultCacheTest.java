@@ -0,0 +1,129 @@
+package org.motechproject.mds.query;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.mds.dto.CacheStatisticsDto;
+import org.motechproject.mds.util.Order;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class QueryResultCacheTest {
+
+    private static final String ENTITY_CLASS_NAME = "org.motechproject.mds.Sample";
+    private static final long TIME_TO_LIVE = 1000;
+
+    private long now;
+    private QueryResultCache cache;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        cache = new QueryResultCache(ENTITY_CLASS_NAME, 2, TIME_TO_LIVE) {
+            @Override
+            protected long currentTime() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void shouldReturnCachedResult() {
+        cache.put("a", asList(1L, 2L), cache.getGeneration());
+
+        assertEquals(asList(1L, 2L), cache.get("a"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedResult() {
+        long generation = cache.getGeneration();
+        cache.put("a", 1L, generation);
+        cache.put("b", 2L, generation);
+
+        cache.get("a");
+        cache.put("c", 3L, generation);
+
+        assertEquals(1L, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(3L, cache.get("c"));
+        assertEquals(1, cache.getStatistics().getEvictions());
+    }
+
+    @Test
+    public void shouldExpireResults() {
+        cache.put("a", 1L, cache.getGeneration());
+
+        now = TIME_TO_LIVE - 1;
+        assertEquals(1L, cache.get("a"));
+
+        now = TIME_TO_LIVE;
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getStatistics().getSize());
+    }
+
+    @Test
+    public void shouldNotStoreResultsComputedBeforeInvalidation() {
+        long generation = cache.getGeneration();
+        cache.put("a", 1L, generation);
+
+        cache.invalidate();
+        cache.put("b", 2L, generation);
+
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+
+        cache.put("b", 2L, cache.getGeneration());
+        assertEquals(2L, cache.get("b"));
+    }
+
+    @Test
+    public void shouldCollectStatistics() {
+        cache.put("a", 1L, cache.getGeneration());
+
+        cache.get("a");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        cache.invalidate();
+
+        CacheStatisticsDto statistics = cache.getStatistics();
+
+        assertEquals(ENTITY_CLASS_NAME, statistics.getEntityClassName());
+        assertEquals(0, statistics.getSize());
+        assertEquals(3, statistics.getHits());
+        assertEquals(1, statistics.getMisses());
+        assertEquals(1, statistics.getInvalidations());
+        assertEquals(0.75, statistics.getHitRate(), 0.001);
+    }
+
+    @Test
+    public void shouldBuildEqualKeysForEqualQueries() {
+        QueryParams queryParams = new QueryParams(1, 10, new Order("name", Order.Direction.ASC));
+
+        Object key = QueryResultCache.key("retrieveAll", properties("abc"), queryParams, null);
+
+        assertEquals(key, QueryResultCache.key("retrieveAll", properties("abc"),
+                new QueryParams(1, 10, new Order("name", Order.Direction.ASC)), null));
+        assertNotEquals(key, QueryResultCache.key("retrieveAll", properties("def"), queryParams, null));
+        assertNotEquals(key, QueryResultCache.key("retrieveAll", properties("abc"), new QueryParams(2, 10), null));
+        assertNotEquals(key, QueryResultCache.key("count", properties("abc"), queryParams, null));
+        assertNotEquals(key, QueryResultCache.key("retrieveAll", properties("abc"), queryParams, "motech"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowEmptyCache() {
+        new QueryResultCache(ENTITY_CLASS_NAME, 0, TIME_TO_LIVE);
+    }
+
+    private List<Property> properties(String value) {
+        List<Property> properties = new ArrayList<>();
+        properties.add(new EqualProperty<>("name", value, String.class.getName()));
+        return properties;
+    }
+}
@@ -8,10 +8,13 @@ import org.motechproject.commons.api.Range;
 import org.motechproject.mds.util.InstanceSecurityRestriction;
 import org.motechproject.mds.util.Order;
 import org.motechproject.mds.util.SecurityUtil;
+import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import javax.jdo.FetchPlan;
 import javax.jdo.Query;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -20,6 +23,7 @@ import java.util.Map;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -50,6 +54,78 @@ public class QueryUtilTest {
         verify(query).setOrdering("field ascending");
     }
 
+    @Test
+    public void shouldSetKeysetQueryParams() {
+        QueryUtil.setQueryParams(query, QueryParams.keysetAfter(10, new Order("name", "desc"), "abc", 5L));
+
+        verify(query).setRange(0, 10);
+        verify(query).setOrdering("name descending, id descending");
+    }
+
+    @Test
+    public void shouldOrderKeysetPageByIdIfOrderIsNotSet() {
+        QueryUtil.setQueryParams(query, QueryParams.keysetFirst(10, null));
+
+        verify(query).setRange(0, 10);
+        verify(query).setOrdering("id ascending");
+    }
+
+    @Test
+    public void shouldAddKeysetPropertyOnlyForPagesAfterInstance() {
+        List<Property> properties = asList((Property) new EqualProperty<>("value", 1, Integer.class.getName()));
+
+        assertEquals(properties, QueryUtil.withKeyset(properties, QueryParams.keysetFirst(10, null), null));
+        assertEquals(properties, QueryUtil.withKeyset(properties, new QueryParams(2, 10), null));
+
+        List<Property> result = QueryUtil.withKeyset(properties,
+                QueryParams.keysetAfter(10, new Order("name"), "abc", 5L), null);
+
+        assertEquals(2, result.size());
+        assertEquals("(name > param1_0 || (name == param1_0 && id > param1_1))", result.get(1).asFilter(1));
+        assertEquals("java.lang.String param1_0, java.lang.Long param1_1", result.get(1).asDeclareParameter(1));
+    }
+
+    @Test
+    public void shouldJoinFiltersWithKeysetAndRestriction() {
+        PowerMockito.mockStatic(SecurityUtil.class);
+        when(SecurityUtil.getUsername()).thenReturn("motech");
+        when(restriction.isEmpty()).thenReturn(false);
+        when(restriction.isByCreator()).thenReturn(true);
+
+        List<Property> properties = QueryUtil.withKeyset(new ArrayList<Property>(),
+                QueryParams.keysetAfter(10, null, null, 5L), null);
+
+        QueryUtil.useFilters(query, null, properties, restriction);
+
+        verify(query).setFilter("id > param0 && creator == param1");
+        verify(query).declareParameters("java.lang.Long param0, java.lang.String param1");
+    }
+
+    @Test
+    public void shouldUseCursorForQuery() {
+        FetchPlan fetchPlan = mock(FetchPlan.class);
+        when(query.getFetchPlan()).thenReturn(fetchPlan);
+
+        QueryUtil.useCursor(query, 500);
+
+        verify(fetchPlan).setFetchSize(500);
+        verify(query).addExtension("datanucleus.rdbms.query.resultSetType", "forward-only");
+        verify(query).addExtension("datanucleus.query.resultCacheType", "none");
+    }
+
+    @Test
+    public void shouldUseProjection() {
+        QueryUtil.useProjection(query, asList("id", "value"), HashMap.class);
+
+        verify(query).setResult("id AS id, value AS value");
+        verify(query).setResultClass(HashMap.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotUseEmptyProjection() {
+        QueryUtil.useProjection(query, new ArrayList<String>(), HashMap.class);
+    }
+
     @Test
     public void shouldCreateFiltersAndParamDeclarationForRanges() {
         DateTime now = DateTime.now();
@@ -0,0 +1,98 @@
+package org.motechproject.mds.reflections;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.motechproject.mds.annotations.Entity;
+import org.motechproject.mds.annotations.Lookup;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Version;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.HashSet;
+import java.util.Hashtable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BundleScanCacheTest {
+
+    private static final String SYMBOLIC_NAME = "org.motechproject.scanned";
+    private static final String LOCATION = "mvn:org.motechproject/scanned/1.0";
+    private static final String BUILD_TIME = "1400000000000";
+    private static final String KEY = LOCATION + ";" + SYMBOLIC_NAME + ";1.0.0;" + BUILD_TIME;
+
+    private static final String ENTITY = "org.motechproject.scanned.Patient";
+    private static final String LOOKUP = ENTITY + "Service#findByName;java.lang.String";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private Bundle bundle;
+
+    @Before
+    public void setUp() throws Exception {
+        when(bundle.getSymbolicName()).thenReturn(SYMBOLIC_NAME);
+        when(bundle.getVersion()).thenReturn(new Version(1, 0, 0));
+        when(bundle.getLocation()).thenReturn(LOCATION);
+        when(bundle.getLastModified()).thenReturn(100L);
+
+        Dictionary<String, String> headers = new Hashtable<>();
+        headers.put("Bnd-LastModified", BUILD_TIME);
+        when(bundle.getHeaders()).thenReturn(headers);
+
+        BundleScan scan = new BundleScan();
+        scan.setKey(KEY);
+        scan.getAnnotatedClasses().put(Entity.class.getName(), new HashSet<>(Arrays.asList(ENTITY)));
+        scan.getAnnotatedMethods().put(Lookup.class.getName(), new HashSet<>(Arrays.asList(LOOKUP)));
+        new ObjectMapper().writeValue(new File(folder.getRoot(), SYMBOLIC_NAME + ".json"), scan);
+
+        BundleScanCache.setDirectory(folder.getRoot().toPath());
+        BundleScanCache.setEnabled(true);
+        BundleScanCache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        BundleScanCache.setEnabled(false);
+        BundleScanCache.clear();
+    }
+
+    @Test
+    public void shouldReuseStoredScan() {
+        assertEquals(KEY, BundleScanCache.getScan(bundle).getKey());
+        assertEquals(new HashSet<>(Arrays.asList(ENTITY)), BundleScanCache.getAnnotatedClasses(bundle, Entity.class));
+        assertEquals(new HashSet<>(Arrays.asList(LOOKUP)), BundleScanCache.getAnnotatedMethods(bundle, Lookup.class));
+    }
+
+    @Test
+    public void shouldReuseStoredScanAfterBundleIsInstalledAgain() {
+        assertEquals(KEY, BundleScanCache.getScan(bundle).getKey());
+
+        // the bundles are installed again on every start of the server
+        BundleScanCache.clear();
+        when(bundle.getLastModified()).thenReturn(200L);
+
+        assertEquals(KEY, BundleScanCache.getScan(bundle).getKey());
+        assertEquals(new HashSet<>(Arrays.asList(ENTITY)), BundleScanCache.getAnnotatedClasses(bundle, Entity.class));
+    }
+
+    @Test
+    public void shouldNotReturnScansWhenDisabled() {
+        BundleScanCache.setEnabled(false);
+
+        assertNull(BundleScanCache.getScan(bundle));
+        assertNull(BundleScanCache.getAnnotatedClasses(bundle, Entity.class));
+    }
+}
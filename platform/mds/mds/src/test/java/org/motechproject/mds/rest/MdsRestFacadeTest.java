@@ -11,9 +11,12 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.motechproject.mds.domain.Entity;
 import org.motechproject.mds.domain.Field;
+import org.motechproject.mds.domain.OneToOneRelationship;
 import org.motechproject.mds.domain.RestOptions;
 import org.motechproject.mds.dto.FieldDto;
 import org.motechproject.mds.dto.LookupDto;
@@ -24,12 +27,14 @@ import org.motechproject.mds.ex.rest.RestLookupExecutionForbiddenException;
 import org.motechproject.mds.ex.rest.RestLookupNotFoundException;
 import org.motechproject.mds.ex.rest.RestNoLookupResultException;
 import org.motechproject.mds.ex.rest.RestOperationNotSupportedException;
+import org.motechproject.mds.query.QueryExecution;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.repository.AllEntities;
 import org.motechproject.mds.service.MotechDataService;
 import org.motechproject.mds.testutil.FieldTestHelper;
 import org.motechproject.mds.testutil.records.Record;
 import org.motechproject.mds.util.Order;
+import org.motechproject.mds.util.PropertyUtil;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -51,8 +56,10 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -137,11 +144,25 @@ public class MdsRestFacadeTest {
 
         //set up data service
         when(dataService.retrieveAll(any(QueryParams.class))).thenReturn(asList(recordOne));
+        when(dataService.retrieveProjection(anyListOf(String.class), any(QueryParams.class)))
+                .thenAnswer(new Answer<List<Map<String, Object>>>() {
+                    @Override
+                    public List<Map<String, Object>> answer(InvocationOnMock invocation) {
+                        Map<String, Object> row = new HashMap<>();
+                        for (String field : (List<String>) invocation.getArguments()[0]) {
+                            row.put(field, BLOB_FIELD.equals(field) ? blobFieldValue
+                                    : PropertyUtil.safeGetProperty(recordOne, field));
+                        }
+                        return asList(row);
+                    }
+                });
         when(dataService.retrieveAll()).thenReturn(asList(recordOne));
         when(dataService.findById(1l)).thenReturn(recordOne);
         when(dataService.create(recordOne)).thenReturn(recordOne);
         when(dataService.getDetachedField(recordOne, BLOB_FIELD))
                 .thenReturn(blobFieldValue);
+        when(dataService.executeQuery(any(QueryExecution.class)))
+                .thenReturn(Arrays.<Object[]>asList(new Object[]{recordOne.getId(), blobFieldValue}));
 
         // do the initialization, normally called by Spring as @PostConstruct
         mdsRestFacade.init();
@@ -156,7 +177,7 @@ public class MdsRestFacadeTest {
 
         RestResponse result = mdsRestFacade.get(queryParams, false);
 
-        verify(dataService).retrieveAll(queryParams);
+        verify(dataService).retrieveProjection(asList(VALUE_FIELD, DATE_FIELD, "id"), queryParams);
 
         assertEquals(1, result.getData().size());
         assertEquals(3, result.getData().get(0).size());
@@ -201,6 +222,34 @@ public class MdsRestFacadeTest {
         assertEquals(81l, result.getMetadata().getTotalCount());
     }
 
+    @Test
+    public void shouldReturnContinuationTokenForFullKeysetPage() {
+        setUpCrudAccess(false, true, false, false);
+        Order order = new Order(VALUE_FIELD, Order.Direction.DESC);
+
+        RestResponse result = mdsRestFacade.get(QueryParams.keysetFirst(1, order), false);
+
+        String token = result.getMetadata().getContinuationToken();
+        assertNotNull(token);
+
+        QueryParams next = ContinuationToken.parse(token, 1, order);
+        assertEquals(recordOne.getId(), next.getLastId());
+        assertEquals(recordOne.getValue(), next.getLastValue());
+
+        result = mdsRestFacade.get(QueryParams.keysetFirst(20, order), false);
+
+        assertNull(result.getMetadata().getContinuationToken());
+    }
+
+    @Test
+    public void shouldNotReturnContinuationTokenForRegularPages() {
+        setUpCrudAccess(false, true, false, false);
+
+        RestResponse result = mdsRestFacade.get(new QueryParams(1, 1), false);
+
+        assertNull(result.getMetadata().getContinuationToken());
+    }
+
     @Test
     public void shouldAppendMetadataWhenIdParamWasSpecified() {
         setUpCrudAccess(false, true, false, false);
@@ -225,7 +274,7 @@ public class MdsRestFacadeTest {
 
         RestResponse result = mdsRestFacade.get(queryParams, true);
 
-        verify(dataService).retrieveAll(queryParams);
+        verify(dataService).retrieveProjection(asList(VALUE_FIELD, DATE_FIELD, BLOB_FIELD, "id"), queryParams);
 
         assertEquals(1, result.getData().size());
         assertEquals(3, result.getData().get(0).size());
@@ -234,6 +283,28 @@ public class MdsRestFacadeTest {
         assertArrayEquals(encodedBlobField, (byte[]) result.getData().get(0).get(BLOB_FIELD));
     }
 
+    @Test
+    public void shouldRetrieveInstancesIfRestFieldsCannotBeProjected() {
+        setUpCrudAccess(false, true, false, false);
+
+        FieldDto valueField = FieldTestHelper.fieldDto(3L, VALUE_FIELD, String.class.getName(), VALUE_FIELD, null);
+        FieldDto relatedField = FieldTestHelper.fieldDto(6L, "related", Record.class.getName(), "related", null);
+        relatedField.setType(new TypeDto("mds.field.relationship", StringUtils.EMPTY, "related",
+                OneToOneRelationship.class.getName()));
+        when(entity.getFieldDtos()).thenReturn(asList(valueField, relatedField));
+        when(restOptionsDto.getFieldNames()).thenReturn(asList(VALUE_FIELD, "related"));
+        mdsRestFacade.init();
+
+        QueryParams queryParams = new QueryParams(1, 20);
+        RestResponse result = mdsRestFacade.get(queryParams, false);
+
+        verify(dataService).retrieveAll(queryParams);
+        verify(dataService, never()).retrieveProjection(anyListOf(String.class), any(QueryParams.class));
+
+        assertEquals(1, result.getData().size());
+        assertEquals(recordOne.getValue(), result.getData().get(0).get(VALUE_FIELD));
+    }
+
     @Test
     public void shouldGetByIdWithBlobField() {
 
@@ -337,6 +408,9 @@ public class MdsRestFacadeTest {
         assertArrayEquals((byte[]) result.getData().get(0).get(BLOB_FIELD), encodedBlobField);
 
         verify(dataService).supportedLookup(null, 44, queryParams);
+        // the blobs of all returned instances are selected by a single query
+        verify(dataService).executeQuery(any(QueryExecution.class));
+        verify(dataService, never()).getDetachedField(any(Record.class), anyString());
     }
 
     @Test
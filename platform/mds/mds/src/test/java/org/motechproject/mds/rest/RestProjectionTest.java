@@ -73,6 +73,17 @@ public class RestProjectionTest {
         assertProjectionListsEquals(expectedProjections, actualProjections);
     }
 
+    @Test
+    public void shouldCreateProjectionView() throws Exception {
+
+        List<RestProjection> expectedProjections = Arrays.asList(buildRestProjection(recordOne),
+                buildRestProjection(recordTwo), buildRestProjection(recordThree));
+        List<RestProjection> actualProjections = RestProjection.createProjectionView(records, REST_FIELDS,
+                REST_BLOB_FIELDS);
+
+        assertProjectionListsEquals(expectedProjections, actualProjections);
+    }
+
     private Record buildRecord(Long id, String creator, String owner, String modifiedBy, DateTime creationDate,
                                DateTime modificationDate, String value, Date date, Byte[] blob) {
 
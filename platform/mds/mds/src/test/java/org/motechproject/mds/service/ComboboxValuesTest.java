@@ -0,0 +1,122 @@
+package org.motechproject.mds.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.motechproject.mds.domain.Entity;
+import org.motechproject.mds.domain.Field;
+import org.motechproject.mds.testutil.records.Record;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.motechproject.mds.testutil.FieldTestHelper.fieldWithComboboxSettings;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ComboboxValuesTest {
+
+    private static final Long ENTITY_ID = 1L;
+
+    @Mock
+    private EntityService entityService;
+
+    @Mock
+    private SchemaSnapshotService schemaSnapshotService;
+
+    private List<Runnable> scheduled = new ArrayList<>();
+
+    private ComboboxValues comboboxValues;
+
+    @Before
+    public void setUp() {
+        Entity entity = new Entity(Record.class.getName());
+        Field field = fieldWithComboboxSettings(entity, "value", "Value", String.class, false, true,
+                Arrays.asList("known", "two%20words"));
+
+        comboboxValues = new ComboboxValues(ENTITY_ID, Record.class.getName(), Arrays.asList(field), entityService,
+                schemaSnapshotService, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                scheduled.add(command);
+            }
+        });
+    }
+
+    @Test
+    public void shouldNotFindKnownValues() {
+        Map<String, Set<String>> newValues = comboboxValues.findNewValues(Arrays.asList(
+                record("known"), record(" two words "), record(null)));
+
+        assertTrue(newValues.isEmpty());
+    }
+
+    @Test
+    public void shouldStoreNewValuesOnce() {
+        Map<String, Set<String>> newValues = comboboxValues.findNewValues(Arrays.asList(
+                record("known"), record("new"), record("other"), record("new")));
+
+        assertEquals(1, newValues.size());
+        assertEquals(Arrays.asList("new", "other"), new ArrayList<>(newValues.get("value")));
+
+        comboboxValues.add(newValues);
+        comboboxValues.add(comboboxValues.findNewValues(Arrays.asList(record("other"), record("last"))));
+        comboboxValues.add(newValues);
+
+        assertEquals(1, scheduled.size());
+        scheduled.get(0).run();
+
+        ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(entityService).updateComboboxValues(eq(ENTITY_ID), captor.capture());
+
+        Collection<?> stored = (Collection<?>) captor.getValue().get("value");
+        assertEquals(3, stored.size());
+        assertTrue(stored.containsAll(Arrays.asList("new", "other", "last")));
+        verify(schemaSnapshotService).refreshEntity(Record.class.getName());
+
+        assertTrue(comboboxValues.findNewValues(Arrays.asList(record("new"), record("last"))).isEmpty());
+    }
+
+    @Test
+    public void shouldStoreValuesAgainIfStoringFailed() {
+        doThrow(new IllegalStateException()).when(entityService)
+                .updateComboboxValues(anyLong(), anyMapOf(String.class, Collection.class));
+
+        comboboxValues.add(comboboxValues.findNewValues(Arrays.asList(record("new"))));
+        scheduled.get(0).run();
+
+        assertEquals(1, comboboxValues.findNewValues(Arrays.asList(record("new"))).size());
+        verify(schemaSnapshotService, never()).refreshEntity(anyString());
+    }
+
+    @Test
+    public void shouldNotStoreAnythingWithoutNewValues() {
+        comboboxValues.add(comboboxValues.findNewValues(Arrays.asList(record("known"))));
+        comboboxValues.storePendingValues();
+
+        assertTrue(scheduled.isEmpty());
+        verify(entityService, never()).updateComboboxValues(anyLong(), anyMapOf(String.class, Collection.class));
+    }
+
+    private Record record(String value) {
+        Record record = new Record();
+        record.setValue(value);
+        return record;
+    }
+}
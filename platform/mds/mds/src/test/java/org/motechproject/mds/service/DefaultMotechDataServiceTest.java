@@ -0,0 +1,603 @@
+package org.motechproject.mds.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.motechproject.mds.domain.Entity;
+import org.motechproject.mds.domain.Field;
+import org.motechproject.mds.ex.object.ChunkProcessingException;
+import org.motechproject.mds.ex.object.SecurityException;
+import org.motechproject.mds.query.ChunkCallback;
+import org.motechproject.mds.query.InstanceCallback;
+import org.motechproject.mds.query.Property;
+import org.motechproject.mds.query.QueryParams;
+import org.motechproject.mds.query.QueryResultCache;
+import org.motechproject.mds.repository.AllEntities;
+import org.motechproject.mds.repository.MotechDataRepository;
+import org.motechproject.mds.testutil.records.Record;
+import org.motechproject.mds.util.InstanceSecurityRestriction;
+import org.motechproject.mds.util.SecurityMode;
+import org.springframework.orm.jdo.JdoTransactionManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.spi.JDOImplHelper;
+import javax.jdo.spi.StateInterrogation;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.motechproject.mds.util.Constants.MDSEvents.OBJECT_ID;
+import static org.motechproject.mds.util.Constants.MDSEvents.OBJECT_IDS;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultMotechDataServiceTest {
+
+    @Mock
+    private MotechDataRepository<Record> repository;
+
+    @Mock
+    private AllEntities allEntities;
+
+    @Mock
+    private Entity entity;
+
+    @Mock
+    private JdoTransactionManager transactionManager;
+
+    @Mock
+    private InstanceCallback<Record> instanceCallback;
+
+    @Mock
+    private MdsCacheService cacheService;
+
+    @Mock
+    private TrashService trashService;
+
+    @Mock
+    private CrudEventService crudEventService;
+
+    private static final String USERNAME = "motech";
+    private static final String OTHER_USER = "other";
+
+    private RecordService dataService;
+
+    @Before
+    public void setUp() {
+        when(repository.getClassType()).thenReturn(Record.class);
+        when(allEntities.retrieveByClassName(Record.class.getName())).thenReturn(entity);
+        when(entity.getName()).thenReturn("Record");
+        when(entity.getSecurityMode()).thenReturn(SecurityMode.EVERYONE);
+        when(entity.getFields()).thenReturn(new ArrayList<Field>());
+
+        when(repository.retrieveIds(any(QueryParams.class), any(InstanceSecurityRestriction.class)))
+                .thenReturn(asList(1L, 2L), asList(3L, 4L), Collections.singletonList(5L));
+        when(repository.retrieveByIds(anyCollectionOf(Long.class))).thenAnswer(new Answer<List<Record>>() {
+            @Override
+            public List<Record> answer(InvocationOnMock invocation) {
+                List<Record> records = new ArrayList<>();
+                for (Long id : (Collection<Long>) invocation.getArguments()[0]) {
+                    Record record = new Record();
+                    record.setId(id);
+                    records.add(record);
+                }
+                return records;
+            }
+        });
+
+        dataService = new RecordService();
+        dataService.setRepository(repository);
+        dataService.setAllEntities(allEntities);
+        dataService.setTransactionManager(transactionManager);
+        dataService.setTrashService(trashService);
+        dataService.initializeSecurityState();
+    }
+
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void shouldStreamAllInstances() {
+        dataService.forEach(instanceCallback);
+
+        verify(repository).forEach(any(InstanceSecurityRestriction.class), anyInt(), eq(instanceCallback));
+    }
+
+    @Test
+    public void shouldProcessAllInstancesInChunks() {
+        final AtomicInteger chunks = new AtomicInteger();
+
+        long processed = dataService.processInChunks(2, 2, new ChunkCallback<Record>() {
+            @Override
+            public void process(List<Record> chunk) {
+                chunks.incrementAndGet();
+            }
+        });
+
+        assertEquals(5, processed);
+        assertEquals(3, chunks.get());
+    }
+
+    @Test
+    public void shouldRetryFailedChunks() {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        long processed = dataService.processInChunks(2, 1, new ChunkCallback<Record>() {
+            @Override
+            public void process(List<Record> chunk) {
+                if (chunk.get(0).getId() == 3L && attempts.incrementAndGet() < 3) {
+                    throw new IllegalStateException("Failure in attempt " + attempts.get());
+                }
+            }
+        });
+
+        assertEquals(5, processed);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void shouldReportChunksThatFailedInAllAttempts() {
+        try {
+            dataService.processInChunks(2, 2, new ChunkCallback<Record>() {
+                @Override
+                public void process(List<Record> chunk) {
+                    if (chunk.get(0).getId() == 3L) {
+                        throw new IllegalStateException("Failure");
+                    }
+                }
+            });
+            fail("Expected the chunk processing to fail");
+        } catch (ChunkProcessingException e) {
+            assertEquals(asList(3L, 4L), e.getFailedIds());
+        }
+    }
+
+    @Test
+    public void shouldServeCachedQueryResultsOfCacheableEntities() {
+        Record record = new Record();
+        record.setId(1L);
+
+        QueryResultCache cache = enableCache();
+        when(repository.retrieveAll(eq(QueryParams.ORDER_ID_ASC), any(InstanceSecurityRestriction.class)))
+                .thenReturn(asList(record));
+        when(repository.retrieveByIds(asList(1L))).thenReturn(asList(record));
+
+        assertEquals(asList(record), dataService.retrieveAll());
+        assertSame(record, dataService.retrieveAll().get(0));
+
+        verify(repository, times(1))
+                .retrieveAll(eq(QueryParams.ORDER_ID_ASC), any(InstanceSecurityRestriction.class));
+        verify(repository).retrieveByIds(asList(1L));
+        assertEquals(1, cache.getStatistics().getHits());
+        assertEquals(1, cache.getStatistics().getMisses());
+    }
+
+    @Test
+    public void shouldLoadCachedQueryResultsInBatchesAndKeepTheirOrder() {
+        final Map<Long, Record> recordsById = new HashMap<>();
+        List<Record> records = new ArrayList<>();
+        for (long id = 1500; id > 0; --id) {
+            Record record = new Record();
+            record.setId(id);
+            recordsById.put(id, record);
+            records.add(record);
+        }
+
+        enableCache();
+        when(repository.retrieveAll(eq(QueryParams.ORDER_ID_ASC), any(InstanceSecurityRestriction.class)))
+                .thenReturn(records);
+        // the database returns the instances in its own order
+        when(repository.retrieveByIds(anyCollectionOf(Long.class))).thenAnswer(new Answer<List<Record>>() {
+            @Override
+            public List<Record> answer(InvocationOnMock invocation) {
+                List<Record> found = new ArrayList<>();
+                for (Object id : (Collection) invocation.getArguments()[0]) {
+                    found.add(recordsById.get(id));
+                }
+                Collections.shuffle(found);
+                return found;
+            }
+        });
+
+        dataService.retrieveAll();
+
+        assertEquals(records, dataService.retrieveAll());
+        verify(repository, times(2)).retrieveByIds(anyCollectionOf(Long.class));
+        verify(repository, never()).retrieve(any());
+    }
+
+    @Test
+    public void shouldQueryAgainWhenCachedInstanceIsGone() {
+        Record record = new Record();
+        record.setId(1L);
+        Record other = new Record();
+        other.setId(2L);
+
+        enableCache();
+        when(repository.retrieveAll(eq(QueryParams.ORDER_ID_ASC), any(InstanceSecurityRestriction.class)))
+                .thenReturn(asList(record, other), asList(other));
+        when(repository.retrieveByIds(asList(1L, 2L))).thenReturn(asList(other));
+
+        dataService.retrieveAll();
+
+        assertEquals(asList(other), dataService.retrieveAll());
+        verify(repository, times(2))
+                .retrieveAll(eq(QueryParams.ORDER_ID_ASC), any(InstanceSecurityRestriction.class));
+    }
+
+    @Test
+    public void shouldInvalidateCacheAfterChange() {
+        QueryResultCache cache = enableCache();
+        when(repository.count(any(InstanceSecurityRestriction.class))).thenReturn(5L, 0L);
+
+        assertEquals(5L, dataService.count());
+        assertEquals(5L, dataService.count());
+
+        dataService.deleteAll();
+        cache.invalidate();
+
+        assertEquals(0L, dataService.count());
+        verify(cacheService).invalidate(Record.class);
+        verify(repository, times(2)).count(any(InstanceSecurityRestriction.class));
+    }
+
+    @Test
+    public void shouldCacheOnlyCountsOfEntitiesWhichAreNotCacheable() {
+        QueryResultCache cache = new QueryResultCache(Record.class.getName(), 10, 60000);
+        when(cacheService.isCountCacheEnabled()).thenReturn(true);
+        when(cacheService.getQueryResultCache(Record.class)).thenReturn(cache);
+        dataService.setCacheService(cacheService);
+        dataService.initializeSecurityState();
+
+        when(repository.count(any(InstanceSecurityRestriction.class))).thenReturn(5L, 0L);
+        QueryParams queryParams = new QueryParams(1, 10);
+
+        assertEquals(5L, dataService.count());
+        assertEquals(5L, dataService.count());
+        dataService.retrieveAll(queryParams);
+        dataService.retrieveAll(queryParams);
+
+        dataService.deleteAll();
+        cache.invalidate();
+
+        assertEquals(0L, dataService.count());
+        verify(cacheService).invalidate(Record.class);
+        verify(repository, times(2)).count(any(InstanceSecurityRestriction.class));
+        verify(repository, times(2)).retrieveAll(eq(queryParams), any(InstanceSecurityRestriction.class));
+    }
+
+    @Test
+    public void shouldNotCheckInstancesOfEntitiesWithoutInstanceSecurity() {
+        for (SecurityMode mode : asList(SecurityMode.EVERYONE, SecurityMode.USERS, SecurityMode.PERMISSIONS)) {
+            setUpSecurity(mode);
+
+            dataService.updateAll(asList(record(1L, OTHER_USER), record(2L, OTHER_USER)));
+            dataService.deleteAll(asList(record(1L, OTHER_USER), record(2L, OTHER_USER)));
+        }
+
+        verify(repository, never()).count(anyListOf(Property.class), any(InstanceSecurityRestriction.class));
+        verify(repository, never()).retrieve(any());
+        verify(repository, times(3)).deleteAll(anyCollectionOf(Record.class));
+    }
+
+    @Test
+    public void shouldCheckAccessOfOwnerInSingleQuery() {
+        shouldCheckAccessInSingleQuery(SecurityMode.OWNER);
+    }
+
+    @Test
+    public void shouldCheckAccessOfCreatorInSingleQuery() {
+        shouldCheckAccessInSingleQuery(SecurityMode.CREATOR);
+    }
+
+    @Test(expected = SecurityException.class)
+    public void shouldNotUpdateInstancesOfOtherOwners() {
+        setUpSecurity(SecurityMode.OWNER);
+        when(repository.count(anyListOf(Property.class), any(InstanceSecurityRestriction.class))).thenReturn(1L);
+
+        try {
+            dataService.updateAll(asList(record(1L, USERNAME), record(2L, OTHER_USER)));
+        } finally {
+            verify(repository, never()).updateAll(anyCollectionOf(Record.class));
+        }
+    }
+
+    @Test
+    public void shouldCheckLoadedInstancesOnDelete() {
+        for (SecurityMode mode : asList(SecurityMode.OWNER, SecurityMode.CREATOR)) {
+            setUpSecurity(mode);
+            when(repository.retrieveByIds(anyCollectionOf(Long.class)))
+                    .thenReturn(asList(record(1L, USERNAME), record(2L, USERNAME)));
+
+            dataService.deleteAll(asList(record(1L, USERNAME), record(2L, USERNAME)));
+
+            when(repository.retrieveByIds(anyCollectionOf(Long.class)))
+                    .thenReturn(asList(record(1L, USERNAME), record(2L, OTHER_USER)));
+
+            try {
+                dataService.deleteAll(asList(record(1L, USERNAME), record(2L, USERNAME)));
+                fail("Expected the instance of another user to be protected in mode " + mode);
+            } catch (SecurityException e) {
+                // expected
+            }
+        }
+
+        verify(repository, times(2)).deleteAll(anyCollectionOf(Record.class));
+        // the loaded instances are checked, nothing is read again
+        verify(repository, never()).count(anyListOf(Property.class), any(InstanceSecurityRestriction.class));
+    }
+
+    @Test(expected = SecurityException.class)
+    public void shouldCheckRetrievedInstance() {
+        setUpSecurity(SecurityMode.CREATOR);
+        when(repository.retrieve("id", 1L)).thenReturn(record(1L, OTHER_USER));
+
+        dataService.retrieve("id", 1L);
+    }
+
+    @Test
+    public void shouldCheckPersistentInstancesWithoutQuery() {
+        setUpSecurity(SecurityMode.OWNER);
+        when(repository.count(anyListOf(Property.class), any(InstanceSecurityRestriction.class))).thenReturn(1L);
+
+        Record persistent = record(1L, USERNAME);
+        Record persistentOfOtherUser = record(2L, OTHER_USER);
+        Record detached = record(3L, OTHER_USER);
+
+        PersistentRecords persistentRecords = new PersistentRecords(persistent, persistentOfOtherUser);
+        JDOImplHelper.getInstance().addStateInterrogation(persistentRecords);
+        try {
+            dataService.updateAll(asList(persistent, detached));
+
+            try {
+                dataService.updateAll(asList(persistentOfOtherUser));
+                fail("Expected the persistent instance of another user to be protected");
+            } catch (SecurityException e) {
+                // expected
+            }
+        } finally {
+            JDOImplHelper.getInstance().removeStateInterrogation(persistentRecords);
+        }
+
+        // only the detached instance is counted
+        ArgumentCaptor<List> propertiesCaptor = ArgumentCaptor.forClass(List.class);
+        verify(repository).count(propertiesCaptor.capture(), any(InstanceSecurityRestriction.class));
+        assertEquals(Collections.singleton(3L), ((Property) propertiesCaptor.getValue().get(0)).getValue());
+        verify(repository).updateAll(anyCollectionOf(Record.class));
+    }
+
+    private void shouldCheckAccessInSingleQuery(SecurityMode mode) {
+        setUpSecurity(mode);
+        when(repository.count(anyListOf(Property.class), any(InstanceSecurityRestriction.class))).thenReturn(2L);
+
+        // the instances passed by the caller could have been changed, so their owner or creator is not trusted
+        dataService.updateAll(asList(record(1L, OTHER_USER), record(2L, OTHER_USER), record(2L, OTHER_USER)));
+
+        ArgumentCaptor<InstanceSecurityRestriction> restrictionCaptor =
+                ArgumentCaptor.forClass(InstanceSecurityRestriction.class);
+        verify(repository).count(anyListOf(Property.class), restrictionCaptor.capture());
+        verify(repository, never()).retrieve(any());
+
+        assertEquals(mode == SecurityMode.OWNER, restrictionCaptor.getValue().isByOwner());
+        assertEquals(mode == SecurityMode.CREATOR, restrictionCaptor.getValue().isByCreator());
+    }
+
+    private void setUpSecurity(SecurityMode mode) {
+        when(entity.getSecurityMode()).thenReturn(mode);
+        when(allEntities.retrieveById(any(Long.class))).thenReturn(entity);
+        dataService.initializeSecurityState();
+
+        User principal = new User(USERNAME, USERNAME, new ArrayList<GrantedAuthority>());
+        SecurityContext securityContext = new SecurityContextImpl();
+        securityContext.setAuthentication(new UsernamePasswordAuthenticationToken(principal, null));
+        SecurityContextHolder.setContext(securityContext);
+    }
+
+    private Record record(Long id, String user) {
+        Record record = new Record();
+        record.setId(id);
+        record.setOwner(user);
+        record.setCreator(user);
+        return record;
+    }
+
+    @Test
+    public void shouldCoalesceEventsOfTransaction() {
+        when(entity.isAllowCreateEvent()).thenReturn(true);
+        when(entity.isAllowUpdateEvent()).thenReturn(true);
+        when(crudEventService.isBatchPerTransaction(Record.class.getName())).thenReturn(true);
+        when(repository.create(any(Record.class))).thenAnswer(new ReturnFirstArgument());
+        when(repository.update(any(Record.class))).thenAnswer(new ReturnFirstArgument());
+
+        dataService.setCrudEventService(crudEventService);
+        dataService.initializeSecurityState();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            Record first = dataService.create(record(1L, USERNAME));
+            dataService.create(record(2L, USERNAME));
+            dataService.update(first);
+            dataService.update(first);
+
+            verify(crudEventService, never()).sendEvent(anyString(), anyString(), anyMapOf(String.class, Object.class),
+                    anyInt());
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        ArgumentCaptor<Map> paramsCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(crudEventService).sendEvent(eq(Record.class.getName()), eq("mds.crud.Record.CREATE.batch"),
+                paramsCaptor.capture(), eq(2));
+        verify(crudEventService).sendEvent(eq(Record.class.getName()), eq("mds.crud.Record.UPDATE.batch"),
+                paramsCaptor.capture(), eq(1));
+
+        assertEquals(asList(1L, 2L), paramsCaptor.getAllValues().get(0).get(OBJECT_IDS));
+        assertEquals(asList(1L), paramsCaptor.getAllValues().get(1).get(OBJECT_IDS));
+        assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+    }
+
+    @Test
+    public void shouldSendEventPerInstanceOfBulkOperationsByDefault() {
+        when(entity.isAllowCreateEvent()).thenReturn(true);
+        when(repository.createAll(anyCollectionOf(Record.class))).thenAnswer(new Answer<List<Record>>() {
+            @Override
+            public List<Record> answer(InvocationOnMock invocation) {
+                return new ArrayList<>((Collection<Record>) invocation.getArguments()[0]);
+            }
+        });
+
+        dataService.setCrudEventService(crudEventService);
+        dataService.initializeSecurityState();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            dataService.createAll(asList(record(1L, USERNAME), record(2L, USERNAME)));
+
+            assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        ArgumentCaptor<Map> paramsCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(crudEventService, times(2)).sendEvent(eq(Record.class.getName()), eq("mds.crud.Record.CREATE"),
+                paramsCaptor.capture(), eq(1));
+
+        assertEquals(1L, paramsCaptor.getAllValues().get(0).get(OBJECT_ID));
+        assertEquals(2L, paramsCaptor.getAllValues().get(1).get(OBJECT_ID));
+    }
+
+    private QueryResultCache enableCache() {
+        QueryResultCache cache = new QueryResultCache(Record.class.getName(), 10, 60000);
+
+        when(entity.isCacheable()).thenReturn(true);
+        when(cacheService.getQueryResultCache(Record.class)).thenReturn(cache);
+
+        dataService.setCacheService(cacheService);
+        dataService.initializeSecurityState();
+
+        return cache;
+    }
+
+    private static class RecordService extends DefaultMotechDataService<Record> {
+    }
+
+    private static class ReturnFirstArgument implements Answer<Object> {
+
+        @Override
+        public Object answer(InvocationOnMock invocation) {
+            return invocation.getArguments()[0];
+        }
+    }
+
+    /**
+     * Makes JDO treat the given records as persistent instances.
+     */
+    private static class PersistentRecords implements StateInterrogation {
+
+        private final Set<Object> records = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+        PersistentRecords(Object... records) {
+            this.records.addAll(asList(records));
+        }
+
+        @Override
+        public Boolean isPersistent(Object pc) {
+            return records.contains(pc) ? Boolean.TRUE : null;
+        }
+
+        @Override
+        public Boolean isTransactional(Object pc) {
+            return null;
+        }
+
+        @Override
+        public Boolean isDirty(Object pc) {
+            return null;
+        }
+
+        @Override
+        public Boolean isNew(Object pc) {
+            return null;
+        }
+
+        @Override
+        public Boolean isDeleted(Object pc) {
+            return null;
+        }
+
+        @Override
+        public Boolean isDetached(Object pc) {
+            return null;
+        }
+
+        @Override
+        public PersistenceManager getPersistenceManager(Object pc) {
+            return null;
+        }
+
+        @Override
+        public Object getObjectId(Object pc) {
+            return null;
+        }
+
+        @Override
+        public Object getTransactionalObjectId(Object pc) {
+            return null;
+        }
+
+        @Override
+        public Object getVersion(Object pc) {
+            return null;
+        }
+
+        @Override
+        public boolean makeDirty(Object pc, String fieldName) {
+            return false;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.motechproject.mds.service;
 
+import org.apache.commons.lang.SerializationUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -9,6 +10,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.motechproject.mds.domain.Entity;
 import org.motechproject.mds.domain.Field;
+import org.motechproject.mds.domain.HistoryOutboxEntry;
 import org.motechproject.mds.domain.Tracking;
 import org.motechproject.mds.domain.Type;
 import org.motechproject.mds.repository.AllEntities;
@@ -25,24 +27,35 @@ import org.osgi.framework.ServiceReference;
 import org.osgi.framework.wiring.BundleWiring;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.orm.jdo.JdoTransactionManager;
 
 import javax.jdo.PersistenceManager;
 import javax.jdo.PersistenceManagerFactory;
 import javax.jdo.Query;
+import javax.jdo.Transaction;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasItem;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
@@ -77,12 +90,24 @@ public class HistoryServiceTest {
     @Mock
     private Query query;
 
+    @Mock
+    private Query outboxQuery;
+
+    @Mock
+    private Transaction transaction;
+
+    @Mock
+    private JdoTransactionManager transactionManager;
+
     @Captor
     private ArgumentCaptor<Record__History> recordHistoryCaptor;
 
     @Captor
     private ArgumentCaptor<String> stringCaptor;
 
+    @Captor
+    private ArgumentCaptor<List> listCaptor;
+
     private HistoryService historyService;
 
     @Before
@@ -93,12 +118,15 @@ public class HistoryServiceTest {
         ((HistoryServiceImpl) historyService).setPersistenceManagerFactory(factory);
         ((HistoryServiceImpl) historyService).setBundleContext(bundleContext);
         ((BasePersistenceService) historyService).setAllEntities(allEntities);
+        ((HistoryServiceImpl) historyService).setTransactionManager(transactionManager);
 
         doReturn(Record__History.class).when(classLoader).loadClass(Record__History.class.getName());
         doReturn(reference).when(bundleContext).getServiceReference(anyString());
 
         doReturn(manager).when(factory).getPersistenceManager();
         doReturn(query).when(manager).newQuery(Record__History.class);
+        doReturn(outboxQuery).when(manager).newQuery(HistoryOutboxEntry.class);
+        doReturn(transaction).when(manager).currentTransaction();
         doReturn(bundle).when(bundleContext).getBundle();
         doReturn(bundleWiring).when(bundle).adapt(BundleWiring.class);
         doReturn(classLoader).when(bundleWiring).getClassLoader();
@@ -177,7 +205,8 @@ public class HistoryServiceTest {
     public void shouldRemoveAllHistoryRecordsRelatedWithGivenInstance() throws Exception {
         historyService.remove(new Record());
 
-        verify(factory).getPersistenceManager();
+        verify(factory, times(2)).getPersistenceManager();
+        verify(outboxQuery).deletePersistentAll(Record__History.class.getName(), Collections.singleton(1L));
         verify(manager).newQuery(Record__History.class);
         verify(query).setFilter(stringCaptor.capture());
         verify(query).declareParameters(stringCaptor.capture());
@@ -189,6 +218,18 @@ public class HistoryServiceTest {
         assertThat(values, hasItem("java.lang.Long param0, java.lang.Boolean param1"));
     }
 
+    @Test
+    public void shouldRemoveHistoryRecordsOfAllGivenInstancesAtOnce() throws Exception {
+        historyService.removeAll(Arrays.asList(new Record(), new Record()));
+
+        verify(manager).newQuery(Record__History.class);
+        verify(query).setFilter(stringCaptor.capture());
+        verify(query).deletePersistentAll(1L, false);
+
+        assertThat(stringCaptor.getValue(), containsString("record__HistoryCurrentVersion == param0_0"));
+        assertThat(stringCaptor.getValue(), containsString("record__HistoryFromTrash == param1"));
+    }
+
     @Test
     public void shouldNotSetTrashFlagIfClassNotFound() throws Exception {
         doReturn(null).when(classLoader).loadClass(anyString());
@@ -218,4 +259,133 @@ public class HistoryServiceTest {
         verify(manager).makePersistentAll(collection);
     }
 
+    @Test
+    public void shouldSaveCompactRevisionInTransaction() throws Exception {
+        setUpCompactEntity();
+
+        Record instance = new Record();
+        instance.setValue("first");
+
+        historyService.record(instance);
+
+        verify(manager).makePersistentAll(listCaptor.capture());
+        verify(manager, never()).makePersistent(any());
+
+        HistoryOutboxEntry entry = (HistoryOutboxEntry) listCaptor.getValue().get(0);
+
+        assertEquals(Record__History.class.getName(), entry.getHistoryClassName());
+        assertEquals(Record.class.getName(), entry.getEntityClassName());
+        assertEquals(instance.getId(), entry.getInstanceId());
+        assertEquals("first", ((Map) SerializationUtils.deserialize(entry.getChangeValues())).get("value"));
+    }
+
+    @Test
+    public void shouldWriteFullCompactRevisionFromOutbox() throws Exception {
+        setUpCompactEntity();
+        doReturn(null).when(query).execute(1L, false);
+
+        List<HistoryOutboxEntry> entries = Arrays.asList(outboxEntry("first"));
+        doReturn(entries).when(outboxQuery).execute();
+
+        assertEquals(1, ((HistoryServiceImpl) historyService).writePendingRevisions());
+
+        verify(manager).makePersistentAll(listCaptor.capture());
+        verify(manager).deletePersistentAll(entries);
+        verify(transaction).setSerializeRead(true);
+
+        Record__History revision = (Record__History) listCaptor.getValue().get(0);
+
+        assertEquals(Long.valueOf(1L), revision.getRecord__HistoryCurrentVersion());
+        assertEquals(Long.valueOf(3L), revision.getRecord__HistorySchemaVersion());
+        assertEquals("first", revision.getValue());
+        assertNull(revision.getRecord__HistoryChangedFields());
+    }
+
+    @Test
+    public void shouldRecordOnlyChangedFields() throws Exception {
+        setUpCompactEntity();
+
+        Record__History full = new Record__History(1L, "first");
+        full.setId(5L);
+
+        doReturn(full).when(query).execute(1L, false);
+        doReturn(Arrays.asList(full)).when(query).execute(1L, false, 5L);
+        doReturn(Arrays.asList(outboxEntry("first"))).when(outboxQuery).execute();
+
+        ((HistoryServiceImpl) historyService).writePendingRevisions();
+
+        verify(manager).makePersistentAll(listCaptor.capture());
+
+        Record__History revision = (Record__History) listCaptor.getValue().get(0);
+
+        assertEquals(Long.valueOf(1L), revision.getRecord__HistoryCurrentVersion());
+        assertNull(revision.getValue());
+        assertEquals(",", revision.getRecord__HistoryChangedFields());
+    }
+
+    @Test
+    public void shouldNotWriteAnythingWithoutPendingRevisions() throws Exception {
+        doReturn(new ArrayList<>()).when(outboxQuery).execute();
+
+        assertEquals(0, ((HistoryServiceImpl) historyService).writePendingRevisions());
+
+        verify(manager, never()).makePersistentAll(any(List.class));
+        verify(manager, never()).deletePersistentAll(any(List.class));
+    }
+
+    @Test
+    public void shouldReconstructCompactRevisions() throws Exception {
+        setUpCompactEntity();
+
+        Record__History full = new Record__History(1L, "first");
+        full.setId(5L);
+
+        Record__History unchanged = new Record__History(1L, null);
+        unchanged.setId(6L);
+        unchanged.setRecord__HistoryChangedFields(",");
+
+        Record__History latest = new Record__History(1L, "second");
+        latest.setId(7L);
+        latest.setRecord__HistoryChangedFields(",value,");
+
+        doReturn(1L).doReturn(Arrays.asList(full, unchanged, latest)).when(query).execute(1L, false);
+
+        List history = historyService.getHistoryForInstance(new Record(), null);
+
+        assertEquals(2, history.size());
+        assertSame(full, history.get(0));
+
+        Record__History reconstructed = (Record__History) history.get(1);
+
+        assertEquals(Long.valueOf(6L), reconstructed.getId());
+        assertEquals(Long.valueOf(1L), reconstructed.getRecord__HistoryCurrentVersion());
+        assertEquals("first", reconstructed.getValue());
+    }
+
+    private void setUpCompactEntity() {
+        Entity entity = mock(Entity.class);
+
+        Field valueField = mock(Field.class);
+        doReturn("value").when(valueField).getName();
+
+        Type valueType = mock(Type.class);
+        doReturn(valueType).when(valueField).getType();
+        doReturn(String.class.getName()).when(valueType).getTypeClassName();
+        doReturn(String.class).when(valueType).getTypeClass();
+
+        doReturn(3L).when(entity).getEntityVersion();
+        doReturn(true).when(entity).isCompactHistory();
+        doReturn(Arrays.asList(valueField)).when(entity).getFields();
+        doReturn(valueField).when(entity).getField("value");
+
+        doReturn(entity).when(allEntities).retrieveByClassName(Record.class.getName());
+    }
+
+    private HistoryOutboxEntry outboxEntry(String value) {
+        HashMap<String, Object> values = new HashMap<>();
+        values.put("value", value);
+
+        return new HistoryOutboxEntry(Record__History.class.getName(), Record.class.getName(), 1L,
+                SerializationUtils.serialize(values));
+    }
 }
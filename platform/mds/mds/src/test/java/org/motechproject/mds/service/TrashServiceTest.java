@@ -18,6 +18,7 @@ import org.motechproject.mds.query.QueryExecutor;
 import org.motechproject.mds.repository.AllEntities;
 import org.motechproject.mds.service.impl.history.TrashServiceImpl;
 import org.motechproject.mds.testutil.records.Record;
+import org.motechproject.mds.testutil.records.history.Record__History;
 import org.motechproject.mds.testutil.records.history.Record__Trash;
 import org.motechproject.mds.util.MDSClassLoader;
 import org.osgi.framework.Bundle;
@@ -25,21 +26,29 @@ import org.osgi.framework.BundleContext;
 import org.osgi.framework.wiring.BundleWiring;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.orm.jdo.JdoTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 
 import javax.jdo.PersistenceManager;
 import javax.jdo.PersistenceManagerFactory;
 import javax.jdo.Query;
 
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.motechproject.mds.util.Constants.Util.MODIFICATION_DATE_FIELD_NAME;
 import static org.motechproject.testing.utils.TimeFaker.fakeNow;
 import static org.motechproject.testing.utils.TimeFaker.stopFakingTime;
 
@@ -80,6 +89,9 @@ public class TrashServiceTest {
     @Mock
     private BundleWiring bundleWiring;
 
+    @Mock
+    private JdoTransactionManager transactionManager;
+
     @Mock
     Entity entity;
 
@@ -99,6 +111,7 @@ public class TrashServiceTest {
         ((TrashServiceImpl) trashService).setMdsSchedulerService(schedulerService);
         ((TrashServiceImpl) trashService).setPersistenceManagerFactory(factory);
         ((TrashServiceImpl) trashService).setBundleContext(bundleContext);
+        ((TrashServiceImpl) trashService).setTransactionManager(transactionManager);
 
         doReturn(manager).when(factory).getPersistenceManager();
         doReturn(query).when(manager).newQuery(Record.class);
@@ -225,4 +238,41 @@ public class TrashServiceTest {
             stopFakingTime();
         }
     }
+
+    @Test
+    public void shouldEmptyTrashInChunks() throws Exception {
+        doReturn(Record__Trash.class).when(classLoader).loadClass("org.test.history.TestEntity__Trash");
+        doReturn(Record__History.class).when(classLoader).loadClass("org.test.history.TestEntity__History");
+
+        Query idQuery = mock(Query.class);
+        Query trashQuery = mock(Query.class);
+        Query historyQuery = mock(Query.class);
+
+        doReturn(idQuery).doReturn(trashQuery).when(manager).newQuery(Record__Trash.class);
+        doReturn(historyQuery).when(manager).newQuery(Record__History.class);
+
+        doReturn("org.test.TestEntity").when(entity).getClassName();
+        doReturn(true).when(entity).isActualEntity();
+        doReturn(true).when(entity).isRecordHistory();
+        doReturn(mock(Field.class)).when(entity).getField(MODIFICATION_DATE_FIELD_NAME);
+        doReturn(asList(entity)).when(allEntities).retrieveAll();
+
+        doReturn(1).when(settingsService).getTimeValue();
+        doReturn(TimeUnit.HOURS).when(settingsService).getTimeUnit();
+
+        doReturn(asList(3L, 4L)).when(idQuery).executeWithArray((Object[]) anyVararg());
+        doReturn(5L).when(historyQuery).deletePersistentAll((Object[]) anyVararg());
+        doReturn(2L).when(trashQuery).deletePersistentAll((Object[]) anyVararg());
+
+        trashService.emptyTrash();
+
+        verify(idQuery).setFilter("modificationDate < param0");
+        verify(idQuery).setResult("id");
+        verify(idQuery).setRange(0, 1000);
+        verify(historyQuery).deletePersistentAll((Object[]) anyVararg());
+        verify(trashQuery).deletePersistentAll((Object[]) anyVararg());
+        verify(manager, never()).deletePersistentAll(anyCollection());
+        // one transaction for reading entities and one for the single chunk
+        verify(transactionManager, times(2)).commit(any(TransactionStatus.class));
+    }
 }
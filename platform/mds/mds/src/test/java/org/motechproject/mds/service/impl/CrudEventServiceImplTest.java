@@ -0,0 +1,145 @@
+package org.motechproject.mds.service.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.motechproject.mds.config.MdsConfig;
+import org.motechproject.mds.dto.EventStatisticsDto;
+import org.motechproject.server.osgi.event.OsgiEventProxy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.motechproject.mds.util.Constants.Config.MDS_EVENTS_BATCH_PER_TRANSACTION;
+import static org.motechproject.mds.util.Constants.Config.MDS_EVENTS_MAX_PER_SECOND;
+import static org.motechproject.mds.util.Constants.Config.MODULE_FILE;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CrudEventServiceImplTest {
+
+    private static final String ENTITY_CLASS = "org.motechproject.Entity";
+    private static final String OTHER_ENTITY_CLASS = "org.motechproject.OtherEntity";
+    private static final String SUBJECT = "mds.crud.Entity.CREATE";
+
+    @Mock
+    private MdsConfig mdsConfig;
+
+    @Mock
+    private OsgiEventProxy osgiEventProxy;
+
+    private Properties properties = new Properties();
+
+    private CrudEventServiceImpl crudEventService;
+
+    @Before
+    public void setUp() {
+        when(mdsConfig.getProperties(MODULE_FILE)).thenReturn(properties);
+
+        crudEventService = new CrudEventServiceImpl();
+        crudEventService.setMdsConfig(mdsConfig);
+        crudEventService.setOsgiEventProxy(osgiEventProxy);
+    }
+
+    @After
+    public void tearDown() {
+        crudEventService.destroy();
+    }
+
+    @Test
+    public void shouldReadConfiguration() {
+        crudEventService.init();
+        assertFalse(crudEventService.isBatchPerTransaction(ENTITY_CLASS));
+
+        properties.setProperty(MDS_EVENTS_BATCH_PER_TRANSACTION, " true ");
+        crudEventService.init();
+        assertTrue(crudEventService.isBatchPerTransaction(ENTITY_CLASS));
+    }
+
+    @Test
+    public void shouldReadBatchingOfTheEntity() {
+        properties.setProperty(MDS_EVENTS_BATCH_PER_TRANSACTION + "." + ENTITY_CLASS, "true");
+        crudEventService.init();
+
+        assertTrue(crudEventService.isBatchPerTransaction(ENTITY_CLASS));
+        assertFalse(crudEventService.isBatchPerTransaction(OTHER_ENTITY_CLASS));
+    }
+
+    @Test
+    public void shouldSendEventsAndCountThem() {
+        crudEventService.init();
+        Map<String, Object> params = new HashMap<>();
+
+        crudEventService.sendEvent(ENTITY_CLASS, SUBJECT, params, 1);
+        crudEventService.sendEvent(ENTITY_CLASS, SUBJECT + ".batch", params, 100);
+
+        verify(osgiEventProxy).sendEvent(SUBJECT, params);
+        verify(osgiEventProxy).sendEvent(SUBJECT + ".batch", params);
+
+        List<EventStatisticsDto> statistics = crudEventService.getStatistics();
+        assertEquals(1, statistics.size());
+        assertEquals(new EventStatisticsDto(ENTITY_CLASS, 2, 101, 0, 0, 0), statistics.get(0));
+        assertEquals(50.5, statistics.get(0).getInstancesPerEvent(), 0.001);
+    }
+
+    @Test
+    public void shouldDeferEventsOverTheLimitInOrder() {
+        properties.setProperty(MDS_EVENTS_MAX_PER_SECOND, "20");
+        crudEventService.init();
+
+        List<Map<String, Object>> params = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            params.add(Collections.<String, Object>singletonMap("index", i));
+        }
+
+        long start = System.currentTimeMillis();
+        for (Map<String, Object> eventParams : params) {
+            crudEventService.sendEvent(ENTITY_CLASS, SUBJECT, eventParams, 1);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        // the first event is sent right away, the next ones 50 ms apart, without blocking the sending thread
+        InOrder inOrder = inOrder(osgiEventProxy);
+        for (Map<String, Object> eventParams : params) {
+            inOrder.verify(osgiEventProxy, timeout(1000)).sendEvent(SUBJECT, eventParams);
+        }
+
+        EventStatisticsDto statistics = crudEventService.getStatistics().get(0);
+        assertEquals(2, statistics.getThrottledEvents());
+        assertEquals(0, statistics.getDroppedEvents());
+        assertTrue(elapsed < 90);
+    }
+
+    @Test
+    public void shouldUseLimitOfTheEntity() {
+        properties.setProperty(MDS_EVENTS_MAX_PER_SECOND + "." + ENTITY_CLASS, "1");
+        crudEventService.init();
+        Map<String, Object> params = new HashMap<>();
+
+        for (int i = 0; i < 3; ++i) {
+            crudEventService.sendEvent(ENTITY_CLASS, SUBJECT, params, 1);
+            crudEventService.sendEvent(OTHER_ENTITY_CLASS, SUBJECT, params, 1);
+        }
+
+        for (EventStatisticsDto statistics : crudEventService.getStatistics()) {
+            assertEquals(ENTITY_CLASS.equals(statistics.getEntityClassName()) ? 2 : 0,
+                    statistics.getThrottledEvents());
+        }
+        verify(osgiEventProxy, times(4)).sendEvent(SUBJECT, params);
+    }
+}
@@ -0,0 +1,99 @@
+package org.motechproject.mds.service.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.motechproject.mds.config.MdsConfig;
+import org.motechproject.mds.query.QueryResultCache;
+import org.motechproject.server.osgi.event.OsgiEventProxy;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.motechproject.mds.service.MdsCacheService.CACHE_INVALIDATE;
+import static org.motechproject.mds.util.Constants.Config.MDS_CACHE_INVALIDATION_DELAY;
+import static org.motechproject.mds.util.Constants.Config.MODULE_FILE;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MdsCacheServiceImplTest {
+
+    @Mock
+    private MdsConfig mdsConfig;
+
+    @Mock
+    private OsgiEventProxy osgiEventProxy;
+
+    private Properties properties = new Properties();
+
+    private MdsCacheServiceImpl cacheService;
+
+    @Before
+    public void setUp() {
+        when(mdsConfig.getProperties(MODULE_FILE)).thenReturn(properties);
+
+        cacheService = new MdsCacheServiceImpl();
+        cacheService.setMdsConfig(mdsConfig);
+        cacheService.setOsgiEventProxy(osgiEventProxy);
+    }
+
+    @After
+    public void tearDown() {
+        cacheService.destroy();
+    }
+
+    @Test
+    public void shouldBroadcastEveryInvalidationWithoutDelay() {
+        properties.setProperty(MDS_CACHE_INVALIDATION_DELAY, "0");
+        cacheService.init();
+
+        cacheService.invalidate(String.class);
+        cacheService.invalidate(String.class);
+
+        verify(osgiEventProxy, times(2)).broadcastEvent(eq(CACHE_INVALIDATE), anyMapOf(String.class, Object.class),
+                eq(true));
+    }
+
+    @Test
+    public void shouldCoalesceBroadcastsOfEntity() throws InterruptedException {
+        properties.setProperty(MDS_CACHE_INVALIDATION_DELAY, "100");
+        cacheService.init();
+
+        QueryResultCache cache = cacheService.getQueryResultCache(String.class);
+        cache.put("key", 1L, cache.getGeneration());
+
+        for (int i = 0; i < 10; ++i) {
+            cacheService.invalidate(String.class);
+        }
+
+        // the local cache is invalidated right away
+        assertNull(cache.get("key"));
+        verify(osgiEventProxy, never()).broadcastEvent(eq(CACHE_INVALIDATE), anyMapOf(String.class, Object.class),
+                eq(true));
+
+        Thread.sleep(500);
+
+        verify(osgiEventProxy).broadcastEvent(eq(CACHE_INVALIDATE), anyMapOf(String.class, Object.class), eq(true));
+    }
+
+    @Test
+    public void shouldBroadcastPendingInvalidationsOnDestroy() {
+        properties.setProperty(MDS_CACHE_INVALIDATION_DELAY, "60000");
+        cacheService.init();
+
+        cacheService.invalidate(String.class);
+        cacheService.invalidate(Integer.class);
+        cacheService.destroy();
+
+        verify(osgiEventProxy, times(2)).broadcastEvent(eq(CACHE_INVALIDATE), anyMapOf(String.class, Object.class),
+                eq(true));
+    }
+}
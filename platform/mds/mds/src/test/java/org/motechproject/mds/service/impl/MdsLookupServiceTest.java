@@ -6,18 +6,21 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.motechproject.mds.dto.EntityDto;
 import org.motechproject.mds.dto.FieldDto;
 import org.motechproject.mds.dto.LookupDto;
 import org.motechproject.mds.dto.LookupFieldDto;
 import org.motechproject.mds.dto.LookupFieldType;
+import org.motechproject.mds.dto.SchemaSnapshot;
 import org.motechproject.mds.ex.lookup.SingleResultFromLookupExpectedException;
 import org.motechproject.mds.javassist.MotechClassPool;
+import org.motechproject.mds.lookup.LookupExecutorCache;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.service.DefaultMotechDataService;
-import org.motechproject.mds.service.EntityService;
 import org.motechproject.mds.service.MDSLookupService;
+import org.motechproject.mds.service.SchemaSnapshotService;
 import org.motechproject.mds.testutil.FieldTestHelper;
 import org.motechproject.mds.testutil.records.Record;
 import org.motechproject.mds.util.Order;
@@ -75,7 +78,13 @@ public class MdsLookupServiceTest {
     private ServiceReference serviceReference;
 
     @Mock
-    private EntityService entityService;
+    private SchemaSnapshotService schemaSnapshotService;
+
+    @Mock
+    private SchemaSnapshot schemaSnapshot;
+
+    @Spy
+    private LookupExecutorCache lookupExecutorCache = new LookupExecutorCache();
 
     @Before
     public void setUp() {
@@ -94,19 +103,23 @@ public class MdsLookupServiceTest {
         LookupDto secondLookup = new LookupDto(SECOND_LOOKUP_NAME, false, false,
                 asList(strLookupField, intLookupField), false);
 
-        when(entityService.getEntityByClassName(ENTITY_CLASS_NAME)).thenReturn(entity);
-        when(entityService.getEntityFields(ENTITY_ID)).thenReturn(asList(intField, strField));
-        when(entityService.getLookupByName(ENTITY_ID, FIRST_LOOKUP_NAME)).thenReturn(firstLookup);
-        when(entityService.getLookupByName(ENTITY_ID, SECOND_LOOKUP_NAME)).thenReturn(secondLookup);
+        when(schemaSnapshotService.getSnapshot()).thenReturn(schemaSnapshot);
+        when(schemaSnapshot.getEntityByClassName(ENTITY_CLASS_NAME)).thenReturn(entity);
+        when(schemaSnapshot.getEntityFields(ENTITY_ID)).thenReturn(asList(intField, strField));
+        when(schemaSnapshot.getLookupByName(ENTITY_ID, FIRST_LOOKUP_NAME)).thenReturn(firstLookup);
+        when(schemaSnapshot.getLookupByName(ENTITY_ID, SECOND_LOOKUP_NAME)).thenReturn(secondLookup);
 
         Map<String, FieldDto> mapping = new HashMap<>();
         mapping.put(STR_PARAM, strField);
         mapping.put(INT_PARAM, intField);
-        when(entityService.getLookupFieldsMapping(ENTITY_ID, FIRST_LOOKUP_NAME)).thenReturn(mapping);
-        when(entityService.getLookupFieldsMapping(ENTITY_ID, SECOND_LOOKUP_NAME)).thenReturn(mapping);
+        when(schemaSnapshot.getLookupFieldsMapping(ENTITY_ID, FIRST_LOOKUP_NAME)).thenReturn(mapping);
+        when(schemaSnapshot.getLookupFieldsMapping(ENTITY_ID, SECOND_LOOKUP_NAME)).thenReturn(mapping);
 
         when(bundleContext.getServiceReference(TestDataService.class.getName())).thenReturn(serviceReference);
         when(bundleContext.getService(serviceReference)).thenReturn(dataService);
+
+        lookupExecutorCache.setSchemaSnapshotService(schemaSnapshotService);
+        lookupExecutorCache.setBundleContext(bundleContext);
     }
 
     @After
@@ -0,0 +1,155 @@
+package org.motechproject.mds.service.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.motechproject.mds.dto.AdvancedSettingsDto;
+import org.motechproject.mds.dto.EntityDto;
+import org.motechproject.mds.dto.FieldDto;
+import org.motechproject.mds.dto.LookupDto;
+import org.motechproject.mds.dto.SchemaSnapshot;
+import org.motechproject.mds.ex.entity.EntityNotFoundException;
+import org.motechproject.mds.service.EntityService;
+import org.motechproject.mds.service.SchemaSnapshotService;
+import org.motechproject.mds.testutil.FieldTestHelper;
+import org.motechproject.server.osgi.event.OsgiEventProxy;
+import org.osgi.service.event.Event;
+import org.springframework.orm.jdo.JdoTransactionManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SchemaSnapshotServiceImplTest {
+
+    private static final Long ENTITY_ID = 3L;
+    private static final String ENTITY_CLASS = "org.motechproject.Sample";
+    private static final String LOOKUP_NAME = "byName";
+
+    @Mock
+    private EntityService entityService;
+
+    @Mock
+    private JdoTransactionManager transactionManager;
+
+    @Mock
+    private OsgiEventProxy osgiEventProxy;
+
+    private EntityDto entity = new EntityDto(ENTITY_ID, ENTITY_CLASS);
+    private FieldDto field = FieldTestHelper.fieldDto(7L, "name", String.class.getName(), "Name", null);
+    private LookupDto lookup = new LookupDto(LOOKUP_NAME, false, false);
+
+    private SchemaSnapshotServiceImpl schemaSnapshotService;
+
+    @Before
+    public void setUp() {
+        AdvancedSettingsDto advancedSettings = new AdvancedSettingsDto();
+        advancedSettings.setIndexes(Arrays.asList(lookup));
+
+        Map<String, FieldDto> mapping = new HashMap<>();
+        mapping.put("name", field);
+
+        when(entityService.listEntities()).thenReturn(Arrays.asList(entity));
+        when(entityService.getEntityByClassName(ENTITY_CLASS)).thenReturn(entity);
+        when(entityService.getCurrentSchemaVersion(ENTITY_CLASS)).thenReturn(5L);
+        when(entityService.getEntityFields(ENTITY_ID)).thenReturn(Arrays.asList(field));
+        when(entityService.getAdvancedSettings(ENTITY_ID, true)).thenReturn(advancedSettings);
+        when(entityService.getLookupByName(ENTITY_ID, LOOKUP_NAME)).thenReturn(lookup);
+        when(entityService.getLookupFieldsMapping(ENTITY_ID, LOOKUP_NAME)).thenReturn(mapping);
+
+        schemaSnapshotService = new SchemaSnapshotServiceImpl();
+        schemaSnapshotService.setEntityService(entityService);
+        schemaSnapshotService.setTransactionManager(transactionManager);
+        schemaSnapshotService.setOsgiEventProxy(osgiEventProxy);
+    }
+
+    @Test
+    public void shouldBuildSnapshotOnce() {
+        SchemaSnapshot snapshot = schemaSnapshotService.getSnapshot();
+
+        assertSame(snapshot, schemaSnapshotService.getSnapshot());
+        verify(entityService, times(1)).listEntities();
+
+        assertSame(entity, snapshot.getEntity(ENTITY_ID));
+        assertSame(entity, snapshot.getEntityByClassName(ENTITY_CLASS));
+        assertEquals(Long.valueOf(5), snapshot.getCurrentSchemaVersion(ENTITY_CLASS));
+        assertEquals(Arrays.asList(field), snapshot.getEntityFields(ENTITY_ID));
+        assertSame(field, snapshot.getEntityFieldById(ENTITY_ID, 7L));
+        assertSame(lookup, snapshot.getLookupByName(ENTITY_ID, LOOKUP_NAME));
+        assertSame(field, snapshot.getLookupFieldsMapping(ENTITY_ID, LOOKUP_NAME).get("name"));
+        assertNull(snapshot.getLookupByName(ENTITY_ID, "unknown"));
+    }
+
+    @Test(expected = EntityNotFoundException.class)
+    public void shouldThrowExceptionForUnknownEntity() {
+        schemaSnapshotService.getSnapshot().getCurrentSchemaVersion("org.motechproject.Unknown");
+    }
+
+    @Test
+    public void shouldRefreshEntityAndBroadcastIt() {
+        SchemaSnapshot snapshot = schemaSnapshotService.getSnapshot();
+        when(entityService.getCurrentSchemaVersion(ENTITY_CLASS)).thenReturn(6L);
+
+        schemaSnapshotService.refreshEntity(ENTITY_CLASS);
+
+        SchemaSnapshot refreshed = schemaSnapshotService.getSnapshot();
+        assertTrue(refreshed.getVersion() > snapshot.getVersion());
+        assertEquals(Long.valueOf(5), snapshot.getCurrentSchemaVersion(ENTITY_CLASS));
+        assertEquals(Long.valueOf(6), refreshed.getCurrentSchemaVersion(ENTITY_CLASS));
+        verify(osgiEventProxy).broadcastEvent(eq(SchemaSnapshotService.SCHEMA_CHANGED),
+                anyMapOf(String.class, Object.class), eq(true));
+    }
+
+    @Test
+    public void shouldRemoveDeletedEntity() {
+        schemaSnapshotService.getSnapshot();
+        when(entityService.getEntityByClassName(ENTITY_CLASS)).thenReturn(null);
+
+        schemaSnapshotService.refreshEntity(ENTITY_CLASS);
+
+        assertNull(schemaSnapshotService.getSnapshot().getEntityByClassName(ENTITY_CLASS));
+    }
+
+    @Test
+    public void shouldRefreshEntityChangedByOtherInstance() {
+        schemaSnapshotService.getSnapshot();
+        when(entityService.getCurrentSchemaVersion(ENTITY_CLASS)).thenReturn(6L);
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("entity_class_name", ENTITY_CLASS);
+        params.put("instance_id", "other");
+        schemaSnapshotService.handleEvent(new Event(SchemaSnapshotService.SCHEMA_CHANGED, params));
+
+        assertEquals(Long.valueOf(6), schemaSnapshotService.getSnapshot().getCurrentSchemaVersion(ENTITY_CLASS));
+        verify(osgiEventProxy, never()).broadcastEvent(eq(SchemaSnapshotService.SCHEMA_CHANGED),
+                anyMapOf(String.class, Object.class), eq(true));
+    }
+
+    @Test
+    public void shouldSkipBrokenEntities() {
+        EntityDto broken = new EntityDto(4L, "org.motechproject.Broken");
+        when(entityService.listEntities()).thenReturn(Arrays.asList(broken, entity));
+        when(entityService.getAdvancedSettings(4L, true)).thenThrow(new IllegalStateException());
+
+        SchemaSnapshot snapshot = schemaSnapshotService.getSnapshot();
+
+        assertNull(snapshot.getEntity(4L));
+        assertSame(entity, snapshot.getEntity(ENTITY_ID));
+        assertEquals(Collections.singletonList(field), snapshot.getEntityFields(ENTITY_ID));
+    }
+}
@@ -6,7 +6,10 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.motechproject.mds.dto.CsvImportOptions;
 import org.motechproject.mds.dto.CsvImportResults;
 import org.motechproject.mds.dto.EntityDto;
 import org.motechproject.mds.ex.csv.CsvImportException;
@@ -22,6 +25,7 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -30,6 +34,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -51,6 +56,7 @@ public class CsvImportExportServiceTest {
     private static final String EXPECTED_BASE_SUBJECT = "mds.crud.examplemodule.some-namespace.Something.";
     private static final String EXPECTED_SUCCESS_SUBJECT = EXPECTED_BASE_SUBJECT + "csv-import.success";
     private static final String EXPECTED_FAILURE_SUBJECT = EXPECTED_BASE_SUBJECT + "csv-import.failure";
+    private static final String EXPECTED_PROGRESS_SUBJECT = EXPECTED_BASE_SUBJECT + "csv-import.progress";
 
     @InjectMocks
     private CsvImportExportService csvImportExportService = new CsvImportExportServiceImpl();
@@ -90,30 +96,63 @@ public class CsvImportExportServiceTest {
     @Test
     public void shouldImportInstancesByClassName() {
         CsvImportResults importResults = new CsvImportResults(entityDto, NEW_IDS, UPDATED_IDS);
-        when(csvImporterExporter.importCsv(ENTITY_CLASS_NAME, reader)).thenReturn(importResults);
+        when(csvImporterExporter.importCsv(eq(ENTITY_CLASS_NAME), eq(reader), any(DefaultCsvImportCustomizer.class),
+                any(CsvImportOptions.class), any(CsvImportProgress.class))).thenReturn(importResults);
 
         csvImportExportService.importCsv(ENTITY_CLASS_NAME, reader, FILE_NAME);
 
-        verify(csvImporterExporter).importCsv(ENTITY_CLASS_NAME, reader);
+        verify(csvImporterExporter).importCsv(eq(ENTITY_CLASS_NAME), eq(reader), any(DefaultCsvImportCustomizer.class),
+                any(CsvImportOptions.class), any(CsvImportProgress.class));
         verifyImportSuccessEvent();
     }
 
     @Test
     public void shouldImportInstancesById() {
         CsvImportResults importResults = new CsvImportResults(entityDto, NEW_IDS, UPDATED_IDS);
-        when(csvImporterExporter.importCsv(eq(ENTITY_ID), eq(reader), any(DefaultCsvImportCustomizer.class)))
-                .thenReturn(importResults);
+        when(csvImporterExporter.importCsv(eq(ENTITY_ID), eq(reader), any(DefaultCsvImportCustomizer.class),
+                any(CsvImportOptions.class), any(CsvImportProgress.class))).thenReturn(importResults);
 
         csvImportExportService.importCsv(ENTITY_ID, reader, FILE_NAME);
 
-        verify(csvImporterExporter).importCsv(eq(ENTITY_ID), eq(reader), any(DefaultCsvImportCustomizer.class));
+        verify(csvImporterExporter).importCsv(eq(ENTITY_ID), eq(reader), any(DefaultCsvImportCustomizer.class),
+                any(CsvImportOptions.class), any(CsvImportProgress.class));
+        verifyImportSuccessEvent();
+    }
+
+    @Test
+    public void shouldSendProgressEventAfterEveryChunk() {
+        final CsvImportResults importResults = new CsvImportResults(entityDto, NEW_IDS, UPDATED_IDS);
+        when(csvImporterExporter.importCsv(eq(ENTITY_ID), eq(reader), any(DefaultCsvImportCustomizer.class),
+                any(CsvImportOptions.class), any(CsvImportProgress.class))).thenAnswer(new Answer<CsvImportResults>() {
+            @Override
+            public CsvImportResults answer(InvocationOnMock invocation) throws Throwable {
+                CsvImportProgress progress = (CsvImportProgress) invocation.getArguments()[4];
+                progress.started(entityDto, 0);
+                progress.chunkCommitted(4, NEW_IDS, Collections.<Long>emptyList());
+                progress.chunkCommitted(3, Collections.<Long>emptyList(), UPDATED_IDS);
+                return importResults;
+            }
+        });
+
+        csvImportExportService.importCsv(ENTITY_ID, reader, FILE_NAME);
+
+        ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(osgiEventProxy, times(2)).sendEvent(eq(EXPECTED_PROGRESS_SUBJECT), captor.capture());
+
+        Map<String, Object> params = captor.getAllValues().get(1);
+        assertEquals(7L, params.get(Constants.MDSEvents.CSV_IMPORT_PROCESSED_ROWS));
+        assertEquals(4, params.get(Constants.MDSEvents.CSV_IMPORT_CREATED_COUNT));
+        assertEquals(3, params.get(Constants.MDSEvents.CSV_IMPORT_UPDATED_COUNT));
+        assertEquals(FILE_NAME, params.get(Constants.MDSEvents.CSV_IMPORT_FILENAME));
+        assertEntityParams(params);
+
         verifyImportSuccessEvent();
     }
 
     @Test
     public void shouldThrowImportFailureExceptionWhenImportingById() {
-        when(csvImporterExporter.importCsv(eq(ENTITY_ID), eq(reader), any(DefaultCsvImportCustomizer.class)))
-                .thenThrow(new CsvImportException(FAILURE_EX_MSG));
+        when(csvImporterExporter.importCsv(eq(ENTITY_ID), eq(reader), any(DefaultCsvImportCustomizer.class),
+                any(CsvImportOptions.class), any(CsvImportProgress.class))).thenThrow(new CsvImportException(FAILURE_EX_MSG));
         when(entityService.getEntity(ENTITY_ID)).thenReturn(entityDto);
 
         boolean thrown = false;
@@ -124,13 +163,15 @@ public class CsvImportExportServiceTest {
         }
         assertTrue("CSV Import exception was not propagated", thrown);
 
-        verify(csvImporterExporter).importCsv(eq(ENTITY_ID), eq(reader), any(DefaultCsvImportCustomizer.class));
+        verify(csvImporterExporter).importCsv(eq(ENTITY_ID), eq(reader), any(DefaultCsvImportCustomizer.class),
+                any(CsvImportOptions.class), any(CsvImportProgress.class));
         verifyImportFailureEvent();
     }
 
     @Test
     public void shouldThrowImportFailureExceptionWhenImportingByClassName() {
-        when(csvImporterExporter.importCsv(ENTITY_CLASS_NAME, reader)).thenThrow(new CsvImportException(FAILURE_EX_MSG));
+        when(csvImporterExporter.importCsv(eq(ENTITY_CLASS_NAME), eq(reader), any(DefaultCsvImportCustomizer.class),
+                any(CsvImportOptions.class), any(CsvImportProgress.class))).thenThrow(new CsvImportException(FAILURE_EX_MSG));
         when(entityService.getEntityByClassName(ENTITY_CLASS_NAME)).thenReturn(entityDto);
 
         boolean thrown = false;
@@ -141,7 +182,8 @@ public class CsvImportExportServiceTest {
         }
         assertTrue("CSV Import exception was not propagated", thrown);
 
-        verify(csvImporterExporter).importCsv(ENTITY_CLASS_NAME, reader);
+        verify(csvImporterExporter).importCsv(eq(ENTITY_CLASS_NAME), eq(reader), any(DefaultCsvImportCustomizer.class),
+                any(CsvImportOptions.class), any(CsvImportProgress.class));
         verifyImportFailureEvent();
     }
 
@@ -265,6 +307,7 @@ public class CsvImportExportServiceTest {
         assertEquals(FILE_NAME, params.get(Constants.MDSEvents.CSV_IMPORT_FILENAME));
         assertEquals(FAILURE_EX_MSG, params.get(Constants.MDSEvents.CSV_IMPORT_FAILURE_MSG));
         assertNotNull(params.get(Constants.MDSEvents.CSV_IMPORT_FAILURE_STACKTRACE));
+        assertEquals(0L, params.get(Constants.MDSEvents.CSV_IMPORT_PROCESSED_ROWS));
         assertEntityParams(params);
     }
 
@@ -11,13 +11,16 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 import org.motechproject.mds.domain.Entity;
+import org.motechproject.mds.dto.CsvImportOptions;
 import org.motechproject.mds.dto.CsvImportResults;
 import org.motechproject.mds.dto.EntityDto;
 import org.motechproject.mds.javassist.MotechClassPool;
+import org.motechproject.mds.query.QueryExecution;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.repository.AllEntities;
 import org.motechproject.mds.service.CsvExportCustomizer;
 import org.motechproject.mds.service.CsvImportCustomizer;
+import org.motechproject.mds.service.DefaultCsvImportCustomizer;
 import org.motechproject.mds.service.MDSLookupService;
 import org.motechproject.mds.service.MotechDataService;
 import org.motechproject.mds.domain.UIDisplayFieldComparator;
@@ -26,11 +29,14 @@ import org.motechproject.mds.testutil.records.RecordEnum;
 import org.motechproject.mds.testutil.records.RelatedClass;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
+import org.springframework.orm.jdo.JdoTransactionManager;
 
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -38,6 +44,8 @@ import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Mockito.eq;
@@ -96,6 +104,9 @@ public class CsvImporterExporterTest {
     @Mock
     private MDSLookupService mdsLookupService;
 
+    @Mock
+    private JdoTransactionManager transactionManager;
+
     @Before
     public void setUp() {
         MotechClassPool.registerServiceInterface(ENTITY_CLASSNAME, DATA_SERVICE_CLASSNAME);
@@ -108,8 +119,8 @@ public class CsvImporterExporterTest {
         when(bundleContext.getService(relatedServiceRef)).thenReturn(relatedDataService);
         when(relatedDataService.getClassType()).thenReturn(RelatedClass.class);
 
-        when(relatedDataService.findById(0L)).thenReturn(new RelatedClass(0L));
-        when(relatedDataService.findById(1L)).thenReturn(new RelatedClass(1L));
+        when(relatedDataService.executeQuery(any(QueryExecution.class)))
+                .thenReturn(Arrays.asList(new RelatedClass(0L), new RelatedClass(1L)));
 
         when(allEntities.retrieveById(ENTITY_ID)).thenReturn(entity);
 
@@ -126,7 +137,7 @@ public class CsvImporterExporterTest {
 
     @Test
     public void shouldExportAllInstancesAsCsv() {
-        when(motechDataService.retrieveAll(any(QueryParams.class))).thenReturn(testInstances(IdMode.INCLUDE_ID));
+        when(motechDataService.executeQuery(any(QueryExecution.class))).thenReturn(testInstances(IdMode.INCLUDE_ID));
         StringWriter writer = new StringWriter();
 
         long result = csvImporterExporter.exportCsv(ENTITY_ID, writer);
@@ -137,7 +148,7 @@ public class CsvImporterExporterTest {
 
     @Test
     public void shouldUseExportCustomizer() {
-        when(motechDataService.retrieveAll(any(QueryParams.class))).thenReturn(testInstances(IdMode.INCLUDE_ID));
+        when(motechDataService.executeQuery(any(QueryExecution.class))).thenReturn(testInstances(IdMode.INCLUDE_ID));
         StringWriter writer = new StringWriter();
 
         long result = csvImporterExporter.exportCsv(ENTITY_ID, writer, csvExportCustomizer);
@@ -161,6 +172,91 @@ public class CsvImporterExporterTest {
         assertEquals(getTestEntityRecordsAsCsv(IdMode.INCLUDE_ID), writer.toString());
     }
 
+    @Test
+    public void shouldExportLookupResultsInChunks() {
+        List<Record2> firstChunk = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            firstChunk.add(new Record2());
+        }
+        when(mdsLookupService.findMany(any(String.class), eq("lookup"), any(Map.class), any(QueryParams.class)))
+                .thenReturn(firstChunk, testInstances(IdMode.INCLUDE_ID));
+        StringWriter writer = new StringWriter();
+
+        long result = csvImporterExporter.exportCsv(ENTITY_ID, writer, "lookup", null, Arrays.asList("id", "value"), null);
+
+        assertEquals(1000 + INSTANCE_COUNT, result);
+
+        ArgumentCaptor<QueryParams> captor = ArgumentCaptor.forClass(QueryParams.class);
+        verify(mdsLookupService, times(2)).findMany(any(String.class), eq("lookup"), any(Map.class), captor.capture());
+        assertEquals(Integer.valueOf(1), captor.getAllValues().get(0).getPage());
+        assertEquals(Integer.valueOf(2), captor.getAllValues().get(1).getPage());
+        assertEquals(Integer.valueOf(1000), captor.getAllValues().get(1).getPageSize());
+    }
+
+    @Test
+    public void shouldExportSelectedColumnsUsingProjection() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Record2 instance : testInstances(IdMode.INCLUDE_ID)) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", instance.getId());
+            row.put("value", instance.getValue());
+            rows.add(row);
+        }
+        when(motechDataService.retrieveProjection(anyListOf(String.class), any(QueryParams.class))).thenReturn(rows);
+        StringWriter writer = new StringWriter();
+
+        long result = csvImporterExporter.exportCsv(ENTITY_ID, writer, "", null, Arrays.asList("id", "value"), null);
+
+        assertEquals(INSTANCE_COUNT, result);
+
+        StringBuilder expected = new StringBuilder("value,id\r\n");
+        for (int i = 0; i < INSTANCE_COUNT; i++) {
+            expected.append("value ").append(i).append(',').append(i).append("\r\n");
+        }
+        assertEquals(expected.toString(), writer.toString());
+
+        ArgumentCaptor<QueryParams> captor = ArgumentCaptor.forClass(QueryParams.class);
+        verify(motechDataService).retrieveProjection(eq(Arrays.asList("value", "id")), captor.capture());
+        assertTrue(captor.getValue().isKeysetSet());
+        verify(motechDataService, never()).executeQuery(any(QueryExecution.class));
+    }
+
+    @Test
+    public void shouldExportOnlyRequestedNumberOfRecords() {
+        when(mdsLookupService.findMany(any(String.class), eq("lookup"), any(Map.class), any(QueryParams.class)))
+                .thenReturn(testInstances(IdMode.INCLUDE_ID));
+        StringWriter writer = new StringWriter();
+
+        long result = csvImporterExporter.exportCsv(ENTITY_ID, writer, "lookup", new QueryParams(1, 5),
+                Arrays.asList("id", "value"), null);
+
+        assertEquals(5, result);
+    }
+
+    @Test
+    public void shouldExportLargeRequestedPageInBoundedChunks() {
+        List<Record2> chunk = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            chunk.add(new Record2());
+        }
+        when(mdsLookupService.findMany(any(String.class), eq("lookup"), any(Map.class), any(QueryParams.class)))
+                .thenReturn(chunk);
+        StringWriter writer = new StringWriter();
+
+        // the requested page covers the second half of the second chunk and the whole third one
+        long result = csvImporterExporter.exportCsv(ENTITY_ID, writer, "lookup", new QueryParams(2, 1500),
+                Arrays.asList("id", "value"), null);
+
+        assertEquals(1500, result);
+
+        ArgumentCaptor<QueryParams> captor = ArgumentCaptor.forClass(QueryParams.class);
+        verify(mdsLookupService, times(2)).findMany(any(String.class), eq("lookup"), any(Map.class), captor.capture());
+        assertEquals(Integer.valueOf(2), captor.getAllValues().get(0).getPage());
+        assertEquals(Integer.valueOf(1000), captor.getAllValues().get(0).getPageSize());
+        assertEquals(Integer.valueOf(3), captor.getAllValues().get(1).getPage());
+        assertEquals(Integer.valueOf(1000), captor.getAllValues().get(1).getPageSize());
+    }
+
     @Test
     public void shouldImportEntitiesWithIdFromCsv() {
         testImport(IdMode.INCLUDE_ID);
@@ -193,35 +289,110 @@ public class CsvImporterExporterTest {
         assertEquals(INSTANCE_COUNT, results.totalNumberOfImportedInstances());
     }
 
+    @Test
+    public void shouldImportInChunks() {
+        StringReader reader = new StringReader(getTestEntityRecordsAsCsv(IdMode.EMPTY_ID_COLUMN));
+        when(motechDataService.createAll(anyCollection())).thenAnswer(new CreateAllAnswer());
+
+        CsvImportOptions options = new CsvImportOptions();
+        options.setChunkSize(8);
+        options.setParallelism(3);
+        CsvImportProgress progress = new CsvImportProgress();
+
+        CsvImportResults results = csvImporterExporter.importCsv(ENTITY_ID, reader, new DefaultCsvImportCustomizer(),
+                options, progress);
+
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(motechDataService, times(3)).createAll(captor.capture());
+        verify(motechDataService, never()).create(any(Record2.class));
+
+        List<Record2> created = new ArrayList<>();
+        for (Collection chunk : captor.getAllValues()) {
+            created.addAll(chunk);
+        }
+        assertEquals(testInstances(IdMode.EMPTY_ID_COLUMN), created);
+
+        assertEquals(listFromRangeInclusive(0, 19), results.getNewInstanceIDs());
+        assertEquals(INSTANCE_COUNT, progress.getProcessedRows());
+    }
+
+    @Test
+    public void shouldResumeImportFromCheckpoint() {
+        StringReader reader = new StringReader(getTestEntityRecordsAsCsv(IdMode.EMPTY_ID_COLUMN));
+        when(motechDataService.createAll(anyCollection())).thenAnswer(new CreateAllAnswer());
+
+        CsvImportOptions options = new CsvImportOptions();
+        options.setSkipRows(15);
+        CsvImportProgress progress = new CsvImportProgress();
+
+        CsvImportResults results = csvImporterExporter.importCsv(ENTITY_ID, reader, new DefaultCsvImportCustomizer(),
+                options, progress);
+
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(motechDataService).createAll(captor.capture());
+
+        assertEquals(testInstances(IdMode.EMPTY_ID_COLUMN).subList(15, 20), new ArrayList<>(captor.getValue()));
+        assertEquals(5, results.newInstanceCount());
+        assertEquals(INSTANCE_COUNT, progress.getProcessedRows());
+    }
+
+    @Test
+    public void shouldKeepProgressOfCommittedChunksWhenImportFails() {
+        StringReader reader = new StringReader(getTestEntityRecordsAsCsv(IdMode.EMPTY_ID_COLUMN));
+        when(motechDataService.createAll(anyCollection())).thenAnswer(new CreateAllAnswer())
+                .thenThrow(new IllegalStateException("error"));
+
+        CsvImportOptions options = new CsvImportOptions();
+        options.setChunkSize(10);
+        CsvImportProgress progress = new CsvImportProgress();
+
+        boolean thrown = false;
+        try {
+            csvImporterExporter.importCsv(ENTITY_ID, reader, new DefaultCsvImportCustomizer(), options, progress);
+        } catch (IllegalStateException e) {
+            thrown = true;
+        }
+
+        assertTrue(thrown);
+        assertEquals(10, progress.getProcessedRows());
+        assertEquals(listFromRangeInclusive(0, 9), progress.getNewInstanceIDs());
+    }
+
     private void testImport(IdMode idMode) {
         StringReader reader = new StringReader(getTestEntityRecordsAsCsv(idMode));
         // if id provided, prepare entities that will be updated
         if (idMode == IdMode.INCLUDE_ID) {
-            when(motechDataService.update(any(Record2.class))).thenAnswer(new Answer<Record2>() {
+            when(motechDataService.updateAll(anyCollection())).thenAnswer(new Answer<List<Record2>>() {
                 @Override
-                public Record2 answer(InvocationOnMock invocation) throws Throwable {
-                    return (Record2) invocation.getArguments()[0];
+                public List<Record2> answer(InvocationOnMock invocation) throws Throwable {
+                    return new ArrayList<>((Collection<Record2>) invocation.getArguments()[0]);
                 }
             });
+            List<Record2> existing = new ArrayList<>();
             for (long i = 0; i < INSTANCE_COUNT; i++) {
-                when(motechDataService.findById(i)).thenReturn(new Record2());
+                Record2 record = new Record2();
+                record.setId(i);
+                existing.add(record);
             }
+            when(motechDataService.executeQuery(any(QueryExecution.class))).thenReturn(existing);
         } else {
-            when(motechDataService.create(any(Record2.class))).thenAnswer(new CreateAnswer());
+            when(motechDataService.createAll(anyCollection())).thenAnswer(new CreateAllAnswer());
         }
 
         CsvImportResults results = csvImporterExporter.importCsv(ENTITY_ID, reader);
 
-        ArgumentCaptor<Record2> captor = ArgumentCaptor.forClass(Record2.class);
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
         if (idMode == IdMode.INCLUDE_ID) {
-            verify(motechDataService, times(INSTANCE_COUNT)).update(captor.capture());
+            verify(motechDataService).updateAll(captor.capture());
+            verify(motechDataService, never()).createAll(anyCollection());
         } else {
-            verify(motechDataService, times(INSTANCE_COUNT)).create(captor.capture());
+            verify(motechDataService).createAll(captor.capture());
+            verify(motechDataService, never()).updateAll(anyCollection());
         }
 
         assertNotNull(results);
         assertEquals(INSTANCE_COUNT, results.totalNumberOfImportedInstances());
-        assertEquals(testInstances(idMode), captor.getAllValues());
+        assertEquals(testInstances(idMode), new ArrayList<>(captor.getValue()));
 
         assertEquals(ENTITY_CLASSNAME, results.getEntityClassName());
         assertEquals(ENTITY_NAME, results.getEntityName());
@@ -344,6 +515,22 @@ public class CsvImporterExporterTest {
         }
     }
 
+    private class CreateAllAnswer implements Answer<List<Record2>> {
+
+        private long idCounter = 0;
+
+        @Override
+        public List<Record2> answer(InvocationOnMock invocation) throws Throwable {
+            List<Record2> created = new ArrayList<>();
+            for (Object instance : (Collection) invocation.getArguments()[0]) {
+                Record2 record = new Record2();
+                record.setId(idCounter++);
+                created.add(record);
+            }
+            return created;
+        }
+    }
+
     private enum IdMode {
         INCLUDE_ID, EMPTY_ID_COLUMN, NO_ID_COLUMN
     }
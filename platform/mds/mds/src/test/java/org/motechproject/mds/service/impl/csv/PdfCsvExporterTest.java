@@ -11,6 +11,8 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.motechproject.commons.date.util.DateUtil;
 import org.motechproject.mds.domain.Entity;
 import org.motechproject.mds.javassist.MotechClassPool;
+import org.motechproject.mds.query.QueryExecution;
+import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.repository.AllEntities;
 import org.motechproject.mds.service.MotechDataService;
 import org.motechproject.mds.testutil.records.Record2;
@@ -21,11 +23,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -67,6 +73,8 @@ public class PdfCsvExporterTest {
         when(bundleContext.getServiceReference(DATA_SERVICE_CLASSNAME)).thenReturn(serviceReference);
         when(bundleContext.getService(serviceReference)).thenReturn(dataService);
 
+        when(dataService.executeQuery(any(QueryExecution.class))).thenReturn(new ArrayList<>());
+
         CsvTestHelper.mockRecord2Fields(entity);
     }
 
@@ -158,7 +166,16 @@ public class PdfCsvExporterTest {
             instances.add(instance2);
         }
 
-        when(dataService.retrieveAll(null)).thenReturn(instances);
+        when(dataService.executeQuery(any(QueryExecution.class))).thenReturn(instances);
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Record2 instance : instances) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", instance.getId());
+            row.put("value", instance.getValue());
+            rows.add(row);
+        }
+        when(dataService.retrieveProjection(anyListOf(String.class), any(QueryParams.class))).thenReturn(rows);
     }
 
     private void writePdfToFile() {
@@ -0,0 +1,76 @@
+package org.motechproject.mds.service.impl.csv.writer;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.Test;
+import org.motechproject.commons.api.NanoStopWatch;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+/**
+ * Measures the throughput of the CSV and PDF table writers used by the MDS export, together with the heap
+ * used while writing. Since rows are written as they are retrieved, the used heap should not grow with the
+ * number of rows.
+ */
+public class TableWriterPerformanceAssessment {
+
+    private static final String[] HEADERS = {"id", "name", "value", "creationDate", "owner", "relationship"};
+    private static final int CSV_ROWS = 1000000;
+    private static final int PDF_ROWS = 100000;
+    private static final int MEMORY_SAMPLE_ROWS = 10000;
+
+    @Test
+    public void assessCsvWriter() throws IOException {
+        CountingOutputStream output = new CountingOutputStream(new NullOutputStream());
+        assess("CSV", new CsvTableWriter(new OutputStreamWriter(output, "UTF-8")), output, CSV_ROWS);
+    }
+
+    @Test
+    public void assessPdfWriter() throws IOException {
+        CountingOutputStream output = new CountingOutputStream(new NullOutputStream());
+        assess("PDF", new PdfTableWriter(output), output, PDF_ROWS);
+    }
+
+    private void assess(String name, TableWriter writer, CountingOutputStream output, int rowCount) throws IOException {
+        Map<String, String> row = new HashMap<>();
+        long maxUsedMemory = 0;
+
+        NanoStopWatch stopWatch = new NanoStopWatch().start();
+        try {
+            writer.writeHeader(HEADERS);
+            for (int i = 0; i < rowCount; i++) {
+                buildRow(row, i);
+                writer.writeRow(row, HEADERS);
+
+                if (i % MEMORY_SAMPLE_ROWS == 0) {
+                    maxUsedMemory = Math.max(maxUsedMemory, usedMemory());
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        long time = stopWatch.duration() / 1000000L;
+
+        System.out.println(format("%s: %d rows, %d bytes in %dms (%d rows/s), max used heap %dMB", name, rowCount,
+                output.getByteCount(), time, rowCount * 1000L / Math.max(time, 1), maxUsedMemory / 1024 / 1024));
+    }
+
+    private void buildRow(Map<String, String> row, int i) {
+        row.put("id", String.valueOf(i));
+        row.put("name", "name " + i);
+        row.put("value", "some longer value of the instance " + i);
+        row.put("creationDate", "2015-01-01 10:00:00");
+        row.put("owner", "motech");
+        row.put("relationship", i + "," + (i + 1));
+    }
+
+    private long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,127 @@
+package org.motechproject.mds.service.impl.history;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryOutboxTest {
+
+    private static final long POLL_INTERVAL = 60;
+
+    private HistoryOutbox outbox;
+
+    @After
+    public void tearDown() {
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    @Test
+    public void shouldWritePendingRevisionsOnStart() throws InterruptedException {
+        CountingWriter writer = new CountingWriter(3);
+        outbox = new HistoryOutbox(writer, POLL_INTERVAL);
+
+        assertTrue(writer.awaitEmpty());
+        assertEquals(4, writer.getCalls());
+    }
+
+    @Test
+    public void shouldWritePendingRevisionsWhenSignalled() throws InterruptedException {
+        CountingWriter writer = new CountingWriter(0);
+        outbox = new HistoryOutbox(writer, POLL_INTERVAL);
+        assertTrue(writer.awaitEmpty());
+
+        writer.addPending(2);
+        outbox.signal();
+
+        assertTrue(writer.awaitEmpty());
+        assertEquals(4, writer.getCalls());
+    }
+
+    @Test
+    public void shouldRetryAfterFailedWrite() throws InterruptedException {
+        CountingWriter writer = new CountingWriter(1);
+        writer.failNextWrite();
+        outbox = new HistoryOutbox(writer, POLL_INTERVAL);
+        assertTrue(writer.awaitEmpty());
+
+        outbox.signal();
+
+        assertTrue(writer.awaitEmpty());
+        assertEquals(0, writer.getPending());
+    }
+
+    @Test
+    public void shouldLeavePendingRevisionsWhenClosed() throws InterruptedException {
+        CountingWriter writer = new CountingWriter(0);
+        outbox = new HistoryOutbox(writer, POLL_INTERVAL);
+        assertTrue(writer.awaitEmpty());
+
+        outbox.close();
+        writer.addPending(1);
+        outbox.signal();
+
+        assertFalse(writer.awaitEmpty());
+        assertEquals(1, writer.getPending());
+    }
+
+    private static class CountingWriter implements HistoryOutbox.Writer {
+
+        private final AtomicInteger pending;
+        private final AtomicInteger calls = new AtomicInteger();
+        private final Semaphore emptyChecks = new Semaphore(0);
+
+        private volatile boolean failNextWrite;
+
+        CountingWriter(int pending) {
+            this.pending = new AtomicInteger(pending);
+        }
+
+        @Override
+        public int write() {
+            calls.incrementAndGet();
+
+            if (failNextWrite) {
+                failNextWrite = false;
+                emptyChecks.release();
+                throw new IllegalStateException("Write failed");
+            }
+
+            if (pending.get() == 0) {
+                emptyChecks.release();
+                return 0;
+            }
+
+            pending.decrementAndGet();
+            return 1;
+        }
+
+        boolean awaitEmpty() throws InterruptedException {
+            return emptyChecks.tryAcquire(1, TimeUnit.SECONDS);
+        }
+
+        void addPending(int count) {
+            pending.addAndGet(count);
+        }
+
+        void failNextWrite() {
+            failNextWrite = true;
+        }
+
+        int getPending() {
+            return pending.get();
+        }
+
+        int getCalls() {
+            return calls.get();
+        }
+    }
+}
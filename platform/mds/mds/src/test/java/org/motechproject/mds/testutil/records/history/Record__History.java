@@ -9,6 +9,7 @@ public class Record__History {
     private String value;
     private Date date;
     private Long record__HistorySchemaVersion;
+    private String record__HistoryChangedFields;
 
     public Record__History() {
         this(null, null);
@@ -67,4 +68,12 @@ public class Record__History {
     public void setRecord__HistorySchemaVersion(Long record__HistorySchemaVersion) {
         this.record__HistorySchemaVersion = record__HistorySchemaVersion;
     }
+
+    public String getRecord__HistoryChangedFields() {
+        return record__HistoryChangedFields;
+    }
+
+    public void setRecord__HistoryChangedFields(String record__HistoryChangedFields) {
+        this.record__HistoryChangedFields = record__HistoryChangedFields;
+    }
 }
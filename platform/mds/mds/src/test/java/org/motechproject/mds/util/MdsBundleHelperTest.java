@@ -1,25 +1,37 @@
 package org.motechproject.mds.util;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.motechproject.mds.helper.MdsBundleHelper;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Version;
 
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Hashtable;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class MdsBundleHelperTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Mock
     private Bundle entitiesBundle;
 
@@ -99,6 +111,43 @@ public class MdsBundleHelperTest {
         assertFalse(MdsBundleHelper.isBundleMdsDependent(nonMdsBundle));
     }
 
+    @Test
+    public void shouldKeyBundleContentByBuildTime() {
+        when(mdsBundle.getVersion()).thenReturn(new Version(1, 0, 0));
+        when(mdsBundle.getLastModified()).thenReturn(100L);
+        mdsBundle.getHeaders().put("Bnd-LastModified", "1400000000000");
+
+        String key = MdsBundleHelper.getContentKey(mdsBundle);
+
+        // installing the same bundle again changes only its last modified time
+        when(mdsBundle.getLastModified()).thenReturn(200L);
+        assertEquals(key, MdsBundleHelper.getContentKey(mdsBundle));
+
+        mdsBundle.getHeaders().put("Bnd-LastModified", "1400000000001");
+        assertNotEquals(key, MdsBundleHelper.getContentKey(mdsBundle));
+    }
+
+    @Test
+    public void shouldKeyBundleContentByDigestWithoutBuildTime() throws Exception {
+        File entry = folder.newFile("Entry.class");
+        Files.write(entry.toPath(), new byte[]{1, 2, 3});
+        URL url = entry.toURI().toURL();
+
+        when(nonMdsBundle.getVersion()).thenReturn(new Version(1, 0, 0));
+        when(nonMdsBundle.getLastModified()).thenReturn(100L);
+        when(nonMdsBundle.findEntries("/", "*", true)).thenReturn(Collections.enumeration(Arrays.asList(url)));
+
+        String key = MdsBundleHelper.getContentKey(nonMdsBundle);
+
+        when(nonMdsBundle.getLastModified()).thenReturn(200L);
+        when(nonMdsBundle.findEntries("/", "*", true)).thenReturn(Collections.enumeration(Arrays.asList(url)));
+        assertEquals(key, MdsBundleHelper.getContentKey(nonMdsBundle));
+
+        Files.write(entry.toPath(), new byte[]{1, 2, 4});
+        when(nonMdsBundle.findEntries("/", "*", true)).thenReturn(Collections.enumeration(Arrays.asList(url)));
+        assertNotEquals(key, MdsBundleHelper.getContentKey(nonMdsBundle));
+    }
+
     private void setUpBundleMock(Bundle bundle, String symbolicName, long bundleId) {
         setUpBundleMock(bundle, symbolicName, bundleId, null, null);
     }
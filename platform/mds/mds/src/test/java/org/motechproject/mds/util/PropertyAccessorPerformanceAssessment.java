@@ -0,0 +1,79 @@
+package org.motechproject.mds.util;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.junit.Test;
+import org.motechproject.commons.api.NanoStopWatch;
+import org.motechproject.mds.dto.EntityDto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Compares the time of copying all properties of a wide bean through {@link PropertyUtils}, which introspects
+ * the bean on every access, with the time of copying them through the cached {@link PropertyAccessor}.
+ */
+public class PropertyAccessorPerformanceAssessment {
+
+    private static final int WARM_UP_COPIES = 100000;
+    private static final int COPIES = 1000000;
+
+    @Test
+    public void assessPropertyAccess() throws Exception {
+        EntityDto source = new EntityDto(1L, "org.motechproject.mds.Sample");
+        EntityDto target = new EntityDto();
+        List<String> properties = getProperties(source);
+
+        copyWithPropertyUtils(source, target, properties, WARM_UP_COPIES);
+        copyWithAccessor(source, target, properties, WARM_UP_COPIES);
+
+        NanoStopWatch stopWatch = new NanoStopWatch().start();
+        copyWithPropertyUtils(source, target, properties, COPIES);
+        long propertyUtilsTime = stopWatch.duration() / 1000000L;
+
+        stopWatch = new NanoStopWatch().start();
+        copyWithAccessor(source, target, properties, COPIES);
+        long accessorTime = stopWatch.duration() / 1000000L;
+
+        System.out.println(format("%d copies of %d properties: PropertyUtils %dms, PropertyAccessor %dms", COPIES,
+                properties.size(), propertyUtilsTime, accessorTime));
+    }
+
+    private void copyWithPropertyUtils(Object source, Object target, List<String> properties, int copies)
+            throws Exception {
+        for (int i = 0; i < copies; ++i) {
+            for (String property : properties) {
+                PropertyUtils.setProperty(target, property, PropertyUtils.getProperty(source, property));
+            }
+        }
+    }
+
+    private void copyWithAccessor(Object source, Object target, List<String> properties, int copies)
+            throws Exception {
+        PropertyAccessor accessor = PropertyAccessor.forBean(source);
+        int[] ordinals = new int[properties.size()];
+        for (int i = 0; i < ordinals.length; ++i) {
+            ordinals[i] = accessor.indexOf(properties.get(i));
+        }
+
+        for (int i = 0; i < copies; ++i) {
+            for (int ordinal : ordinals) {
+                accessor.set(target, ordinal, accessor.get(source, ordinal));
+            }
+        }
+    }
+
+    private List<String> getProperties(Object bean) {
+        PropertyAccessor accessor = PropertyAccessor.forBean(bean);
+        List<String> properties = new ArrayList<>();
+
+        for (int i = 0; i < accessor.getPropertyCount(); ++i) {
+            if (accessor.isReadable(i) && accessor.isWriteable(i)) {
+                properties.add(accessor.getPropertyName(i));
+            }
+        }
+
+        return properties;
+    }
+}
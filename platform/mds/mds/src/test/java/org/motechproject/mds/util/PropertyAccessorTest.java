@@ -0,0 +1,83 @@
+package org.motechproject.mds.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PropertyAccessorTest {
+
+    @Test
+    public void shouldReadAndWritePropertiesByOrdinal() throws Exception {
+        PropertyAccessor accessor = PropertyAccessor.forClass(Sample.class);
+        Sample sample = new Sample();
+
+        int name = accessor.indexOf("name");
+        int count = accessor.indexOf("count");
+
+        accessor.set(sample, name, "sample");
+        accessor.set(sample, count, 7);
+
+        assertEquals("sample", sample.getName());
+        assertEquals(7, sample.getCount());
+        assertEquals("sample", accessor.get(sample, name));
+        assertEquals(7, accessor.get(sample, count));
+        assertEquals(int.class, accessor.getPropertyType(count));
+        assertEquals("count", accessor.getPropertyName(count));
+    }
+
+    @Test
+    public void shouldRecognizeReadOnlyAndUnknownProperties() {
+        PropertyAccessor accessor = PropertyAccessor.forClass(Sample.class);
+
+        assertTrue(accessor.isReadable("readOnly"));
+        assertFalse(accessor.isWriteable("readOnly"));
+        assertEquals(-1, accessor.indexOf("unknown"));
+        assertFalse(accessor.isReadable("unknown"));
+        assertNull(accessor.getPropertyType(-1));
+    }
+
+    @Test(expected = NoSuchMethodException.class)
+    public void shouldNotWriteReadOnlyProperty() throws Exception {
+        PropertyAccessor.forClass(Sample.class).set(new Sample(), "readOnly", "value");
+    }
+
+    @Test(expected = NoSuchMethodException.class)
+    public void shouldNotReadUnknownProperty() throws Exception {
+        PropertyAccessor.forClass(Sample.class).get(new Sample(), "unknown");
+    }
+
+    @Test
+    public void shouldCacheAccessorOfClass() {
+        assertSame(PropertyAccessor.forClass(Sample.class), PropertyAccessor.forBean(new Sample()));
+    }
+
+    public static class Sample {
+
+        private String name;
+        private int count;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public String getReadOnly() {
+            return "readOnly";
+        }
+    }
+}
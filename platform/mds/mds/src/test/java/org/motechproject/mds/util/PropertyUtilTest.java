@@ -5,8 +5,10 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static java.util.Arrays.asList;
@@ -73,6 +75,20 @@ public class PropertyUtilTest {
         assertTrue(instance.getList().containsAll(collection));
     }
 
+    @Test
+    public void shouldAccessPropertiesOfMapsAndNestedProperties() {
+        Map<String, Object> map = new HashMap<>();
+        PropertyUtil.safeSetProperty(map, "name", "value");
+
+        assertEquals("value", map.get("name"));
+        assertEquals("value", PropertyUtil.safeGetProperty(map, "name"));
+
+        TestClassWithCollections instance = new TestClassWithCollections();
+        instance.setList(Arrays.asList("egg"));
+
+        assertEquals("egg", PropertyUtil.safeGetProperty(instance, "list[0]"));
+        assertEquals(instance.getList(), PropertyUtil.safeGetProperty(instance, "List"));
+    }
 
     private class TestClass {
 